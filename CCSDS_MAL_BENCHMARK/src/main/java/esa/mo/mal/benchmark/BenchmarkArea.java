@@ -0,0 +1,182 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2026      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Benchmarks
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.benchmark;
+
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import java.util.HashMap;
+import java.util.Map;
+import org.ccsds.moims.mo.mal.MALArea;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALOperationStage;
+import org.ccsds.moims.mo.mal.MALSendOperation;
+import org.ccsds.moims.mo.mal.MALService;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.URI;
+
+/**
+ * Defines the private MAL area used by the benchmarks. The area contains a single service with a
+ * single SEND operation whose body is one abstract element, so any MAL element can be carried.
+ */
+public abstract class BenchmarkArea
+{
+  /**
+   * Area number, chosen well away from the standard CCSDS areas.
+   */
+  public static final UShort AREA_NUMBER = new UShort(900);
+  /**
+   * Area version.
+   */
+  public static final UOctet AREA_VERSION = new UOctet((short) 1);
+  /**
+   * Service number.
+   */
+  public static final UShort SERVICE_NUMBER = new UShort(1);
+  /**
+   * Interaction stage of the SEND operation.
+   */
+  public static final UOctet SEND_STAGE = new UOctet((short) 1);
+  /**
+   * The SEND operation used by all benchmarks.
+   */
+  public static final MALSendOperation SEND_OP = new MALSendOperation(new UShort(1),
+      new Identifier("Bench"), Boolean.FALSE, new UShort(0),
+      new MALOperationStage(SEND_STAGE, new Object[]{null}, new Object[]{null}));
+  private static final String ENCODING_PROPERTY_PREFIX
+      = "org.ccsds.moims.mo.mal.encoding.protocol.";
+  private static final Map<String, String> ENCODINGS = new HashMap<String, String>();
+  private static boolean initialised = false;
+
+  static {
+    ENCODINGS.put("fixed", "esa.mo.mal.encoder.binary.fixed.FixedBinaryStreamFactory");
+    ENCODINGS.put("variable", "esa.mo.mal.encoder.binary.variable.VariableBinaryStreamFactory");
+    ENCODINGS.put("split", "esa.mo.mal.encoder.binary.split.SplitBinaryStreamFactory");
+    ENCODINGS.put("string", "esa.mo.mal.encoder.string.StringStreamFactory");
+    ENCODINGS.put("line", "esa.mo.mal.encoder.line.LineStreamFactory");
+  }
+
+  /**
+   * Registers the MAL structures and the benchmark area with the MAL context, only the first call
+   * has any effect.
+   *
+   * @throws MALException On error.
+   */
+  public static synchronized void init() throws MALException
+  {
+    if (!initialised) {
+      MALHelper.init(MALContextFactory.getElementFactoryRegistry());
+
+      MALService service = new MALService(SERVICE_NUMBER, new Identifier("BenchService"));
+      service.addOperation(SEND_OP);
+
+      MALArea area = new MALArea(AREA_NUMBER, new Identifier("Bench"), AREA_VERSION);
+      area.addService(service);
+      MALContextFactory.registerArea(area);
+
+      initialised = true;
+    }
+  }
+
+  /**
+   * Returns the stream factory class name registered for a benchmark encoding name.
+   *
+   * @param encoding One of fixed, variable, split, string or line.
+   * @return the class name.
+   */
+  public static String getStreamFactoryClassName(final String encoding)
+  {
+    String className = ENCODINGS.get(encoding);
+
+    if (null == className) {
+      throw new IllegalArgumentException("Unknown benchmark encoding: " + encoding);
+    }
+
+    return className;
+  }
+
+  /**
+   * Registers the supplied encoding against a MAL protocol name.
+   *
+   * @param protocol The protocol name.
+   * @param encoding One of fixed, variable, split, string or line.
+   */
+  public static void registerEncoding(final String protocol, final String encoding)
+  {
+    System.setProperty(ENCODING_PROPERTY_PREFIX + protocol, getStreamFactoryClassName(encoding));
+  }
+
+  /**
+   * Creates a stream factory for a benchmark encoding name.
+   *
+   * @param encoding One of fixed, variable, split, string or line.
+   * @return the new stream factory.
+   * @throws MALException On error.
+   */
+  public static MALElementStreamFactory createStreamFactory(final String encoding)
+      throws MALException
+  {
+    String protocol = "bench" + encoding;
+    registerEncoding(protocol, encoding);
+
+    return MALElementStreamFactory.newFactory(protocol, new HashMap());
+  }
+
+  /**
+   * Creates an encoding context for the body element of the benchmark SEND operation.
+   *
+   * @return the new context.
+   */
+  public static MALEncodingContext createEncodingContext()
+  {
+    GENMessageHeader hdr = new GENMessageHeader(new URI("bench://from"),
+        new Blob(new byte[]{1}),
+        new URI("bench://to"),
+        new Time(System.currentTimeMillis()),
+        QoSLevel.BESTEFFORT,
+        new UInteger(1),
+        new IdentifierList(),
+        new Identifier("Network"),
+        SessionType.LIVE,
+        new Identifier("LIVE"),
+        InteractionType.SEND,
+        SEND_STAGE,
+        0L,
+        AREA_NUMBER,
+        SERVICE_NUMBER,
+        SEND_OP.getNumber(),
+        AREA_VERSION,
+        Boolean.FALSE);
+
+    return new MALEncodingContext(hdr, SEND_OP, 0, new HashMap(), new HashMap());
+  }
+}
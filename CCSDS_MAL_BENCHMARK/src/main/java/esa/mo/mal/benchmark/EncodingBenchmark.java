@@ -0,0 +1,113 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2026      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Benchmarks
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encode and decode cost of a single message body element for each encoding. Run with
+ * {@code -prof gc} to also report the allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark
+{
+  @Param({"fixed", "variable", "split", "string", "line"})
+  public String encoding;
+  @Param({"COMPOSITE", "LIST", "TIME", "FINE_TIME", "BLOB", "STRING"})
+  public String payload;
+  private MALElementStreamFactory streamFactory;
+  private MALEncodingContext ctx;
+  private Element element;
+  private Element template;
+  private ByteArrayOutputStream baos;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws MALException
+  {
+    BenchmarkArea.init();
+
+    streamFactory = BenchmarkArea.createStreamFactory(encoding);
+    ctx = BenchmarkArea.createEncodingContext();
+    element = Payload.valueOf(payload).create();
+    // the line encoding cannot decode abstract types so needs to be given the expected type
+    template = "line".equals(encoding) ? element.createElement() : null;
+    baos = new ByteArrayOutputStream(128 * 1024);
+
+    encode();
+    encoded = baos.toByteArray();
+  }
+
+  /**
+   * Encodes the payload into a reused output buffer.
+   *
+   * @return the number of bytes written.
+   * @throws MALException On error.
+   */
+  @Benchmark
+  public int encode() throws MALException
+  {
+    baos.reset();
+
+    MALElementOutputStream enc = streamFactory.createOutputStream(baos);
+    enc.writeElement(element, ctx);
+    enc.close();
+
+    return baos.size();
+  }
+
+  /**
+   * Decodes the previously encoded payload.
+   *
+   * @return the decoded element.
+   * @throws MALException On error.
+   */
+  @Benchmark
+  public Object decode() throws MALException
+  {
+    MALElementInputStream dec = streamFactory.createInputStream(encoded, 0);
+
+    return dec.readElement(template, ctx);
+  }
+}
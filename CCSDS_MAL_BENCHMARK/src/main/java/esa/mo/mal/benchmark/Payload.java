@@ -0,0 +1,125 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2026      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Benchmarks
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.benchmark;
+
+import java.util.Arrays;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.EntityKey;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.NamedValue;
+import org.ccsds.moims.mo.mal.structures.NamedValueList;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.ccsds.moims.mo.mal.structures.UpdateHeader;
+import org.ccsds.moims.mo.mal.structures.UpdateType;
+import org.ccsds.moims.mo.mal.structures.URI;
+
+/**
+ * The message body shapes exercised by the benchmarks.
+ */
+public enum Payload
+{
+  /**
+   * A single composite containing nested composites and attributes.
+   */
+  COMPOSITE {
+    @Override
+    public Element create()
+    {
+      return new UpdateHeader(new Time(1500000000000L), new URI("maltcp://127.0.0.1:1024/Bench"),
+          UpdateType.UPDATE, new EntityKey(new Identifier("Key"), 1L, 2L, 3L));
+    }
+  },
+  /**
+   * A list of one hundred named values with mixed attribute types.
+   */
+  LIST {
+    @Override
+    public Element create()
+    {
+      NamedValueList list = new NamedValueList(100);
+
+      for (int i = 0; i < 100; ++i) {
+        list.add(new NamedValue(new Identifier("Parameter" + i), new Union((double) i)));
+      }
+
+      return list;
+    }
+  },
+  /**
+   * A millisecond time.
+   */
+  TIME {
+    @Override
+    public Element create()
+    {
+      return new Time(1500000000000L);
+    }
+  },
+  /**
+   * A picosecond fine time.
+   */
+  FINE_TIME {
+    @Override
+    public Element create()
+    {
+      return new FineTime(1500000000000000000L);
+    }
+  },
+  /**
+   * A 64 KiB blob.
+   */
+  BLOB {
+    @Override
+    public Element create()
+    {
+      byte[] value = new byte[65536];
+
+      for (int i = 0; i < value.length; ++i) {
+        value[i] = (byte) i;
+      }
+
+      return new Blob(value);
+    }
+  },
+  /**
+   * A 16 KiB string.
+   */
+  STRING {
+    @Override
+    public Element create()
+    {
+      char[] value = new char[16384];
+      Arrays.fill(value, 'x');
+
+      return new Union(new String(value));
+    }
+  };
+
+  /**
+   * Creates a new instance of the payload.
+   *
+   * @return the payload element.
+   */
+  public abstract Element create();
+}
@@ -0,0 +1,137 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2026      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Benchmarks
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.benchmark;
+
+import esa.mo.mal.transport.spp.SPPMessageHeader;
+import esa.mo.mal.transport.spp.SPPSourceSequenceCounter;
+import esa.mo.mal.transport.spp.SPPSourceSequenceCounterSimple;
+import esa.mo.mal.transport.spp.SPPSourceSequenceCounterTable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of taking SPP source sequence counts when many sender threads do so at once.
+ * The "synchronized" counter is the former monitor based implementation, "shared" is the lock free
+ * counter used by all threads and "striped" gives each thread the counter of its own APID.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class SequenceCounterBenchmark
+{
+  @Param({"synchronized", "shared", "striped"})
+  public String counter;
+  private final AtomicInteger nextApid = new AtomicInteger(1);
+  private SPPSourceSequenceCounter shared;
+  private SPPSourceSequenceCounterTable table;
+
+  @Setup
+  public void setup()
+  {
+    if ("synchronized".equals(counter)) {
+      shared = new SynchronizedCounter();
+    } else {
+      shared = new SPPSourceSequenceCounterSimple();
+    }
+
+    table = new SPPSourceSequenceCounterTable(new SPPSourceSequenceCounterSimple(), 0, 0, null);
+  }
+
+  /**
+   * The counter used by one sender thread.
+   */
+  @State(Scope.Thread)
+  public static class Sender
+  {
+    private SPPSourceSequenceCounter counter;
+
+    @Setup
+    public void setup(SequenceCounterBenchmark benchmark)
+    {
+      if ("striped".equals(benchmark.counter)) {
+        counter = benchmark.table.getCounter(0, benchmark.nextApid.getAndIncrement());
+      } else {
+        counter = benchmark.shared;
+      }
+    }
+  }
+
+  /**
+   * Takes the count of an unsegmented message.
+   *
+   * @param sender The state of the sending thread.
+   * @return the count.
+   */
+  @Benchmark
+  public int nextCount(Sender sender)
+  {
+    return sender.counter.getNextSourceSequenceCount();
+  }
+
+  /**
+   * Takes the counts of a message of eight segments, the way the transport does.
+   *
+   * @param sender The state of the sending thread.
+   * @return the first count.
+   */
+  @Benchmark
+  public int nextSegmentCounts(Sender sender)
+  {
+    return SPPMessageHeader.reserveSourceSequenceCounts(sender.counter, 8);
+  }
+
+  /**
+   * The monitor based counter the transport used before, kept as the baseline.
+   */
+  private static final class SynchronizedCounter implements SPPSourceSequenceCounter
+  {
+
+    private int sequenceCount = 0;
+
+    @Override
+    public synchronized int getNextSourceSequenceCount()
+    {
+      final int i = sequenceCount++;
+
+      if (sequenceCount > 16383) {
+        sequenceCount = 0;
+      }
+
+      return i;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2026      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Benchmarks
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of creating the element streams of the binary encodings, which every encoded
+ * or decoded message pays once for each stream it uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamFactoryBenchmark
+{
+  @Param({"fixed", "variable", "split"})
+  public String encoding;
+  private MALElementStreamFactory streamFactory;
+  private ByteArrayOutputStream baos;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws MALException
+  {
+    BenchmarkArea.init();
+
+    streamFactory = BenchmarkArea.createStreamFactory(encoding);
+    baos = new ByteArrayOutputStream();
+    encoded = new byte[64];
+  }
+
+  /**
+   * Creates an input stream over an encoded array.
+   *
+   * @return the new stream.
+   * @throws MALException On error.
+   */
+  @Benchmark
+  public MALElementInputStream createInputStream() throws MALException
+  {
+    return streamFactory.createInputStream(encoded, 0);
+  }
+
+  /**
+   * Creates an output stream over a reused buffer.
+   *
+   * @return the new stream.
+   * @throws MALException On error.
+   */
+  @Benchmark
+  public MALElementOutputStream createOutputStream() throws MALException
+  {
+    return streamFactory.createOutputStream(baos);
+  }
+}
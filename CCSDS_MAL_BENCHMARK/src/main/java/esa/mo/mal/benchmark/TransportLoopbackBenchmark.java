@@ -0,0 +1,316 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2026      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Benchmarks
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import esa.mo.mal.transport.gen.GENEndpoint;
+import esa.mo.mal.transport.gen.GENTransport;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.transport.MALEndpoint;
+import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.ccsds.moims.mo.mal.transport.MALMessageListener;
+import org.ccsds.moims.mo.mal.transport.MALTransport;
+import org.ccsds.moims.mo.mal.transport.MALTransportFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of a SEND message from an endpoint back to itself through a complete
+ * transport stack: encoding, framing, the sender thread, the wire (socket, RMI, ZeroMQ, file system
+ * or an embedded ActiveMQ vm:// broker) and the receive side decode and dispatch.
+ *
+ * Each transport is measured in its own forked JVM because the transport factories hold their
+ * transport as a singleton.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportLoopbackBenchmark
+{
+  private static final String TRANSPORT_PROPERTY_PREFIX
+      = "org.ccsds.moims.mo.mal.transport.protocol.";
+  private static final long RECEIVE_TIMEOUT_SECONDS = 10;
+  private static final int PIPELINE_DEPTH = 16;
+  @Param({"rmi", "maltcp", "malzmtp", "file", "ccsdsjms"})
+  public String protocol;
+  @Param({"fixed"})
+  public String encoding;
+  @Param({"64", "4096"})
+  public int bodySize;
+  @Param({"1"})
+  public String batchMessages;
+  @Param({"blocking"})
+  public String tcpipEngine;
+  @Param({"object"})
+  public String jmsWireMode;
+  private final BlockingQueue<MALMessage> received = new LinkedBlockingQueue<MALMessage>();
+  private File directory;
+  private MALTransport transport;
+  private MALEndpoint endpoint;
+  private Blob body;
+  private Blob authenticationId;
+  private IdentifierList domain;
+  private Identifier networkZone;
+  private Identifier sessionName;
+  private UInteger priority;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    BenchmarkArea.init();
+    BenchmarkArea.registerEncoding(protocol, encoding);
+
+    Map properties = createProperties();
+
+    transport = MALTransportFactory.newFactory(protocol).createTransport(null, properties);
+
+    if (null == transport) {
+      throw new MALException("Unable to create transport for protocol " + protocol);
+    }
+
+    endpoint = transport.createEndpoint("Bench", properties);
+    endpoint.setMessageListener(new Listener());
+    endpoint.startMessageDelivery();
+
+    body = new Blob(new byte[bodySize]);
+    authenticationId = new Blob(new byte[]{1});
+    domain = new IdentifierList();
+    domain.add(new Identifier("esa"));
+    networkZone = new Identifier("Network");
+    sessionName = new Identifier("LIVE");
+    priority = new UInteger(1);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception
+  {
+    if (null != endpoint) {
+      endpoint.close();
+    }
+
+    if (null != transport) {
+      transport.close();
+    }
+
+    if (null != directory) {
+      File[] files = directory.listFiles();
+
+      if (null != files) {
+        for (File file : files) {
+          file.delete();
+        }
+      }
+
+      directory.delete();
+    }
+  }
+
+  /**
+   * Sends one message to the local endpoint and waits for it to be delivered.
+   *
+   * @return the received message.
+   * @throws Exception On error or if the message is not delivered in time.
+   */
+  @Benchmark
+  public MALMessage roundTrip() throws Exception
+  {
+    MALMessage msg = endpoint.createMessage(authenticationId, endpoint.getURI(),
+        new Time(System.currentTimeMillis()), QoSLevel.ASSURED, priority, domain, networkZone,
+        SessionType.LIVE, sessionName, 0L, Boolean.FALSE, BenchmarkArea.SEND_OP,
+        BenchmarkArea.SEND_STAGE, null, body);
+
+    endpoint.sendMessage(msg);
+
+    return receive();
+  }
+
+  /**
+   * Sends a burst of messages through the asynchronous send path without waiting for each one to be
+   * sent, then waits for all of them to be delivered. Reported per message.
+   *
+   * @return the last received message.
+   * @throws Exception On error or if a message is not sent or delivered in time.
+   */
+  @Benchmark
+  @OperationsPerInvocation(PIPELINE_DEPTH)
+  public MALMessage pipelined() throws Exception
+  {
+    GENEndpoint genEndpoint = (GENEndpoint) endpoint;
+    Future[] results = new Future[PIPELINE_DEPTH];
+
+    for (int i = 0; i < PIPELINE_DEPTH; i++) {
+      results[i] = genEndpoint.sendMessageAsync(endpoint.createMessage(authenticationId,
+          endpoint.getURI(), new Time(System.currentTimeMillis()), QoSLevel.ASSURED, priority,
+          domain, networkZone, SessionType.LIVE, sessionName, (long) i, Boolean.FALSE,
+          BenchmarkArea.SEND_OP, BenchmarkArea.SEND_STAGE, null, body));
+    }
+
+    for (Future result : results) {
+      if (!Boolean.TRUE.equals(result.get(RECEIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS))) {
+        throw new MALException("Message not sent over " + protocol);
+      }
+    }
+
+    MALMessage rMsg = null;
+
+    for (int i = 0; i < PIPELINE_DEPTH; i++) {
+      rMsg = receive();
+    }
+
+    return rMsg;
+  }
+
+  private MALMessage receive() throws Exception
+  {
+    MALMessage rMsg = received.poll(RECEIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    if (null == rMsg) {
+      throw new MALException("Message not received within " + RECEIVE_TIMEOUT_SECONDS
+          + " seconds over " + protocol);
+    }
+
+    return rMsg;
+  }
+
+  private Map createProperties() throws IOException
+  {
+    Map properties = new HashMap();
+    properties.put(GENTransport.BATCH_MESSAGES_PROPERTY, batchMessages);
+    // messages to ourselves must go over the wire rather than being short-circuited in-process,
+    // the ZMTP and file transports cannot yet loop a message back to themselves over the wire
+    properties.put(GENTransport.INPROC_PROPERTY,
+        String.valueOf("malzmtp".equals(protocol) || "file".equals(protocol)));
+
+    System.setProperty(TRANSPORT_PROPERTY_PREFIX + "rmi",
+        "esa.mo.mal.transport.rmi.RMITransportFactoryImpl");
+    System.setProperty(TRANSPORT_PROPERTY_PREFIX + "maltcp",
+        "esa.mo.mal.transport.tcpip.TCPIPTransportFactoryImpl");
+    System.setProperty(TRANSPORT_PROPERTY_PREFIX + "malzmtp",
+        "esa.mo.mal.transport.zmtp.ZMTPTransportFactoryImpl");
+    System.setProperty(TRANSPORT_PROPERTY_PREFIX + "file",
+        "esa.mo.mal.transport.file.FileTransportFactoryImpl");
+    System.setProperty(TRANSPORT_PROPERTY_PREFIX + "ccsdsjms",
+        "esa.mo.mal.transport.jms.JMSTransportFactoryImpl");
+
+    if ("rmi".equals(protocol)) {
+      properties.put("org.ccsds.moims.mo.mal.transport.rmi.host", "127.0.0.1");
+    } else if ("maltcp".equals(protocol)) {
+      properties.put("org.ccsds.moims.mo.mal.transport.tcpip.host", "127.0.0.1");
+      properties.put("org.ccsds.moims.mo.mal.transport.tcpip.port", String.valueOf(freePort()));
+      properties.put("org.ccsds.moims.mo.mal.transport.tcpip.engine", tcpipEngine);
+    } else if ("malzmtp".equals(protocol)) {
+      properties.put("org.ccsds.moims.mo.mal.transport.zmtp.localuri",
+          "malzmtp://127.0.0.1:" + freePort());
+      properties.put("org.ccsds.moims.mo.mal.encoding.protocol.malzmtp",
+          BenchmarkArea.getStreamFactoryClassName(encoding));
+    } else if ("file".equals(protocol)) {
+      directory = Files.createTempDirectory("malbench").toFile();
+      properties.put("ccsds.mal.transport.file.incoming.directory.name", directory.getPath());
+      properties.put("ccsds.mal.transport.file.outgoing.directory.name", directory.getPath());
+    } else if ("ccsdsjms".equals(protocol)) {
+      properties.put("org.ccsds.moims.mo.mal.transport.jms.wiremode", jmsWireMode);
+      System.setProperty("org.ccsds.moims.mo.jms.admin.class",
+          "esa.mo.mal.transport.jms.admin.ActiveMQAdministrator");
+      System.setProperty("java.naming.provider.url",
+          "vm://localhost?broker.persistent=false&broker.useJmx=false");
+      // the JMS transport copies these into its naming context so they must be present
+      System.setProperty("java.naming.factory.initial",
+          "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+      System.setProperty("java.naming.factory.host", "localhost");
+      System.setProperty("java.naming.factory.port", "61616");
+    }
+
+    return properties;
+  }
+
+  private static int freePort() throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+
+  private final class Listener implements MALMessageListener
+  {
+    @Override
+    public void onMessage(MALEndpoint callingEndpoint, MALMessage msg)
+    {
+      received.add(msg);
+    }
+
+    @Override
+    public void onMessages(MALEndpoint callingEndpoint, MALMessage[] msgList)
+    {
+      for (MALMessage msg : msgList) {
+        received.add(msg);
+      }
+    }
+
+    @Override
+    public void onInternalError(MALEndpoint callingEndpoint, Throwable err)
+    {
+      err.printStackTrace();
+    }
+
+    @Override
+    public void onTransmitError(MALEndpoint callingEndpoint, MALMessageHeader srcMessageHeader,
+        org.ccsds.moims.mo.mal.MALStandardError err, Map qosMap)
+    {
+      System.err.println("Transmit error: " + err);
+    }
+  }
+}
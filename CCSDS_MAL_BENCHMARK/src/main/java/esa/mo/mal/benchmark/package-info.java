@@ -0,0 +1,5 @@
+/**
+ * JMH micro-benchmarks for the MAL encodings, for loopback latency of the MAL transports and for
+ * contention on the SPP sequence counters.
+ */
+package esa.mo.mal.benchmark;
@@ -65,6 +65,65 @@ public abstract class BaseBinaryDecoder extends GENDecoder
         dSourceBuffer.buf.contentLength);
   }
 
+  @Override
+  public int getSourceOffset()
+  {
+    BaseBinaryBufferHolder dSourceBuffer = (BaseBinaryBufferHolder) sourceBuffer;
+
+    // when reading from a stream the buffer is an internal copy
+    return (null == dSourceBuffer.buf.inputStream) ? dSourceBuffer.buf.offset : -1;
+  }
+
+  @Override
+  public int getSourcePosition()
+  {
+    BaseBinaryBufferHolder dSourceBuffer = (BaseBinaryBufferHolder) sourceBuffer;
+
+    return (null == dSourceBuffer.buf.inputStream) ? dSourceBuffer.buf.offset : -1;
+  }
+
+  @Override
+  public boolean limitSource(final int end)
+  {
+    BaseBinaryBufferHolder dSourceBuffer = (BaseBinaryBufferHolder) sourceBuffer;
+
+    if (null != dSourceBuffer.buf.inputStream) {
+      return false;
+    }
+
+    if (end < dSourceBuffer.buf.contentLength) {
+      dSourceBuffer.buf.contentLength = end;
+    }
+
+    return true;
+  }
+
+  @Override
+  public byte[] getSourceArray()
+  {
+    BaseBinaryBufferHolder dSourceBuffer = (BaseBinaryBufferHolder) sourceBuffer;
+
+    return (null == dSourceBuffer.buf.inputStream) ? dSourceBuffer.buf.buf : null;
+  }
+
+  @Override
+  public int skipBlob() throws MALException
+  {
+    BaseBinaryBufferHolder dSourceBuffer = (BaseBinaryBufferHolder) sourceBuffer;
+
+    if (null != dSourceBuffer.buf.inputStream) {
+      return -1;
+    }
+
+    final int length = dSourceBuffer.getBytesLength();
+
+    if ((0 > length) || (length > (dSourceBuffer.buf.contentLength - dSourceBuffer.buf.offset))) {
+      throw new MALException("Blob length " + length + " exceeds the remaining encoded data");
+    }
+
+    return dSourceBuffer.buf.shiftOffsetAndReturnPrevious(length);
+  }
+
   @Override
   public Duration decodeDuration() throws MALException
   {
@@ -139,11 +198,7 @@ public abstract class BaseBinaryDecoder extends GENDecoder
       final int len = getUnsignedInt();
 
       if (len >= 0) {
-        buf.checkBuffer(len);
-
-        final String s = new String(buf.buf, buf.offset, len, UTF8_CHARSET);
-        buf.offset += len;
-        return s;
+        return buf.directGetString(len);
       }
       return null;
     }
@@ -157,7 +212,18 @@ public abstract class BaseBinaryDecoder extends GENDecoder
     @Override
     public byte[] getBytes() throws MALException
     {
-      return directGetBytes(getUnsignedInt());
+      return directGetBytes(getBytesLength());
+    }
+
+    /**
+     * Gets the length field that precedes the content of a byte array.
+     *
+     * @return the length of the byte array.
+     * @throws MALException If there is a problem with the decoding.
+     */
+    public int getBytesLength() throws MALException
+    {
+      return getUnsignedInt();
     }
 
     @Override
@@ -189,6 +255,30 @@ public abstract class BaseBinaryDecoder extends GENDecoder
     {
       return buf.directGetBytes(size);
     }
+
+    /**
+     * Decodes a UTF-8 string of known length directly from the buffer.
+     *
+     * @param size the length of the encoded string in bytes.
+     * @return the decoded string.
+     * @throws MALException if there is an error reading from the stream
+     */
+    public String directGetString(final int size) throws MALException
+    {
+      return buf.directGetString(size);
+    }
+
+    /**
+     * Reads an unsigned big endian value of the supplied length without copying it.
+     *
+     * @param size the length of the value in bytes, from 1 to 8.
+     * @return the decoded value.
+     * @throws MALException if there is an error reading from the stream
+     */
+    public long getFixedUnsigned(final int size) throws MALException
+    {
+      return buf.getFixedUnsigned(size);
+    }
   }
 
   protected static class BaseBinaryInputReader
@@ -243,16 +333,148 @@ public abstract class BaseBinaryDecoder extends GENDecoder
       throw new IllegalArgumentException("Size must not be negative");
     }
 
+    /**
+     * Decodes a UTF-8 string of known length directly from the buffer, without an intermediate
+     * copy of the encoded bytes.
+     *
+     * @param size the length of the encoded string in bytes.
+     * @return the decoded string.
+     * @throws MALException if there is an error reading from the stream
+     */
+    public String directGetString(final int size) throws MALException
+    {
+      if (size >= 0) {
+        checkBuffer(size);
+
+        final String s = new String(buf, offset, size, UTF8_CHARSET);
+        offset += size;
+        return s;
+      }
+
+      throw new IllegalArgumentException("Size must not be negative");
+    }
+
+    /**
+     * Reads an unsigned big endian value of the supplied length directly from the buffer.
+     *
+     * @param size the length of the value in bytes, from 1 to 8.
+     * @return the decoded value.
+     * @throws MALException if there is an error reading from the stream
+     */
+    public long getFixedUnsigned(final int size) throws MALException
+    {
+      checkBuffer(size);
+
+      final byte[] b = buf;
+      final int end = offset + size;
+      long value = 0;
+
+      for (int i = offset; i < end; i++) {
+        value = (value << 8) | (b[i] & 0xFF);
+      }
+
+      offset = end;
+      return value;
+    }
+
+    /**
+     * Reads a varint encoded unsigned int. The bytes already loaded are decoded straight from the
+     * array, the stream is only consulted if the value runs past them.
+     *
+     * @return the decoded value.
+     * @throws MALException if there is an error reading from the stream
+     */
+    public int getUnsignedVarint32() throws MALException
+    {
+      final byte[] b = buf;
+      final int limit = contentLength;
+      int pos = offset;
+      int value = 0;
+      int shift = 0;
+      int v;
+
+      if (null != b) {
+        while (pos < limit) {
+          v = b[pos++];
+
+          if (0 == (v & 0x80)) {
+            offset = pos;
+            return value | (v << shift);
+          }
+
+          value |= (v & 0x7F) << shift;
+          shift += 7;
+        }
+
+        offset = pos;
+      }
+
+      while (((v = get8()) & 0x80) != 0) {
+        value |= (v & 0x7F) << shift;
+        shift += 7;
+      }
+
+      return value | (v << shift);
+    }
+
+    /**
+     * Reads a varint encoded unsigned long. The bytes already loaded are decoded straight from the
+     * array, the stream is only consulted if the value runs past them.
+     *
+     * @return the decoded value.
+     * @throws MALException if there is an error reading from the stream
+     */
+    public long getUnsignedVarint64() throws MALException
+    {
+      final byte[] b = buf;
+      final int limit = contentLength;
+      int pos = offset;
+      long value = 0;
+      int shift = 0;
+      long v;
+
+      if (null != b) {
+        while (pos < limit) {
+          v = b[pos++];
+
+          if (0 == (v & 0x80L)) {
+            offset = pos;
+            return value | (v << shift);
+          }
+
+          value |= (v & 0x7FL) << shift;
+          shift += 7;
+        }
+
+        offset = pos;
+      }
+
+      while (((v = get8()) & 0x80L) != 0) {
+        value |= (v & 0x7FL) << shift;
+        shift += 7;
+      }
+
+      return value | (v << shift);
+    }
+
     /**
      * Ensures that we have loaded enough buffer from the input stream (if we are stream based) for
-     * the next read.
+     * the next read. Unread content is moved to the start of the buffer, which is only replaced if
+     * it is too small or must be preserved, and the stream is read in bulk until enough is loaded.
+     * When decoding in place it only checks that the data lies within the content length.
      *
      * @param requiredLength number of bytes required.
-     * @throws MALException if there is an error reading from the stream
+     * @throws MALException if there is an error reading from the stream or the data is truncated
      */
     public void checkBuffer(final int requiredLength) throws MALException
     {
-      if (null != inputStream) {
+      if (null == inputStream) {
+        // decoding in place, the content length marks the end of the encoded data
+        if (requiredLength > (this.contentLength - this.offset)) {
+          throw new MALException("Unable to read " + requiredLength
+              + " bytes, only " + (this.contentLength - this.offset) + " remain");
+        }
+      } else {
         int existingContentRemaining = 0;
         int existingBufferLength = 0;
 
@@ -280,9 +502,8 @@ public abstract class BaseBinaryDecoder extends GENDecoder
             }
 
             // this either shifts the existing contents to the start of the old buffer, or copies it into the new buffer
-            // NOTE: this is faster than System.arraycopy, as that performs argument type checks
-            for (int i = 0; i < existingContentRemaining; ++i) {
-              destBuf[i] = this.buf[this.offset + i];
+            if (0 < existingContentRemaining) {
+              System.arraycopy(this.buf, this.offset, destBuf, 0, existingContentRemaining);
             }
 
             // the start of the data in the buffer has moved to zero now
@@ -292,17 +513,21 @@ public abstract class BaseBinaryDecoder extends GENDecoder
           }
 
           try {
-            // read into the empty space of the buffer
-            LOGGER.log(Level.FINER, "Reading from input stream: {0}",
-                (existingBufferLength - this.contentLength));
-            final int read = inputStream.read(this.buf,
-                this.contentLength, existingBufferLength - this.contentLength);
-            LOGGER.log(Level.FINER, "Read from input stream: {0}", read);
-            if (read < 0) {
-              throw new MALException(
-                  "Unable to read required amount from source stream: end of file.");
+            // read into the empty space of the buffer until the required data is loaded
+            final int requiredContentLength = this.offset + requiredLength;
+
+            while (this.contentLength < requiredContentLength) {
+              LOGGER.log(Level.FINER, "Reading from input stream: {0}",
+                  (existingBufferLength - this.contentLength));
+              final int read = inputStream.read(this.buf,
+                  this.contentLength, existingBufferLength - this.contentLength);
+              LOGGER.log(Level.FINER, "Read from input stream: {0}", read);
+              if (read < 0) {
+                throw new MALException(
+                    "Unable to read required amount from source stream: end of file.");
+              }
+              this.contentLength += read;
             }
-            this.contentLength += read;
           } catch (IOException ex) {
             throw new MALException("Unable to read required amount from source stream", ex);
           }
@@ -84,10 +84,24 @@ public abstract class BaseBinaryEncoder extends GENEncoder
   /**
    * Internal class for accessing the output stream. Overridden by sub-classes to alter the low
    * level encoding.
+   *
+   * Multi-byte fields are assembled in a small field buffer and written with a single call to the
+   * output stream, short strings are converted to UTF-8 in a reusable buffer, so encoding a field
+   * does not allocate. Each field is written when it is added, the holder never keeps data back.
    */
   public static abstract class BaseBinaryStreamHolder extends StreamHolder
   {
 
+    /**
+     * Strings up to this many chars are converted to UTF-8 without allocation.
+     */
+    private static final int SHORT_STRING_MAX_CHARS = 256;
+    /**
+     * Buffer for assembling a single field, large enough for a 64 bit varint.
+     */
+    protected final byte[] fieldBuffer = new byte[16];
+    private byte[] stringBuffer = null;
+
     /**
      * Constructor.
      *
@@ -106,14 +120,40 @@ public abstract class BaseBinaryEncoder extends GENEncoder
         addUnsignedInt(0);
         throw new IOException("StreamHolder.addBytes: null value supplied!!");
       } else {
-        addUnsignedInt(value.length);
-        directAdd(value);
+        addBytes(value, 0, value.length);
       }
     }
 
+    /**
+     * Adds a length prefixed part of a byte array to the output stream.
+     *
+     * @param value  the array holding the bytes to encode.
+     * @param offset offset into the array.
+     * @param length number of bytes to encode.
+     * @throws IOException is there is a problem adding the value to the stream.
+     */
+    @Override
+    public void addBytes(final byte[] value, int offset, int length) throws IOException
+    {
+      addUnsignedInt(length);
+      directAdd(value, offset, length);
+    }
+
     @Override
     public void addString(String value) throws IOException
     {
+      final int charCount = value.length();
+
+      if (charCount <= SHORT_STRING_MAX_CHARS) {
+        final int length = encodeShortString(value, charCount);
+
+        if (0 <= length) {
+          addBytes(stringBuffer, 0, length);
+          return;
+        }
+      }
+
+      // long strings are converted faster by the charset, unpaired surrogates need its replacement
       addBytes(value.getBytes(UTF8_CHARSET));
     }
 
@@ -157,9 +197,103 @@ public abstract class BaseBinaryEncoder extends GENEncoder
       directAdd((byte) 0);
     }
 
+    /**
+     * Adds the least significant bytes of a value to the output stream, most significant byte
+     * first.
+     *
+     * @param value  the value to encode.
+     * @param length the number of bytes to add, from 1 to 8.
+     * @throws IOException is there is a problem adding the value to the stream.
+     */
+    public void addFixedUnsigned(long value, int length) throws IOException
+    {
+      for (int i = length - 1; i >= 0; i--) {
+        fieldBuffer[i] = (byte) value;
+        value >>>= 8;
+      }
+
+      directAdd(fieldBuffer, 0, length);
+    }
+
+    /**
+     * Adds an unsigned short as 2 bytes, most significant byte first.
+     *
+     * @param value the value to encode.
+     * @throws IOException is there is a problem adding the value to the stream.
+     */
+    public void addFixedUnsignedShort(int value) throws IOException
+    {
+      addFixedUnsigned(value, 2);
+    }
+
+    /**
+     * Adds an unsigned int as 4 bytes, most significant byte first.
+     *
+     * @param value the value to encode.
+     * @throws IOException is there is a problem adding the value to the stream.
+     */
+    public void addFixedUnsignedInt(int value) throws IOException
+    {
+      addFixedUnsigned(value, 4);
+    }
+
+    /**
+     * Adds an unsigned long as 8 bytes, most significant byte first.
+     *
+     * @param value the value to encode.
+     * @throws IOException is there is a problem adding the value to the stream.
+     */
+    public void addFixedUnsignedLong(long value) throws IOException
+    {
+      addFixedUnsigned(value, 8);
+    }
+
     public OutputStream getOutputStream()
     {
       return outputStream;
     }
+
+    /**
+     * Converts a string to UTF-8 in the string buffer.
+     *
+     * @return the number of bytes, or -1 if the string contains unpaired surrogates.
+     */
+    private int encodeShortString(String value, int charCount)
+    {
+      // at most 3 bytes per char, a surrogate pair takes 4 bytes for 2 chars
+      final int maxLength = charCount * 3;
+      if ((null == stringBuffer) || (stringBuffer.length < maxLength)) {
+        stringBuffer = new byte[Math.max(maxLength, 32)];
+      }
+
+      final byte[] buf = stringBuffer;
+      int pos = 0;
+
+      for (int i = 0; i < charCount; i++) {
+        final char c = value.charAt(i);
+
+        if (c < 0x80) {
+          buf[pos++] = (byte) c;
+        } else if (c < 0x800) {
+          buf[pos++] = (byte) (0xC0 | (c >> 6));
+          buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if ((c < Character.MIN_SURROGATE) || (c > Character.MAX_SURROGATE)) {
+          buf[pos++] = (byte) (0xE0 | (c >> 12));
+          buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && (i + 1 < charCount)
+            && Character.isLowSurrogate(value.charAt(i + 1))) {
+          final int cp = Character.toCodePoint(c, value.charAt(++i));
+          buf[pos++] = (byte) (0xF0 | (cp >> 18));
+          buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+          return -1;
+        }
+      }
+
+      return pos;
+    }
   }
 }
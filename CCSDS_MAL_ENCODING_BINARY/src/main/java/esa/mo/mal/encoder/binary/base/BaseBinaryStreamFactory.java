@@ -23,6 +23,7 @@ package esa.mo.mal.encoder.binary.base;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Constructor;
 import java.util.Map;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
@@ -32,20 +33,22 @@ import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
 import org.ccsds.moims.mo.mal.structures.Blob;
 
 /**
- * Implements the MALElementStreamFactory interface for a binary encoding. It uses reflection to
- * allow child classes - e.g. Fixed, Variable and Split encodings stream factories, to implement the
- * necessary methods with minimal code, given that respective MAL Element I/O streams implement the
- * required constructors.
+ * Implements the MALElementStreamFactory interface for a binary encoding. Child classes - e.g.
+ * Fixed, Variable and Split encodings stream factories, register a BinaryStreamSupplier that
+ * creates their MAL Element I/O streams directly. Child classes that only provide the stream
+ * classes are supported through reflection, the required constructors are looked up once and
+ * then reused.
  */
 public abstract class BaseBinaryStreamFactory extends MALElementStreamFactory
 {
 
   protected final Class inputStreamImpl;
   protected final Class outputStreamImpl;
+  protected final BinaryStreamSupplier streamSupplier;
   protected BinaryTimeHandler timeHandler;
 
   /**
-   * Constructor allowing child classes to reuse
+   * Constructor allowing child classes to reuse. The streams are created through reflection.
    *
    * @param inputStreamImpl  The class of the input stream
    * @param outputStreamImpl The class of the output stream
@@ -53,9 +56,25 @@ public abstract class BaseBinaryStreamFactory extends MALElementStreamFactory
    */
   protected BaseBinaryStreamFactory(final Class inputStreamImpl, final Class outputStreamImpl,
       final BinaryTimeHandler timeHandler)
+  {
+    this(inputStreamImpl, outputStreamImpl, null, timeHandler);
+  }
+
+  /**
+   * Constructor allowing child classes to reuse.
+   *
+   * @param inputStreamImpl  The class of the input stream
+   * @param outputStreamImpl The class of the output stream
+   * @param streamSupplier   Creates the streams, if null they are created through reflection.
+   * @param timeHandler      The time handler to use.
+   */
+  protected BaseBinaryStreamFactory(final Class inputStreamImpl, final Class outputStreamImpl,
+      final BinaryStreamSupplier streamSupplier, final BinaryTimeHandler timeHandler)
   {
     this.inputStreamImpl = inputStreamImpl;
     this.outputStreamImpl = outputStreamImpl;
+    this.streamSupplier = (null != streamSupplier) ? streamSupplier
+        : new ReflectiveStreamSupplier(inputStreamImpl, outputStreamImpl);
     this.timeHandler = timeHandler;
   }
 
@@ -69,46 +88,19 @@ public abstract class BaseBinaryStreamFactory extends MALElementStreamFactory
   public MALElementInputStream createInputStream(final byte[] bytes, final int offset) throws
       java.lang.IllegalArgumentException, MALException
   {
-    try {
-      return (MALElementInputStream) inputStreamImpl.getDeclaredConstructor(
-          byte[].class, int.class, BinaryTimeHandler.class).newInstance(bytes, offset, timeHandler);
-    } catch (NoSuchMethodException ex) {
-      throw new MALException(
-          "Error when creating input stream. Cannot find " + inputStreamImpl.getName() + "(byte[], int) constructor.",
-          ex);
-    } catch (Exception ex) {
-      throw new MALException("Error when creating input stream.", ex);
-    }
+    return streamSupplier.createInputStream(bytes, offset, timeHandler);
   }
 
   @Override
   public MALElementInputStream createInputStream(final InputStream is) throws MALException
   {
-    try {
-      return (MALElementInputStream) inputStreamImpl.getDeclaredConstructor(
-          InputStream.class, BinaryTimeHandler.class).newInstance(is, timeHandler);
-    } catch (NoSuchMethodException ex) {
-      throw new MALException(
-          "Error when creating input stream. Cannot find " + inputStreamImpl.getName() + "(InputStream) constructor.",
-          ex);
-    } catch (Exception ex) {
-      throw new MALException("Error when creating input stream.", ex);
-    }
+    return streamSupplier.createInputStream(is, timeHandler);
   }
 
   @Override
   public MALElementOutputStream createOutputStream(final OutputStream os) throws MALException
   {
-    try {
-      return (MALElementOutputStream) outputStreamImpl.getDeclaredConstructor(
-          OutputStream.class, BinaryTimeHandler.class).newInstance(os, timeHandler);
-    } catch (NoSuchMethodException ex) {
-      throw new MALException(
-          "Error when creating output stream. Cannot find " + inputStreamImpl.getName() + "(OutputStream) constructor.",
-          ex);
-    } catch (Exception ex) {
-      throw new MALException("Error when creating output stream.", ex);
-    }
+    return streamSupplier.createOutputStream(os, timeHandler);
   }
 
   @Override
@@ -126,4 +118,94 @@ public abstract class BaseBinaryStreamFactory extends MALElementStreamFactory
 
     return new Blob(baos.toByteArray());
   }
+
+  /**
+   * Creates the streams through their constructors, each constructor is looked up on first use
+   * and then cached.
+   */
+  private static final class ReflectiveStreamSupplier implements BinaryStreamSupplier
+  {
+
+    private final Class inputStreamImpl;
+    private final Class outputStreamImpl;
+    private volatile Constructor arrayInputConstructor;
+    private volatile Constructor streamInputConstructor;
+    private volatile Constructor outputConstructor;
+
+    ReflectiveStreamSupplier(final Class inputStreamImpl, final Class outputStreamImpl)
+    {
+      this.inputStreamImpl = inputStreamImpl;
+      this.outputStreamImpl = outputStreamImpl;
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(final byte[] bytes, final int offset,
+        final BinaryTimeHandler timeHandler) throws MALException
+    {
+      Constructor ctor = arrayInputConstructor;
+
+      if (null == ctor) {
+        ctor = lookup(inputStreamImpl, "input", "(byte[], int)",
+            byte[].class, int.class, BinaryTimeHandler.class);
+        arrayInputConstructor = ctor;
+      }
+
+      return (MALElementInputStream) create(ctor, "input", bytes, offset, timeHandler);
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(final InputStream is,
+        final BinaryTimeHandler timeHandler) throws MALException
+    {
+      Constructor ctor = streamInputConstructor;
+
+      if (null == ctor) {
+        ctor = lookup(inputStreamImpl, "input", "(InputStream)",
+            InputStream.class, BinaryTimeHandler.class);
+        streamInputConstructor = ctor;
+      }
+
+      return (MALElementInputStream) create(ctor, "input", is, timeHandler);
+    }
+
+    @Override
+    public MALElementOutputStream createOutputStream(final OutputStream os,
+        final BinaryTimeHandler timeHandler) throws MALException
+    {
+      Constructor ctor = outputConstructor;
+
+      if (null == ctor) {
+        ctor = lookup(outputStreamImpl, "output", "(OutputStream)",
+            OutputStream.class, BinaryTimeHandler.class);
+        outputConstructor = ctor;
+      }
+
+      return (MALElementOutputStream) create(ctor, "output", os, timeHandler);
+    }
+
+    private static Constructor lookup(final Class impl, final String direction,
+        final String signature, final Class... parameterTypes) throws MALException
+    {
+      try {
+        final Constructor ctor = impl.getDeclaredConstructor(parameterTypes);
+        ctor.setAccessible(true);
+        return ctor;
+      } catch (NoSuchMethodException ex) {
+        throw new MALException("Error when creating " + direction + " stream. Cannot find "
+            + impl.getName() + signature + " constructor.", ex);
+      } catch (SecurityException ex) {
+        throw new MALException("Error when creating " + direction + " stream.", ex);
+      }
+    }
+
+    private static Object create(final Constructor ctor, final String direction,
+        final Object... args) throws MALException
+    {
+      try {
+        return ctor.newInstance(args);
+      } catch (Exception ex) {
+        throw new MALException("Error when creating " + direction + " stream.", ex);
+      }
+    }
+  }
 }
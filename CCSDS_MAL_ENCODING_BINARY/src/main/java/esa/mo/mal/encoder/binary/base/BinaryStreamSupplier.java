@@ -0,0 +1,70 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2013      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Binary encoder
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.encoder.binary.base;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
+
+/**
+ * Creates the MAL element I/O streams of a binary encoding. Stream factories register an
+ * implementation of this with BaseBinaryStreamFactory so that creating a stream is a plain
+ * constructor call instead of a reflective one.
+ */
+public interface BinaryStreamSupplier
+{
+
+  /**
+   * Creates an input stream that decodes from a byte array.
+   *
+   * @param bytes       The encoded data.
+   * @param offset      The offset of the first byte to decode.
+   * @param timeHandler The time handler to use.
+   * @return the new input stream.
+   * @throws MALException On error.
+   */
+  MALElementInputStream createInputStream(byte[] bytes, int offset, BinaryTimeHandler timeHandler)
+      throws MALException;
+
+  /**
+   * Creates an input stream that decodes from a Java input stream.
+   *
+   * @param is          The source of the encoded data.
+   * @param timeHandler The time handler to use.
+   * @return the new input stream.
+   * @throws MALException On error.
+   */
+  MALElementInputStream createInputStream(InputStream is, BinaryTimeHandler timeHandler)
+      throws MALException;
+
+  /**
+   * Creates an output stream that encodes to a Java output stream.
+   *
+   * @param os          The destination of the encoded data.
+   * @param timeHandler The time handler to use.
+   * @return the new output stream.
+   * @throws MALException On error.
+   */
+  MALElementOutputStream createOutputStream(OutputStream os, BinaryTimeHandler timeHandler)
+      throws MALException;
+}
@@ -67,8 +67,8 @@ public class BinaryTimeHandler
     }
 
     try {
-      streamHolder.directAdd(java.nio.ByteBuffer.allocate(2).putShort((short) days).array());
-      streamHolder.directAdd(java.nio.ByteBuffer.allocate(4).putInt((int) millisecondsInDay).array());
+      streamHolder.addFixedUnsignedShort((int) days);
+      streamHolder.addFixedUnsignedInt((int) millisecondsInDay);
     } catch (IOException ex) {
       throw new MALException(IO_EXCEPTION_STR, ex);
     }
@@ -98,10 +98,9 @@ public class BinaryTimeHandler
           "Overflow of unsigned 16-bit days ({0}) when encoding MAL FineTime", days));
     }
     try {
-      streamHolder.directAdd(java.nio.ByteBuffer.allocate(2).putShort((short) days).array());
-      streamHolder.directAdd(java.nio.ByteBuffer.allocate(4).putInt((int) millisecondsInDay).array());
-      streamHolder.directAdd(
-          java.nio.ByteBuffer.allocate(4).putInt((int) picosecondsInMillisecond).array());
+      streamHolder.addFixedUnsignedShort((int) days);
+      streamHolder.addFixedUnsignedInt((int) millisecondsInDay);
+      streamHolder.addFixedUnsignedInt((int) picosecondsInMillisecond);
     } catch (IOException ex) {
       throw new MALException(IO_EXCEPTION_STR, ex);
     }
@@ -135,10 +134,9 @@ public class BinaryTimeHandler
   public Time decodeTime(final BaseBinaryDecoder.BaseBinaryBufferHolder inputBufferHolder) throws
       MALException
   {
-    // Suppress sign extensions to use a full unsigned range
-    long days = java.nio.ByteBuffer.wrap(inputBufferHolder.directGetBytes(2)).getShort() & 0xFFFFL;
-    long millisecondsInDay
-        = java.nio.ByteBuffer.wrap(inputBufferHolder.directGetBytes(4)).getInt() & 0xFFFFFFFFL;
+    // Read as unsigned values to use the full range
+    long days = inputBufferHolder.getFixedUnsigned(2);
+    long millisecondsInDay = inputBufferHolder.getFixedUnsigned(4);
     long timestamp = days * MILLISECONDS_IN_DAY;
     timestamp += millisecondsInDay;
     timestamp -= MILLISECONDS_FROM_CCSDS_TO_UNIX_EPOCH;
@@ -156,12 +154,10 @@ public class BinaryTimeHandler
   public FineTime decodeFineTime(final BaseBinaryDecoder.BaseBinaryBufferHolder inputBufferHolder)
       throws MALException
   {
-    // Suppress sign extensions to use a full unsigned range
-    long days = java.nio.ByteBuffer.wrap(inputBufferHolder.directGetBytes(2)).getShort() & 0xFFFFL;
-    long millisecondsInDay
-        = java.nio.ByteBuffer.wrap(inputBufferHolder.directGetBytes(4)).getInt() & 0xFFFFFFFFL;
-    long picosecondsInMillisecond
-        = java.nio.ByteBuffer.wrap(inputBufferHolder.directGetBytes(4)).getInt() & 0xFFFFFFFFL;
+    // Read as unsigned values to use the full range
+    long days = inputBufferHolder.getFixedUnsigned(2);
+    long millisecondsInDay = inputBufferHolder.getFixedUnsigned(4);
+    long picosecondsInMillisecond = inputBufferHolder.getFixedUnsigned(4);
     long timestamp = days * NANOSECONDS_IN_DAY;
     timestamp += millisecondsInDay * ONE_MILLION;
     timestamp += picosecondsInMillisecond / 1000;
@@ -127,42 +127,31 @@ public class FixedBinaryDecoder extends esa.mo.mal.encoder.binary.base.BaseBinar
     @Override
     public long getUnsignedLong() throws MALException
     {
-      buf.checkBuffer(8);
-      final int i = buf.shiftOffsetAndReturnPrevious(8);
-      return java.nio.ByteBuffer.wrap(buf.getBuf(), i, 8).getLong();
+      return buf.getFixedUnsigned(8);
     }
 
     @Override
     public long getUnsignedLong32() throws MALException
     {
-      buf.checkBuffer(4);
-
-      final int i = buf.shiftOffsetAndReturnPrevious(4);
-      return java.nio.ByteBuffer.wrap(buf.getBuf(), i, 4).getInt() & 0xFFFFFFFFL;
+      return buf.getFixedUnsigned(4);
     }
 
     @Override
     public int getUnsignedInt() throws MALException
     {
-      buf.checkBuffer(4);
-      final int i = buf.shiftOffsetAndReturnPrevious(4);
-      return java.nio.ByteBuffer.wrap(buf.getBuf(), i, 4).getInt();
+      return (int) buf.getFixedUnsigned(4);
     }
 
     @Override
     public int getUnsignedInt16() throws MALException
     {
-      buf.checkBuffer(2);
-      final int i = buf.shiftOffsetAndReturnPrevious(2);
-      return java.nio.ByteBuffer.wrap(buf.getBuf(), i, 2).getShort() & 0xFFFF;
+      return (int) buf.getFixedUnsigned(2);
     }
 
     @Override
     public int getUnsignedShort() throws MALException
     {
-      buf.checkBuffer(2);
-      final int i = buf.shiftOffsetAndReturnPrevious(2);
-      return java.nio.ByteBuffer.wrap(buf.getBuf(), i, 2).getShort();
+      return (short) buf.getFixedUnsigned(2);
     }
 
     @Override
@@ -192,10 +181,8 @@ public class FixedBinaryDecoder extends esa.mo.mal.encoder.binary.base.BaseBinar
     @Override
     public BigInteger getBigInteger() throws MALException
     {
-      // Make sure that sign bit is always 0
-      byte[] readBuf = new byte[9];
-      System.arraycopy(buf.directGetBytes(8), 0, readBuf, 1, 8);
-      return new BigInteger(readBuf);
+      // the value is unsigned, so the magnitude is taken as positive
+      return new BigInteger(1, buf.directGetBytes(8));
     }
 
     @Override
@@ -209,21 +196,18 @@ public class FixedBinaryDecoder extends esa.mo.mal.encoder.binary.base.BaseBinar
       }
 
       if (len >= 0) {
-        buf.checkBuffer(len);
-        final String s = new String(buf.getBuf(), buf.shiftOffsetAndReturnPrevious(len), len,
-            UTF8_CHARSET);
-        return s;
+        return buf.directGetString(len);
       }
       return null;
     }
 
     @Override
-    public byte[] getBytes() throws MALException
+    public int getBytesLength() throws MALException
     {
       if (shortLengthField) {
-        return directGetBytes(getUnsignedShort());
+        return getUnsignedShort();
       } else {
-        return directGetBytes(getUnsignedInt());
+        return getUnsignedInt();
       }
     }
   }
@@ -105,37 +105,37 @@ public class FixedBinaryEncoder extends esa.mo.mal.encoder.binary.base.BaseBinar
     @Override
     public void addUnsignedLong(long value) throws IOException
     {
-      directAdd(java.nio.ByteBuffer.allocate(8).putLong(value).array());
+      addFixedUnsignedLong(value);
     }
 
     @Override
     public void addUnsignedLong32(long value) throws IOException
     {
-      directAdd(java.nio.ByteBuffer.allocate(8).putLong(value).array(), 4, 4);
+      addFixedUnsigned(value, 4);
     }
 
     @Override
     public void addUnsignedInt(int value) throws IOException
     {
-      directAdd(java.nio.ByteBuffer.allocate(4).putInt(value).array());
+      addFixedUnsignedInt(value);
     }
 
     @Override
     public void addUnsignedInt16(int value) throws IOException
     {
-      directAdd(java.nio.ByteBuffer.allocate(4).putInt(value).array(), 2, 2);
+      addFixedUnsignedShort(value);
     }
 
     @Override
     public void addUnsignedShort(int value) throws IOException
     {
-      directAdd(java.nio.ByteBuffer.allocate(2).putShort((short) value).array());
+      addFixedUnsignedShort(value);
     }
 
     @Override
     public void addUnsignedShort8(short value) throws IOException
     {
-      directAdd(java.nio.ByteBuffer.allocate(2).putShort(value).array()[1]);
+      directAdd((byte) value);
     }
 
     @Override
@@ -153,9 +153,11 @@ public class FixedBinaryEncoder extends esa.mo.mal.encoder.binary.base.BaseBinar
         throw new IOException(
             "Adding big integer larger than 8 bytes (size = " + valueBytes.length + " bytes, value = " + value + ")");
       }
-      java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(8);
-      buf.position(8 - arrayLength);
-      directAdd(buf.put(valueBytes, arrayOffset, arrayLength).array());
+      for (int i = 0; i < 8 - arrayLength; i++) {
+        fieldBuffer[i] = 0;
+      }
+      System.arraycopy(valueBytes, arrayOffset, fieldBuffer, 8 - arrayLength, arrayLength);
+      directAdd(fieldBuffer, 0, 8);
     }
 
     @Override
@@ -169,13 +171,19 @@ public class FixedBinaryEncoder extends esa.mo.mal.encoder.binary.base.BaseBinar
         }
         throw new IOException("StreamHolder.addBytes: null value supplied!!");
       } else {
-        if (shortLengthField) {
-          addUnsignedShort(value.length);
-        } else {
-          addUnsignedInt(value.length);
-        }
-        directAdd(value);
+        addBytes(value, 0, value.length);
+      }
+    }
+
+    @Override
+    public void addBytes(final byte[] value, int offset, int length) throws IOException
+    {
+      if (shortLengthField) {
+        addUnsignedShort(length);
+      } else {
+        addUnsignedInt(length);
       }
+      directAdd(value, offset, length);
     }
   }
 }
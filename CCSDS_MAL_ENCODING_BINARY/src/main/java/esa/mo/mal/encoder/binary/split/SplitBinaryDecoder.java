@@ -83,6 +83,13 @@ public class SplitBinaryDecoder extends esa.mo.mal.encoder.binary.variable.Varia
     return new SplitBinaryListDecoder(list, sourceBuffer, timeHandler);
   }
 
+  @Override
+  public int getSourceOffset()
+  {
+    // the bit field at the start is shared by all the fields, the remainder cannot be used alone
+    return -1;
+  }
+
   /**
    * Extends BufferHolder to handle split binary encoding.
    */
@@ -123,10 +130,7 @@ public class SplitBinaryDecoder extends esa.mo.mal.encoder.binary.variable.Varia
 
     public long getFixedUnsignedLong() throws MALException
     {
-      buf.checkBuffer(8);
-
-      final int i = buf.shiftOffsetAndReturnPrevious(8);
-      return java.nio.ByteBuffer.wrap(buf.getBuf(), i, 8).getLong();
+      return buf.getFixedUnsigned(8);
     }
   }
 
@@ -154,6 +158,28 @@ public class SplitBinaryDecoder extends esa.mo.mal.encoder.binary.variable.Varia
       super.checkBuffer(requiredLength);
     }
 
+    @Override
+    public int getUnsignedVarint32() throws MALException
+    {
+      // ensure that the bit buffer has been loaded first
+      if (!bitStoreLoaded) {
+        loadBitStore();
+      }
+
+      return super.getUnsignedVarint32();
+    }
+
+    @Override
+    public long getUnsignedVarint64() throws MALException
+    {
+      // ensure that the bit buffer has been loaded first
+      if (!bitStoreLoaded) {
+        loadBitStore();
+      }
+
+      return super.getUnsignedVarint64();
+    }
+
     @Override
     public void bufferRealloced(int oldSize)
     {
@@ -200,11 +200,6 @@ public class SplitBinaryEncoder extends esa.mo.mal.encoder.binary.variable.Varia
       os.write(value & 0x7F);
     }
 
-    public void addFixedUnsignedLong(long value) throws IOException
-    {
-      directAdd(java.nio.ByteBuffer.allocate(8).putLong(value).array());
-    }
-
     private void setBit(int bitIndex)
     {
       int byteIndex = bitIndex / 8;
@@ -142,14 +142,7 @@ public class VariableBinaryDecoder extends esa.mo.mal.encoder.binary.base.BaseBi
     @Override
     public long getUnsignedLong() throws MALException
     {
-      long value = 0L;
-      int i = 0;
-      long b;
-      while (((b = get8()) & 128L) != 0) {
-        value |= (b & 127) << i;
-        i += 7;
-      }
-      return value | (b << i);
+      return buf.getUnsignedVarint64();
     }
 
     @Override
@@ -161,14 +154,7 @@ public class VariableBinaryDecoder extends esa.mo.mal.encoder.binary.base.BaseBi
     @Override
     public int getUnsignedInt() throws MALException
     {
-      int value = 0;
-      int i = 0;
-      int b;
-      while (((b = get8()) & 128) != 0) {
-        value |= (b & 127) << i;
-        i += 7;
-      }
-      return value | (b << i);
+      return buf.getUnsignedVarint32();
     }
 
     @Override
@@ -76,21 +76,25 @@ public class VariableBinaryEncoder extends esa.mo.mal.encoder.binary.base.BaseBi
     @Override
     public void addUnsignedInt(int value) throws IOException
     {
+      int pos = 0;
       while ((value & -128) != 0L) {
-        directAdd((byte) ((value & 127) | 128));
+        fieldBuffer[pos++] = (byte) ((value & 127) | 128);
         value >>>= 7;
       }
-      directAdd((byte) (value & 127));
+      fieldBuffer[pos++] = (byte) (value & 127);
+      directAdd(fieldBuffer, 0, pos);
     }
 
     @Override
     public void addUnsignedLong(long value) throws IOException
     {
+      int pos = 0;
       while ((value & -128L) != 0L) {
-        directAdd((byte) (((int) value & 127) | 128));
+        fieldBuffer[pos++] = (byte) (((int) value & 127) | 128);
         value >>>= 7;
       }
-      directAdd((byte) ((int) value & 127));
+      fieldBuffer[pos++] = (byte) ((int) value & 127);
+      directAdd(fieldBuffer, 0, pos);
     }
 
     @Override
@@ -144,7 +148,7 @@ public class VariableBinaryEncoder extends esa.mo.mal.encoder.binary.base.BaseBi
     @Override
     public void addUnsignedShort8(short value) throws IOException
     {
-      directAdd(java.nio.ByteBuffer.allocate(2).putShort(value).array()[1]);
+      directAdd((byte) value);
     }
   }
 }
@@ -20,7 +20,12 @@
  */
 package esa.mo.mal.encoder.binary.variable;
 
+import esa.mo.mal.encoder.binary.base.BinaryStreamSupplier;
 import esa.mo.mal.encoder.binary.base.BinaryTimeHandler;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
 
 /**
  * Implements the MALElementStreamFactory interface for a fixed length binary encoding.
@@ -28,9 +33,33 @@ import esa.mo.mal.encoder.binary.base.BinaryTimeHandler;
 public class VariableBinaryStreamFactory extends esa.mo.mal.encoder.binary.base.BaseBinaryStreamFactory
 {
 
+  private static final BinaryStreamSupplier STREAM_SUPPLIER = new BinaryStreamSupplier()
+  {
+    @Override
+    public MALElementInputStream createInputStream(final byte[] bytes, final int offset,
+        final BinaryTimeHandler timeHandler)
+    {
+      return new VariableBinaryElementInputStream(bytes, offset, timeHandler);
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(final InputStream is,
+        final BinaryTimeHandler timeHandler)
+    {
+      return new VariableBinaryElementInputStream(is, timeHandler);
+    }
+
+    @Override
+    public MALElementOutputStream createOutputStream(final OutputStream os,
+        final BinaryTimeHandler timeHandler)
+    {
+      return new VariableBinaryElementOutputStream(os, timeHandler);
+    }
+  };
+
   public VariableBinaryStreamFactory()
   {
     super(VariableBinaryElementInputStream.class, VariableBinaryElementOutputStream.class,
-        new BinaryTimeHandler());
+        STREAM_SUPPLIER, new BinaryTimeHandler());
   }
 }
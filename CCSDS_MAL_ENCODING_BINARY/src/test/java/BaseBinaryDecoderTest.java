@@ -0,0 +1,248 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2017      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Binary encoder
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.encoder.binary.base.BaseBinaryDecoder;
+import esa.mo.mal.encoder.binary.base.BaseBinaryEncoder;
+import esa.mo.mal.encoder.binary.base.BinaryTimeHandler;
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryDecoder;
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryEncoder;
+import esa.mo.mal.encoder.binary.split.SplitBinaryDecoder;
+import esa.mo.mal.encoder.binary.split.SplitBinaryEncoder;
+import esa.mo.mal.encoder.binary.variable.VariableBinaryDecoder;
+import esa.mo.mal.encoder.binary.variable.VariableBinaryEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.ULong;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the binary decoders read back what the encoders wrote, both from an array and from a
+ * stream that only returns a few bytes per read.
+ */
+public class BaseBinaryDecoderTest
+{
+
+  private static final String LONG_STRING;
+
+  static {
+    char[] value = new char[70000];
+    Arrays.fill(value, 'x');
+    LONG_STRING = new String(value);
+  }
+
+  public BaseBinaryDecoderTest()
+  {
+  }
+
+  /**
+   * Test of the fixed length binary decoding.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testFixedDecoding() throws Exception
+  {
+    System.out.println("FixedBinaryDecoder array and stream test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encodeSample(new FixedBinaryEncoder(baos, new BinaryTimeHandler(), false));
+    byte[] encoded = baos.toByteArray();
+
+    decodeSample(new FixedBinaryDecoder(encoded, new BinaryTimeHandler(), false));
+    decodeSample(new FixedBinaryDecoder(new TrickleInputStream(encoded), new BinaryTimeHandler(),
+        false));
+  }
+
+  /**
+   * Test of the variable length binary decoding.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testVariableDecoding() throws Exception
+  {
+    System.out.println("VariableBinaryDecoder array and stream test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encodeSample(new VariableBinaryEncoder(baos, new BinaryTimeHandler()));
+    byte[] encoded = baos.toByteArray();
+
+    decodeSample(new VariableBinaryDecoder(encoded, new BinaryTimeHandler()));
+    decodeSample(new VariableBinaryDecoder(new TrickleInputStream(encoded),
+        new BinaryTimeHandler()));
+  }
+
+  /**
+   * Test of the split binary decoding.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testSplitDecoding() throws Exception
+  {
+    System.out.println("SplitBinaryDecoder array and stream test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    SplitBinaryEncoder encoder = new SplitBinaryEncoder(baos, new BinaryTimeHandler());
+    encodeSample(encoder);
+    encoder.close();
+    byte[] encoded = baos.toByteArray();
+
+    decodeSample(new SplitBinaryDecoder(encoded, new BinaryTimeHandler()));
+    decodeSample(new SplitBinaryDecoder(new TrickleInputStream(encoded), new BinaryTimeHandler()));
+  }
+
+  /**
+   * Test that a blob can be skipped over and its content found in the source array.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testSkipBlob() throws Exception
+  {
+    System.out.println("BaseBinaryDecoder skip blob test");
+    byte[] content = new byte[]{5, 6, 7, 8, 9};
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    SplitBinaryEncoder encoder = new SplitBinaryEncoder(baos, new BinaryTimeHandler());
+    encoder.encodeBoolean(true);
+    encoder.encodeBlob(content, 1, 3);
+    encoder.encodeInteger(300);
+    encoder.close();
+    byte[] encoded = baos.toByteArray();
+
+    SplitBinaryDecoder decoder = new SplitBinaryDecoder(encoded, new BinaryTimeHandler());
+    assertEquals(Boolean.TRUE, decoder.decodeBoolean());
+    int offset = decoder.skipBlob();
+    assertSame(encoded, decoder.getSourceArray());
+    assertArrayEquals(new byte[]{6, 7, 8}, Arrays.copyOfRange(encoded, offset, offset + 3));
+    assertEquals(Integer.valueOf(300), decoder.decodeInteger());
+
+    FixedBinaryDecoder streamDecoder = new FixedBinaryDecoder(new TrickleInputStream(encoded),
+        new BinaryTimeHandler(), true);
+    assertEquals(-1, streamDecoder.skipBlob());
+    assertNull(streamDecoder.getSourceArray());
+  }
+
+  @Test
+  public void testLimitSource() throws Exception
+  {
+    System.out.println("BaseBinaryDecoder limit source test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    FixedBinaryEncoder encoder = new FixedBinaryEncoder(baos, new BinaryTimeHandler(), true);
+    encoder.encodeBlob(new Blob(new byte[]{1, 2, 3, 4}));
+    encoder.encodeLong(Long.MAX_VALUE);
+    encoder.close();
+    byte[] encoded = baos.toByteArray();
+
+    FixedBinaryDecoder decoder = new FixedBinaryDecoder(encoded, new BinaryTimeHandler(), true);
+    int offset = decoder.skipBlob();
+    int end = decoder.getSourcePosition();
+    assertEquals(offset + 4, end);
+
+    // a long needs eight bytes, which the Blob does not hold
+    FixedBinaryDecoder content = new FixedBinaryDecoder(encoded, offset, new BinaryTimeHandler(),
+        true);
+    assertTrue(content.limitSource(end));
+    try {
+      content.decodeLong();
+      fail("Decoded past the end of the Blob");
+    } catch (MALException ex) {
+      // expected
+    }
+
+    assertEquals(Long.valueOf(Long.MAX_VALUE), decoder.decodeLong());
+
+    FixedBinaryDecoder streamDecoder = new FixedBinaryDecoder(new TrickleInputStream(encoded),
+        new BinaryTimeHandler(), true);
+    assertEquals(-1, streamDecoder.getSourcePosition());
+    assertFalse(streamDecoder.limitSource(4));
+  }
+
+  private static void encodeSample(BaseBinaryEncoder encoder) throws Exception
+  {
+    encoder.encodeInteger(300);
+    encoder.encodeBoolean(true);
+    encoder.encodeLong(Long.MIN_VALUE);
+    encoder.encodeUShort(new UShort(65535));
+    encoder.encodeUInteger(new UInteger(4294967295L));
+    encoder.encodeULong(new ULong(new BigInteger("18446744073709551615")));
+    encoder.encodeString("caf\u00e9 \u20ac");
+    encoder.encodeBoolean(false);
+    encoder.encodeIdentifier(new Identifier("MAL"));
+    encoder.encodeString(LONG_STRING);
+    encoder.encodeBlob(new Blob(new byte[]{0, 1, 2, (byte) 0xff}));
+    encoder.encodeTime(new Time(1500000000123L));
+    encoder.encodeFineTime(new FineTime(1500000000123456789L));
+    encoder.encodeInteger(-1);
+  }
+
+  private static void decodeSample(BaseBinaryDecoder decoder) throws Exception
+  {
+    assertEquals(Integer.valueOf(300), decoder.decodeInteger());
+    assertEquals(Boolean.TRUE, decoder.decodeBoolean());
+    assertEquals(Long.valueOf(Long.MIN_VALUE), decoder.decodeLong());
+    assertEquals(new UShort(65535), decoder.decodeUShort());
+    assertEquals(new UInteger(4294967295L), decoder.decodeUInteger());
+    assertEquals(new ULong(new BigInteger("18446744073709551615")), decoder.decodeULong());
+    assertEquals("caf\u00e9 \u20ac", decoder.decodeString());
+    assertEquals(Boolean.FALSE, decoder.decodeBoolean());
+    assertEquals(new Identifier("MAL"), decoder.decodeIdentifier());
+    assertEquals(LONG_STRING, decoder.decodeString());
+    assertArrayEquals(new byte[]{0, 1, 2, (byte) 0xff}, decoder.decodeBlob().getValue());
+    assertEquals(new Time(1500000000123L), decoder.decodeTime());
+    assertEquals(new FineTime(1500000000123456789L), decoder.decodeFineTime());
+    assertEquals(Integer.valueOf(-1), decoder.decodeInteger());
+  }
+
+  /**
+   * Returns at most three bytes per read, like a slow socket.
+   */
+  private static class TrickleInputStream extends InputStream
+  {
+
+    private final ByteArrayInputStream is;
+
+    public TrickleInputStream(byte[] data)
+    {
+      this.is = new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public int read()
+    {
+      return is.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+      return is.read(b, off, Math.min(len, 3));
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2017      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Binary encoder
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.encoder.binary.base.BaseBinaryEncoder;
+import esa.mo.mal.encoder.binary.base.BinaryTimeHandler;
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryEncoder;
+import esa.mo.mal.encoder.binary.split.SplitBinaryEncoder;
+import esa.mo.mal.encoder.binary.variable.VariableBinaryEncoder;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Duration;
+import org.ccsds.moims.mo.mal.structures.FineTime;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.ULong;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the binary encoders produce the expected bytes, the expected values are the output of
+ * the original stream based encoders.
+ */
+public class BaseBinaryEncoderTest
+{
+
+  private static final String FIXED_EXPECTED
+      = "0000000000000001ffffffff0000003fffffffc00000007f000000800000012c7fffffff80000000"
+      + "00000000000000000000000000000001ffffffffffffffff0000000800000000fffffff800000000"
+      + "7fffffffffffffff800000000000000000000001ffff00c87fff800000ff00ff0000012cffff0000"
+      + "000000011170ffffffff000000000000000000000000000f4240ffffffffffffffff00000000bfc0"
+      + "00007f7fffff0000000000000000400921fb54442d18ffefffffffffffff01000001010001000000"
+      + "2a000000000000000341424300000009636166c3a920e282ac0000000ff09d849e20c3bfdfbfe0a0"
+      + "80efbfbf0000000d626164203f2070616972203f3f00010000000178000000034d414c0000001a6d"
+      + "616c7463703a2f2f686f73743a313032342f5365727669636500000004000102ff00111f00000000"
+      + "54f000927c7b111f000000000000000054f000927c7b1b3a0c084004000000000000";
+
+  private static final String FIXED_SHORT_LENGTH_EXPECTED
+      = "0000000000000001ffffffff0000003fffffffc00000007f000000800000012c7fffffff80000000"
+      + "00000000000000000000000000000001ffffffffffffffff0000000800000000fffffff800000000"
+      + "7fffffffffffffff800000000000000000000001ffff00c87fff800000ff00ff0000012cffff0000"
+      + "000000011170ffffffff000000000000000000000000000f4240ffffffffffffffff00000000bfc0"
+      + "00007f7fffff0000000000000000400921fb54442d18ffefffffffffffff01000001010001000000"
+      + "2a000000034142430009636166c3a920e282ac000ff09d849e20c3bfdfbfe0a080efbfbf000d6261"
+      + "64203f2070616972203f3f000100017800034d414c001a6d616c7463703a2f2f686f73743a313032"
+      + "342f536572766963650004000102ff00111f0000000054f000927c7b111f000000000000000054f0"
+      + "00927c7b1b3a0c084004000000000000";
+
+  private static final String VARIABLE_EXPECTED
+      = "0002017e7ffe018002d804feffffff0fffffffff0f000201808080808002ffffffffff01feffffff"
+      + "ffffffffff01ffffffffffffffffff010002019003feff03ffff0300ff00ff00ac02ffff0300f0a2"
+      + "04ffffffff0f00c0843dffffffffffffffffff0100ffffff8308fefffff70f00b0b4a1c4eafe9089"
+      + "800181808080808080100100000101000154000341424309636166c3a920e282ac0ff09d849e20c3"
+      + "bfdfbfe0a080efbfbf0d626164203f2070616972203f3f00010178034d414c1a6d616c7463703a2f"
+      + "2f686f73743a313032342f5365727669636504000102ff00111f0000000054f000927c7b111f0000"
+      + "00000000000054f000927c7b1b3a0c0880808080808080848001";
+
+  private static final String SPLIT_EXPECTED
+      = "0259010002017e7ffe018002d804feffffff0fffffffff0f000201808080808002ffffffffff01fe"
+      + "ffffffffffffffff01ffffffffffffffffff010002019003feff03ffff0300ff00ff00ac02ffff03"
+      + "00f0a204ffffffff0f00c0843dffffffffffffffffff0100ffffff8308fefffff70f00b0b4a1c4ea"
+      + "fe90898001818080808080801054000341424309636166c3a920e282ac0ff09d849e20c3bfdfbfe0"
+      + "a080efbfbf0d626164203f2070616972203f3f0178034d414c1a6d616c7463703a2f2f686f73743a"
+      + "313032342f5365727669636504000102ff111f0000000054f000927c7b111f000000000000000054"
+      + "f000927c7b1b3a0c0880808080808080848001";
+
+  public BaseBinaryEncoderTest()
+  {
+  }
+
+  /**
+   * Test of the fixed length binary encoding with a 32 bit length field.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testFixedEncoding() throws Exception
+  {
+    System.out.println("FixedBinaryEncoder byte output test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encodeSample(new FixedBinaryEncoder(baos, new BinaryTimeHandler(), false));
+    assertEquals("Encoded bytes", FIXED_EXPECTED, toHex(baos.toByteArray()));
+  }
+
+  /**
+   * Test of the fixed length binary encoding with a 16 bit length field.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testFixedShortLengthEncoding() throws Exception
+  {
+    System.out.println("FixedBinaryEncoder short length byte output test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encodeSample(new FixedBinaryEncoder(baos, new BinaryTimeHandler(), true));
+    assertEquals("Encoded bytes", FIXED_SHORT_LENGTH_EXPECTED, toHex(baos.toByteArray()));
+  }
+
+  /**
+   * Test of the variable length binary encoding.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testVariableEncoding() throws Exception
+  {
+    System.out.println("VariableBinaryEncoder byte output test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encodeSample(new VariableBinaryEncoder(baos, new BinaryTimeHandler()));
+    assertEquals("Encoded bytes", VARIABLE_EXPECTED, toHex(baos.toByteArray()));
+  }
+
+  /**
+   * Test of the split binary encoding.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testSplitEncoding() throws Exception
+  {
+    System.out.println("SplitBinaryEncoder byte output test");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    SplitBinaryEncoder encoder = new SplitBinaryEncoder(baos, new BinaryTimeHandler());
+    encodeSample(encoder);
+    encoder.close();
+    assertEquals("Encoded bytes", SPLIT_EXPECTED, toHex(baos.toByteArray()));
+  }
+
+  private static void encodeSample(BaseBinaryEncoder encoder) throws Exception
+  {
+    int[] ints = {0, 1, -1, 63, -64, 127, 128, 300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    for (int i : ints) {
+      encoder.encodeInteger(i);
+    }
+    long[] longs = {0L, 1L, -1L, 1L << 35, -(1L << 35), Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long l : longs) {
+      encoder.encodeLong(l);
+    }
+    short[] shorts = {0, 1, -1, 200, Short.MAX_VALUE, Short.MIN_VALUE};
+    for (short s : shorts) {
+      encoder.encodeShort(s);
+    }
+    encoder.encodeOctet((byte) 0);
+    encoder.encodeOctet((byte) -1);
+    encoder.encodeUOctet(new UOctet((short) 0));
+    encoder.encodeUOctet(new UOctet((short) 255));
+    encoder.encodeUShort(new UShort(0));
+    encoder.encodeUShort(new UShort(300));
+    encoder.encodeUShort(new UShort(65535));
+    encoder.encodeUInteger(new UInteger(0));
+    encoder.encodeUInteger(new UInteger(70000));
+    encoder.encodeUInteger(new UInteger(4294967295L));
+    encoder.encodeULong(new ULong(BigInteger.ZERO));
+    encoder.encodeULong(new ULong(new BigInteger("1000000")));
+    encoder.encodeULong(new ULong(new BigInteger("18446744073709551615")));
+    encoder.encodeFloat(0.0f);
+    encoder.encodeFloat(-1.5f);
+    encoder.encodeFloat(Float.MAX_VALUE);
+    encoder.encodeDouble(0.0);
+    encoder.encodeDouble(Math.PI);
+    encoder.encodeDouble(-Double.MAX_VALUE);
+    encoder.encodeBoolean(true);
+    encoder.encodeBoolean(false);
+    encoder.encodeNullableBoolean(null);
+    encoder.encodeNullableBoolean(true);
+    encoder.encodeNullableInteger(null);
+    encoder.encodeNullableInteger(42);
+    encoder.encodeString("");
+    encoder.encodeString("ABC");
+    encoder.encodeString("caf\u00e9 \u20ac");
+    encoder.encodeString("\ud834\udd1e \u00ff\u07ff\u0800\uffff");
+    encoder.encodeString("bad \ud834 pair \udd1e\ud834");
+    encoder.encodeNullableString(null);
+    encoder.encodeNullableString("x");
+    encoder.encodeIdentifier(new Identifier("MAL"));
+    encoder.encodeURI(new URI("maltcp://host:1024/Service"));
+    encoder.encodeBlob(new Blob(new byte[]{0, 1, 2, (byte) 0xff}));
+    encoder.encodeNullableBlob(null);
+    encoder.encodeTime(new Time(0));
+    encoder.encodeTime(new Time(1500000000123L));
+    encoder.encodeFineTime(new FineTime(0));
+    encoder.encodeFineTime(new FineTime(1500000000123456789L));
+    encoder.encodeDuration(new Duration(2.5));
+  }
+
+  private static String toHex(byte[] bytes)
+  {
+    StringBuilder buf = new StringBuilder();
+    for (byte b : bytes) {
+      buf.append(String.format("%02x", b & 0xff));
+    }
+    return buf.toString();
+  }
+}
@@ -444,6 +444,64 @@ public abstract class GENDecoder implements MALDecoder
    */
   public abstract byte[] getRemainingEncodedData() throws MALException;
 
+  /**
+   * Returns the position in the source byte array of the next byte to be decoded. Allows the
+   * undecoded remainder of a message to be used in place, without copying it.
+   *
+   * @return the offset, or -1 if the position in the source is not known, for example when
+   * decoding from a stream.
+   */
+  public int getSourceOffset()
+  {
+    return -1;
+  }
+
+  /**
+   * Returns the position in the source byte array of the next byte to be decoded, also for
+   * encodings where the remainder cannot be used on its own.
+   *
+   * @return the position, or -1 if decoding from a stream.
+   */
+  public int getSourcePosition()
+  {
+    return -1;
+  }
+
+  /**
+   * Restricts decoding from the source byte array to the bytes before an end offset, so that a
+   * field running past it fails rather than reading the data that follows.
+   *
+   * @param end The offset in the source array of the first byte that may not be decoded.
+   * @return true if the limit is applied, false if the decoder does not support it.
+   */
+  public boolean limitSource(final int end)
+  {
+    return false;
+  }
+
+  /**
+   * Returns the byte array being decoded, that getSourceOffset and skipBlob refer to.
+   *
+   * @return the source array, or null if decoding from a stream.
+   */
+  public byte[] getSourceArray()
+  {
+    return null;
+  }
+
+  /**
+   * Skips over a Blob in the source byte array and returns the offset of its content, so that the
+   * content can be used in place rather than copied out by decodeBlob.
+   *
+   * @return the offset of the Blob content in the source array, or -1 if the content is not held
+   * in the source array in which case nothing has been read and decodeBlob must be used.
+   * @throws MALException if there is an error.
+   */
+  public int skipBlob() throws MALException
+  {
+    return -1;
+  }
+
   /**
    * Internal class that is used to hold the byte buffer. Derived classes should extend this (and
    * replace it in the constructors) if they encode the fields differently from this encoding.
@@ -20,13 +20,16 @@
  */
 package esa.mo.mal.encoder.gen;
 
+import java.util.Arrays;
 import org.ccsds.moims.mo.mal.MALContextFactory;
 import org.ccsds.moims.mo.mal.MALElementFactory;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALPubSubOperation;
 import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
 import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
 import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Blob;
 import org.ccsds.moims.mo.mal.structures.Element;
 import org.ccsds.moims.mo.mal.structures.EntityKeyList;
 import org.ccsds.moims.mo.mal.structures.IdentifierList;
@@ -57,7 +60,8 @@ public abstract class GENElementInputStream implements MALElementInputStream
   public Object readElement(final Object element, final MALEncodingContext ctx)
       throws IllegalArgumentException, MALException
   {
-    if (element == ctx.getHeader()) {
+    if ((null == ctx) || (element == ctx.getHeader())) {
+      // without a context, for example a wrapped body part, the element is decoded as it is
       return dec.decodeElement((Element) element);
     } else {
       if (ctx.getHeader().getIsErrorMessage()) {
@@ -151,6 +155,49 @@ public abstract class GENElementInputStream implements MALElementInputStream
     return dec.getRemainingEncodedData();
   }
 
+  /**
+   * Returns the position in the source byte array of the next byte to be decoded.
+   *
+   * @return the offset, or -1 if it is not known.
+   */
+  public int getSourceOffset()
+  {
+    return dec.getSourceOffset();
+  }
+
+  /**
+   * Reads a Blob holding an element encoded on its own and returns a stream for decoding that
+   * element. When decoding from an array the new stream decodes the Blob content in place, limited
+   * to the length of the Blob.
+   *
+   * @param factory The stream factory of the encoding used for the wrapped element.
+   * @return the stream holding the wrapped element.
+   * @throws MALException On error.
+   */
+  public MALElementInputStream readWrappedElement(final MALElementStreamFactory factory)
+      throws MALException
+  {
+    final int contentOffset = dec.skipBlob();
+
+    if (0 <= contentOffset) {
+      final byte[] source = dec.getSourceArray();
+      final int contentEnd = dec.getSourcePosition();
+      final MALElementInputStream is = factory.createInputStream(source, contentOffset);
+
+      if ((is instanceof GENElementInputStream)
+          && ((GENElementInputStream) is).dec.limitSource(contentEnd)) {
+        return is;
+      }
+
+      // the stream cannot be limited, so it gets a copy of the content only
+      return factory.createInputStream(Arrays.copyOfRange(source, contentOffset, contentEnd), 0);
+    }
+
+    final Blob content = dec.decodeBlob();
+
+    return factory.createInputStream((null == content) ? new byte[0] : content.getValue(), 0);
+  }
+
   @Override
   public void close() throws MALException
   {
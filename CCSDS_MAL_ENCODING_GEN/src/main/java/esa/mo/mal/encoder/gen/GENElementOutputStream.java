@@ -58,7 +58,8 @@ public abstract class GENElementOutputStream implements MALElementOutputStream
       this.enc = createEncoder(dos);
     }
 
-    if (element == ctx.getHeader()) {
+    if ((null == ctx) || (element == ctx.getHeader())) {
+      // without a context, for example a wrapped body part, the element is encoded as it is
       ((Element) element).encode(enc);
     } else {
       if (null == element) {
@@ -113,6 +114,25 @@ public abstract class GENElementOutputStream implements MALElementOutputStream
     }
   }
 
+  /**
+   * Writes part of a byte array as a Blob, as writing a Blob element without a context does, but
+   * without first copying the bytes into a Blob. Used to wrap separately encoded elements.
+   *
+   * @param value  The array holding the Blob content.
+   * @param offset The offset of the content in the array.
+   * @param length The length of the content.
+   * @throws MALException On error.
+   */
+  public void writeBlob(final byte[] value, final int offset, final int length)
+      throws MALException
+  {
+    if (null == enc) {
+      this.enc = createEncoder(dos);
+    }
+
+    enc.encodeBlob(value, offset, length);
+  }
+
   @Override
   public void flush() throws MALException
   {
@@ -482,6 +482,25 @@ public abstract class GENEncoder implements MALListEncoder
     }
   }
 
+  /**
+   * Encodes part of a byte array as a Blob, without first copying it into a Blob.
+   *
+   * @param value  The array holding the Blob content.
+   * @param offset The offset of the content in the array.
+   * @param length The length of the content.
+   * @throws MALException if there is an error
+   */
+  public void encodeBlob(final byte[] value, final int offset, final int length)
+      throws MALException
+  {
+    try {
+      checkForNull(value);
+      outputStream.addBytes(value, offset, length);
+    } catch (IOException ex) {
+      throw new MALException(ENCODING_EXCEPTION_STR, ex);
+    }
+  }
+
   @Override
   public void encodeNullableBlob(final Blob value) throws MALException
   {
@@ -799,6 +818,22 @@ public abstract class GENEncoder implements MALListEncoder
      */
     public abstract void addBytes(final byte[] value) throws IOException;
 
+    /**
+     * Adds part of a byte array to the output stream, encoded as addBytes encodes a whole array.
+     * Sub-classes should override this if they can encode the part without copying it.
+     *
+     * @param value  the array holding the bytes to encode.
+     * @param offset offset into the array.
+     * @param length number of bytes to encode.
+     * @throws IOException is there is a problem adding the value to the stream.
+     */
+    public void addBytes(final byte[] value, int offset, int length) throws IOException
+    {
+      final byte[] part = new byte[length];
+      System.arraycopy(value, offset, part, 0, length);
+      addBytes(part);
+    }
+
     /**
      * Adds a byte to the output stream.
      *
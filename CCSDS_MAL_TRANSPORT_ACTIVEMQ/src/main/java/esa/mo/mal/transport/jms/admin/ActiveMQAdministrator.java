@@ -25,6 +25,7 @@ import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.jms.ConnectionFactory;
 import javax.jms.Queue;
 import javax.jms.Session;
@@ -48,6 +49,8 @@ public class ActiveMQAdministrator extends JMSAbstractAdministrator
 
   public String amqJmxUrl = "service:jmx:rmi:///jndi/rmi://localhost:1099/jmxrmi";
   private String brokerURL = "localhost";
+  private final Map<String, Queue> queues = new ConcurrentHashMap<String, Queue>();
+  private final Map<String, Topic> topics = new ConcurrentHashMap<String, Topic>();
 
   public ActiveMQAdministrator()
   {
@@ -84,7 +87,14 @@ public class ActiveMQAdministrator extends JMSAbstractAdministrator
   @Override
   public Queue getQueue(Session session, String name) throws Exception
   {
-    return createQueue(session, name);
+    Queue queue = queues.get(name);
+
+    if (null == queue) {
+      queue = createQueue(session, name);
+      queues.put(name, queue);
+    }
+
+    return queue;
   }
 
   @Override
@@ -105,12 +115,21 @@ public class ActiveMQAdministrator extends JMSAbstractAdministrator
   @Override
   public Topic getTopic(Session session, String name) throws Exception
   {
-    return createTopic(name);
+    Topic topic = topics.get(name);
+
+    if (null == topic) {
+      topic = createTopic(name);
+      topics.put(name, topic);
+    }
+
+    return topic;
   }
 
   @Override
   public void deleteQueue(Session session, Queue queue) throws Exception
   {
+    queues.remove(queue.getQueueName());
+
     MBeanServerConnection conn = connect();
 
     String brokerNameQuery = "org.apache.activemq:type=Broker,brokerName=localhost";
@@ -129,6 +148,8 @@ public class ActiveMQAdministrator extends JMSAbstractAdministrator
   @Override
   public void deleteTopic(Session session, Topic topic) throws Exception
   {
+    topics.remove(topic.getTopicName());
+
     MBeanServerConnection conn = connect();
 
     String brokerNameQuery = "org.apache.activemq:type=Broker,brokerName=localhost";
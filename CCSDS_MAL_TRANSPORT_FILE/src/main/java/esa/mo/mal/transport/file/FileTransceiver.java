@@ -20,7 +20,7 @@
  */
 package esa.mo.mal.transport.file;
 
-import esa.mo.mal.transport.gen.sending.GENMessageSender;
+import esa.mo.mal.transport.gen.sending.GENBatchMessageSender;
 import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -35,13 +35,16 @@ import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * File transmitter and receiver. Used by the GEN message poller class.
  */
 public class FileTransceiver implements
-    esa.mo.mal.transport.gen.util.GENMessagePoller.GENMessageReceiver<InputStream>, GENMessageSender
+    esa.mo.mal.transport.gen.util.GENMessagePoller.GENMessageReceiver<InputStream>,
+    GENBatchMessageSender<byte[]>
 {
 
   private final Path incomingDirectory;
@@ -76,7 +79,38 @@ public class FileTransceiver implements
   }
 
   @Override
-  public void sendEncodedMessage(GENOutgoingMessageHolder packetData) throws IOException
+  public void sendEncodedMessage(GENOutgoingMessageHolder<byte[]> packetData) throws IOException
+  {
+    String tmpname = writeTemporaryFile(packetData);
+
+    // rename file to correct file name
+    renameTemporaryFile(tmpname);
+  }
+
+  /**
+   * Each message remains a separate file as the reader expects one message per file. All files are
+   * written first and then renamed in order, so the batch is published in one pass over the
+   * outgoing directory.
+   *
+   * @param packets The encoded messages to send
+   * @throws IOException
+   */
+  @Override
+  public void sendEncodedMessages(List<GENOutgoingMessageHolder<byte[]>> packets)
+      throws IOException
+  {
+    List<String> tmpnames = new ArrayList<String>(packets.size());
+
+    for (GENOutgoingMessageHolder<byte[]> packetData : packets) {
+      tmpnames.add(writeTemporaryFile(packetData));
+    }
+
+    for (String tmpname : tmpnames) {
+      renameTemporaryFile(tmpname);
+    }
+  }
+
+  private String writeTemporaryFile(GENOutgoingMessageHolder<byte[]> packetData) throws IOException
   {
     // create tmp file name
     String tmpname = FileTransport.FILE_PREFIX
@@ -96,8 +130,13 @@ public class FileTransceiver implements
       fos.close();
     }
 
-    // rename file to correct file name
-    tmpFile.renameTo(new File(outgoingDirectory.toFile(), tmpname + ".msg"));
+    return tmpname;
+  }
+
+  private void renameTemporaryFile(String tmpname)
+  {
+    new File(outgoingDirectory.toFile(), tmpname + ".tmp").renameTo(
+        new File(outgoingDirectory.toFile(), tmpname + ".msg"));
   }
 
   @Override
@@ -23,7 +23,10 @@ package esa.mo.mal.transport.gen;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import esa.mo.mal.transport.gen.sending.GENSendListener;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALHelper;
 import org.ccsds.moims.mo.mal.MALInteractionException;
@@ -45,6 +48,16 @@ public class GENEndpoint implements MALEndpoint
   protected final boolean wrapBodyParts;
   private boolean active = false;
   private MALMessageListener messageListener = null;
+  private final GENSendListener transmitErrorReporter = new GENSendListener()
+  {
+    @Override
+    public void sendCompleted(GENOutgoingMessageHolder message, Boolean result)
+    {
+      if (!Boolean.TRUE.equals(result)) {
+        reportTransmitError(message.getOriginalMessage());
+      }
+    }
+  };
 
   /**
    * Constructor.
@@ -288,7 +301,24 @@ public class GENEndpoint implements MALEndpoint
   @Override
   public void sendMessage(final MALMessage msg) throws MALTransmitErrorException
   {
-    internalSendMessage(null, true, (GENMessage) msg);
+    if (transport.isAsyncSendMode()) {
+      internalSendMessageAsync(null, true, (GENMessage) msg).addListener(transmitErrorReporter);
+    } else {
+      internalSendMessage(null, true, (GENMessage) msg);
+    }
+  }
+
+  /**
+   * Sends a message without waiting for it to be sent. Failures that are detected before the
+   * message is queued are thrown, later failures are reported through the returned Future.
+   *
+   * @param msg the message to send.
+   * @return A Future that yields TRUE if the message was sent and FALSE otherwise.
+   * @throws MALTransmitErrorException If the message could not be queued for sending.
+   */
+  public Future<Boolean> sendMessageAsync(final MALMessage msg) throws MALTransmitErrorException
+  {
+    return internalSendMessageAsync(null, true, (GENMessage) msg);
   }
 
   @Override
@@ -394,6 +424,40 @@ public class GENEndpoint implements MALEndpoint
     transport.sendMessage(multiSendHandle, lastForHandle, msg);
   }
 
+  /**
+   * Used to send a message from this end point without waiting for it to be sent.
+   *
+   * @param multiSendHandle Multi send context handle object that is passed to the transport.
+   * @param lastForHandle   Is this the last message in a multi message send?
+   * @param msg             the message to send.
+   * @return The holder of the outgoing message, completed once it has been sent or has failed.
+   * @throws MALTransmitErrorException On a transmit error detected before the message is queued.
+   */
+  protected GENOutgoingMessageHolder internalSendMessageAsync(final Object multiSendHandle,
+      final boolean lastForHandle,
+      final GENMessage msg) throws MALTransmitErrorException
+  {
+    return transport.sendMessageAsync(multiSendHandle, lastForHandle, msg);
+  }
+
+  /**
+   * Informs the message listener that a message sent asynchronously could not be delivered.
+   *
+   * @param msg The message that failed.
+   */
+  protected void reportTransmitError(final MALMessage msg)
+  {
+    GENTransport.LOGGER.log(Level.WARNING, "GENEndpoint ({0}) could not deliver message to {1}",
+        new Object[]{
+          localName, msg.getHeader().getURITo()
+        });
+
+    if (null != messageListener) {
+      messageListener.onTransmitError(this, msg.getHeader(),
+          new MALStandardError(MALHelper.DELIVERY_FAILED_ERROR_NUMBER, null), null);
+    }
+  }
+
   /**
    * Create a send context handle for a multi message send.
    *
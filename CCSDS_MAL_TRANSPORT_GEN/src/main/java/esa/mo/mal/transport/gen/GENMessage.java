@@ -20,6 +20,7 @@
  */
 package esa.mo.mal.transport.gen;
 
+import esa.mo.mal.encoder.gen.GENElementInputStream;
 import esa.mo.mal.transport.gen.body.GENDeregisterBody;
 import esa.mo.mal.transport.gen.body.GENErrorBody;
 import esa.mo.mal.transport.gen.body.GENMessageBody;
@@ -27,18 +28,14 @@ import esa.mo.mal.transport.gen.body.GENNotifyBody;
 import esa.mo.mal.transport.gen.body.GENPublishBody;
 import esa.mo.mal.transport.gen.body.GENPublishRegisterBody;
 import esa.mo.mal.transport.gen.body.GENRegisterBody;
+import esa.mo.mal.transport.gen.util.GENOperationIndex;
 import java.io.ByteArrayInputStream;
 import java.io.OutputStream;
 import java.util.Map;
-import org.ccsds.moims.mo.mal.MALArea;
-import org.ccsds.moims.mo.mal.MALContextFactory;
 import org.ccsds.moims.mo.mal.MALException;
-import org.ccsds.moims.mo.mal.MALHelper;
 import org.ccsds.moims.mo.mal.MALInteractionException;
 import org.ccsds.moims.mo.mal.MALOperation;
 import org.ccsds.moims.mo.mal.MALPubSubOperation;
-import org.ccsds.moims.mo.mal.MALService;
-import org.ccsds.moims.mo.mal.MALStandardError;
 import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
 import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
 import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
@@ -81,24 +78,7 @@ public class GENMessage implements MALMessage, java.io.Serializable
   {
     this.header = header;
     if (null == operation) {
-      MALArea area = MALContextFactory.lookupArea(this.header.getServiceArea(),
-          this.header.getAreaVersion());
-      if (null == area) {
-        throw new MALInteractionException(new MALStandardError(
-            MALHelper.UNSUPPORTED_AREA_ERROR_NUMBER, null));
-      }
-
-      MALService service = area.getServiceByNumber(this.header.getService());
-      if (null == service) {
-        throw new MALInteractionException(new MALStandardError(
-            MALHelper.UNSUPPORTED_OPERATION_ERROR_NUMBER, null));
-      }
-
-      this.operation = service.getOperationByNumber(this.header.getOperation());
-      if (null == this.operation) {
-        throw new MALInteractionException(new MALStandardError(
-            MALHelper.UNSUPPORTED_OPERATION_ERROR_NUMBER, null));
-      }
+      this.operation = GENOperationIndex.require(header).getOperation();
     } else {
       this.operation = operation;
     }
@@ -128,8 +108,8 @@ public class GENMessage implements MALMessage, java.io.Serializable
     this.qosProperties = qosProperties;
     this.wrapBodyParts = wrapBodyParts;
 
-    final ByteArrayInputStream bais = new ByteArrayInputStream(packet);
-    final MALElementInputStream enc = encFactory.createInputStream(bais);
+    // decode from the array itself so that wrapped body parts can be decoded in place
+    final MALElementInputStream enc = encFactory.createInputStream(packet, 0);
 
     if (readHeader) {
       MALEncodingContext ctx = new MALEncodingContext(header, null, 0, qosProperties, qosProperties);
@@ -138,7 +118,34 @@ public class GENMessage implements MALMessage, java.io.Serializable
       this.header = header;
     }
 
-    this.body = createMessageBody(encFactory, bais, enc);
+    this.body = createMessageBody(encFactory, null, enc);
+  }
+
+  /**
+   * Constructor for a message whose header has already been decoded from the packet, see
+   * decodeHeader. The body is not copied, it is decoded from the packet when it is first accessed
+   * and is forwarded unchanged if the message is sent on with the same body encoding.
+   *
+   * @param wrapBodyParts True if the encoded body parts should be wrapped in BLOBs.
+   * @param header        The decoded message header.
+   * @param qosProperties The QoS properties for this message.
+   * @param packet        The message in encoded form.
+   * @param bodyOffset    The offset of the encoded body in the packet.
+   * @param encFactory    The stream factory to use for decoding the body.
+   * @throws MALException On decoding error.
+   */
+  public GENMessage(final boolean wrapBodyParts,
+      final GENMessageHeader header,
+      final Map qosProperties,
+      final byte[] packet,
+      final int bodyOffset,
+      final MALElementStreamFactory encFactory) throws MALException
+  {
+    this.qosProperties = qosProperties;
+    this.wrapBodyParts = wrapBodyParts;
+    this.header = header;
+    this.body = createMessageBody(encFactory, null,
+        encFactory.createInputStream(packet, bodyOffset));
   }
 
   /**
@@ -208,6 +215,45 @@ public class GENMessage implements MALMessage, java.io.Serializable
     return wrapBodyParts;
   }
 
+  /**
+   * Decodes only the header of an encoded message, in place into the supplied header instance.
+   *
+   * The encoded body is returned as a Blob over the packet, starting at the body, when the header
+   * decoder reports where the body starts. Decoders that cannot, such as the split binary and
+   * string ones, return -1 from getSourceOffset, the body is then a copy of the undecoded remainder
+   * of the packet. In both cases the body is decoded from getValue() starting at getOffset().
+   *
+   * @param header        The header instance to decode into.
+   * @param qosProperties The QoS properties for the message.
+   * @param packet        The message in encoded form.
+   * @param hdrEncFactory The stream factory to use for decoding the header.
+   * @return the encoded body.
+   * @throws MALException On decoding error, or if the header decoder cannot return the remainder
+   * of the packet.
+   */
+  public static Blob decodeHeader(final GENMessageHeader header,
+      final Map qosProperties,
+      final byte[] packet,
+      final MALElementStreamFactory hdrEncFactory) throws MALException
+  {
+    final MALElementInputStream enc = hdrEncFactory.createInputStream(packet, 0);
+    final MALEncodingContext ctx
+        = new MALEncodingContext(header, null, 0, qosProperties, qosProperties);
+    enc.readElement(header, ctx);
+
+    if (!(enc instanceof GENElementInputStream)) {
+      throw new MALException("Header decoder cannot return the encoded message body");
+    }
+
+    final int bodyOffset = ((GENElementInputStream) enc).getSourceOffset();
+
+    if (0 <= bodyOffset) {
+      return new Blob(packet, bodyOffset, packet.length - bodyOffset);
+    }
+
+    return new Blob(((GENElementInputStream) enc).getRemainingEncodedData());
+  }
+
   /**
    * Encodes the contents of the message into the provided stream
    *
@@ -233,7 +279,7 @@ public class GENMessage implements MALMessage, java.io.Serializable
 
       // now encode the body
       body.encodeMessageBody(streamFactory, enc, lowLevelOutputStream, header.getInteractionStage(),
-          ctx);
+          ctx, wrapBodyParts);
     } catch (Exception ex) {
       throw new MALException("Internal error encoding message", ex);
     }
@@ -25,13 +25,15 @@ import esa.mo.mal.transport.gen.receivers.GENIncomingMessageHolder;
 import esa.mo.mal.transport.gen.sending.GENConcurrentMessageSender;
 import esa.mo.mal.transport.gen.sending.GENMessageSender;
 import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageQueue;
 import esa.mo.mal.transport.gen.util.GENHelper;
-import java.io.ByteArrayOutputStream;
+import esa.mo.mal.transport.gen.util.GENPooledOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -81,6 +83,12 @@ public abstract class GENTransport<I, O> implements MALTransport
    */
   public static final String IDLE_INPUT_PROCESSORS_PROPERTY
       = "org.ccsds.moims.mo.mal.transport.gen.idleinputprocessors";
+  /**
+   * System property to control the number of reception processors, i.e. the threads that decode
+   * incoming raw data before it is passed to the input processors.
+   */
+  public static final String RECEPTION_PROCESSORS_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.receptionprocessors";
   /**
    * System property to control the number of connections per client.
    */
@@ -91,6 +99,57 @@ public abstract class GENTransport<I, O> implements MALTransport
    */
   public static final String DELIVERY_TIMEOUT_PROPERTY
       = "org.ccsds.moims.mo.mal.transport.gen.deliverytimeout";
+  /**
+   * System property to control how endpoints send single messages, either "sync" (the default)
+   * where the caller waits for the message to be sent, or "async" where the caller returns as soon
+   * as the message is queued and send failures are reported to the endpoint listener.
+   */
+  public static final String SEND_MODE_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.sendmode";
+  /**
+   * System property to control the maximum number of messages in flight per destination, zero (the
+   * default) means unbounded.
+   */
+  public static final String SEND_WINDOW_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.sendwindow";
+  /**
+   * System property to control the maximum number of messages coalesced into one write by the
+   * sending threads, one (the default) disables batching. Only used by transceivers that implement
+   * GENBatchMessageSender.
+   */
+  public static final String BATCH_MESSAGES_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.batchmessages";
+  /**
+   * System property to control the number of encoded bytes after which a batch is closed.
+   */
+  public static final String BATCH_BYTES_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.batchbytes";
+  /**
+   * System property to control the maximum time in microseconds a sending thread waits for more
+   * messages to fill a batch, zero (the default) only takes messages that are already queued.
+   */
+  public static final String BATCH_LINGER_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.batchlinger";
+  /**
+   * System property to control the maximum number of messages queued per destination, zero (the
+   * default) means unbounded.
+   */
+  public static final String QUEUE_CAPACITY_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.queuecapacity";
+  /**
+   * System property to control the maximum number of encoded bytes queued per destination, zero
+   * (the default) means unbounded.
+   */
+  public static final String QUEUE_BYTES_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.queuebytes";
+  /**
+   * System property to control what happens to a message that does not fit in a full destination
+   * queue: "block" (the default) waits up to the delivery timeout, "fail" fails the message at once
+   * and "dropoldest" drops the oldest queued BESTEFFORT messages to make space for a BESTEFFORT
+   * message.
+   */
+  public static final String QUEUE_OVERFLOW_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.queueoverflow";
   /**
    * Charset used for converting the encoded message into a string for debugging.
    */
@@ -104,6 +163,11 @@ public abstract class GENTransport<I, O> implements MALTransport
    * Used to create random local names for endpoints.
    */
   protected static final Random RANDOM_NAME = new Random();
+  /**
+   * Key used in the transaction map for messages that have no transaction id. It is not a Long so
+   * that it cannot be equal to any transaction id.
+   */
+  private static final Object NO_TRANSACTION_KEY = new Object();
   /**
    * Reference to our factory.
    */
@@ -146,6 +210,38 @@ public abstract class GENTransport<I, O> implements MALTransport
    * The timeout in seconds to wait for confirmation of delivery.
    */
   protected final int deliveryTimeout;
+  /**
+   * True if endpoints should not wait for single messages to be sent.
+   */
+  protected final boolean asyncSendMode;
+  /**
+   * The maximum number of messages in flight per destination, zero or less for unbounded.
+   */
+  protected final int sendWindow;
+  /**
+   * The maximum number of messages coalesced into one write, one or less disables batching.
+   */
+  protected final int batchMessages;
+  /**
+   * The number of encoded bytes after which a batch is closed.
+   */
+  protected final int batchBytes;
+  /**
+   * The maximum time in microseconds to wait for more messages to fill a batch.
+   */
+  protected final int batchLinger;
+  /**
+   * The maximum number of messages queued per destination, zero or less for unbounded.
+   */
+  protected final int queueCapacity;
+  /**
+   * The maximum number of encoded bytes queued per destination, zero or less for unbounded.
+   */
+  protected final long queueBytes;
+  /**
+   * What to do with a message that does not fit in a full destination queue.
+   */
+  protected final GENOutgoingMessageQueue.OverflowPolicy queueOverflowPolicy;
   /**
    * True if want to log the packet data
    */
@@ -172,20 +268,22 @@ public abstract class GENTransport<I, O> implements MALTransport
    */
   private final int numConnections;
   /**
-   * The thread that receives incoming message from the underlying transport. All incoming raw data
-   * packets are processed by this thread.
+   * The threads that receive incoming messages from the underlying transport. Each reception handler
+   * (connection) is always assigned to the same thread so that the messages of a connection are
+   * decoded in reception order, while different connections are decoded in parallel.
    */
-  private final ExecutorService asyncInputReceptionProcessor;
+  private final ExecutorService[] asyncInputReceptionProcessors;
   /**
    * The thread pool of input message processors. All incoming messages are processed by this thread
-   * pool after they have been decoded by the asyncInputReceptionProcessor thread.
+   * pool after they have been decoded by the asyncInputReceptionProcessors threads.
    */
   private final ExecutorService asyncInputDataProcessors;
   /**
-   * The map of message queues, segregated by transaction id.
+   * The map of active message queues, segregated by transaction id. A queue removes itself from
+   * this map once it has processed all of its messages.
    */
-  private final Map<Long, GENIncomingMessageProcessor> transactionQueues
-      = new HashMap<Long, GENIncomingMessageProcessor>();
+  private final ConcurrentMap<Object, GENIncomingMessageProcessor> transactionQueues
+      = new ConcurrentHashMap<Object, GENIncomingMessageProcessor>();
   /**
    * Map of outgoing channels. This associates a URI to a transport resource that is able to send
    * messages to this URI.
@@ -256,6 +354,15 @@ public abstract class GENTransport<I, O> implements MALTransport
     boolean lInProcessSupport = true;
     int lNumConnections = 1;
     int lDeliveryTime = 10;
+    boolean lAsyncSendMode = false;
+    int lSendWindow = 0;
+    int lBatchMessages = 1;
+    int lBatchBytes = 65536;
+    int lBatchLinger = 0;
+    int lQueueCapacity = 0;
+    long lQueueBytes = 0;
+    GENOutgoingMessageQueue.OverflowPolicy lQueueOverflowPolicy
+        = GENOutgoingMessageQueue.OverflowPolicy.BLOCK;
 
     // decode configuration
     if (properties != null) {
@@ -279,6 +386,43 @@ public abstract class GENTransport<I, O> implements MALTransport
       if (properties.containsKey(DELIVERY_TIMEOUT_PROPERTY)) {
         lDeliveryTime = Integer.parseInt((String) properties.get(DELIVERY_TIMEOUT_PROPERTY));
       }
+
+      if (properties.containsKey(SEND_MODE_PROPERTY)) {
+        lAsyncSendMode = "async".equalsIgnoreCase((String) properties.get(SEND_MODE_PROPERTY));
+      }
+
+      if (properties.containsKey(SEND_WINDOW_PROPERTY)) {
+        lSendWindow = Integer.parseInt((String) properties.get(SEND_WINDOW_PROPERTY));
+      }
+
+      if (properties.containsKey(BATCH_MESSAGES_PROPERTY)) {
+        lBatchMessages = Integer.parseInt((String) properties.get(BATCH_MESSAGES_PROPERTY));
+      }
+
+      if (properties.containsKey(BATCH_BYTES_PROPERTY)) {
+        lBatchBytes = Integer.parseInt((String) properties.get(BATCH_BYTES_PROPERTY));
+      }
+
+      if (properties.containsKey(BATCH_LINGER_PROPERTY)) {
+        lBatchLinger = Integer.parseInt((String) properties.get(BATCH_LINGER_PROPERTY));
+      }
+
+      if (properties.containsKey(QUEUE_CAPACITY_PROPERTY)) {
+        lQueueCapacity = Integer.parseInt((String) properties.get(QUEUE_CAPACITY_PROPERTY));
+      }
+
+      if (properties.containsKey(QUEUE_BYTES_PROPERTY)) {
+        lQueueBytes = Long.parseLong((String) properties.get(QUEUE_BYTES_PROPERTY));
+      }
+
+      if (properties.containsKey(QUEUE_OVERFLOW_PROPERTY)) {
+        try {
+          lQueueOverflowPolicy = GENOutgoingMessageQueue.OverflowPolicy.fromProperty(
+              (String) properties.get(QUEUE_OVERFLOW_PROPERTY));
+        } catch (IllegalArgumentException ex) {
+          throw new MALException(ex.getMessage(), ex);
+        }
+      }
     }
 
     this.logFullDebug = lLogFullDebug;
@@ -286,8 +430,16 @@ public abstract class GENTransport<I, O> implements MALTransport
     this.inProcessSupport = lInProcessSupport;
     this.numConnections = lNumConnections;
     this.deliveryTimeout = lDeliveryTime;
-
-    this.asyncInputReceptionProcessor = Executors.newSingleThreadExecutor();
+    this.asyncSendMode = lAsyncSendMode;
+    this.sendWindow = lSendWindow;
+    this.batchMessages = lBatchMessages;
+    this.batchBytes = lBatchBytes;
+    this.batchLinger = lBatchLinger;
+    this.queueCapacity = lQueueCapacity;
+    this.queueBytes = lQueueBytes;
+    this.queueOverflowPolicy = lQueueOverflowPolicy;
+
+    this.asyncInputReceptionProcessors = createReceptionProcessors(properties);
     this.asyncInputDataProcessors = createThreadPoolExecutor(properties);
 
     LOGGER.log(Level.FINE, "GEN Wrapping body parts set to  : {0}", this.wrapBodyParts);
@@ -342,6 +494,15 @@ public abstract class GENTransport<I, O> implements MALTransport
     boolean lInProcessSupport = true;
     int lNumConnections = 1;
     int lDeliveryTime = 10;
+    boolean lAsyncSendMode = false;
+    int lSendWindow = 0;
+    int lBatchMessages = 1;
+    int lBatchBytes = 65536;
+    int lBatchLinger = 0;
+    int lQueueCapacity = 0;
+    long lQueueBytes = 0;
+    GENOutgoingMessageQueue.OverflowPolicy lQueueOverflowPolicy
+        = GENOutgoingMessageQueue.OverflowPolicy.BLOCK;
 
     // decode configuration
     if (properties != null) {
@@ -365,6 +526,43 @@ public abstract class GENTransport<I, O> implements MALTransport
       if (properties.containsKey(DELIVERY_TIMEOUT_PROPERTY)) {
         lDeliveryTime = Integer.parseInt((String) properties.get(DELIVERY_TIMEOUT_PROPERTY));
       }
+
+      if (properties.containsKey(SEND_MODE_PROPERTY)) {
+        lAsyncSendMode = "async".equalsIgnoreCase((String) properties.get(SEND_MODE_PROPERTY));
+      }
+
+      if (properties.containsKey(SEND_WINDOW_PROPERTY)) {
+        lSendWindow = Integer.parseInt((String) properties.get(SEND_WINDOW_PROPERTY));
+      }
+
+      if (properties.containsKey(BATCH_MESSAGES_PROPERTY)) {
+        lBatchMessages = Integer.parseInt((String) properties.get(BATCH_MESSAGES_PROPERTY));
+      }
+
+      if (properties.containsKey(BATCH_BYTES_PROPERTY)) {
+        lBatchBytes = Integer.parseInt((String) properties.get(BATCH_BYTES_PROPERTY));
+      }
+
+      if (properties.containsKey(BATCH_LINGER_PROPERTY)) {
+        lBatchLinger = Integer.parseInt((String) properties.get(BATCH_LINGER_PROPERTY));
+      }
+
+      if (properties.containsKey(QUEUE_CAPACITY_PROPERTY)) {
+        lQueueCapacity = Integer.parseInt((String) properties.get(QUEUE_CAPACITY_PROPERTY));
+      }
+
+      if (properties.containsKey(QUEUE_BYTES_PROPERTY)) {
+        lQueueBytes = Long.parseLong((String) properties.get(QUEUE_BYTES_PROPERTY));
+      }
+
+      if (properties.containsKey(QUEUE_OVERFLOW_PROPERTY)) {
+        try {
+          lQueueOverflowPolicy = GENOutgoingMessageQueue.OverflowPolicy.fromProperty(
+              (String) properties.get(QUEUE_OVERFLOW_PROPERTY));
+        } catch (IllegalArgumentException ex) {
+          throw new MALException(ex.getMessage(), ex);
+        }
+      }
     }
 
     this.logFullDebug = lLogFullDebug;
@@ -372,8 +570,16 @@ public abstract class GENTransport<I, O> implements MALTransport
     this.inProcessSupport = lInProcessSupport;
     this.numConnections = lNumConnections;
     this.deliveryTimeout = lDeliveryTime;
-
-    asyncInputReceptionProcessor = Executors.newSingleThreadExecutor();
+    this.asyncSendMode = lAsyncSendMode;
+    this.sendWindow = lSendWindow;
+    this.batchMessages = lBatchMessages;
+    this.batchBytes = lBatchBytes;
+    this.batchLinger = lBatchLinger;
+    this.queueCapacity = lQueueCapacity;
+    this.queueBytes = lQueueBytes;
+    this.queueOverflowPolicy = lQueueOverflowPolicy;
+
+    this.asyncInputReceptionProcessors = createReceptionProcessors(properties);
     this.asyncInputDataProcessors = createThreadPoolExecutor(properties);
 
     LOGGER.log(Level.FINE, "GEN Wrapping body parts set to  : {0}", this.wrapBodyParts);
@@ -452,6 +658,10 @@ public abstract class GENTransport<I, O> implements MALTransport
    * On reception of an IO stream this method should be called. This is the main reception entry
    * point into the generic transport for stream based transports.
    *
+   * Messages from the same reception handler are always decoded by the same reception processor so
+   * that their order is preserved. Messages without a reception handler are all decoded by the first
+   * reception processor.
+   *
    * @param receptionHandler The reception handler to pass them to.
    * @param decoder          The class responsible for decoding the message from the incoming
    *                         connection
@@ -459,12 +669,20 @@ public abstract class GENTransport<I, O> implements MALTransport
   public void receive(final GENReceptionHandler receptionHandler,
       final GENIncomingMessageDecoder decoder)
   {
-    asyncInputReceptionProcessor.submit(new GENIncomingMessageReceiver(this, receptionHandler,
-        decoder));
+    int index = 0;
+
+    if ((null != receptionHandler) && (1 < asyncInputReceptionProcessors.length)) {
+      index = (System.identityHashCode(receptionHandler) & Integer.MAX_VALUE)
+          % asyncInputReceptionProcessors.length;
+    }
+
+    asyncInputReceptionProcessors[index].submit(new GENIncomingMessageReceiver(this,
+        receptionHandler, decoder));
   }
 
   /**
-   * The main exit point for messages from this transport.
+   * The main exit point for messages from this transport. Blocks until the message has been sent or
+   * the delivery timeout expires.
    *
    * @param multiSendHandle A context handle for multi send
    * @param lastForHandle   True if that is the last message in a multi send for the handle
@@ -474,6 +692,40 @@ public abstract class GENTransport<I, O> implements MALTransport
   public void sendMessage(final Object multiSendHandle,
       final boolean lastForHandle,
       final GENMessage msg) throws MALTransmitErrorException
+  {
+    GENOutgoingMessageHolder outgoingPacket = sendMessageAsync(multiSendHandle, lastForHandle, msg);
+
+    try {
+      if (!Boolean.TRUE.equals(outgoingPacket.getResult())) {
+        // data was not sent succesfully, throw an exception for the
+        // higher MAL layers
+        throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
+            MALHelper.DELIVERY_FAILED_ERROR_NUMBER, null), null);
+      }
+
+      LOGGER.log(Level.FINE, "GEN finished Sending data to {0}",
+          outgoingPacket.getDestinationRootURI());
+    } catch (InterruptedException e) {
+      LOGGER.log(Level.SEVERE, "Interrupted while waiting for data reply", e);
+      throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
+          MALHelper.INTERNAL_ERROR_NUMBER, null), null);
+    }
+  }
+
+  /**
+   * Non-blocking exit point for messages from this transport. The message is encoded and queued for
+   * sending, the returned holder completes once the message has been sent or has failed. Messages
+   * routed in-process are returned already completed.
+   *
+   * @param multiSendHandle A context handle for multi send
+   * @param lastForHandle   True if that is the last message in a multi send for the handle
+   * @param msg             The message to send.
+   * @return The holder of the outgoing message, used to obtain the send result.
+   * @throws MALTransmitErrorException If the message could not be encoded or queued.
+   */
+  public GENOutgoingMessageHolder sendMessageAsync(final Object multiSendHandle,
+      final boolean lastForHandle,
+      final GENMessage msg) throws MALTransmitErrorException
   {
     if ((null == msg.getHeader().getURITo()) || (null == msg.getHeader().getURITo().getValue())) {
       throw new MALTransmitErrorException(msg.getHeader(),
@@ -486,53 +738,84 @@ public abstract class GENTransport<I, O> implements MALTransport
     String remoteRootURI = getRootURI(destinationURI);
 
     // first check if its actually a message to ourselves
-    String endpointUriPart = getRoutingPart(destinationURI);
-
-    if (inProcessSupport
-        && (uriBase.startsWith(remoteRootURI) || remoteRootURI.startsWith(uriBase))
-        && endpointRoutingMap.containsKey(endpointUriPart)) {
+    if (isRoutedInProcess(destinationURI)) {
       LOGGER.log(Level.FINE, "GEN routing msg internally to {0}", new Object[]{
-        endpointUriPart
+        getRoutingPart(destinationURI)
       });
 
       // if local then just send internally
       receiveIncomingMessage(new GENIncomingMessageHolder(msg.getHeader().getTransactionId(), msg,
           new PacketToString(null)));
-    } else {
-      try {
-        LOGGER.log(Level.FINE, "GEN sending msg. Target root URI: {0} full URI:{1}", new Object[]{
-          remoteRootURI, destinationURI
-        });
 
-        // get outgoing channel
-        GENConcurrentMessageSender dataSender = manageCommunicationChannel(msg, false, null);
+      GENOutgoingMessageHolder outgoingPacket = new GENOutgoingMessageHolder(deliveryTimeout,
+          remoteRootURI, destinationURI, multiSendHandle, lastForHandle, msg, null);
+      outgoingPacket.setResult(Boolean.TRUE);
 
-        GENOutgoingMessageHolder outgoingPacket = internalEncodeMessage(remoteRootURI,
-            destinationURI, multiSendHandle, lastForHandle, dataSender.getTargetURI(), msg);
+      return outgoingPacket;
+    }
 
-        dataSender.sendMessage(outgoingPacket);
+    try {
+      LOGGER.log(Level.FINE, "GEN sending msg. Target root URI: {0} full URI:{1}", new Object[]{
+        remoteRootURI, destinationURI
+      });
 
-        if (!Boolean.TRUE.equals(outgoingPacket.getResult())) {
-          // data was not sent succesfully, throw an exception for the
-          // higher MAL layers
-          throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
-              MALHelper.DELIVERY_FAILED_ERROR_NUMBER, null), null);
-        }
+      // get outgoing channel
+      GENConcurrentMessageSender dataSender = manageCommunicationChannel(msg, false, null);
 
-        LOGGER.log(Level.FINE, "GEN finished Sending data to {0}", remoteRootURI);
-      } catch (MALTransmitErrorException e) {
-        // this stops any true MAL exceptoins getting caught by the generic catch all below
-        throw e;
-      } catch (InterruptedException e) {
-        LOGGER.log(Level.SEVERE, "Interrupted while waiting for data reply", e);
-        throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
-            MALHelper.INTERNAL_ERROR_NUMBER, null), null);
-      } catch (Exception t) {
-        LOGGER.log(Level.SEVERE, "GEN could not send message!", t);
-        throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
-            MALHelper.INTERNAL_ERROR_NUMBER, null), null);
-      }
+      GENOutgoingMessageHolder outgoingPacket = internalEncodeMessage(remoteRootURI,
+          destinationURI, multiSendHandle, lastForHandle, dataSender.getTargetURI(), msg);
+
+      dataSender.sendMessage(outgoingPacket);
+
+      return outgoingPacket;
+    } catch (MALTransmitErrorException e) {
+      // this stops any true MAL exceptoins getting caught by the generic catch all below
+      throw e;
+    } catch (Exception t) {
+      LOGGER.log(Level.SEVERE, "GEN could not send message!", t);
+      throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
+          MALHelper.INTERNAL_ERROR_NUMBER, null), null);
+    }
+  }
+
+  /**
+   * Returns true if messages to the given URI are passed directly to an endpoint of this transport
+   * instead of being encoded and sent.
+   *
+   * @param destinationURI The full URI of the destination.
+   * @return True if the destination is an endpoint of this transport.
+   */
+  public boolean isRoutedInProcess(final String destinationURI)
+  {
+    if (!inProcessSupport) {
+      return false;
     }
+
+    final String remoteRootURI = getRootURI(destinationURI);
+
+    return (uriBase.startsWith(remoteRootURI) || remoteRootURI.startsWith(uriBase))
+        && endpointRoutingMap.containsKey(getRoutingPart(destinationURI));
+  }
+
+  /**
+   * Returns a snapshot of the outgoing data channels, keyed by remote root URI. Used to monitor the
+   * outgoing queue depth and high water marks of each destination.
+   *
+   * @return The current outgoing data channels.
+   */
+  public synchronized Map<String, GENConcurrentMessageSender> getOutgoingDataChannels()
+  {
+    return new HashMap<String, GENConcurrentMessageSender>(outgoingDataChannels);
+  }
+
+  /**
+   * Returns true if endpoints of this transport should not wait for single messages to be sent.
+   *
+   * @return True if in asynchronous send mode.
+   */
+  public boolean isAsyncSendMode()
+  {
+    return asyncSendMode;
   }
 
   /**
@@ -613,7 +896,9 @@ public abstract class GENTransport<I, O> implements MALTransport
     endpointMalMap.clear();
     endpointRoutingMap.clear();
 
-    asyncInputReceptionProcessor.shutdown();
+    for (ExecutorService asyncInputReceptionProcessor : asyncInputReceptionProcessors) {
+      asyncInputReceptionProcessor.shutdown();
+    }
     asyncInputDataProcessors.shutdown();
 
     LOGGER.fine("Closing outgoing channels");
@@ -641,30 +926,25 @@ public abstract class GENTransport<I, O> implements MALTransport
       malMsg.malMsg.getHeader().getTransactionId(), malMsg.smsg
     });
 
-    synchronized (transactionQueues) {
-      GENIncomingMessageProcessor proc = transactionQueues.get(malMsg.transactionId);
+    final Object transactionKey = (null == malMsg.transactionId) ? NO_TRANSACTION_KEY
+        : malMsg.transactionId;
 
-      if (null == proc) {
-        proc = new GENIncomingMessageProcessor(malMsg);
-        transactionQueues.put(malMsg.transactionId, proc);
-        asyncInputDataProcessors.submit(proc);
-      } else if (proc.addMessage(malMsg)) {
-        // need to resubmit this to the processing threads
-        asyncInputDataProcessors.submit(proc);
-      }
+    while (true) {
+      final GENIncomingMessageProcessor proc = transactionQueues.get(transactionKey);
 
-      Set<Long> transactionsToRemove = new HashSet<Long>();
-      for (Map.Entry<Long, GENIncomingMessageProcessor> entrySet : transactionQueues.entrySet()) {
-        Long key = entrySet.getKey();
-        GENIncomingMessageProcessor lproc = entrySet.getValue();
+      if (null == proc) {
+        final GENIncomingMessageProcessor nproc
+            = new GENIncomingMessageProcessor(transactionKey, malMsg);
 
-        if (lproc.isFinished()) {
-          transactionsToRemove.add(key);
+        if (null == transactionQueues.putIfAbsent(transactionKey, nproc)) {
+          asyncInputDataProcessors.submit(nproc);
+          return;
         }
-      }
-
-      for (Long transId : transactionsToRemove) {
-        transactionQueues.remove(transId);
+      } else if (proc.addMessage(malMsg)) {
+        return;
+      } else {
+        // the queue has just finished, make sure it is gone before creating a new one
+        transactionQueues.remove(transactionKey, proc);
       }
     }
   }
@@ -1011,7 +1291,10 @@ public abstract class GENTransport<I, O> implements MALTransport
       //we do not have a communication channel, create a data sender manager and add the first data sender
       // create new sender manager for this URI
       LOGGER.log(Level.FINE, "GEN creating data sender manager for URI:{0}", remoteRootURI);
-      dataSender = new GENConcurrentMessageSender(this, remoteRootURI);
+      dataSender = new GENConcurrentMessageSender(this, remoteRootURI,
+          new GENOutgoingMessageQueue(remoteRootURI, queueCapacity, queueBytes,
+              queueOverflowPolicy, deliveryTimeout),
+          sendWindow, deliveryTimeout, batchMessages, batchBytes, batchLinger);
 
       LOGGER.log(Level.FINE, "GEN registering data sender for URI:{0}", remoteRootURI);
       outgoingDataChannels.put(remoteRootURI, dataSender);
@@ -1063,8 +1346,8 @@ public abstract class GENTransport<I, O> implements MALTransport
       final GENMessage msg) throws MALTransmitErrorException
   {
     // encode the message
+    final GENPooledOutputStream baos = new GENPooledOutputStream();
     try {
-      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
       final MALElementOutputStream enc = getStreamFactory().createOutputStream(baos);
       msg.encodeMessage(getStreamFactory(), enc, baos, true);
       byte[] data = baos.toByteArray();
@@ -1079,6 +1362,8 @@ public abstract class GENTransport<I, O> implements MALTransport
       LOGGER.log(Level.SEVERE, "GEN could not encode message!", ex);
       throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
           MALHelper.BAD_ENCODING_ERROR_NUMBER, null), null);
+    } finally {
+      baos.release();
     }
   }
 
@@ -1164,12 +1449,14 @@ public abstract class GENTransport<I, O> implements MALTransport
   /**
    * This Runnable task is responsible for processing the already decoded message. It holds a queue
    * of messages split on transaction id so that messages with the same transaction id get processed
-   * in reception order.
+   * in reception order. It is submitted to the processing pool once and, when its queue is empty,
+   * marks itself as finished and removes itself from the transaction map.
    *
    */
   private final class GENIncomingMessageProcessor implements Runnable
   {
 
+    private final Object transactionKey;
     private final Queue<GENIncomingMessageHolder> malMsgs
         = new ArrayDeque<GENIncomingMessageHolder>();
     private boolean finished = false;
@@ -1177,43 +1464,32 @@ public abstract class GENTransport<I, O> implements MALTransport
     /**
      * Constructor
      *
-     * @param malMsg The MAL message.
+     * @param transactionKey The key of this processor in the transaction map.
+     * @param malMsg         The MAL message.
      */
-    public GENIncomingMessageProcessor(final GENIncomingMessageHolder malMsg)
+    public GENIncomingMessageProcessor(final Object transactionKey,
+        final GENIncomingMessageHolder malMsg)
     {
+      this.transactionKey = transactionKey;
       malMsgs.add(malMsg);
     }
 
     /**
-     * Adds a message to the internal queue. If the thread associated with this executor has
-     * finished it resets the flag and returns true to indicate that it should be resubmitted for
-     * more processing to the Executor pool.
+     * Adds a message to the internal queue. If this processor has already finished the message is
+     * not added and false is returned, a new processor must be created for the message.
      *
      * @param malMsg The decoded message.
-     * @return True if this needs to be resubmitted to the processing executor pool.
+     * @return True if the message has been queued for processing.
      */
     public synchronized boolean addMessage(final GENIncomingMessageHolder malMsg)
     {
-      malMsgs.add(malMsg);
-
       if (finished) {
-        finished = false;
-
-        // need to resubmit this to the processing threads
-        return true;
+        return false;
       }
 
-      return false;
-    }
+      malMsgs.add(malMsg);
 
-    /**
-     * Returns true if this thread has finished processing its queue.
-     *
-     * @return True if finished processing queue.
-     */
-    public synchronized boolean isFinished()
-    {
-      return finished;
+      return true;
     }
 
     @Override
@@ -1237,6 +1513,8 @@ public abstract class GENTransport<I, O> implements MALTransport
           }
         }
       }
+
+      transactionQueues.remove(transactionKey, this);
     }
   }
 
@@ -1281,6 +1559,25 @@ public abstract class GENTransport<I, O> implements MALTransport
     }
   }
 
+  private static ExecutorService[] createReceptionProcessors(final java.util.Map properties)
+  {
+    int lReceptionProcessorThreads = 1;
+
+    // number of internal threads that decode incoming raw data
+    if ((null != properties) && properties.containsKey(RECEPTION_PROCESSORS_PROPERTY)) {
+      lReceptionProcessorThreads
+          = Integer.parseInt((String) properties.get(RECEPTION_PROCESSORS_PROPERTY));
+    }
+
+    final ExecutorService[] rv = new ExecutorService[Math.max(1, lReceptionProcessorThreads)];
+
+    for (int i = 0; i < rv.length; i++) {
+      rv[i] = Executors.newSingleThreadExecutor();
+    }
+
+    return rv;
+  }
+
   private static ExecutorService createThreadPoolExecutor(final java.util.Map properties)
   {
     boolean needsTuning = false;
@@ -21,21 +21,22 @@
 package esa.mo.mal.transport.gen.body;
 
 import esa.mo.mal.encoder.gen.GENElementInputStream;
+import esa.mo.mal.encoder.gen.GENElementOutputStream;
 import esa.mo.mal.transport.gen.GENTransport;
 import esa.mo.mal.transport.gen.util.GENMarshaller;
+import esa.mo.mal.transport.gen.util.GENOperationIndex;
+import esa.mo.mal.transport.gen.util.GENPooledOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.ccsds.moims.mo.mal.MALArea;
 import org.ccsds.moims.mo.mal.MALContextFactory;
 import org.ccsds.moims.mo.mal.MALElementFactory;
 import org.ccsds.moims.mo.mal.MALException;
-import org.ccsds.moims.mo.mal.MALOperation;
-import org.ccsds.moims.mo.mal.MALService;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALInteractionException;
 import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
 import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
 import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
@@ -210,6 +211,27 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
       final OutputStream lowLevelOutputStream,
       final UOctet stage,
       final MALEncodingContext ctx) throws MALException
+  {
+    encodeMessageBody(streamFactory, enc, lowLevelOutputStream, stage, ctx, wrappedBodyParts);
+  }
+
+  /**
+   * Encodes the contents of the message body into the provided stream
+   *
+   * @param streamFactory        The stream factory to use for encoder creation.
+   * @param enc                  The output stream to use for encoding.
+   * @param lowLevelOutputStream Low level output stream to use when have an already encoded body.
+   * @param stage                The operation stage being encoded.
+   * @param ctx                  The encoding context.
+   * @param wrapBodyParts        True if the body parts should be wrapped in BLOBs.
+   * @throws MALException On encoding error.
+   */
+  public void encodeMessageBody(final MALElementStreamFactory streamFactory,
+      final MALElementOutputStream enc,
+      final OutputStream lowLevelOutputStream,
+      final UOctet stage,
+      final MALEncodingContext ctx,
+      final boolean wrapBodyParts) throws MALException
   {
     // first check to see if we have an already encoded body
     if ((null != messageParts) && (1 == messageParts.length) && (messageParts[0] instanceof MALEncodedBody)) {
@@ -221,7 +243,9 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
       } catch (IOException ex) {
         throw new MALException("MAL encoded body encoding error", ex);
       }
-    } else if (!decodedBody) {
+    } else if (!decodedBody && (wrapBodyParts == wrappedBodyParts)
+        && isSameEncoding(streamFactory)) {
+      // still encoded the way we are writing it, so write it out unchanged
       enc.flush();
 
       try {
@@ -239,36 +263,50 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
       if (count == 1) {
         ctx.setBodyElementIndex(0);
         Object sf = ctx.getOperation().getOperationStage(stage).getElementShortForms()[0];
-        encodeBodyPart(streamFactory, enc, wrappedBodyParts, sf, getBodyElement(0, null), ctx);
+        encodeBodyPart(streamFactory, enc, wrapBodyParts, sf, getBodyElement(0, null), ctx);
       } else if (count > 1) {
         MALElementOutputStream benc = enc;
-        ByteArrayOutputStream bbaos = null;
+        GENPooledOutputStream wrapper = null;
+        GENPooledOutputStream part = null;
 
-        if (wrappedBodyParts) {
+        if (wrapBodyParts) {
           // we have more than one body part, therefore encode each part into a separate byte buffer, and then encode
           // that byte buffer as a whole. This allows use to be able to return the complete body of the message as a
-          // single unit if required.
-          bbaos = new ByteArrayOutputStream();
-          benc = streamFactory.createOutputStream(bbaos);
+          // single unit if required. The buffers are pooled and reused for every part.
+          wrapper = new GENPooledOutputStream();
+          part = new GENPooledOutputStream();
+          benc = streamFactory.createOutputStream(wrapper);
         }
 
-        for (int i = 0; i < count; i++) {
-          Object sf = null;
-          if (null != ctx) {
-            ctx.setBodyElementIndex(i);
+        try {
+          for (int i = 0; i < count; i++) {
+            Object sf = null;
+            if (null != ctx) {
+              ctx.setBodyElementIndex(i);
 
-            if (!ctx.getHeader().getIsErrorMessage()) {
-              sf = ctx.getOperation().getOperationStage(stage).getElementShortForms()[i];
+              if (!ctx.getHeader().getIsErrorMessage()) {
+                sf = ctx.getOperation().getOperationStage(stage).getElementShortForms()[i];
+              }
+            }
+
+            if (wrapBodyParts) {
+              encodeWrappedBodyPart(streamFactory, benc, part, sf, getBodyElement(i, null), ctx);
+            } else {
+              encodeBodyPart(streamFactory, benc, false, sf, getBodyElement(i, null), ctx);
             }
           }
-          encodeBodyPart(streamFactory, benc, wrappedBodyParts, sf, getBodyElement(i, null), ctx);
-        }
 
-        if (wrappedBodyParts) {
-          benc.flush();
-          benc.close();
+          if (wrapBodyParts) {
+            benc.flush();
+            benc.close();
 
-          enc.writeElement(new Blob(bbaos.toByteArray()), null);
+            writeWrapped(enc, wrapper);
+          }
+        } finally {
+          if (wrapBodyParts) {
+            wrapper.release();
+            part.release();
+          }
         }
       }
     }
@@ -277,35 +315,40 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
     enc.close();
   }
 
+  /**
+   * Returns true if the encoded body can be written unchanged by an encoder of the given stream
+   * factory.
+   *
+   * @param streamFactory The stream factory of the encoder.
+   * @return true if the factory uses the same encoding as the encoded body.
+   */
+  protected boolean isSameEncoding(final MALElementStreamFactory streamFactory)
+  {
+    return (streamFactory == encFactory)
+        || ((null != streamFactory) && (null != encFactory)
+        && (streamFactory.getClass() == encFactory.getClass()));
+  }
+
   protected void encodeBodyPart(final MALElementStreamFactory streamFactory,
       final MALElementOutputStream enc,
       final boolean wrapBodyParts,
       final Object sf, final Object o, final MALEncodingContext ctx) throws MALException
   {
-    // if it is already an encoded element then just write it directly
-    if (o instanceof MALEncodedElement) {
+    if (wrapBodyParts) {
+      final GENPooledOutputStream part = new GENPooledOutputStream();
+
+      try {
+        encodeWrappedBodyPart(streamFactory, enc, part, sf, o, ctx);
+      } finally {
+        part.release();
+      }
+    } // if it is already an encoded element then just write it directly
+    else if (o instanceof MALEncodedElement) {
       enc.writeElement(((MALEncodedElement) o).getEncodedElement(), ctx);
     } // else if it is a MAL data type object
     else if ((null == o) || (o instanceof Element)) {
-      MALElementOutputStream lenc = enc;
-      ByteArrayOutputStream lbaos = null;
-
-      if (wrapBodyParts) {
-        // we encode it into a byte buffer so that it can be extracted as a MALEncodedElement if required
-        lbaos = new ByteArrayOutputStream();
-        lenc = streamFactory.createOutputStream(lbaos);
-      }
-
       // now encode the element
-      lenc.writeElement((Element) o, ctx);
-
-      if (wrapBodyParts) {
-        lenc.flush();
-        lenc.close();
-
-        // write the encoded blob to the stream
-        enc.writeElement(new Blob(lbaos.toByteArray()), null);
-      }
+      enc.writeElement((Element) o, ctx);
     } // else if it is a JAXB XML object
     else if (o.getClass().isAnnotationPresent(javax.xml.bind.annotation.XmlType.class)) {
       // get the XML tags for the object
@@ -316,33 +359,86 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
       GENTransport.LOGGER.log(Level.FINE, "GEN Message encoding XML body part : {0}",
           ow.toString());
 
-      MALElementOutputStream lenc = enc;
-      ByteArrayOutputStream lbaos = null;
-
-      if (wrapBodyParts) {
-        // we encode it into a byte buffer so that it can be extracted as a MALEncodedElement if required
-        lbaos = new ByteArrayOutputStream();
-        lenc = streamFactory.createOutputStream(lbaos);
-      }
-
       // encode the short form
-      lenc.writeElement(new Union(ssf), null);
+      enc.writeElement(new Union(ssf), null);
       // now encode the element
-      lenc.writeElement(new Union(ow.toString()), null);
-
-      if (wrapBodyParts) {
-        lenc.flush();
-        lenc.close();
-
-        // write the encoded blob to the stream
-        enc.writeElement(new Blob(lbaos.toByteArray()), null);
-      }
+      enc.writeElement(new Union(ow.toString()), null);
     } else {
       throw new MALException(
           "ERROR: Unable to encode body object of type: " + o.getClass().getSimpleName());
     }
   }
 
+  /**
+   * Encodes a single body part wrapped in a BLOB, so that it can be extracted as a
+   * MALEncodedElement if required. The part is encoded into the supplied buffer and the BLOB is
+   * written from there, the part is not copied into a BLOB first.
+   *
+   * @param streamFactory The stream factory to use for encoder creation.
+   * @param enc           The output stream to write the BLOB to.
+   * @param part          The buffer to encode the part in to, its content is discarded.
+   * @param sf            The type short form.
+   * @param o             The body part.
+   * @param ctx           The encoding context.
+   * @throws MALException On encoding error.
+   */
+  protected void encodeWrappedBodyPart(final MALElementStreamFactory streamFactory,
+      final MALElementOutputStream enc,
+      final GENPooledOutputStream part,
+      final Object sf, final Object o, final MALEncodingContext ctx) throws MALException
+  {
+    if (o instanceof MALEncodedElement) {
+      // already encoded, write it directly
+      enc.writeElement(((MALEncodedElement) o).getEncodedElement(), ctx);
+    } else {
+      part.reset();
+      final MALElementOutputStream lenc = streamFactory.createOutputStream(part);
+
+      encodeBodyPart(streamFactory, lenc, false, sf, o, ctx);
+      lenc.flush();
+      lenc.close();
+
+      writeWrapped(enc, part);
+    }
+  }
+
+  /**
+   * Writes the content of a buffer to the stream as a BLOB.
+   *
+   * @param enc     The stream to write to.
+   * @param content The buffer holding the BLOB content.
+   * @throws MALException On encoding error.
+   */
+  private static void writeWrapped(final MALElementOutputStream enc,
+      final GENPooledOutputStream content) throws MALException
+  {
+    if (enc instanceof GENElementOutputStream) {
+      ((GENElementOutputStream) enc).writeBlob(content.getBuffer(), 0, content.size());
+    } else {
+      enc.writeElement(new Blob(content.toByteArray()), null);
+    }
+  }
+
+  /**
+   * Returns a stream for decoding a body part, or set of body parts, wrapped in a BLOB. For the
+   * generic encodings the wrapped part is decoded in place in the received message.
+   *
+   * @param decoder The stream holding the BLOB.
+   * @return the stream holding the wrapped content.
+   * @throws MALException On decoding error.
+   */
+  private MALElementInputStream readWrapped(final MALElementInputStream decoder)
+      throws MALException
+  {
+    if (decoder instanceof GENElementInputStream) {
+      return ((GENElementInputStream) decoder).readWrappedElement(encFactory);
+    }
+
+    final Blob ele = (Blob) decoder.readElement(new Blob(), null);
+
+    return encFactory.createInputStream(ele.getValue(), 0);
+  }
+
   /**
    * Decodes the message body.
    *
@@ -354,60 +450,59 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
       decodedBody = true;
 
       try {
-        if (null == ctx.getOperation()) {
+        GENOperationIndex.Entry entry = null;
+
+        try {
+          entry = GENOperationIndex.require(ctx.getHeader());
+
+          if (null == ctx.getOperation()) {
+            ctx.setOperation(entry.getOperation());
+          }
+        } catch (MALInteractionException ex) {
           MALMessageHeader header = ctx.getHeader();
-          MALArea area = MALContextFactory.lookupArea(header.getServiceArea(),
-              header.getAreaVersion());
-          if (null != area) {
-            MALService service = area.getServiceByNumber(header.getService());
-            if (null != service) {
-              MALOperation op = service.getOperationByNumber(header.getOperation());
-
-              if (null != op) {
-                ctx.setOperation(op);
-              } else {
-                GENTransport.LOGGER.log(Level.SEVERE,
-                    "Operation for unknown area/version/service/op received ({0}, {1}, {2}, {3})",
-                    new Object[]{
-                      header.getServiceArea(), header.getAreaVersion(), header.getService(),
-                      header.getOperation()
-                    });
-              }
-            } else {
-              GENTransport.LOGGER.log(Level.SEVERE,
-                  "Operation for unknown area/version/service received ({0}, {1}, {2})",
-                  new Object[]{
-                    header.getServiceArea(), header.getAreaVersion(), header.getService()
-                  });
-            }
-          } else {
+
+          if (MALHelper.UNSUPPORTED_AREA_ERROR_NUMBER.equals(
+              ex.getStandardError().getErrorNumber())) {
             GENTransport.LOGGER.log(Level.SEVERE,
                 "Operation for unknown area/version received ({0}, {1})", new Object[]{
                   header.getServiceArea(), header.getAreaVersion()
                 });
+          } else {
+            GENTransport.LOGGER.log(Level.SEVERE,
+                "Operation for unknown area/version/service/op received ({0}, {1}, {2}, {3})",
+                new Object[]{
+                  header.getServiceArea(), header.getAreaVersion(), header.getService(),
+                  header.getOperation()
+                });
           }
         }
 
+        if ((null != entry)
+            && ((entry.getOperation() != ctx.getOperation()) || (null == entry.getStage()))) {
+          // the context was created for a different operation, do not use the index
+          entry = null;
+        }
+
+        Object[] shortForms = null;
         if (ctx.getHeader().getIsErrorMessage()) {
           bodyPartCount = 2;
+          entry = null;
         } else {
-          bodyPartCount
-              = ctx.getOperation().getOperationStage(ctx.getHeader().getInteractionStage()).getElementShortForms().length;
+          shortForms = (null != entry) ? entry.getStage().getElementShortForms()
+              : ctx.getOperation().getOperationStage(ctx.getHeader().getInteractionStage()).getElementShortForms();
+          bodyPartCount = shortForms.length;
         }
         GENTransport.LOGGER.log(Level.FINE, "GEN Message decoding body ... pc ({0})", bodyPartCount);
         messageParts = new Object[bodyPartCount];
 
         if (bodyPartCount == 1) {
-          Object sf
-              = ctx.getOperation().getOperationStage(ctx.getHeader().getInteractionStage()).getElementShortForms()[0];
-          messageParts[0] = decodeBodyPart(encBodyElements, ctx, sf);
+          messageParts[0] = decodeBodyPart(encBodyElements, ctx, shortForms[0],
+              (null != entry) ? entry.getElementFactory(0) : null);
         } else if (bodyPartCount > 1) {
           MALElementInputStream benc = encBodyElements;
           if (wrappedBodyParts) {
             GENTransport.LOGGER.fine("GEN Message decoding body wrapper");
-            final Blob body = (Blob) encBodyElements.readElement(new Blob(), null);
-            final ByteArrayInputStream bais = new ByteArrayInputStream(body.getValue());
-            benc = encFactory.createInputStream(bais);
+            benc = readWrapped(encBodyElements);
           }
 
           for (int i = 0; i < bodyPartCount; i++) {
@@ -416,12 +511,12 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
 
             ctx.setBodyElementIndex(i);
 
-            if (!ctx.getHeader().getIsErrorMessage()) {
-              sf
-                  = ctx.getOperation().getOperationStage(ctx.getHeader().getInteractionStage()).getElementShortForms()[i];
+            if (null != shortForms) {
+              sf = shortForms[i];
             }
 
-            messageParts[i] = decodeBodyPart(benc, ctx, sf);
+            messageParts[i] = decodeBodyPart(benc, ctx, sf,
+                (null != entry) ? entry.getElementFactory(i) : null);
           }
         }
 
@@ -479,14 +574,28 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
    */
   protected Object decodeBodyPart(final MALElementInputStream decoder, MALEncodingContext ctx,
       Object sf) throws MALException
+  {
+    return decodeBodyPart(decoder, ctx, sf, null);
+  }
+
+  /**
+   * Decodes a single part of the message body.
+   *
+   * @param decoder The decoder to use.
+   * @param ctx     The encoding context to use.
+   * @param sf      The type short form.
+   * @param factory The element factory for the short form, if null it is looked up.
+   * @return The decoded chunk.
+   * @throws MALException if any error detected.
+   */
+  protected Object decodeBodyPart(final MALElementInputStream decoder, MALEncodingContext ctx,
+      Object sf, MALElementFactory factory) throws MALException
   {
     Object rv = null;
 
     MALElementInputStream lenc = decoder;
     if (wrappedBodyParts) {
-      final Blob ele = (Blob) decoder.readElement(new Blob(), null);
-      final ByteArrayInputStream lbais = new ByteArrayInputStream(ele.getValue());
-      lenc = encFactory.createInputStream(lbais);
+      lenc = readWrapped(decoder);
     }
 
     // work out whether it is a MAL element or JAXB element we have received
@@ -496,8 +605,8 @@ public class GENMessageBody implements MALMessageBody, java.io.Serializable
         Long shortForm = (Long) sf;
         GENTransport.LOGGER.log(Level.FINER, "GEN Message decoding body part : Type = {0}",
             shortForm);
-        final MALElementFactory ef
-            = MALContextFactory.getElementFactoryRegistry().lookupElementFactory(shortForm);
+        final MALElementFactory ef = (null != factory) ? factory
+            : MALContextFactory.getElementFactoryRegistry().lookupElementFactory(shortForm);
         if (null != ef) {
           element = (Element) ef.createElement();
         } else {
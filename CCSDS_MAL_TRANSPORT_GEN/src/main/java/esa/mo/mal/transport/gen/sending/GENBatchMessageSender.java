@@ -0,0 +1,42 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.sending;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Extension of the low level transport specific send that is able to send several encoded messages
+ * in one operation, for example as a single gathered write. Senders that implement this interface
+ * are given batches of messages when the transport is configured to coalesce writes.
+ */
+public interface GENBatchMessageSender<O> extends GENMessageSender<O>
+{
+
+  /**
+   * Sends several encoded messages to the client in the order supplied. Either all messages are
+   * sent or an exception is thrown.
+   *
+   * @param encodedMessages the messages to send, never empty
+   * @throws IOException in case the messages cannot be sent to the client
+   */
+  void sendEncodedMessages(List<GENOutgoingMessageHolder<O>> encodedMessages) throws IOException;
+}
@@ -25,8 +25,8 @@ import static esa.mo.mal.transport.gen.GENTransport.LOGGER;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import java.io.IOException;
@@ -45,6 +45,16 @@ import static java.lang.Thread.interrupted;
  * It accepts requests to send the message, which is done via the worker threads. A reply is
  * provided indicating if the message was sent successfully or not.
  *
+ * Optionally the number of messages in flight (queued but not yet sent) can be bounded, in which
+ * case a sender waits up to the supplied timeout for space before the message is failed.
+ *
+ * If batching is enabled and the transceiver implements GENBatchMessageSender, each worker thread
+ * drains the messages ready in the queue, bounded by a message count, a byte count and a maximum
+ * linger time, and hands them to the transceiver in one call.
+ *
+ * The queue itself may be bounded per destination, see GENOutgoingMessageQueue for the overflow
+ * policies.
+ *
  */
 public class GENConcurrentMessageSender
 {
@@ -52,7 +62,7 @@ public class GENConcurrentMessageSender
   /**
    * input message queue
    */
-  private final BlockingQueue<GENOutgoingMessageHolder> outgoingQueue;
+  private final GENOutgoingMessageQueue outgoingQueue;
 
   /**
    * the list of processing threads that send the messages
@@ -69,6 +79,43 @@ public class GENConcurrentMessageSender
    */
   private final String targetURI;
 
+  /**
+   * the permits for messages in flight, NULL if unbounded
+   */
+  private final Semaphore inFlightWindow;
+
+  /**
+   * the timeout in seconds to wait for space in the in flight window
+   */
+  private final int windowTimeout;
+
+  /**
+   * the maximum number of messages in a batch, one or less disables batching
+   */
+  private final int batchMessages;
+
+  /**
+   * the number of bytes after which a batch is closed
+   */
+  private final int batchBytes;
+
+  /**
+   * the maximum time in nanoseconds to wait for more messages to fill a batch
+   */
+  private final long batchLingerNanos;
+
+  /**
+   * releases an in flight permit when a message completes
+   */
+  private final GENSendListener windowReleaser = new GENSendListener()
+  {
+    @Override
+    public void sendCompleted(GENOutgoingMessageHolder message, Boolean result)
+    {
+      inFlightWindow.release();
+    }
+  };
+
   /**
    * Creates a new instance. Typically each instance is associated with a given URI.
    *
@@ -77,17 +124,63 @@ public class GENConcurrentMessageSender
    */
   public GENConcurrentMessageSender(GENTransport transport, String targetURI)
   {
-    outgoingQueue = new LinkedBlockingQueue<GENOutgoingMessageHolder>();
+    this(transport, targetURI, 0, 0);
+  }
+
+  /**
+   * Creates a new instance with a bounded number of messages in flight.
+   *
+   * @param transport     reference to the transport
+   * @param targetURI     the URI this sender is associated with
+   * @param maxInFlight   the maximum number of messages queued but not yet sent, zero or less for
+   *                      unbounded
+   * @param windowTimeout the timeout in seconds to wait for space in the window
+   */
+  public GENConcurrentMessageSender(GENTransport transport, String targetURI, int maxInFlight,
+      int windowTimeout)
+  {
+    this(transport, targetURI, new GENOutgoingMessageQueue(targetURI), maxInFlight,
+        windowTimeout, 1, 0, 0);
+  }
+
+  /**
+   * Creates a new instance with a bounded number of messages in flight and write batching.
+   *
+   * @param transport          reference to the transport
+   * @param targetURI          the URI this sender is associated with
+   * @param outgoingQueue      the queue of messages waiting to be sent
+   * @param maxInFlight        the maximum number of messages queued but not yet sent, zero or less
+   *                           for unbounded
+   * @param windowTimeout      the timeout in seconds to wait for space in the window
+   * @param batchMessages      the maximum number of messages in a batch, one or less to disable
+   * @param batchBytes         the number of encoded bytes after which a batch is closed
+   * @param batchLingerMicros  the maximum time in microseconds to wait for more messages to fill a
+   *                           batch, zero to only take messages that are already queued
+   */
+  public GENConcurrentMessageSender(GENTransport transport, String targetURI,
+      GENOutgoingMessageQueue outgoingQueue, int maxInFlight, int windowTimeout, int batchMessages,
+      int batchBytes, int batchLingerMicros)
+  {
+    this.outgoingQueue = outgoingQueue;
     processingThreads = Collections.synchronizedList(new ArrayList<GENSenderThread>());
     this.transport = transport;
     this.targetURI = targetURI;
+    this.inFlightWindow = (0 < maxInFlight) ? new Semaphore(maxInFlight) : null;
+    this.windowTimeout = windowTimeout;
+    this.batchMessages = batchMessages;
+    this.batchBytes = batchBytes;
+    this.batchLingerNanos = TimeUnit.MICROSECONDS.toNanos(batchLingerMicros);
   }
 
   /**
    * This method will try to send the message via one of the available connections and provide a
    * reply through the GENOutgoingMessageHolder object if the message was successful or not. Users
    * of this method should call getResult to block waiting for an indication if the message was sent
-   * successfully or not.
+   * successfully or not, or register a listener on the message.
+   *
+   * If the in flight window is full this method blocks until space is available or the window
+   * timeout expires, in which case the message is failed. The same applies if the queue is full,
+   * depending on its overflow policy.
    *
    * @param message the message to be sent.
    */
@@ -102,12 +195,30 @@ public class GENConcurrentMessageSender
       return;
     }
 
-    boolean inserted = outgoingQueue.add(message);
-    if (!inserted) {
-      // log error. According to the specification (see *add* call
-      // documentation) this will always return true, or throw an
-      // exception
-      LOGGER.log(Level.SEVERE, "Could not insert message to processing queue");
+    if (null != inFlightWindow) {
+      try {
+        if (!inFlightWindow.tryAcquire(windowTimeout, TimeUnit.SECONDS)) {
+          LOGGER.log(Level.WARNING, "Send window full for URI:{0}, failing message", targetURI);
+          message.setResult(Boolean.FALSE);
+
+          return;
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        message.setResult(Boolean.FALSE);
+
+        return;
+      }
+
+      message.addListener(windowReleaser);
+    }
+
+    try {
+      if (!outgoingQueue.offer(message)) {
+        message.setResult(Boolean.FALSE);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
       message.setResult(Boolean.FALSE);
     }
   }
@@ -158,9 +269,21 @@ public class GENConcurrentMessageSender
     return processingThreads.size();
   }
 
+  /**
+   * Returns the queue of messages waiting to be sent, for monitoring its depth and high water
+   * marks.
+   *
+   * @return the outgoing queue.
+   */
+  public GENOutgoingMessageQueue getOutgoingQueue()
+  {
+    return outgoingQueue;
+  }
+
   /**
    * This method will shutdown all processing threads (by calling their interrupt method) which will
-   * result in all of them closing their sockets and terminating their processing.
+   * result in all of them closing their sockets and terminating their processing. Any messages
+   * still queued are failed.
    *
    * Typically Called by the transport in order to shutdown all processing threads and close all
    * remote connections.
@@ -177,6 +300,12 @@ public class GENConcurrentMessageSender
 
     // clear the references to active threads
     processingThreads.clear();
+
+    List<GENOutgoingMessageHolder> pending = new ArrayList<GENOutgoingMessageHolder>();
+    outgoingQueue.drainTo(pending);
+    for (GENOutgoingMessageHolder message : pending) {
+      message.setResult(Boolean.FALSE);
+    }
   }
 
   /**
@@ -215,6 +344,18 @@ public class GENConcurrentMessageSender
 
     @Override
     public void run()
+    {
+      if ((1 < batchMessages) && (messageSender instanceof GENBatchMessageSender)) {
+        runBatched((GENBatchMessageSender) messageSender);
+      } else {
+        runSingle();
+      }
+
+      // finished processing, close connection if not already closed
+      messageSender.close();
+    }
+
+    private void runSingle()
     {
       boolean bContinue = true;
 
@@ -246,11 +387,90 @@ public class GENConcurrentMessageSender
           bContinue = false;
         } catch (Throwable ex) {
           ex.printStackTrace();
+
+          if (null != messageHolder) {
+            messageHolder.setResult(Boolean.FALSE);
+          }
         }
       }
+    }
 
-      // finished processing, close connection if not already closed
-      messageSender.close();
+    private void runBatched(GENBatchMessageSender batchSender)
+    {
+      final List<GENOutgoingMessageHolder> batch
+          = new ArrayList<GENOutgoingMessageHolder>(batchMessages);
+      boolean bContinue = true;
+
+      // read forever while not interrupted
+      while (bContinue && !interrupted()) {
+        try {
+          fillBatch(batch);
+
+          batchSender.sendEncodedMessages(batch);
+
+          //send back reply that the messages were sent succesfully
+          completeBatch(batch, Boolean.TRUE);
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Cannot send packet to destination:{0} informing transport",
+              uriTo);
+          LOGGER.log(Level.FINE, "Cannot send packet to destination:{0} informing transport", e);
+
+          //send back reply that the messages were not sent successfully
+          completeBatch(batch, Boolean.FALSE);
+
+          //inform transport about communication error 
+          transport.communicationError(uriTo, null);
+          bContinue = false;
+        } catch (InterruptedException e) {
+          // finish processing, a partially filled batch has not been sent
+          completeBatch(batch, Boolean.FALSE);
+          bContinue = false;
+        } catch (Throwable ex) {
+          ex.printStackTrace();
+          completeBatch(batch, Boolean.FALSE);
+        }
+      }
+    }
+
+    /**
+     * Blocks for the first message then adds the messages that are ready, or become ready within
+     * the linger time, until one of the batch bounds is reached.
+     */
+    private void fillBatch(List<GENOutgoingMessageHolder> batch) throws InterruptedException
+    {
+      GENOutgoingMessageHolder messageHolder = outgoingQueue.take();
+      batch.add(messageHolder);
+
+      int bytes = messageHolder.getEncodedSize();
+      final long deadline = System.nanoTime() + batchLingerNanos;
+
+      while ((batch.size() < batchMessages) && (bytes < batchBytes)) {
+        messageHolder = outgoingQueue.poll();
+
+        if (null == messageHolder) {
+          final long remaining = deadline - System.nanoTime();
+
+          if (0 < remaining) {
+            messageHolder = outgoingQueue.poll(remaining, TimeUnit.NANOSECONDS);
+          }
+
+          if (null == messageHolder) {
+            break;
+          }
+        }
+
+        batch.add(messageHolder);
+        bytes += messageHolder.getEncodedSize();
+      }
+    }
+
+    private void completeBatch(List<GENOutgoingMessageHolder> batch, Boolean result)
+    {
+      for (GENOutgoingMessageHolder messageHolder : batch) {
+        messageHolder.setResult(result);
+      }
+
+      batch.clear();
     }
 
     /**
@@ -20,8 +20,12 @@
  */
 package esa.mo.mal.transport.gen.sending;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
 import static esa.mo.mal.transport.gen.GENTransport.LOGGER;
@@ -29,19 +33,27 @@ import java.util.concurrent.TimeUnit;
 import org.ccsds.moims.mo.mal.transport.MALMessage;
 
 /**
- * This class holds the message to be sent in encoded format and a reply queue that the internal
- * sender of the message can listen to in order to be informed if the message was successfully sent
- * or not.
+ * This class holds the message to be sent in encoded format and the result of sending it. The
+ * originator of the message can either block on the result, use it as a Future, or register a
+ * listener in order to be informed if the message was successfully sent or not.
  *
  * @param <O> The type of the encoded message.
  */
-public class GENOutgoingMessageHolder<O>
+public class GENOutgoingMessageHolder<O> implements Future<Boolean>
 {
 
   /**
-   * The reply queue
+   * Released once the result has been set
    */
-  private final BlockingQueue<Boolean> replyQueue;
+  private final CountDownLatch completed = new CountDownLatch(1);
+  /**
+   * The send result, only valid once completed
+   */
+  private volatile Boolean result = null;
+  /**
+   * The listeners waiting for the result, guarded by this object
+   */
+  private List<GENSendListener> listeners = null;
 
   /**
    * The timeout in seconds to wait for confirmation of delivery
@@ -71,9 +83,13 @@ public class GENOutgoingMessageHolder<O>
    * The encoded message
    */
   private final O encodedMessage;
+  /**
+   * The size in bytes of the encoded message, taken when the holder is created
+   */
+  private final int encodedSize;
 
   /**
-   * Will construct a new object and create a new internal reply queue.
+   * Will construct a new object that has not yet been sent.
    *
    * @param timeout            The timeout in seconds to wait for confirmation of delivery.
    * @param destinationRootURI The destination root URI, holds the connection level URI.
@@ -92,7 +108,6 @@ public class GENOutgoingMessageHolder<O>
       final MALMessage originalMessage,
       O encodedMessage)
   {
-    replyQueue = new LinkedBlockingQueue<Boolean>();
     this.timeout = timeout;
     this.destinationRootURI = destinationRootURI;
     this.destinationURI = destinationURI;
@@ -100,6 +115,7 @@ public class GENOutgoingMessageHolder<O>
     this.lastForHandle = lastForHandle;
     this.originalMessage = originalMessage;
     this.encodedMessage = encodedMessage;
+    this.encodedSize = sizeOf(encodedMessage);
   }
 
   /**
@@ -111,24 +127,104 @@ public class GENOutgoingMessageHolder<O>
    */
   public Boolean getResult() throws InterruptedException
   {
-    return replyQueue.poll(timeout, TimeUnit.SECONDS);
+    if (completed.await(timeout, TimeUnit.SECONDS)) {
+      return result;
+    }
+
+    return null;
   }
 
   /**
-   * Sets the result indicating if the message was sent successfully.
+   * Sets the result indicating if the message was sent successfully. Only the first result is
+   * kept, any registered listeners are informed from the calling thread.
    *
    * @param result TRUE if the message was successfully sent and FALSE if there was a communication
    *               or internal problem.
    */
   public void setResult(Boolean result)
   {
-    boolean inserted = replyQueue.add(result);
-    if (!inserted) {
-      // log error. According to the specification (see *add* call
-      // documentation) this will always return true, or throw an
-      // exception
-      LOGGER.log(Level.SEVERE, "Could not insert result to processing queue", new Throwable());
+    final List<GENSendListener> toInform;
+
+    synchronized (this) {
+      if (0 == completed.getCount()) {
+        LOGGER.log(Level.FINE, "Ignoring repeated send result for message to {0}", destinationURI);
+        return;
+      }
+
+      this.result = result;
+      completed.countDown();
+      toInform = listeners;
+      listeners = null;
+    }
+
+    if (null != toInform) {
+      for (GENSendListener listener : toInform) {
+        informListener(listener, result);
+      }
+    }
+  }
+
+  /**
+   * Adds a listener to be informed of the send result. If the result is already known the listener
+   * is informed immediately from the calling thread.
+   *
+   * @param listener The listener to add.
+   */
+  public void addListener(GENSendListener listener)
+  {
+    synchronized (this) {
+      if (0 != completed.getCount()) {
+        if (null == listeners) {
+          listeners = new ArrayList<GENSendListener>(2);
+        }
+
+        listeners.add(listener);
+        return;
+      }
+    }
+
+    informListener(listener, result);
+  }
+
+  /**
+   * Sending cannot be cancelled once requested, so this always returns false.
+   *
+   * @param mayInterruptIfRunning ignored.
+   * @return false.
+   */
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning)
+  {
+    return false;
+  }
+
+  @Override
+  public boolean isCancelled()
+  {
+    return false;
+  }
+
+  @Override
+  public boolean isDone()
+  {
+    return 0 == completed.getCount();
+  }
+
+  @Override
+  public Boolean get() throws InterruptedException
+  {
+    completed.await();
+    return result;
+  }
+
+  @Override
+  public Boolean get(long waitTime, TimeUnit unit) throws InterruptedException, TimeoutException
+  {
+    if (!completed.await(waitTime, unit)) {
+      throw new TimeoutException("Message to " + destinationURI + " not sent in time");
     }
+
+    return result;
   }
 
   /**
@@ -190,4 +286,47 @@ public class GENOutgoingMessageHolder<O>
   {
     return encodedMessage;
   }
+
+  /**
+   * Returns the size of the encoded message in bytes. Byte arrays, byte buffers and collections of
+   * them are measured, the size of other encodings is not known and reported as zero.
+   *
+   * @return the encoded size, taken when the holder was created.
+   */
+  public int getEncodedSize()
+  {
+    return encodedSize;
+  }
+
+  private static int sizeOf(Object encoded)
+  {
+    if (encoded instanceof byte[]) {
+      return ((byte[]) encoded).length;
+    }
+
+    if (encoded instanceof ByteBuffer) {
+      return ((ByteBuffer) encoded).remaining();
+    }
+
+    if (encoded instanceof Iterable) {
+      int size = 0;
+
+      for (Object part : (Iterable) encoded) {
+        size += sizeOf(part);
+      }
+
+      return size;
+    }
+
+    return 0;
+  }
+
+  private void informListener(GENSendListener listener, Boolean result)
+  {
+    try {
+      listener.sendCompleted(this, result);
+    } catch (Throwable ex) {
+      LOGGER.log(Level.WARNING, "Send listener raised an exception", ex);
+    }
+  }
 }
@@ -0,0 +1,449 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.sending;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.transport.MALMessage;
+
+import static esa.mo.mal.transport.gen.GENTransport.LOGGER;
+
+/**
+ * The queue of messages waiting to be sent to one destination. The queue can be bounded in number
+ * of messages and in encoded bytes, what happens when a message does not fit is controlled by the
+ * overflow policy. The current depth and the high water marks are kept for monitoring.
+ */
+public class GENOutgoingMessageQueue
+{
+
+  /**
+   * What to do with a message that does not fit in the queue.
+   */
+  public enum OverflowPolicy
+  {
+    /**
+     * Wait up to the timeout for space, then fail the message.
+     */
+    BLOCK,
+    /**
+     * Fail the message immediately.
+     */
+    FAIL,
+    /**
+     * For BESTEFFORT messages drop the oldest queued BESTEFFORT messages to make space, other
+     * messages are treated as for BLOCK. Nothing is dropped if dropping all queued BESTEFFORT
+     * messages would still not make enough space, the message is then treated as for BLOCK too.
+     */
+    DROP_OLDEST;
+
+    /**
+     * Parses a policy from its property value, "block", "fail" or "dropoldest".
+     *
+     * @param value The property value.
+     * @return The matching policy.
+     * @throws IllegalArgumentException If the value is not recognised.
+     */
+    public static OverflowPolicy fromProperty(String value)
+    {
+      if ("block".equalsIgnoreCase(value)) {
+        return BLOCK;
+      } else if ("fail".equalsIgnoreCase(value)) {
+        return FAIL;
+      } else if ("dropoldest".equalsIgnoreCase(value)) {
+        return DROP_OLDEST;
+      }
+
+      throw new IllegalArgumentException("Unknown queue overflow policy: " + value);
+    }
+  }
+
+  private final LinkedList<GENOutgoingMessageHolder> queue
+      = new LinkedList<GENOutgoingMessageHolder>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final String targetURI;
+  private final int maxMessages;
+  private final long maxBytes;
+  private final OverflowPolicy policy;
+  private final long blockTimeoutNanos;
+  private long queuedBytes = 0;
+  private int highWaterMessages = 0;
+  private long highWaterBytes = 0;
+  private long droppedMessages = 0;
+  private long rejectedMessages = 0;
+
+  /**
+   * Creates an unbounded queue.
+   *
+   * @param targetURI The destination the queue is for, used for logging.
+   */
+  public GENOutgoingMessageQueue(String targetURI)
+  {
+    this(targetURI, 0, 0, OverflowPolicy.BLOCK, 0);
+  }
+
+  /**
+   * Creates a queue.
+   *
+   * @param targetURI    The destination the queue is for, used for logging.
+   * @param maxMessages  The maximum number of queued messages, zero or less for unbounded.
+   * @param maxBytes     The maximum number of queued encoded bytes, zero or less for unbounded.
+   * @param policy       What to do with a message that does not fit.
+   * @param blockTimeout The time in seconds to wait for space when blocking.
+   */
+  public GENOutgoingMessageQueue(String targetURI, int maxMessages, long maxBytes,
+      OverflowPolicy policy, int blockTimeout)
+  {
+    this.targetURI = targetURI;
+    this.maxMessages = (0 < maxMessages) ? maxMessages : Integer.MAX_VALUE;
+    this.maxBytes = (0 < maxBytes) ? maxBytes : Long.MAX_VALUE;
+    this.policy = policy;
+    this.blockTimeoutNanos = TimeUnit.SECONDS.toNanos(blockTimeout);
+  }
+
+  /**
+   * Adds a message to the end of the queue, applying the overflow policy if it does not fit.
+   * Messages dropped to make space are failed. A message larger than the byte capacity is accepted
+   * into an empty queue so that it can still be sent.
+   *
+   * @param message The message to add.
+   * @return True if the message was queued, false if it was rejected.
+   * @throws InterruptedException If interrupted while waiting for space.
+   */
+  public boolean offer(GENOutgoingMessageHolder message) throws InterruptedException
+  {
+    final int size = message.getEncodedSize();
+    LinkedList<GENOutgoingMessageHolder> dropped = null;
+
+    lock.lockInterruptibly();
+    try {
+      if (!fits(size)) {
+        if ((OverflowPolicy.DROP_OLDEST == policy) && isBestEffort(message)) {
+          dropped = dropOldestBestEffort(size);
+        }
+
+        if (!fits(size) && !awaitSpace(size)) {
+          ++rejectedMessages;
+          LOGGER.log(Level.WARNING,
+              "Outgoing queue full for URI:{0} ({1} messages, {2} bytes), rejecting message",
+              new Object[]{
+                targetURI, queue.size(), queuedBytes
+              });
+          return false;
+        }
+      }
+
+      queue.addLast(message);
+      queuedBytes += size;
+
+      if (highWaterMessages < queue.size()) {
+        highWaterMessages = queue.size();
+      }
+
+      if (highWaterBytes < queuedBytes) {
+        highWaterBytes = queuedBytes;
+      }
+
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+
+      if (null != dropped) {
+        for (GENOutgoingMessageHolder holder : dropped) {
+          holder.setResult(Boolean.FALSE);
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Removes the oldest message, waiting if the queue is empty.
+   *
+   * @return The oldest message.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public GENOutgoingMessageHolder take() throws InterruptedException
+  {
+    lock.lockInterruptibly();
+    try {
+      while (queue.isEmpty()) {
+        notEmpty.await();
+      }
+
+      return removeFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the oldest message if there is one.
+   *
+   * @return The oldest message or null if the queue is empty.
+   */
+  public GENOutgoingMessageHolder poll()
+  {
+    lock.lock();
+    try {
+      return queue.isEmpty() ? null : removeFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the oldest message, waiting up to the supplied time if the queue is empty.
+   *
+   * @param timeout The time to wait.
+   * @param unit    The unit of the time to wait.
+   * @return The oldest message or null if none became available.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public GENOutgoingMessageHolder poll(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    long nanos = unit.toNanos(timeout);
+
+    lock.lockInterruptibly();
+    try {
+      while (queue.isEmpty()) {
+        if (0 >= nanos) {
+          return null;
+        }
+
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+
+      return removeFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes all queued messages.
+   *
+   * @param target The collection to add the removed messages to.
+   */
+  public void drainTo(Collection<GENOutgoingMessageHolder> target)
+  {
+    lock.lock();
+    try {
+      target.addAll(queue);
+      queue.clear();
+      queuedBytes = 0;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of queued messages.
+   *
+   * @return the queue depth.
+   */
+  public int size()
+  {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of queued encoded bytes.
+   *
+   * @return the queued bytes.
+   */
+  public long getQueuedBytes()
+  {
+    lock.lock();
+    try {
+      return queuedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the highest number of messages that have been queued at once.
+   *
+   * @return the message high water mark.
+   */
+  public int getHighWaterMessages()
+  {
+    lock.lock();
+    try {
+      return highWaterMessages;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the highest number of encoded bytes that have been queued at once.
+   *
+   * @return the byte high water mark.
+   */
+  public long getHighWaterBytes()
+  {
+    lock.lock();
+    try {
+      return highWaterBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of messages dropped to make space for newer BESTEFFORT messages.
+   *
+   * @return the dropped message count.
+   */
+  public long getDroppedMessages()
+  {
+    lock.lock();
+    try {
+      return droppedMessages;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of messages rejected because the queue was full.
+   *
+   * @return the rejected message count.
+   */
+  public long getRejectedMessages()
+  {
+    lock.lock();
+    try {
+      return rejectedMessages;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean fits(int size)
+  {
+    return fits(size, queue.size(), queuedBytes);
+  }
+
+  private boolean fits(int size, int messages, long bytes)
+  {
+    return (messages < maxMessages) && ((0 == messages) || ((bytes + size) <= maxBytes));
+  }
+
+  private boolean awaitSpace(int size) throws InterruptedException
+  {
+    if (OverflowPolicy.FAIL == policy) {
+      return false;
+    }
+
+    long nanos = blockTimeoutNanos;
+
+    while (!fits(size)) {
+      if (0 >= nanos) {
+        return false;
+      }
+
+      nanos = notFull.awaitNanos(nanos);
+    }
+
+    return true;
+  }
+
+  private LinkedList<GENOutgoingMessageHolder> dropOldestBestEffort(int size)
+  {
+    // first find how many of the oldest BESTEFFORT messages must go, nothing is dropped if even
+    // dropping all of them would not make enough space
+    int toDrop = 0;
+    int remainingMessages = queue.size();
+    long remainingBytes = queuedBytes;
+    Iterator<GENOutgoingMessageHolder> it = queue.iterator();
+
+    while (!fits(size, remainingMessages, remainingBytes)) {
+      if (!it.hasNext()) {
+        return null;
+      }
+
+      GENOutgoingMessageHolder queued = it.next();
+
+      if (isBestEffort(queued)) {
+        --remainingMessages;
+        remainingBytes -= queued.getEncodedSize();
+        ++toDrop;
+      }
+    }
+
+    LinkedList<GENOutgoingMessageHolder> dropped = new LinkedList<GENOutgoingMessageHolder>();
+    it = queue.iterator();
+
+    while (dropped.size() < toDrop) {
+      GENOutgoingMessageHolder queued = it.next();
+
+      if (isBestEffort(queued)) {
+        it.remove();
+        queuedBytes -= queued.getEncodedSize();
+        ++droppedMessages;
+        dropped.add(queued);
+      }
+    }
+
+    if (!dropped.isEmpty()) {
+      LOGGER.log(Level.FINE, "Dropped {0} BESTEFFORT messages queued for URI:{1}",
+          new Object[]{
+            dropped.size(), targetURI
+          });
+    }
+
+    return dropped;
+  }
+
+  private GENOutgoingMessageHolder removeFirst()
+  {
+    GENOutgoingMessageHolder message = queue.removeFirst();
+    queuedBytes -= message.getEncodedSize();
+    notFull.signalAll();
+
+    return message;
+  }
+
+  private static boolean isBestEffort(GENOutgoingMessageHolder message)
+  {
+    MALMessage original = message.getOriginalMessage();
+
+    return (null != original)
+        && QoSLevel.BESTEFFORT.equals(original.getHeader().getQoSlevel());
+  }
+}
@@ -1,10 +1,10 @@
 /* ----------------------------------------------------------------------------
- * Copyright (C) 2015      European Space Agency
+ * Copyright (C) 2014      European Space Agency
  *                         European Space Operations Centre
  *                         Darmstadt
  *                         Germany
  * ----------------------------------------------------------------------------
- * System                : CCSDS MO SPP Transport Framework
+ * System                : CCSDS MO Generic Transport Framework
  * ----------------------------------------------------------------------------
  * Licensed under the European Space Agency Public License, Version 2.0
  * You may not use this file except in compliance with the License.
@@ -18,52 +18,22 @@
  * limitations under the License. 
  * ----------------------------------------------------------------------------
  */
-package esa.mo.mal.transport.spp;
+package esa.mo.mal.transport.gen.sending;
+
 
 /**
- *
- * @author Cesar Coelho
+ * Interface used to be informed when an outgoing message has been handed to the low level transport
+ * or has failed to be sent. Listeners are called from the sending thread and so should not block.
  */
-public class SPPSegment
+public interface GENSendListener
 {
 
-  private final long segmentIndex;
-  private final byte[] packet;
-  private final long ssc;
-  private final boolean isFirst;
-  private final boolean isLast;
-
-  SPPSegment(long segmentIndex, int segmentFlags, long ssc, byte[] packet)
-  {
-    this.segmentIndex = segmentIndex;
-    this.ssc = ssc;
-    this.packet = packet;
-    this.isFirst = (1 == segmentFlags);
-    this.isLast = (2 == segmentFlags);
-  }
-
-  public boolean isFirst()
-  {
-    return this.isFirst;
-  }
-
-  public boolean isLast()
-  {
-    return this.isLast;
-  }
-
-  public byte[] getPacket()
-  {
-    return packet;
-  }
-
-  public long getSegmentIndex()
-  {
-    return segmentIndex;
-  }
-
-  public long getSSC()
-  {
-    return ssc;
-  }
+  /**
+   * Called once when the outcome of sending a message is known.
+   *
+   * @param message the outgoing message holder.
+   * @param result  TRUE if the message was successfully sent and FALSE if there was a communication
+   *                or internal problem.
+   */
+  void sendCompleted(GENOutgoingMessageHolder message, Boolean result);
 }
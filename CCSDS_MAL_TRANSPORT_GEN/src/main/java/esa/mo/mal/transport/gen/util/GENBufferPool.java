@@ -0,0 +1,191 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of reusable byte buffers, organised in power of two size classes. Buffers are reference
+ * counted, a buffer returns to the pool of its size class when its count drops to zero. Each size
+ * class keeps at most a fixed number of free buffers and all classes together keep at most a fixed
+ * number of bytes, so the pool cannot grow without limit. Requests larger than the largest size
+ * class are served with unpooled buffers.
+ *
+ * The buffers are heap arrays because the MAL element encoders write to an OutputStream and the
+ * transports send byte arrays.
+ */
+public class GENBufferPool
+{
+
+  /**
+   * System property setting the maximum number of free buffers kept per size class by the default
+   * pool.
+   */
+  public static final String MAX_FREE_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.bufferpool.maxfree";
+  /**
+   * System property setting the maximum number of bytes kept in free buffers by the default pool.
+   */
+  public static final String MAX_RETAINED_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.gen.bufferpool.maxretained";
+  /**
+   * The pool shared by the transports, size classes from 256 bytes to 1 MiB, by default 32 free
+   * buffers per class and 8 MiB in free buffers overall.
+   */
+  public static final GENBufferPool DEFAULT = new GENBufferPool(8, 20,
+      Integer.getInteger(MAX_FREE_PROPERTY, 32),
+      Long.getLong(MAX_RETAINED_PROPERTY, 8L * 1024 * 1024));
+  private final int minShift;
+  private final int maxShift;
+  private final int maxFreePerClass;
+  private final long maxRetainedBytes;
+  private final ConcurrentLinkedQueue<GENPooledBuffer>[] freeBuffers;
+  private final AtomicInteger[] freeCounts;
+  private final AtomicLong retainedBytes = new AtomicLong();
+  private final AtomicInteger allocations = new AtomicInteger();
+
+  /**
+   * Constructor, the free buffers are only bounded by their number per size class.
+   *
+   * @param minShift        log2 of the smallest size class.
+   * @param maxShift        log2 of the largest size class.
+   * @param maxFreePerClass the maximum number of free buffers kept per size class.
+   */
+  public GENBufferPool(int minShift, int maxShift, int maxFreePerClass)
+  {
+    this(minShift, maxShift, maxFreePerClass, Long.MAX_VALUE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param minShift         log2 of the smallest size class.
+   * @param maxShift         log2 of the largest size class.
+   * @param maxFreePerClass  the maximum number of free buffers kept per size class.
+   * @param maxRetainedBytes the maximum number of bytes kept in free buffers of all size classes.
+   */
+  @SuppressWarnings("unchecked")
+  public GENBufferPool(int minShift, int maxShift, int maxFreePerClass, long maxRetainedBytes)
+  {
+    this.minShift = minShift;
+    this.maxShift = maxShift;
+    this.maxFreePerClass = maxFreePerClass;
+    this.maxRetainedBytes = maxRetainedBytes;
+
+    final int classes = maxShift - minShift + 1;
+    this.freeBuffers = new ConcurrentLinkedQueue[classes];
+    this.freeCounts = new AtomicInteger[classes];
+
+    for (int i = 0; i < classes; i++) {
+      freeBuffers[i] = new ConcurrentLinkedQueue<GENPooledBuffer>();
+      freeCounts[i] = new AtomicInteger();
+    }
+  }
+
+  /**
+   * Returns a buffer of at least the requested capacity with a reference count of one.
+   *
+   * @param minCapacity the minimum capacity in bytes.
+   * @return the buffer, to be released by the caller.
+   */
+  public GENPooledBuffer acquire(int minCapacity)
+  {
+    final int sizeClass = sizeClass(minCapacity);
+    GENPooledBuffer buffer;
+
+    if (0 > sizeClass) {
+      allocations.incrementAndGet();
+      buffer = new GENPooledBuffer(null, minCapacity);
+    } else {
+      buffer = freeBuffers[sizeClass].poll();
+
+      if (null != buffer) {
+        freeCounts[sizeClass].decrementAndGet();
+        retainedBytes.addAndGet(-buffer.capacity());
+      } else {
+        allocations.incrementAndGet();
+        buffer = new GENPooledBuffer(this, 1 << (sizeClass + minShift));
+      }
+    }
+
+    buffer.acquired();
+
+    return buffer;
+  }
+
+  /**
+   * Returns the number of buffers that have been allocated because no free buffer was available.
+   * In steady state this should not increase.
+   *
+   * @return the allocation count.
+   */
+  public int getAllocations()
+  {
+    return allocations.get();
+  }
+
+  /**
+   * Returns the number of bytes currently kept in free buffers.
+   *
+   * @return the retained bytes.
+   */
+  public long getRetainedBytes()
+  {
+    return retainedBytes.get();
+  }
+
+  /**
+   * Called by a buffer whose reference count has dropped to zero.
+   *
+   * @param buffer the released buffer.
+   */
+  void recycle(GENPooledBuffer buffer)
+  {
+    final int sizeClass = sizeClass(buffer.capacity());
+
+    final int capacity = buffer.capacity();
+
+    if (freeCounts[sizeClass].incrementAndGet() <= maxFreePerClass) {
+      if (retainedBytes.addAndGet(capacity) <= maxRetainedBytes) {
+        freeBuffers[sizeClass].offer(buffer);
+        return;
+      }
+
+      retainedBytes.addAndGet(-capacity);
+    }
+
+    // enough free buffers of this size or overall already, leave this one to the garbage collector
+    freeCounts[sizeClass].decrementAndGet();
+  }
+
+  private int sizeClass(int capacity)
+  {
+    if (capacity <= (1 << minShift)) {
+      return 0;
+    }
+
+    final int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+
+    return (shift > maxShift) ? -1 : (shift - minShift);
+  }
+}
@@ -0,0 +1,234 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table of values keyed by a long, so that a lookup needs no key object. Lookups are lock free and
+ * allocate nothing, they read an immutable open addressing snapshot of the table. Changes are
+ * serialised and replace the snapshot with an updated copy, which suits tables that are read for
+ * every message but change rarely.
+ *
+ * @param <V> The type of the values, null values are not supported.
+ */
+public class GENLongKeyTable<V>
+{
+
+  private static final int MIN_CAPACITY = 16;
+  private volatile Snapshot table = new Snapshot(MIN_CAPACITY);
+
+  /**
+   * Returns the value of a key.
+   *
+   * @param key The key.
+   * @return The value or null if the key is not in the table.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(final long key)
+  {
+    return (V) table.get(key);
+  }
+
+  /**
+   * Sets the value of a key.
+   *
+   * @param key The key.
+   * @param value The value.
+   * @return The previous value or null if the key was not in the table.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized V put(final long key, final V value)
+  {
+    if (null == value) {
+      throw new IllegalArgumentException("Null table value");
+    }
+
+    final Object previous = table.get(key);
+    table = table.copy(key, value, (null == previous) ? 1 : 0);
+
+    return (V) previous;
+  }
+
+  /**
+   * Sets the value of a key unless the key is already in the table.
+   *
+   * @param key The key.
+   * @param value The value.
+   * @return The value in the table after the call.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized V putIfAbsent(final long key, final V value)
+  {
+    final Object previous = table.get(key);
+
+    if (null != previous) {
+      return (V) previous;
+    }
+
+    put(key, value);
+
+    return value;
+  }
+
+  /**
+   * Removes a key.
+   *
+   * @param key The key.
+   * @return The removed value or null if the key was not in the table.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized V remove(final long key)
+  {
+    final Object previous = table.get(key);
+
+    if (null != previous) {
+      table = table.copy(key, null, -1);
+    }
+
+    return (V) previous;
+  }
+
+  /**
+   * Removes all keys.
+   */
+  public synchronized void clear()
+  {
+    table = new Snapshot(MIN_CAPACITY);
+  }
+
+  /**
+   * Returns the number of keys in the table.
+   *
+   * @return the size.
+   */
+  public int size()
+  {
+    return table.size;
+  }
+
+  /**
+   * Returns the values of the table at the time of the call.
+   *
+   * @return a new list of the values.
+   */
+  @SuppressWarnings("unchecked")
+  public List<V> values()
+  {
+    final Snapshot current = table;
+    final List<V> values = new ArrayList<V>(current.size);
+
+    for (Object value : current.values) {
+      if (null != value) {
+        values.add((V) value);
+      }
+    }
+
+    return values;
+  }
+
+  /**
+   * An immutable open addressing table, kept at most half full.
+   */
+  private static final class Snapshot
+  {
+
+    private final long[] keys;
+    private final Object[] values;
+    private final int size;
+
+    Snapshot(final int capacity)
+    {
+      this.keys = new long[capacity];
+      this.values = new Object[capacity];
+      this.size = 0;
+    }
+
+    private Snapshot(final int capacity, final int size)
+    {
+      this.keys = new long[capacity];
+      this.values = new Object[capacity];
+      this.size = size;
+    }
+
+    Object get(final long key)
+    {
+      final int mask = keys.length - 1;
+      int i = hash(key) & mask;
+
+      while (null != values[i]) {
+        if (key == keys[i]) {
+          return values[i];
+        }
+        i = (i + 1) & mask;
+      }
+
+      return null;
+    }
+
+    /**
+     * Returns a copy with the key set to a value, or removed if the value is null.
+     */
+    Snapshot copy(final long key, final Object value, final int sizeChange)
+    {
+      final int newSize = size + sizeChange;
+      int capacity = MIN_CAPACITY;
+
+      while (capacity < newSize * 2) {
+        capacity <<= 1;
+      }
+
+      final Snapshot copy = new Snapshot(capacity, newSize);
+
+      for (int i = 0; i < keys.length; i++) {
+        if ((null != values[i]) && (key != keys[i])) {
+          copy.insert(keys[i], values[i]);
+        }
+      }
+
+      if (null != value) {
+        copy.insert(key, value);
+      }
+
+      return copy;
+    }
+
+    private void insert(final long key, final Object value)
+    {
+      final int mask = keys.length - 1;
+      int i = hash(key) & mask;
+
+      while (null != values[i]) {
+        i = (i + 1) & mask;
+      }
+
+      keys[i] = key;
+      values[i] = value;
+    }
+
+    private static int hash(final long key)
+    {
+      final long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h >>> 32);
+    }
+  }
+}
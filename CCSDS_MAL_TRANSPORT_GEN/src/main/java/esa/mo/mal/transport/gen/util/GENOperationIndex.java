@@ -0,0 +1,243 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.util;
+
+import org.ccsds.moims.mo.mal.MALArea;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALElementFactory;
+import org.ccsds.moims.mo.mal.MALElementFactoryRegistry;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALInteractionException;
+import org.ccsds.moims.mo.mal.MALOperation;
+import org.ccsds.moims.mo.mal.MALOperationStage;
+import org.ccsds.moims.mo.mal.MALService;
+import org.ccsds.moims.mo.mal.MALStandardError;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+/**
+ * An index of the MAL operation stages that messages have been encoded or decoded for. Entries are
+ * keyed by the area number, area version, service number, operation number and interaction stage
+ * packed into a long, so resolving a message header to its operation, body part types and element
+ * factories is a single probe of an open addressed table instead of a chain of lookups in the MAL
+ * API.
+ *
+ * The table is immutable, an insert publishes a new copy, so lookups never lock. Only stages that
+ * resolve are added, an area that is registered after a failed lookup is found by the next one. A
+ * failed lookup reports whether the area or the operation was not found, so callers do not have to
+ * repeat the MAL API lookups to tell.
+ */
+public final class GENOperationIndex
+{
+
+  private static final MALElementFactory[] NO_FACTORIES = new MALElementFactory[0];
+  private static final GENLongKeyTable<Entry> TABLE = new GENLongKeyTable<Entry>();
+
+  private GENOperationIndex()
+  {
+  }
+
+  /**
+   * Returns the entry for the operation stage of a message header.
+   *
+   * @param header The message header.
+   * @return the entry, or null if the operation is not known.
+   */
+  public static Entry lookup(final MALMessageHeader header)
+  {
+    return lookup(header.getServiceArea(), header.getAreaVersion(), header.getService(),
+        header.getOperation(), header.getInteractionStage());
+  }
+
+  /**
+   * Returns the entry for the operation stage of a message header, failing with the reason if the
+   * operation is not known.
+   *
+   * @param header The message header.
+   * @return the entry.
+   * @throws MALInteractionException with UNSUPPORTED_AREA if the area is not known, otherwise with
+   * UNSUPPORTED_OPERATION.
+   */
+  public static Entry require(final MALMessageHeader header) throws MALInteractionException
+  {
+    return require(header.getServiceArea(), header.getAreaVersion(), header.getService(),
+        header.getOperation(), header.getInteractionStage());
+  }
+
+  /**
+   * Returns the entry for an operation stage.
+   *
+   * @param area      The area number.
+   * @param version   The area version.
+   * @param service   The service number.
+   * @param operation The operation number.
+   * @param stage     The interaction stage.
+   * @return the entry, or null if the operation is not known.
+   */
+  public static Entry lookup(final UShort area, final UOctet version, final UShort service,
+      final UShort operation, final UOctet stage)
+  {
+    try {
+      return require(area, version, service, operation, stage);
+    } catch (MALInteractionException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the entry for an operation stage, failing with the reason if the operation is not
+   * known.
+   *
+   * @param area      The area number.
+   * @param version   The area version.
+   * @param service   The service number.
+   * @param operation The operation number.
+   * @param stage     The interaction stage.
+   * @return the entry.
+   * @throws MALInteractionException with UNSUPPORTED_AREA if the area is not known, otherwise with
+   * UNSUPPORTED_OPERATION.
+   */
+  public static Entry require(final UShort area, final UOctet version, final UShort service,
+      final UShort operation, final UOctet stage) throws MALInteractionException
+  {
+    if ((null == area) || (null == version)) {
+      throw unsupported(MALHelper.UNSUPPORTED_AREA_ERROR_NUMBER);
+    }
+
+    if ((null == service) || (null == operation) || (null == stage)) {
+      throw unsupported(MALHelper.UNSUPPORTED_OPERATION_ERROR_NUMBER);
+    }
+
+    final long key = ((long) area.getValue() << 48)
+        | ((long) version.getValue() << 40)
+        | ((long) service.getValue() << 24)
+        | ((long) operation.getValue() << 8)
+        | stage.getValue();
+
+    Entry entry = TABLE.get(key);
+
+    if (null == entry) {
+      entry = TABLE.putIfAbsent(key, resolve(area, version, service, operation, stage));
+    }
+
+    return entry;
+  }
+
+  private static Entry resolve(final UShort area, final UOctet version, final UShort service,
+      final UShort operation, final UOctet stage) throws MALInteractionException
+  {
+    final MALArea malArea = MALContextFactory.lookupArea(area, version);
+    if (null == malArea) {
+      throw unsupported(MALHelper.UNSUPPORTED_AREA_ERROR_NUMBER);
+    }
+
+    final MALService malService = malArea.getServiceByNumber(service);
+    if (null == malService) {
+      throw unsupported(MALHelper.UNSUPPORTED_OPERATION_ERROR_NUMBER);
+    }
+
+    final MALOperation malOperation = malService.getOperationByNumber(operation);
+    if (null == malOperation) {
+      throw unsupported(MALHelper.UNSUPPORTED_OPERATION_ERROR_NUMBER);
+    }
+
+    MALOperationStage malStage;
+    try {
+      malStage = malOperation.getOperationStage(stage);
+    } catch (IllegalArgumentException ex) {
+      malStage = null;
+    }
+
+    MALElementFactory[] factories = NO_FACTORIES;
+
+    if ((null != malStage) && (null != malStage.getElementShortForms())) {
+      final Object[] shortForms = malStage.getElementShortForms();
+      final MALElementFactoryRegistry registry = MALContextFactory.getElementFactoryRegistry();
+      factories = new MALElementFactory[shortForms.length];
+
+      for (int i = 0; i < shortForms.length; i++) {
+        if (shortForms[i] instanceof Long) {
+          factories[i] = registry.lookupElementFactory(shortForms[i]);
+        }
+      }
+    }
+
+    return new Entry(malOperation, malStage, factories);
+  }
+
+  private static MALInteractionException unsupported(final UInteger errorNumber)
+  {
+    return new MALInteractionException(new MALStandardError(errorNumber, null));
+  }
+
+  /**
+   * The resolved details of one operation stage.
+   */
+  public static final class Entry
+  {
+
+    private final MALOperation operation;
+    private final MALOperationStage stage;
+    private final MALElementFactory[] elementFactories;
+
+    Entry(final MALOperation operation, final MALOperationStage stage,
+        final MALElementFactory[] elementFactories)
+    {
+      this.operation = operation;
+      this.stage = stage;
+      this.elementFactories = elementFactories;
+    }
+
+    /**
+     * Returns the operation.
+     *
+     * @return the operation.
+     */
+    public MALOperation getOperation()
+    {
+      return operation;
+    }
+
+    /**
+     * Returns the operation stage.
+     *
+     * @return the stage, or null if the operation does not define the stage.
+     */
+    public MALOperationStage getStage()
+    {
+      return stage;
+    }
+
+    /**
+     * Returns the element factory for a body part of the stage.
+     *
+     * @param index The index of the body part.
+     * @return the factory, or null if the body part is an abstract type or the factory was not
+     * registered when the stage was indexed.
+     */
+    public MALElementFactory getElementFactory(final int index)
+    {
+      return (index < elementFactories.length) ? elementFactories[index] : null;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted byte buffer obtained from a GENBufferPool. The holder of a reference calls
+ * release once finished with it, anyone keeping the buffer beyond the holder's use calls retain
+ * first. The array must not be used after the last release.
+ */
+public final class GENPooledBuffer
+{
+
+  private final GENBufferPool pool;
+  private final byte[] array;
+  private final AtomicInteger refCount = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param pool     the owning pool, null for an unpooled buffer.
+   * @param capacity the size of the buffer.
+   */
+  GENPooledBuffer(GENBufferPool pool, int capacity)
+  {
+    this.pool = pool;
+    this.array = new byte[capacity];
+  }
+
+  /**
+   * Returns the backing array.
+   *
+   * @return the array.
+   */
+  public byte[] array()
+  {
+    return array;
+  }
+
+  /**
+   * Returns the capacity of the buffer.
+   *
+   * @return the capacity in bytes.
+   */
+  public int capacity()
+  {
+    return array.length;
+  }
+
+  /**
+   * Returns the current reference count.
+   *
+   * @return the reference count.
+   */
+  public int refCount()
+  {
+    return refCount.get();
+  }
+
+  /**
+   * Adds a reference to the buffer.
+   *
+   * @return this buffer.
+   * @throws IllegalStateException if the buffer has already been released.
+   */
+  public GENPooledBuffer retain()
+  {
+    int count;
+
+    do {
+      count = refCount.get();
+
+      if (0 >= count) {
+        throw new IllegalStateException("Pooled buffer already released");
+      }
+    } while (!refCount.compareAndSet(count, count + 1));
+
+    return this;
+  }
+
+  /**
+   * Removes a reference from the buffer, the last release returns it to its pool.
+   *
+   * @throws IllegalStateException if the buffer has already been released.
+   */
+  public void release()
+  {
+    final int count = refCount.decrementAndGet();
+
+    if (0 == count) {
+      if (null != pool) {
+        pool.recycle(this);
+      }
+    } else if (0 > count) {
+      refCount.incrementAndGet();
+      throw new IllegalStateException("Pooled buffer released too often");
+    }
+  }
+
+  /**
+   * Called by the pool when handing out the buffer.
+   */
+  void acquired()
+  {
+    refCount.set(1);
+  }
+}
@@ -0,0 +1,176 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that writes into buffers from a GENBufferPool, a drop in replacement for
+ * ByteArrayOutputStream on the encoding path. When the current buffer is full the content moves to a
+ * buffer of the next size class, so once the pool is warm encoding does not allocate.
+ *
+ * The written bytes can be read in place through getBuffer and size. As with ByteArrayOutputStream,
+ * closing the stream has no effect, because element encoders close the stream they wrap. The owner
+ * must call release, or detach the buffer, to hand the buffer back to the pool.
+ */
+public class GENPooledOutputStream extends OutputStream
+{
+
+  private final GENBufferPool pool;
+  private GENPooledBuffer buffer;
+  private int count = 0;
+
+  /**
+   * Creates a stream on the default pool.
+   */
+  public GENPooledOutputStream()
+  {
+    this(GENBufferPool.DEFAULT, 256);
+  }
+
+  /**
+   * Creates a stream.
+   *
+   * @param pool            the pool to take buffers from.
+   * @param initialCapacity the expected size of the content.
+   */
+  public GENPooledOutputStream(GENBufferPool pool, int initialCapacity)
+  {
+    this.pool = pool;
+    this.buffer = pool.acquire(initialCapacity);
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    ensureCapacity(count + 1);
+    buffer.array()[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    ensureCapacity(count + len);
+    System.arraycopy(b, off, buffer.array(), count, len);
+    count += len;
+  }
+
+  /**
+   * Returns the number of bytes written.
+   *
+   * @return the content size.
+   */
+  public int size()
+  {
+    return count;
+  }
+
+  /**
+   * Returns the array holding the content, valid from zero to size and only until the stream is
+   * next written to or closed.
+   *
+   * @return the backing array.
+   */
+  public byte[] getBuffer()
+  {
+    return buffer.array();
+  }
+
+  /**
+   * Returns a copy of the content.
+   *
+   * @return the written bytes.
+   */
+  public byte[] toByteArray()
+  {
+    byte[] copy = new byte[count];
+    System.arraycopy(buffer.array(), 0, copy, 0, count);
+
+    return copy;
+  }
+
+  /**
+   * Writes the content to another stream without copying it first.
+   *
+   * @param out the stream to write to.
+   * @throws IOException if the other stream fails.
+   */
+  public void writeTo(OutputStream out) throws IOException
+  {
+    out.write(buffer.array(), 0, count);
+  }
+
+  /**
+   * Discards the content, keeping the buffer.
+   */
+  public void reset()
+  {
+    count = 0;
+  }
+
+  /**
+   * Hands the buffer to the caller, who becomes responsible for releasing it. The stream can no
+   * longer be used.
+   *
+   * @return the buffer holding the content.
+   */
+  public GENPooledBuffer detachBuffer()
+  {
+    GENPooledBuffer detached = buffer;
+    buffer = null;
+
+    return detached;
+  }
+
+  /**
+   * Has no effect, the content stays available until the stream is released.
+   */
+  @Override
+  public void close()
+  {
+  }
+
+  /**
+   * Returns the buffer to the pool, the content is no longer available.
+   */
+  public void release()
+  {
+    if (null != buffer) {
+      buffer.release();
+      buffer = null;
+    }
+  }
+
+  private void ensureCapacity(int minCapacity) throws IOException
+  {
+    if (null == buffer) {
+      throw new IOException("Stream closed");
+    }
+
+    if (minCapacity > buffer.capacity()) {
+      GENPooledBuffer larger = pool.acquire(Math.max(minCapacity, buffer.capacity() << 1));
+      System.arraycopy(buffer.array(), 0, larger.array(), 0, count);
+      buffer.release();
+      buffer = larger;
+    }
+  }
+}
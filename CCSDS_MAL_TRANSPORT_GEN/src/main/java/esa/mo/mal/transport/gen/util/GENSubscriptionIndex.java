@@ -0,0 +1,460 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.gen.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.ccsds.moims.mo.mal.structures.EntityKey;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+
+/**
+ * An index of subscription patterns, a domain plus an entity key, for matching published updates
+ * against many subscriptions at once. Each pattern has an owner, matching an update returns the
+ * owners of all the patterns that select it.
+ *
+ * The domain is held as a trie with one level per domain identifier. A "*" identifier matches any
+ * single identifier and a trailing "*" matches any number of further identifiers, including none.
+ * Below the domain the four entity sub keys are hashed one level each, with a separate branch for
+ * the wildcard value of the level, "*" for the first sub key and 0 for the others. A null sub key
+ * only matches null. As with the original MAL key matching, a wildcard in the published key matches
+ * every pattern value of that level.
+ *
+ * Patterns are added and removed one at a time. An owner may add the same pattern more than once,
+ * it is then matched until it has been removed as many times. The index is not thread safe.
+ *
+ * @param <T> The type of the pattern owners.
+ */
+public class GENSubscriptionIndex<T>
+{
+
+  /**
+   * Match all value of domain identifiers and of the first sub key.
+   */
+  public static final String ALL_ID = "*";
+  /**
+   * Match all value of the second, third and fourth sub keys.
+   */
+  public static final Long ALL_NUMBER = 0L;
+  private static final int KEY_LEVELS = 4;
+  private final DomainNode<T> root = new DomainNode<T>();
+  private int size = 0;
+
+  /**
+   * Adds a pattern.
+   *
+   * @param domain The domain of the pattern, may contain wildcards. Null is the empty domain.
+   * @param key    The entity key of the pattern, may contain wildcards. Null matches null keys.
+   * @param owner  The owner returned when the pattern matches.
+   */
+  public void add(final IdentifierList domain, final EntityKey key, final T owner)
+  {
+    final String[] parts = domainParts(domain);
+    DomainNode<T> node = root;
+    boolean prefix = false;
+
+    for (int i = 0; i < parts.length; i++) {
+      if (ALL_ID.equals(parts[i]) && (i == parts.length - 1)) {
+        prefix = true;
+      } else {
+        node = node.child(parts[i], true);
+      }
+    }
+
+    KeyNode<T> keyNode;
+    if (prefix) {
+      if (null == node.prefixKeys) {
+        node.prefixKeys = new KeyNode<T>();
+      }
+      keyNode = node.prefixKeys;
+    } else {
+      if (null == node.exactKeys) {
+        node.exactKeys = new KeyNode<T>();
+      }
+      keyNode = node.exactKeys;
+    }
+
+    final Object[] values = keyValues(key);
+    for (int level = 0; level < KEY_LEVELS; level++) {
+      keyNode = keyNode.child(level, values[level], true);
+    }
+
+    if (null == keyNode.owners) {
+      keyNode.owners = new HashMap<T, int[]>();
+    }
+
+    final int[] count = keyNode.owners.get(owner);
+    if (null == count) {
+      keyNode.owners.put(owner, new int[]{1});
+    } else {
+      ++count[0];
+    }
+
+    ++size;
+  }
+
+  /**
+   * Removes a pattern that was added with the same arguments.
+   *
+   * @param domain The domain of the pattern.
+   * @param key    The entity key of the pattern.
+   * @param owner  The owner of the pattern.
+   * @return True if the pattern was found and removed.
+   */
+  public boolean remove(final IdentifierList domain, final EntityKey key, final T owner)
+  {
+    final boolean removed = removeDomain(root, domainParts(domain), 0, keyValues(key), owner);
+
+    if (removed) {
+      --size;
+    }
+
+    return removed;
+  }
+
+  /**
+   * Adds the owners of the patterns that match a published update to a collection. An owner with
+   * several matching patterns is added once per pattern, pass a set to receive each owner once.
+   *
+   * @param domain  The domain of the update.
+   * @param key     The entity key of the update.
+   * @param matches The collection the owners are added to.
+   */
+  public void match(final IdentifierList domain, final EntityKey key,
+      final Collection<? super T> matches)
+  {
+    matchDomain(root, domainParts(domain), 0, keyValues(key), matches);
+  }
+
+  /**
+   * Returns true if any pattern matches a published update.
+   *
+   * @param domain The domain of the update.
+   * @param key    The entity key of the update.
+   * @return True if matched.
+   */
+  public boolean matches(final IdentifierList domain, final EntityKey key)
+  {
+    return anyDomain(root, domainParts(domain), 0, keyValues(key));
+  }
+
+  /**
+   * Returns the number of patterns in the index.
+   *
+   * @return the pattern count.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Returns true if the index holds no patterns.
+   *
+   * @return True if empty.
+   */
+  public boolean isEmpty()
+  {
+    return 0 == size;
+  }
+
+  private static <T> void matchDomain(final DomainNode<T> node, final String[] parts,
+      final int index, final Object[] values, final Collection<? super T> matches)
+  {
+    if (null != node.prefixKeys) {
+      matchKey(node.prefixKeys, 0, values, matches);
+    }
+
+    if (index == parts.length) {
+      if (null != node.exactKeys) {
+        matchKey(node.exactKeys, 0, values, matches);
+      }
+    } else {
+      final DomainNode<T> child = node.child(parts[index], false);
+      if (null != child) {
+        matchDomain(child, parts, index + 1, values, matches);
+      }
+
+      final DomainNode<T> any = node.child(ALL_ID, false);
+      if ((null != any) && (any != child)) {
+        matchDomain(any, parts, index + 1, values, matches);
+      }
+    }
+  }
+
+  private static <T> void matchKey(final KeyNode<T> node, final int level, final Object[] values,
+      final Collection<? super T> matches)
+  {
+    if (KEY_LEVELS == level) {
+      for (Map.Entry<T, int[]> owner : node.owners.entrySet()) {
+        for (int i = 0; i < owner.getValue()[0]; i++) {
+          matches.add(owner.getKey());
+        }
+      }
+      return;
+    }
+
+    if (isWildcard(level, values[level])) {
+      if (null != node.children) {
+        for (KeyNode<T> child : node.children.values()) {
+          matchKey(child, level + 1, values, matches);
+        }
+      }
+
+      if (null != node.wildcard) {
+        matchKey(node.wildcard, level + 1, values, matches);
+      }
+    } else {
+      final KeyNode<T> child = node.child(level, values[level], false);
+      if (null != child) {
+        matchKey(child, level + 1, values, matches);
+      }
+
+      if (null != node.wildcard) {
+        matchKey(node.wildcard, level + 1, values, matches);
+      }
+    }
+  }
+
+  private static <T> boolean anyDomain(final DomainNode<T> node, final String[] parts,
+      final int index, final Object[] values)
+  {
+    if ((null != node.prefixKeys) && anyKey(node.prefixKeys, 0, values)) {
+      return true;
+    }
+
+    if (index == parts.length) {
+      return (null != node.exactKeys) && anyKey(node.exactKeys, 0, values);
+    }
+
+    final DomainNode<T> child = node.child(parts[index], false);
+    if ((null != child) && anyDomain(child, parts, index + 1, values)) {
+      return true;
+    }
+
+    final DomainNode<T> any = node.child(ALL_ID, false);
+
+    return (null != any) && (any != child) && anyDomain(any, parts, index + 1, values);
+  }
+
+  private static <T> boolean anyKey(final KeyNode<T> node, final int level, final Object[] values)
+  {
+    if (KEY_LEVELS == level) {
+      // empty nodes are pruned on removal, so a leaf always has an owner
+      return (null != node.owners) && !node.owners.isEmpty();
+    }
+
+    if ((null != node.wildcard) && anyKey(node.wildcard, level + 1, values)) {
+      return true;
+    }
+
+    if (isWildcard(level, values[level])) {
+      if (null != node.children) {
+        for (KeyNode<T> child : node.children.values()) {
+          if (anyKey(child, level + 1, values)) {
+            return true;
+          }
+        }
+      }
+
+      return false;
+    }
+
+    final KeyNode<T> child = node.child(level, values[level], false);
+
+    return (null != child) && anyKey(child, level + 1, values);
+  }
+
+  private static <T> boolean removeDomain(final DomainNode<T> node, final String[] parts,
+      final int index, final Object[] values, final T owner)
+  {
+    if ((index == parts.length - 1) && ALL_ID.equals(parts[index])) {
+      if ((null != node.prefixKeys) && removeKey(node.prefixKeys, 0, values, owner)) {
+        if (node.prefixKeys.isEmpty()) {
+          node.prefixKeys = null;
+        }
+        return true;
+      }
+      return false;
+    }
+
+    if (index == parts.length) {
+      if ((null != node.exactKeys) && removeKey(node.exactKeys, 0, values, owner)) {
+        if (node.exactKeys.isEmpty()) {
+          node.exactKeys = null;
+        }
+        return true;
+      }
+      return false;
+    }
+
+    final DomainNode<T> child = node.child(parts[index], false);
+
+    if ((null != child) && removeDomain(child, parts, index + 1, values, owner)) {
+      if (child.isEmpty()) {
+        node.children.remove(parts[index]);
+      }
+      return true;
+    }
+
+    return false;
+  }
+
+  private static <T> boolean removeKey(final KeyNode<T> node, final int level,
+      final Object[] values, final T owner)
+  {
+    if (KEY_LEVELS == level) {
+      final int[] count = (null == node.owners) ? null : node.owners.get(owner);
+
+      if (null == count) {
+        return false;
+      }
+
+      if (0 == --count[0]) {
+        node.owners.remove(owner);
+      }
+      return true;
+    }
+
+    final KeyNode<T> child = node.child(level, values[level], false);
+
+    if ((null != child) && removeKey(child, level + 1, values, owner)) {
+      if (child.isEmpty()) {
+        if (child == node.wildcard) {
+          node.wildcard = null;
+        } else {
+          node.children.remove(values[level]);
+        }
+      }
+      return true;
+    }
+
+    return false;
+  }
+
+  private static boolean isWildcard(final int level, final Object value)
+  {
+    return (0 == level) ? ALL_ID.equals(value) : ALL_NUMBER.equals(value);
+  }
+
+  private static String[] domainParts(final IdentifierList domain)
+  {
+    if (null == domain) {
+      return new String[0];
+    }
+
+    final String[] parts = new String[domain.size()];
+    for (int i = 0; i < parts.length; i++) {
+      final Identifier id = domain.get(i);
+      parts[i] = (null == id) ? null : id.getValue();
+    }
+
+    return parts;
+  }
+
+  private static Object[] keyValues(final EntityKey key)
+  {
+    if (null == key) {
+      return new Object[KEY_LEVELS];
+    }
+
+    final Identifier first = key.getFirstSubKey();
+
+    return new Object[]{
+      (null == first) ? null : first.getValue(),
+      key.getSecondSubKey(),
+      key.getThirdSubKey(),
+      key.getFourthSubKey()
+    };
+  }
+
+  /**
+   * A level of the domain trie. The "*" child is held in the children map like any identifier.
+   */
+  private static final class DomainNode<T>
+  {
+
+    private Map<String, DomainNode<T>> children = null;
+    private KeyNode<T> exactKeys = null;
+    private KeyNode<T> prefixKeys = null;
+
+    DomainNode<T> child(final String part, final boolean create)
+    {
+      DomainNode<T> child = (null == children) ? null : children.get(part);
+
+      if ((null == child) && create) {
+        if (null == children) {
+          children = new HashMap<String, DomainNode<T>>();
+        }
+        child = new DomainNode<T>();
+        children.put(part, child);
+      }
+
+      return child;
+    }
+
+    boolean isEmpty()
+    {
+      return ((null == children) || children.isEmpty()) && (null == exactKeys)
+          && (null == prefixKeys);
+    }
+  }
+
+  /**
+   * A level of the entity key trie, the owners are held at the fourth level.
+   */
+  private static final class KeyNode<T>
+  {
+
+    private Map<Object, KeyNode<T>> children = null;
+    private KeyNode<T> wildcard = null;
+    private Map<T, int[]> owners = null;
+
+    KeyNode<T> child(final int level, final Object value, final boolean create)
+    {
+      if (isWildcard(level, value)) {
+        if ((null == wildcard) && create) {
+          wildcard = new KeyNode<T>();
+        }
+        return wildcard;
+      }
+
+      KeyNode<T> child = (null == children) ? null : children.get(value);
+
+      if ((null == child) && create) {
+        if (null == children) {
+          children = new HashMap<Object, KeyNode<T>>();
+        }
+        child = new KeyNode<T>();
+        children.put(value, child);
+      }
+
+      return child;
+    }
+
+    boolean isEmpty()
+    {
+      return ((null == children) || children.isEmpty()) && (null == wildcard)
+          && ((null == owners) || owners.isEmpty());
+    }
+  }
+}
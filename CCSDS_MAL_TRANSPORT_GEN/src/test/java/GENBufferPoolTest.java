@@ -0,0 +1,82 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.util.GENBufferPool;
+import esa.mo.mal.transport.gen.util.GENPooledBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the buffer pool reuses released buffers within its per class and overall limits.
+ */
+public class GENBufferPoolTest
+{
+
+  @Test
+  public void testReleasedBufferIsReused() throws Exception
+  {
+    System.out.println("GEN buffer pool reuse test");
+    GENBufferPool pool = new GENBufferPool(8, 12, 4, 1 << 20);
+    GENPooledBuffer buffer = pool.acquire(300);
+    assertEquals(512, buffer.capacity());
+    buffer.release();
+    assertEquals(512, pool.getRetainedBytes());
+
+    assertSame(buffer, pool.acquire(400));
+    assertEquals(0, pool.getRetainedBytes());
+    assertEquals(1, pool.getAllocations());
+  }
+
+  @Test
+  public void testFreeBuffersPerClassAreBounded() throws Exception
+  {
+    System.out.println("GEN buffer pool class limit test");
+    GENBufferPool pool = new GENBufferPool(8, 12, 2, 1 << 20);
+    release(pool.acquire(256), pool.acquire(256), pool.acquire(256));
+
+    assertEquals(512, pool.getRetainedBytes());
+  }
+
+  @Test
+  public void testRetainedBytesAreBounded() throws Exception
+  {
+    System.out.println("GEN buffer pool byte limit test");
+    GENBufferPool pool = new GENBufferPool(8, 12, 32, 10000);
+    release(pool.acquire(4096), pool.acquire(4096), pool.acquire(4096), pool.acquire(256));
+
+    // two of the 4 KiB buffers fit, the third would exceed the limit but the small one still fits
+    assertEquals(2 * 4096 + 256, pool.getRetainedBytes());
+
+    int before = pool.getAllocations();
+    pool.acquire(4096);
+    pool.acquire(4096);
+    assertEquals(before, pool.getAllocations());
+    pool.acquire(4096);
+    assertEquals(before + 1, pool.getAllocations());
+  }
+
+  private static void release(GENPooledBuffer... buffers)
+  {
+    for (GENPooledBuffer buffer : buffers) {
+      buffer.release();
+    }
+  }
+}
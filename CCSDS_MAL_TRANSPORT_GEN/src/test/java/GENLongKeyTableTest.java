@@ -0,0 +1,90 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.util.GENLongKeyTable;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the long keyed copy on write table through growth, removal and colliding keys.
+ */
+public class GENLongKeyTableTest
+{
+
+  @Test
+  public void testPutGetRemove()
+  {
+    System.out.println("GENLongKeyTable put, get and remove test");
+    GENLongKeyTable<String> table = new GENLongKeyTable<String>();
+
+    assertNull(table.put(1L, "a"));
+    assertEquals("a", table.put(1L, "b"));
+    assertEquals("b", table.putIfAbsent(1L, "c"));
+    assertEquals("d", table.putIfAbsent(-1L, "d"));
+    assertEquals(2, table.size());
+
+    assertEquals("b", table.remove(1L));
+    assertNull(table.remove(1L));
+    assertNull(table.get(1L));
+    assertEquals("d", table.get(-1L));
+    assertEquals(1, table.size());
+
+    table.clear();
+    assertEquals(0, table.size());
+    assertNull(table.get(-1L));
+  }
+
+  @Test
+  public void testGrowAndShrink()
+  {
+    System.out.println("GENLongKeyTable grow and shrink test");
+    GENLongKeyTable<Long> table = new GENLongKeyTable<Long>();
+
+    // keys differing only in their high bits, as packed keys do
+    for (long i = 0; i < 1000; i++) {
+      table.put(i << 32, i);
+    }
+
+    assertEquals(1000, table.size());
+
+    for (long i = 0; i < 1000; i += 2) {
+      assertEquals(Long.valueOf(i), table.remove(i << 32));
+    }
+
+    for (long i = 0; i < 1000; i++) {
+      assertEquals((0 == i % 2) ? null : Long.valueOf(i), table.get(i << 32));
+    }
+
+    List<Long> values = table.values();
+    Collections.sort(values);
+    assertEquals(500, values.size());
+    assertEquals(Long.valueOf(1), values.get(0));
+    assertEquals(Long.valueOf(999), values.get(499));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullValue()
+  {
+    new GENLongKeyTable<String>().put(1L, null);
+  }
+}
@@ -0,0 +1,126 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryStreamFactory;
+import esa.mo.mal.encoder.binary.split.SplitBinaryStreamFactory;
+import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that decoding only the header returns the encoded body, in place when the header decoder
+ * reports where the body starts and as a copy of the remainder of the packet when it does not.
+ */
+public class GENMessageDecodeHeaderTest
+{
+
+  @Test
+  public void testBodyIsReturnedInPlaceWhenTheOffsetIsKnown() throws Exception
+  {
+    System.out.println("GEN decode header fixed binary test");
+    MALElementStreamFactory factory = new FixedBinaryStreamFactory();
+    byte[] body = body(factory);
+    byte[] packet = packet(factory, body);
+
+    Blob encodedBody = GENMessage.decodeHeader(new GENMessageHeader(), new HashMap(), packet,
+        factory);
+
+    assertSame(packet, encodedBody.getValue());
+    assertEquals(packet.length - body.length, encodedBody.getOffset());
+    assertBody(factory, encodedBody);
+  }
+
+  @Test
+  public void testRemainderIsReturnedWhenTheOffsetIsNotKnown() throws Exception
+  {
+    System.out.println("GEN decode header split binary test");
+    MALElementStreamFactory factory = new SplitBinaryStreamFactory();
+    byte[] body = body(factory);
+    byte[] packet = packet(factory, body);
+    GENMessageHeader header = new GENMessageHeader();
+
+    Blob encodedBody = GENMessage.decodeHeader(header, new HashMap(), packet, factory);
+
+    assertEquals("gentest://remote/x", header.getURITo().getValue());
+    assertEquals(body.length, encodedBody.getLength());
+    assertArrayEquals(body, Arrays.copyOfRange(encodedBody.getValue(), encodedBody.getOffset(),
+        encodedBody.getOffset() + encodedBody.getLength()));
+    assertBody(factory, encodedBody);
+  }
+
+  private static byte[] body(MALElementStreamFactory factory) throws Exception
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MALElementOutputStream enc = factory.createOutputStream(baos);
+    enc.writeElement(new Blob(new byte[]{1, 2, 3, 4, 5}), null);
+    enc.close();
+
+    return baos.toByteArray();
+  }
+
+  /**
+   * Encodes a header with its own stream followed by the separately encoded body, as the
+   * transports do.
+   */
+  private static byte[] packet(MALElementStreamFactory factory, byte[] body) throws Exception
+  {
+    GENMessageHeader header = new GENMessageHeader(new URI("gentest://local/source"),
+        new Blob(), new URI("gentest://remote/x"), new Time(0), QoSLevel.ASSURED,
+        new UInteger(1), new IdentifierList(), new Identifier("zone"), SessionType.LIVE,
+        new Identifier("session"), InteractionType.SEND, new UOctet((short) 1), 7L,
+        new UShort(1), new UShort(1), new UShort(1), new UOctet((short) 1), Boolean.FALSE);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MALElementOutputStream enc = factory.createOutputStream(baos);
+    enc.writeElement(header, new MALEncodingContext(header, null, 0, null, null));
+    enc.close();
+    baos.write(body);
+
+    return baos.toByteArray();
+  }
+
+  private static void assertBody(MALElementStreamFactory factory, Blob encodedBody)
+      throws Exception
+  {
+    Blob decoded = (Blob) factory.createInputStream(encodedBody.getValue(),
+        encodedBody.getOffset()).readElement(new Blob(), null);
+
+    assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, Arrays.copyOfRange(decoded.getValue(),
+        decoded.getOffset(), decoded.getOffset() + decoded.getLength()));
+  }
+}
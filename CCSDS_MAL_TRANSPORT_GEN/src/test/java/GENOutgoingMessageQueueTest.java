@@ -0,0 +1,252 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageQueue;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageQueue.OverflowPolicy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the BLOCK, FAIL and DROP_OLDEST overflow policies of the outgoing message queue, bounded by
+ * message count and by encoded bytes.
+ */
+public class GENOutgoingMessageQueueTest
+{
+
+  private static GENTestTransport transport;
+
+  @BeforeClass
+  public static void setUpClass() throws Exception
+  {
+    transport = new GENTestTransport(null);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception
+  {
+    transport.close();
+  }
+
+  @Test
+  public void testFailRejectsWhenFull() throws Exception
+  {
+    System.out.println("GEN queue FAIL policy test");
+    GENOutgoingMessageQueue queue = queue(2, 0, OverflowPolicy.FAIL, 5);
+    GENOutgoingMessageHolder a = holder(QoSLevel.ASSURED, 10);
+    GENOutgoingMessageHolder b = holder(QoSLevel.BESTEFFORT, 10);
+
+    assertTrue(queue.offer(a));
+    assertTrue(queue.offer(b));
+    long start = System.nanoTime();
+    assertFalse(queue.offer(holder(QoSLevel.BESTEFFORT, 10)));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+    assertEquals(2, queue.size());
+    assertEquals(1, queue.getRejectedMessages());
+    assertEquals(0, queue.getDroppedMessages());
+    assertSame(a, queue.poll());
+    assertSame(b, queue.poll());
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void testByteBoundAcceptsOversizedMessageIntoEmptyQueue() throws Exception
+  {
+    System.out.println("GEN queue byte bound test");
+    GENOutgoingMessageQueue queue = queue(0, 100, OverflowPolicy.FAIL, 5);
+
+    assertTrue(queue.offer(holder(QoSLevel.ASSURED, 60)));
+    assertFalse(queue.offer(holder(QoSLevel.ASSURED, 60)));
+    assertTrue(queue.offer(holder(QoSLevel.ASSURED, 40)));
+    assertEquals(100, queue.getQueuedBytes());
+
+    queue.poll();
+    queue.poll();
+    assertEquals(0, queue.getQueuedBytes());
+    assertTrue(queue.offer(holder(QoSLevel.ASSURED, 500)));
+    assertEquals(500, queue.getHighWaterBytes());
+    assertEquals(2, queue.getHighWaterMessages());
+  }
+
+  @Test
+  public void testBlockWaitsForSpace() throws Exception
+  {
+    System.out.println("GEN queue BLOCK policy test");
+    final GENOutgoingMessageQueue queue = queue(1, 0, OverflowPolicy.BLOCK, 30);
+    final GENOutgoingMessageHolder first = holder(QoSLevel.ASSURED, 10);
+    final GENOutgoingMessageHolder second = holder(QoSLevel.ASSURED, 10);
+    final CountDownLatch offered = new CountDownLatch(1);
+    final AtomicBoolean accepted = new AtomicBoolean();
+    assertTrue(queue.offer(first));
+
+    Thread producer = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try {
+          accepted.set(queue.offer(second));
+        } catch (InterruptedException ex) {
+          // leaves accepted false
+        }
+
+        offered.countDown();
+      }
+    };
+    producer.start();
+
+    // the producer cannot complete while the queue is full
+    assertFalse(offered.await(200, TimeUnit.MILLISECONDS));
+    assertSame(first, queue.take());
+
+    assertTrue(offered.await(30, TimeUnit.SECONDS));
+    assertTrue(accepted.get());
+    assertSame(second, queue.take());
+    assertEquals(0, queue.getRejectedMessages());
+  }
+
+  @Test
+  public void testBlockRejectsAfterTimeout() throws Exception
+  {
+    System.out.println("GEN queue BLOCK timeout test");
+    GENOutgoingMessageQueue queue = queue(1, 0, OverflowPolicy.BLOCK, 1);
+    assertTrue(queue.offer(holder(QoSLevel.ASSURED, 10)));
+
+    long start = System.nanoTime();
+    assertFalse(queue.offer(holder(QoSLevel.ASSURED, 10)));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    assertEquals(1, queue.getRejectedMessages());
+  }
+
+  @Test
+  public void testDropOldestDropsOldestBestEffort() throws Exception
+  {
+    System.out.println("GEN queue DROP_OLDEST policy test");
+    GENOutgoingMessageQueue queue = queue(3, 0, OverflowPolicy.DROP_OLDEST, 1);
+    GENOutgoingMessageHolder assured = holder(QoSLevel.ASSURED, 10);
+    GENOutgoingMessageHolder oldest = holder(QoSLevel.BESTEFFORT, 10);
+    GENOutgoingMessageHolder older = holder(QoSLevel.BESTEFFORT, 10);
+    GENOutgoingMessageHolder newest = holder(QoSLevel.BESTEFFORT, 10);
+
+    assertTrue(queue.offer(assured));
+    assertTrue(queue.offer(oldest));
+    assertTrue(queue.offer(older));
+    assertTrue(queue.offer(newest));
+
+    // the oldest BESTEFFORT message is failed, the ASSURED one ahead of it is kept
+    assertTrue(oldest.isDone());
+    assertEquals(Boolean.FALSE, oldest.get());
+    assertEquals(1, queue.getDroppedMessages());
+    assertEquals(0, queue.getRejectedMessages());
+    assertSame(assured, queue.poll());
+    assertSame(older, queue.poll());
+    assertSame(newest, queue.poll());
+  }
+
+  @Test
+  public void testDropOldestBlocksForOtherQoSLevels() throws Exception
+  {
+    System.out.println("GEN queue DROP_OLDEST non BESTEFFORT test");
+    GENOutgoingMessageQueue queue = queue(2, 0, OverflowPolicy.DROP_OLDEST, 1);
+    GENOutgoingMessageHolder a = holder(QoSLevel.BESTEFFORT, 10);
+    GENOutgoingMessageHolder b = holder(QoSLevel.BESTEFFORT, 10);
+    assertTrue(queue.offer(a));
+    assertTrue(queue.offer(b));
+
+    // an ASSURED message never drops queued messages, it waits for space as for BLOCK
+    long start = System.nanoTime();
+    assertFalse(queue.offer(holder(QoSLevel.ASSURED, 10)));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    assertFalse(a.isDone());
+    assertFalse(b.isDone());
+    assertEquals(0, queue.getDroppedMessages());
+    assertEquals(1, queue.getRejectedMessages());
+  }
+
+  @Test
+  public void testDropOldestDropsOnlyAsManyBytesAsNeeded() throws Exception
+  {
+    System.out.println("GEN queue DROP_OLDEST byte bound test");
+    GENOutgoingMessageQueue queue = queue(0, 100, OverflowPolicy.DROP_OLDEST, 1);
+    GENOutgoingMessageHolder first = holder(QoSLevel.BESTEFFORT, 30);
+    GENOutgoingMessageHolder second = holder(QoSLevel.BESTEFFORT, 30);
+    GENOutgoingMessageHolder third = holder(QoSLevel.BESTEFFORT, 10);
+    GENOutgoingMessageHolder assured = holder(QoSLevel.ASSURED, 30);
+    assertTrue(queue.offer(first));
+    assertTrue(queue.offer(second));
+    assertTrue(queue.offer(third));
+    assertTrue(queue.offer(assured));
+
+    // 100 bytes queued, 50 more need the two oldest BESTEFFORT messages to go
+    GENOutgoingMessageHolder newest = holder(QoSLevel.BESTEFFORT, 50);
+    assertTrue(queue.offer(newest));
+    assertEquals(2, queue.getDroppedMessages());
+    assertTrue(first.isDone());
+    assertTrue(second.isDone());
+    assertFalse(third.isDone());
+    assertEquals(90, queue.getQueuedBytes());
+    assertSame(third, queue.poll());
+    assertSame(assured, queue.poll());
+    assertSame(newest, queue.poll());
+  }
+
+  @Test
+  public void testDropOldestKeepsMessagesIfDroppingCannotMakeSpace() throws Exception
+  {
+    System.out.println("GEN queue DROP_OLDEST no eviction test");
+    GENOutgoingMessageQueue queue = queue(0, 100, OverflowPolicy.DROP_OLDEST, 1);
+    GENOutgoingMessageHolder bestEffort = holder(QoSLevel.BESTEFFORT, 30);
+    GENOutgoingMessageHolder assured = holder(QoSLevel.ASSURED, 60);
+    assertTrue(queue.offer(bestEffort));
+    assertTrue(queue.offer(assured));
+
+    // even without the BESTEFFORT message 60 + 50 bytes do not fit, so nothing is dropped and
+    // the message waits for space as for BLOCK
+    long start = System.nanoTime();
+    assertFalse(queue.offer(holder(QoSLevel.BESTEFFORT, 50)));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    assertFalse(bestEffort.isDone());
+    assertEquals(0, queue.getDroppedMessages());
+    assertEquals(1, queue.getRejectedMessages());
+    assertEquals(2, queue.size());
+    assertEquals(90, queue.getQueuedBytes());
+  }
+
+  private static GENOutgoingMessageQueue queue(int maxMessages, long maxBytes,
+      OverflowPolicy policy, int blockTimeout)
+  {
+    return new GENOutgoingMessageQueue("gentest://remote", maxMessages, maxBytes, policy,
+        blockTimeout);
+  }
+
+  private static GENOutgoingMessageHolder holder(QoSLevel qos, int size) throws Exception
+  {
+    return new GENOutgoingMessageHolder<byte[]>(30, "gentest://remote", "gentest://remote/x",
+        null, true, transport.message("gentest://remote/x", null, 0, qos), new byte[size]);
+  }
+}
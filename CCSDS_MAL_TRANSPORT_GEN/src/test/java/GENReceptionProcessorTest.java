@@ -0,0 +1,189 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.GENReceptionHandler;
+import esa.mo.mal.transport.gen.GENTransport;
+import esa.mo.mal.transport.gen.receivers.GENIncomingMessageDecoder;
+import esa.mo.mal.transport.gen.receivers.GENIncomingMessageHolder;
+import esa.mo.mal.transport.gen.sending.GENMessageSender;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the reception processors decode the messages of one reception handler in reception
+ * order on one thread, and that closing the transport lets already received messages be decoded.
+ */
+public class GENReceptionProcessorTest
+{
+
+  private static final int HANDLERS = 8;
+  private static final int MESSAGES = 500;
+
+  @Test
+  public void testMessagesOfAHandlerAreDecodedInOrderOnOneThread() throws Exception
+  {
+    System.out.println("GEN reception processor ordering test");
+    Map properties = new HashMap();
+    properties.put(GENTransport.RECEPTION_PROCESSORS_PROPERTY, "4");
+    GENTestTransport transport = new GENTestTransport(properties);
+    CountDownLatch done = new CountDownLatch(HANDLERS * MESSAGES);
+    List<Handler> handlers = new ArrayList<Handler>();
+
+    for (int i = 0; i < HANDLERS; i++) {
+      handlers.add(new Handler());
+    }
+
+    // interleave the handlers so that their messages are queued on the processors together
+    for (int seq = 0; seq < MESSAGES; seq++) {
+      for (Handler handler : handlers) {
+        transport.receive(handler, new RecordingDecoder(handler, seq, done));
+      }
+    }
+
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    transport.close();
+
+    for (Handler handler : handlers) {
+      assertEquals(MESSAGES, handler.decoded.size());
+
+      for (int seq = 0; seq < MESSAGES; seq++) {
+        assertEquals(Integer.valueOf(seq), handler.decoded.get(seq));
+      }
+
+      assertEquals(1, handler.threads.size());
+    }
+  }
+
+  @Test
+  public void testCloseDecodesAlreadyReceivedMessages() throws Exception
+  {
+    System.out.println("GEN reception processor shutdown test");
+    GENTestTransport transport = new GENTestTransport(null);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger decoded = new AtomicInteger();
+    Handler handler = new Handler();
+
+    // hold the processor so that the following messages are still queued when closing
+    transport.receive(handler, new GENIncomingMessageDecoder()
+    {
+      @Override
+      public GENIncomingMessageHolder decodeAndCreateMessage()
+      {
+        started.countDown();
+
+        try {
+          release.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+
+        decoded.incrementAndGet();
+        return null;
+      }
+    });
+
+    CountDownLatch done = new CountDownLatch(MESSAGES);
+    for (int seq = 0; seq < MESSAGES; seq++) {
+      transport.receive(handler, new RecordingDecoder(handler, seq, done));
+    }
+
+    assertTrue(started.await(30, TimeUnit.SECONDS));
+    transport.close();
+    release.countDown();
+
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertEquals(1, decoded.get());
+    assertEquals(MESSAGES, handler.decoded.size());
+    for (int seq = 0; seq < MESSAGES; seq++) {
+      assertEquals(Integer.valueOf(seq), handler.decoded.get(seq));
+    }
+  }
+
+  private static final class RecordingDecoder implements GENIncomingMessageDecoder
+  {
+
+    private final Handler handler;
+    private final int seq;
+    private final CountDownLatch done;
+
+    private RecordingDecoder(Handler handler, int seq, CountDownLatch done)
+    {
+      this.handler = handler;
+      this.seq = seq;
+      this.done = done;
+    }
+
+    @Override
+    public GENIncomingMessageHolder decodeAndCreateMessage()
+    {
+      handler.record(seq);
+      done.countDown();
+
+      // as for a segment that does not complete a message
+      return null;
+    }
+  }
+
+  private static final class Handler implements GENReceptionHandler
+  {
+
+    private final List<Integer> decoded = new ArrayList<Integer>();
+    private final Set<Thread> threads = new HashSet<Thread>();
+
+    private synchronized void record(int seq)
+    {
+      decoded.add(seq);
+      threads.add(Thread.currentThread());
+    }
+
+    @Override
+    public String getRemoteURI()
+    {
+      return null;
+    }
+
+    @Override
+    public void setRemoteURI(String newURI)
+    {
+    }
+
+    @Override
+    public GENMessageSender getMessageSender()
+    {
+      return null;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+}
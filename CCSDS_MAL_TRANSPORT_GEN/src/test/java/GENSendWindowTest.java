@@ -0,0 +1,120 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.GENTransport;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the asynchronous send path, that it returns before the message is sent and that the in
+ * flight window bounds the messages queued but not yet sent.
+ */
+public class GENSendWindowTest
+{
+
+  private static final String REMOTE = "gentest://remote/";
+  private GENTestTransport transport;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    Map properties = new HashMap();
+    properties.put(GENTransport.SEND_MODE_PROPERTY, "async");
+    properties.put(GENTransport.SEND_WINDOW_PROPERTY, "2");
+    properties.put(GENTransport.DELIVERY_TIMEOUT_PROPERTY, "1");
+    transport = new GENTestTransport(properties);
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    transport.getSender().open();
+    transport.close();
+  }
+
+  @Test
+  public void testAsyncSendReturnsBeforeTheMessageIsSent() throws Exception
+  {
+    System.out.println("GEN async send test");
+    assertTrue(transport.isAsyncSendMode());
+
+    GENOutgoingMessageHolder holder = transport.sendMessageAsync(null, true, message(0));
+    assertFalse(holder.isDone());
+    assertTrue(transport.getSender().getSent().isEmpty());
+
+    transport.getSender().open();
+    assertEquals(Boolean.TRUE, holder.get(30, TimeUnit.SECONDS));
+    assertEquals(1, transport.getSender().getSent().size());
+  }
+
+  @Test
+  public void testWindowFailsMessagesBeyondItsSize() throws Exception
+  {
+    System.out.println("GEN send window test");
+    GENOutgoingMessageHolder first = transport.sendMessageAsync(null, true, message(0));
+    GENOutgoingMessageHolder second = transport.sendMessageAsync(null, true, message(1));
+
+    // the window is full, the third message waits for the one second window timeout and fails
+    long start = System.nanoTime();
+    GENOutgoingMessageHolder third = transport.sendMessageAsync(null, true, message(2));
+    assertTrue(third.isDone());
+    assertEquals(Boolean.FALSE, third.get());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    assertFalse(first.isDone());
+    assertFalse(second.isDone());
+
+    // completing the window makes space again
+    transport.getSender().open();
+    assertEquals(Boolean.TRUE, first.get(30, TimeUnit.SECONDS));
+    assertEquals(Boolean.TRUE, second.get(30, TimeUnit.SECONDS));
+    GENOutgoingMessageHolder fourth = transport.sendMessageAsync(null, true, message(3));
+    assertEquals(Boolean.TRUE, fourth.get(30, TimeUnit.SECONDS));
+    assertEquals(3, transport.getSender().getSent().size());
+  }
+
+  @Test
+  public void testWindowPermitsAreReleasedWhenMessagesComplete() throws Exception
+  {
+    System.out.println("GEN send window release test");
+    transport.getSender().open();
+
+    // many more messages than the window, each one waiting for the previous to be sent
+    for (int seq = 0; seq < 20; seq++) {
+      GENOutgoingMessageHolder holder = transport.sendMessageAsync(null, true, message(seq));
+      assertEquals(Boolean.TRUE, holder.get(30, TimeUnit.SECONDS));
+    }
+
+    assertEquals(20, transport.getSender().getSent().size());
+  }
+
+  private GENMessage message(long seq) throws Exception
+  {
+    return transport.message(REMOTE + "x", null, seq, QoSLevel.ASSURED);
+  }
+}
@@ -0,0 +1,233 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.util.GENSubscriptionIndex;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.ccsds.moims.mo.mal.structures.EntityKey;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the domain and entity key wildcard rules of the subscription index, and that removing
+ * patterns leaves no empty branches behind.
+ */
+public class GENSubscriptionIndexTest
+{
+
+  @Test
+  public void testTrailingAndInnerDomainWildcards() throws Exception
+  {
+    System.out.println("GENSubscriptionIndex domain wildcard test");
+    GENSubscriptionIndex<String> index = new GENSubscriptionIndex<String>();
+    EntityKey key = key("A", 1L, 2L, 3L);
+    index.add(domain("esa", "*"), key, "trailing");
+    index.add(domain("esa", "*", "tm"), key, "inner");
+    index.add(domain("esa"), key, "exact");
+
+    // a trailing wildcard matches any number of further parts, including none
+    assertEquals(Arrays.asList("exact", "trailing"), match(index, domain("esa"), key));
+    assertEquals(Arrays.asList("trailing"), match(index, domain("esa", "sat1"), key));
+    assertEquals(Arrays.asList("inner", "trailing"),
+        match(index, domain("esa", "sat1", "tm"), key));
+    assertEquals(Arrays.asList("trailing"), match(index, domain("esa", "sat1", "tc"), key));
+    assertEquals(Arrays.asList("trailing"),
+        match(index, domain("esa", "sat1", "tm", "x"), key));
+
+    // an inner wildcard matches exactly one part
+    assertFalse(index.matches(domain("esa", "tm"), key(null, null, null, null)));
+    assertEquals(Collections.<String>emptyList(), match(index, domain("nasa"), key));
+    assertEquals(Collections.<String>emptyList(), match(index, null, key));
+  }
+
+  @Test
+  public void testKeyWildcardsOnBothSides() throws Exception
+  {
+    System.out.println("GENSubscriptionIndex key wildcard test");
+    GENSubscriptionIndex<String> index = new GENSubscriptionIndex<String>();
+    IdentifierList domain = domain("esa");
+    index.add(domain, key("A", 1L, 2L, 3L), "exact");
+    index.add(domain, key("*", 1L, 2L, 3L), "anyFirst");
+    index.add(domain, key("A", 0L, 0L, 0L), "anyNumber");
+    index.add(domain, key("B", 1L, 2L, 3L), "other");
+
+    // wildcards in the pattern
+    assertEquals(Arrays.asList("anyFirst", "anyNumber", "exact"),
+        match(index, domain, key("A", 1L, 2L, 3L)));
+    assertEquals(Arrays.asList("anyNumber"), match(index, domain, key("A", 9L, 9L, 9L)));
+    assertEquals(Arrays.asList("anyFirst"), match(index, domain, key("C", 1L, 2L, 3L)));
+
+    // wildcards in the published key match every pattern value of the level
+    assertEquals(Arrays.asList("anyFirst", "anyNumber", "exact", "other"),
+        match(index, domain, key("*", 0L, 0L, 0L)));
+    assertEquals(Arrays.asList("anyNumber"), match(index, domain, key("*", 9L, 2L, 3L)));
+    assertEquals(Arrays.asList("anyFirst", "anyNumber", "exact"),
+        match(index, domain, key("A", 0L, 2L, 3L)));
+    assertTrue(index.matches(domain, key("C", 1L, 0L, 3L)));
+    assertFalse(index.matches(domain, key("C", 4L, 0L, 3L)));
+  }
+
+  @Test
+  public void testNullSubKeys() throws Exception
+  {
+    System.out.println("GENSubscriptionIndex null sub key test");
+    GENSubscriptionIndex<String> index = new GENSubscriptionIndex<String>();
+    IdentifierList domain = domain("esa");
+    index.add(domain, key(null, 1L, null, 3L), "nulls");
+    index.add(domain, null, "nullKey");
+
+    // a null sub key only matches null, it is not a wildcard
+    assertEquals(Arrays.asList("nulls"), match(index, domain, key(null, 1L, null, 3L)));
+    assertFalse(index.matches(domain, key("A", 1L, 2L, 3L)));
+    assertFalse(index.matches(domain, key(null, 1L, 2L, 3L)));
+    assertEquals(Arrays.asList("nullKey"), match(index, domain, null));
+    assertEquals(Arrays.asList("nullKey", "nulls"),
+        match(index, domain, key(null, 0L, null, 0L)));
+  }
+
+  @Test
+  public void testDuplicatePatterns() throws Exception
+  {
+    System.out.println("GENSubscriptionIndex duplicate pattern test");
+    GENSubscriptionIndex<String> index = new GENSubscriptionIndex<String>();
+    IdentifierList domain = domain("esa", "*");
+    EntityKey key = key("A", 0L, 0L, 0L);
+    index.add(domain, key, "owner");
+    index.add(domain, key, "owner");
+    index.add(domain, key, "second");
+    assertEquals(3, index.size());
+    assertEquals(Arrays.asList("owner", "owner", "second"), match(index, domain("esa"), key));
+
+    assertTrue(index.remove(domain, key, "owner"));
+    assertEquals(2, index.size());
+    assertEquals(Arrays.asList("owner", "second"), match(index, domain("esa"), key));
+
+    assertTrue(index.remove(domain, key, "owner"));
+    assertFalse(index.remove(domain, key, "owner"));
+    assertFalse(index.remove(domain("esa"), key, "second"));
+    assertEquals(1, index.size());
+    assertEquals(Arrays.asList("second"), match(index, domain("esa"), key));
+  }
+
+  @Test
+  public void testRemovePrunesBranches() throws Exception
+  {
+    System.out.println("GENSubscriptionIndex prune test");
+    GENSubscriptionIndex<String> index = new GENSubscriptionIndex<String>();
+    index.add(domain("esa", "sat1", "*"), key("A", 1L, 2L, 3L), "first");
+    index.add(domain("esa", "sat1", "*"), key("A", 0L, 2L, 0L), "first");
+    index.add(domain("esa", "*", "tm"), key("*", 1L, 2L, 3L), "second");
+    index.add(domain("esa", "sat1"), key(null, 1L, 2L, 3L), "third");
+    index.add(null, key("B", 1L, 2L, 3L), "fourth");
+    int nodes = countNodes(root(index));
+
+    index.add(domain("esa", "sat2", "tc"), key("C", 4L, 5L, 6L), "fifth");
+    assertTrue(countNodes(root(index)) > nodes);
+    assertTrue(index.remove(domain("esa", "sat2", "tc"), key("C", 4L, 5L, 6L), "fifth"));
+    assertEquals(nodes, countNodes(root(index)));
+
+    assertTrue(index.remove(domain("esa", "sat1", "*"), key("A", 1L, 2L, 3L), "first"));
+    assertTrue(index.remove(domain("esa", "sat1", "*"), key("A", 0L, 2L, 0L), "first"));
+    assertTrue(index.remove(domain("esa", "*", "tm"), key("*", 1L, 2L, 3L), "second"));
+    assertTrue(index.remove(domain("esa", "sat1"), key(null, 1L, 2L, 3L), "third"));
+    assertTrue(index.remove(null, key("B", 1L, 2L, 3L), "fourth"));
+    assertTrue(index.isEmpty());
+    assertEquals(1, countNodes(root(index)));
+    assertFalse(index.matches(domain("esa", "sat1", "tm"), key("*", 0L, 0L, 0L)));
+  }
+
+  private static List<String> match(GENSubscriptionIndex<String> index, IdentifierList domain,
+      EntityKey key)
+  {
+    List<String> matches = new ArrayList<String>();
+    index.match(domain, key, matches);
+    Collections.sort(matches);
+
+    // the boolean form must agree with the collecting form
+    assertEquals(!matches.isEmpty(), index.matches(domain, key));
+
+    return matches;
+  }
+
+  private static IdentifierList domain(String... parts)
+  {
+    IdentifierList domain = new IdentifierList();
+
+    for (String part : parts) {
+      domain.add(new Identifier(part));
+    }
+
+    return domain;
+  }
+
+  private static EntityKey key(String first, Long second, Long third, Long fourth)
+  {
+    return new EntityKey((null == first) ? null : new Identifier(first), second, third, fourth);
+  }
+
+  private static Object root(GENSubscriptionIndex<String> index) throws Exception
+  {
+    return field(index, "root");
+  }
+
+  /**
+   * Counts the domain and key nodes reachable from a node of the index.
+   */
+  private static int countNodes(Object node) throws Exception
+  {
+    if (null == node) {
+      return 0;
+    }
+
+    int count = 1;
+
+    for (Field f : node.getClass().getDeclaredFields()) {
+      Object value = field(node, f.getName());
+
+      if (value instanceof Map) {
+        if (!"owners".equals(f.getName())) {
+          for (Object child : ((Map) value).values()) {
+            count += countNodes(child);
+          }
+        }
+      } else if ((null != value) && (value.getClass().getEnclosingClass()
+          == GENSubscriptionIndex.class)) {
+        count += countNodes(value);
+      }
+    }
+
+    return count;
+  }
+
+  private static Object field(Object owner, String name) throws Exception
+  {
+    Field f = owner.getClass().getDeclaredField(name);
+    f.setAccessible(true);
+
+    return f.get(owner);
+  }
+}
@@ -0,0 +1,296 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.gen.GENTransport;
+import esa.mo.mal.transport.gen.receivers.GENIncomingMessageHolder;
+import esa.mo.mal.transport.gen.sending.GENMessageSender;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALOperation;
+import org.ccsds.moims.mo.mal.MALOperationStage;
+import org.ccsds.moims.mo.mal.MALSendOperation;
+import org.ccsds.moims.mo.mal.broker.MALBrokerBinding;
+import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.transport.MALEndpoint;
+
+/**
+ * A generic transport without a wire format, used to drive the reception, dispatch and sending
+ * machinery of GENTransport from tests. Messages carry no body, a sequence number is carried in the
+ * priority field of the header so that tests can check the order of delivery. Outgoing messages are
+ * passed to a GateSender that only sends once it is opened.
+ */
+public class GENTestTransport extends GENTransport<byte[], byte[]>
+{
+
+  /**
+   * The protocol of the test transport.
+   */
+  public static final String PROTOCOL = "gentest";
+  private static final MALOperation OPERATION = new MALSendOperation(new UShort(1),
+      new Identifier("test"), false, new UShort(0),
+      new MALOperationStage(new UOctet((short) 1), new Object[0], new Object[0]));
+  private final GateSender sender = new GateSender();
+
+  static {
+    // the stream factory of a protocol can only be configured through a system property
+    System.setProperty(MALElementStreamFactory.FACTORY_PROP_NAME_PREFIX + "." + PROTOCOL,
+        StreamFactory.class.getName());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param properties Additional transport properties, may be null.
+   * @throws MALException On error.
+   */
+  public GENTestTransport(Map properties) throws MALException
+  {
+    super(PROTOCOL, '/', false, false, null, properties);
+    init();
+  }
+
+  /**
+   * Returns the sender used for all outgoing messages.
+   *
+   * @return the sender.
+   */
+  public GateSender getSender()
+  {
+    return sender;
+  }
+
+  /**
+   * Passes a decoded message to the transaction dispatch of the transport.
+   *
+   * @param msg The message.
+   */
+  public void dispatch(GENMessage msg)
+  {
+    receiveIncomingMessage(new GENIncomingMessageHolder(msg.getHeader().getTransactionId(), msg,
+        new PacketToString(null)));
+  }
+
+  /**
+   * Creates a message with an empty body.
+   *
+   * @param uriTo         The destination URI.
+   * @param transactionId The transaction id, may be null.
+   * @param sequence      The sequence number, carried in the priority field.
+   * @param qos           The QoS level.
+   * @return the message.
+   * @throws Exception On error.
+   */
+  public GENMessage message(String uriTo, Long transactionId, long sequence, QoSLevel qos)
+      throws Exception
+  {
+    GENMessageHeader header = new GENMessageHeader(new URI(uriBase + "source"), new Blob(),
+        new URI(uriTo), new Time(0), qos, new UInteger(sequence), new IdentifierList(),
+        new Identifier("zone"), SessionType.LIVE, new Identifier("session"), InteractionType.SEND,
+        new UOctet((short) 1), transactionId, new UShort(1), new UShort(1), new UShort(1),
+        new UOctet((short) 1), Boolean.FALSE);
+
+    return new GENMessage(false, header, null, OPERATION, getStreamFactory());
+  }
+
+  /**
+   * Returns the sequence number of a message created by this class.
+   *
+   * @param msg The message.
+   * @return the sequence number.
+   */
+  public static long sequence(org.ccsds.moims.mo.mal.transport.MALMessage msg)
+  {
+    return msg.getHeader().getPriority().getValue();
+  }
+
+  @Override
+  public GENMessage createMessage(byte[] packet) throws MALException
+  {
+    throw new MALException("The test transport has no wire format");
+  }
+
+  @Override
+  public MALBrokerBinding createBroker(String localName, Blob authenticationId,
+      QoSLevel[] expectedQos, UInteger priorityLevelNumber, Map defaultQoSProperties)
+  {
+    return null;
+  }
+
+  @Override
+  public MALBrokerBinding createBroker(MALEndpoint endpoint, Blob authenticationId,
+      QoSLevel[] qosLevels, UInteger priorities, Map properties)
+  {
+    return null;
+  }
+
+  @Override
+  public boolean isSupportedQoSLevel(QoSLevel qos)
+  {
+    return true;
+  }
+
+  @Override
+  public boolean isSupportedInteractionType(InteractionType type)
+  {
+    return true;
+  }
+
+  @Override
+  protected GENOutgoingMessageHolder<byte[]> internalEncodeMessage(String destinationRootURI,
+      String destinationURI, Object multiSendHandle, boolean lastForHandle, String targetURI,
+      GENMessage msg) throws Exception
+  {
+    return new GENOutgoingMessageHolder<byte[]>(deliveryTimeout, destinationRootURI,
+        destinationURI, multiSendHandle, lastForHandle, msg, new byte[16]);
+  }
+
+  @Override
+  protected String createTransportAddress() throws MALException
+  {
+    return "local";
+  }
+
+  @Override
+  protected GENMessageSender createMessageSender(GENMessage msg, String remoteRootURI)
+      throws MALException
+  {
+    return sender;
+  }
+
+  /**
+   * A message sender that blocks every send until it is opened and records what it sent.
+   */
+  public static class GateSender implements GENMessageSender<byte[]>
+  {
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final List<GENOutgoingMessageHolder<byte[]>> sent
+        = new ArrayList<GENOutgoingMessageHolder<byte[]>>();
+
+    /**
+     * Creates a closed sender.
+     */
+    public GateSender()
+    {
+    }
+
+    /**
+     * Lets all waiting and future sends complete.
+     */
+    public void open()
+    {
+      gate.countDown();
+    }
+
+    /**
+     * Returns the messages sent so far.
+     *
+     * @return the sent messages in sending order.
+     */
+    public synchronized List<GENOutgoingMessageHolder<byte[]>> getSent()
+    {
+      return new ArrayList<GENOutgoingMessageHolder<byte[]>>(sent);
+    }
+
+    @Override
+    public void sendEncodedMessage(GENOutgoingMessageHolder<byte[]> encodedMessage)
+        throws IOException
+    {
+      try {
+        if (!gate.await(30, TimeUnit.SECONDS)) {
+          throw new IOException("Gate not opened");
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted at the gate");
+      }
+
+      synchronized (this) {
+        sent.add(encodedMessage);
+      }
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+
+  /**
+   * The stream factory of the test protocol, the test transport never encodes or decodes.
+   */
+  public static class StreamFactory extends MALElementStreamFactory
+  {
+
+    @Override
+    protected void init(String protocol, Map properties)
+    {
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(InputStream is)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(byte[] bytes, int offset)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MALElementOutputStream createOutputStream(OutputStream os)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Blob encode(Object[] elements, MALEncodingContext ctx)
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
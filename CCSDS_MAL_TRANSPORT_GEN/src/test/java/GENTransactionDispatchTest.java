@@ -0,0 +1,244 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.GENEndpoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.ccsds.moims.mo.mal.MALStandardError;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.transport.MALEndpoint;
+import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.ccsds.moims.mo.mal.transport.MALMessageListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that received messages are delivered in reception order per transaction, that different
+ * transactions are delivered in parallel and that a transaction queue is recreated once it has
+ * drained.
+ */
+public class GENTransactionDispatchTest
+{
+
+  private GENTestTransport transport;
+  private GENEndpoint endpoint;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    transport = new GENTestTransport(null);
+    endpoint = (GENEndpoint) transport.createEndpoint("dispatch", null);
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    transport.close();
+  }
+
+  @Test
+  public void testMessagesOfATransactionAreDeliveredInOrder() throws Exception
+  {
+    System.out.println("GEN transaction dispatch ordering test");
+    final int transactions = 8;
+    final int messages = 250;
+    RecordingListener listener = new RecordingListener(transactions * messages);
+    endpoint.setMessageListener(listener);
+    endpoint.startMessageDelivery();
+
+    for (int seq = 0; seq < messages; seq++) {
+      for (long tid = 0; tid < transactions; tid++) {
+        transport.dispatch(transport.message(endpoint.getURI().getValue(), tid, seq,
+            QoSLevel.ASSURED));
+      }
+    }
+
+    assertTrue(listener.done.await(30, TimeUnit.SECONDS));
+
+    for (long tid = 0; tid < transactions; tid++) {
+      List<Long> received = listener.received(tid);
+      assertEquals(messages, received.size());
+
+      for (int seq = 0; seq < messages; seq++) {
+        assertEquals(Long.valueOf(seq), received.get(seq));
+      }
+    }
+  }
+
+  @Test
+  public void testTransactionsAreDeliveredInParallel() throws Exception
+  {
+    System.out.println("GEN transaction dispatch parallel test");
+    final CountDownLatch secondDelivered = new CountDownLatch(1);
+    final CountDownLatch firstDone = new CountDownLatch(1);
+    final boolean[] sawSecond = new boolean[1];
+
+    endpoint.setMessageListener(new RecordingListener(0)
+    {
+      @Override
+      public void onMessage(MALEndpoint ep, MALMessage msg)
+      {
+        if (Long.valueOf(1).equals(msg.getHeader().getTransactionId())) {
+          // holds the first transaction until the second one has been delivered
+          try {
+            sawSecond[0] = secondDelivered.await(30, TimeUnit.SECONDS);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+
+          firstDone.countDown();
+        } else {
+          secondDelivered.countDown();
+        }
+      }
+    });
+    endpoint.startMessageDelivery();
+
+    transport.dispatch(transport.message(endpoint.getURI().getValue(), 1L, 0, QoSLevel.ASSURED));
+    transport.dispatch(transport.message(endpoint.getURI().getValue(), 2L, 0, QoSLevel.ASSURED));
+
+    assertTrue(firstDone.await(60, TimeUnit.SECONDS));
+    assertTrue(sawSecond[0]);
+  }
+
+  @Test
+  public void testNoTransactionIdIsNotTheSmallestTransactionId() throws Exception
+  {
+    System.out.println("GEN transaction dispatch missing id test");
+    final CountDownLatch minimumDelivered = new CountDownLatch(1);
+    final CountDownLatch noIdDone = new CountDownLatch(1);
+    final boolean[] sawMinimum = new boolean[1];
+
+    endpoint.setMessageListener(new RecordingListener(0)
+    {
+      @Override
+      public void onMessage(MALEndpoint ep, MALMessage msg)
+      {
+        if (null == msg.getHeader().getTransactionId()) {
+          // only completes if the other message is on a queue of its own
+          try {
+            sawMinimum[0] = minimumDelivered.await(30, TimeUnit.SECONDS);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+
+          noIdDone.countDown();
+        } else {
+          minimumDelivered.countDown();
+        }
+      }
+    });
+    endpoint.startMessageDelivery();
+
+    transport.dispatch(transport.message(endpoint.getURI().getValue(), null, 0,
+        QoSLevel.ASSURED));
+    transport.dispatch(transport.message(endpoint.getURI().getValue(), Long.MIN_VALUE, 0,
+        QoSLevel.ASSURED));
+
+    assertTrue(noIdDone.await(60, TimeUnit.SECONDS));
+    assertTrue(sawMinimum[0]);
+  }
+
+  @Test
+  public void testTransactionQueueIsRecreatedAfterDraining() throws Exception
+  {
+    System.out.println("GEN transaction dispatch drain test");
+    RecordingListener listener = new RecordingListener(3);
+    endpoint.setMessageListener(listener);
+    endpoint.startMessageDelivery();
+
+    for (int seq = 0; seq < 3; seq++) {
+      final int expected = seq + 1;
+      transport.dispatch(transport.message(endpoint.getURI().getValue(), 7L, seq,
+          QoSLevel.ASSURED));
+
+      // wait for the queue of the transaction to drain before sending the next message
+      for (int i = 0; (i < 3000) && (listener.received(7L).size() < expected); i++) {
+        Thread.sleep(10);
+      }
+    }
+
+    assertTrue(listener.done.await(30, TimeUnit.SECONDS));
+    assertEquals(3, listener.received(7L).size());
+  }
+
+  private static class RecordingListener implements MALMessageListener
+  {
+
+    private final Map<Long, List<Long>> received = new HashMap<Long, List<Long>>();
+    private final CountDownLatch done;
+
+    RecordingListener(int expected)
+    {
+      done = new CountDownLatch(expected);
+    }
+
+    synchronized List<Long> received(Long transactionId)
+    {
+      List<Long> list = received.get(transactionId);
+      return (null == list) ? new ArrayList<Long>() : new ArrayList<Long>(list);
+    }
+
+    @Override
+    public void onMessage(MALEndpoint ep, MALMessage msg)
+    {
+      synchronized (this) {
+        Long tid = msg.getHeader().getTransactionId();
+        List<Long> list = received.get(tid);
+
+        if (null == list) {
+          list = new ArrayList<Long>();
+          received.put(tid, list);
+        }
+
+        list.add(GENTestTransport.sequence(msg));
+      }
+
+      done.countDown();
+    }
+
+    @Override
+    public void onMessages(MALEndpoint ep, MALMessage[] msgs)
+    {
+      for (MALMessage msg : msgs) {
+        onMessage(ep, msg);
+      }
+    }
+
+    @Override
+    public void onInternalError(MALEndpoint ep, Throwable ex)
+    {
+    }
+
+    @Override
+    public void onTransmitError(MALEndpoint ep, MALMessageHeader header, MALStandardError err,
+        Map qos)
+    {
+    }
+  }
+}
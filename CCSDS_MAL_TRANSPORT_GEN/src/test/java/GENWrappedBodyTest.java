@@ -0,0 +1,174 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO Generic Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryStreamFactory;
+import esa.mo.mal.encoder.binary.variable.VariableBinaryStreamFactory;
+import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.ccsds.moims.mo.mal.MALArea;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALOperation;
+import org.ccsds.moims.mo.mal.MALOperationStage;
+import org.ccsds.moims.mo.mal.MALSendOperation;
+import org.ccsds.moims.mo.mal.MALService;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.ccsds.moims.mo.mal.structures.Attribute;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that body parts are wrapped in BLOBs when wrapping is enabled, that wrapped bodies decode
+ * back to the original parts, and that a received body is forwarded without being re-encoded.
+ */
+public class GENWrappedBodyTest
+{
+
+  private static final UShort AREA_NUMBER = new UShort(901);
+  private static final UOctet AREA_VERSION = new UOctet((short) 1);
+  private static final MALOperation MULTI_PART_OP = new MALSendOperation(new UShort(1),
+      new Identifier("multiPart"), false, new UShort(0),
+      new MALOperationStage(new UOctet((short) 1), new Object[]{Attribute.BLOB_SHORT_FORM,
+        Attribute.UINTEGER_SHORT_FORM, Attribute.IDENTIFIER_SHORT_FORM}, new Object[0]));
+  private static final MALOperation SINGLE_PART_OP = new MALSendOperation(new UShort(2),
+      new Identifier("singlePart"), false, new UShort(0),
+      new MALOperationStage(new UOctet((short) 1), new Object[]{Attribute.IDENTIFIER_SHORT_FORM},
+          new Object[0]));
+
+  @BeforeClass
+  public static void setUpClass() throws Exception
+  {
+    MALHelper.init(MALContextFactory.getElementFactoryRegistry());
+
+    MALService service = new MALService(new UShort(1), new Identifier("WrapTestService"));
+    service.addOperation(MULTI_PART_OP);
+    service.addOperation(SINGLE_PART_OP);
+
+    MALArea area = new MALArea(AREA_NUMBER, new Identifier("WrapTest"), AREA_VERSION);
+    area.addService(service);
+    MALContextFactory.registerArea(area);
+  }
+
+  @Test
+  public void testMultiPartBodyRoundTrip() throws Exception
+  {
+    System.out.println("GEN wrapped multi part body test");
+
+    for (MALElementStreamFactory factory : factories()) {
+      byte[] wrapped = encode(factory, true, MULTI_PART_OP, multiPartBody());
+      byte[] plain = encode(factory, false, MULTI_PART_OP, multiPartBody());
+
+      // each part and the set of parts carry a length prefix
+      assertTrue(wrapped.length > plain.length);
+
+      GENMessage msg = decode(factory, true, wrapped);
+      Blob blob = (Blob) msg.getBody().getBodyElement(0, new Blob());
+      assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, Arrays.copyOfRange(blob.getValue(),
+          blob.getOffset(), blob.getOffset() + blob.getLength()));
+      assertEquals(new UInteger(42), msg.getBody().getBodyElement(1, new UInteger()));
+      assertEquals(new Identifier("third"), msg.getBody().getBodyElement(2, new Identifier()));
+    }
+  }
+
+  @Test
+  public void testSinglePartBodyRoundTrip() throws Exception
+  {
+    System.out.println("GEN wrapped single part body test");
+
+    for (MALElementStreamFactory factory : factories()) {
+      byte[] wrapped = encode(factory, true, SINGLE_PART_OP, new Identifier("only"));
+      assertTrue(wrapped.length > encode(factory, false, SINGLE_PART_OP,
+          new Identifier("only")).length);
+
+      assertEquals(new Identifier("only"), decode(factory, true, wrapped).getBody()
+          .getBodyElement(0, new Identifier()));
+    }
+  }
+
+  @Test
+  public void testReceivedBodyIsForwardedUnchanged() throws Exception
+  {
+    System.out.println("GEN wrapped body forwarding test");
+
+    for (MALElementStreamFactory factory : factories()) {
+      byte[] wrapped = encode(factory, true, MULTI_PART_OP, multiPartBody());
+
+      // the body is not decoded, so it is written out as received
+      GENMessage msg = decode(factory, true, wrapped);
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      MALElementOutputStream enc = factory.createOutputStream(baos);
+      msg.encodeMessage(factory, enc, baos, true);
+
+      assertArrayEquals(wrapped, baos.toByteArray());
+    }
+  }
+
+  private static MALElementStreamFactory[] factories()
+  {
+    return new MALElementStreamFactory[]{new FixedBinaryStreamFactory(),
+      new VariableBinaryStreamFactory()};
+  }
+
+  private static Object[] multiPartBody()
+  {
+    return new Object[]{new Blob(new byte[]{1, 2, 3, 4, 5}), new UInteger(42),
+      new Identifier("third")};
+  }
+
+  private static byte[] encode(MALElementStreamFactory factory, boolean wrap,
+      MALOperation operation, Object... body) throws Exception
+  {
+    GENMessageHeader header = new GENMessageHeader(new URI("gentest://local/source"),
+        new Blob(), new URI("gentest://remote/x"), new Time(0), QoSLevel.ASSURED,
+        new UInteger(1), new IdentifierList(), new Identifier("zone"), SessionType.LIVE,
+        new Identifier("session"), InteractionType.SEND, new UOctet((short) 1), 7L,
+        AREA_NUMBER, new UShort(1), operation.getNumber(), AREA_VERSION, Boolean.FALSE);
+    GENMessage msg = new GENMessage(wrap, header, null, operation, factory, body);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MALElementOutputStream enc = factory.createOutputStream(baos);
+    msg.encodeMessage(factory, enc, baos, true);
+
+    return baos.toByteArray();
+  }
+
+  private static GENMessage decode(MALElementStreamFactory factory, boolean wrap, byte[] packet)
+      throws Exception
+  {
+    return new GENMessage(wrap, true, new GENMessageHeader(), new HashMap(), packet, factory);
+  }
+}
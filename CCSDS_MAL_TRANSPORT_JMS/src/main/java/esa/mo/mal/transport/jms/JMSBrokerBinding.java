@@ -32,14 +32,14 @@ import org.ccsds.moims.mo.mal.transport.MALMessage;
 import org.ccsds.moims.mo.mal.transport.MALTransmitErrorListener;
 
 /**
- *
+ * The broker binding returned by the JMS transport, the JMS provider acts as the broker.
  */
 public class JMSBrokerBinding implements MALBrokerBinding
 {
 
   private final URI uri;
   private final String localName;
-  private final Blob authenticationId;
+  private Blob authenticationId;
   private final QoSLevel[] expectedQos;
   private final UInteger priorityLevelNumber;
   private MALTransmitErrorListener listener = null;
@@ -59,6 +59,13 @@ public class JMSBrokerBinding implements MALBrokerBinding
     return authenticationId;
   }
 
+  public Blob setAuthenticationId(Blob newAuthenticationId)
+  {
+    Blob previous = authenticationId;
+    authenticationId = newAuthenticationId;
+    return previous;
+  }
+
   public URI getURI()
   {
     return uri;
@@ -34,7 +34,7 @@ import esa.mo.mal.transport.gen.receivers.GENIncomingMessageDecoder;
 import esa.mo.mal.transport.jms.util.StructureHelper;
 
 /**
- *
+ * Receives the updates of a subscription from the JMS topics it has registered for.
  */
 public class JMSConsumeHandler extends JMSQueueHandler
 {
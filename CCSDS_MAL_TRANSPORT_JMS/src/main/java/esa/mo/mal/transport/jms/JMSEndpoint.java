@@ -37,9 +37,10 @@ import org.ccsds.moims.mo.mal.transport.*;
 import esa.mo.mal.transport.gen.GENEndpoint;
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
 
 /**
- *
+ * A MAL endpoint of the JMS transport, receiving messages through a JMS queue.
  */
 public class JMSEndpoint extends GENEndpoint implements MALEndpoint
 {
@@ -113,6 +114,10 @@ public class JMSEndpoint extends GENEndpoint implements MALEndpoint
 
       consumeHandlerMap.clear();
 
+      for (JMSPublishHandler handler : publishHandlerMap.values()) {
+        handler.close();
+      }
+
       jtransport.getAdministrator().deleteQueue(qs, messageSink);
       qs.close();
     } catch (Exception e) {
@@ -170,16 +175,16 @@ public class JMSEndpoint extends GENEndpoint implements MALEndpoint
           }
           case MALPubSubOperation._PUBLISH_STAGE: {
             if (null == lqs) {
-              lqs = jtransport.getCurrentConnection().createSession(true, Session.AUTO_ACKNOWLEDGE);
-              localSession = true;
-            }
-
-            internalHandlePublish(msg, lqs);
-
-            if (localSession) {
-              if (lqs.getTransacted()) {
-                JMSTransport.RLOGGER.fine("Commiting transaction");
-                lqs.commit();
+              // the publish handler uses its own pooled or batching session
+              internalHandlePublish(msg, null);
+            } else {
+              // the session of a multi send only lives for that send, so neither are its producers
+              final JMSPooledSession wrapped = new JMSPooledSession(lqs, Integer.MAX_VALUE);
+
+              try {
+                internalHandlePublish(msg, wrapped);
+              } finally {
+                wrapped.closeProducers();
               }
             }
             break;
@@ -208,10 +213,7 @@ public class JMSEndpoint extends GENEndpoint implements MALEndpoint
           }
         }
       } else {
-        if (null == lqs) {
-          lqs = jtransport.getCurrentConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
-        }
-
+        // without a multi send session the message sender uses its own long lived session
         super.internalSendMessage(lqs, lastForHandle, msg);
       }
 
@@ -228,6 +230,23 @@ public class JMSEndpoint extends GENEndpoint implements MALEndpoint
     }
   }
 
+  /**
+   * JMS sessions created for a send are closed once the send returns, so the asynchronous path
+   * sends synchronously and returns an already completed result.
+   */
+  @Override
+  protected GENOutgoingMessageHolder internalSendMessageAsync(Object handle, boolean lastForHandle,
+      GENMessage msg) throws MALTransmitErrorException
+  {
+    internalSendMessage(handle, lastForHandle, msg);
+
+    GENOutgoingMessageHolder holder = new GENOutgoingMessageHolder(0, null,
+        msg.getHeader().getURITo().getValue(), handle, lastForHandle, msg, null);
+    holder.setResult(Boolean.TRUE);
+
+    return holder;
+  }
+
   protected void internalHandleRegister(final GENMessage msg, Session lqs) throws MALException,
       MALInteractionException
   {
@@ -276,8 +295,8 @@ public class JMSEndpoint extends GENEndpoint implements MALEndpoint
     }
 
     // create response and do callback
-    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null, null,
-        (Object[]) null);
+    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null,
+        null, jtransport.getStreamFactory(), (Object[]) null);
     receiveMessage(returnMsg);
   }
 
@@ -297,13 +316,13 @@ public class JMSEndpoint extends GENEndpoint implements MALEndpoint
     details.setKeyList(hdr, ((MALPublishRegisterBody) msg.getBody()).getEntityKeyList());
 
     // create response and do callback
-    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null, null,
-        (Object[]) null);
+    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null,
+        null, jtransport.getStreamFactory(), (Object[]) null);
     receiveMessage(returnMsg);
   }
 
-  protected void internalHandlePublish(final GENMessage msg, Session lqs) throws MALException,
-      MALInteractionException, MALTransmitErrorException
+  protected void internalHandlePublish(final GENMessage msg, JMSPooledSession lqs) throws
+      MALException, MALInteractionException, MALTransmitErrorException
   {
     JMSTransport.RLOGGER.fine("Starting PUBLISH");
     JMSPublishHandler details = publishHandlerMap.get(createProviderKey(msg.getHeader()));
@@ -343,16 +362,16 @@ public class JMSEndpoint extends GENEndpoint implements MALEndpoint
     }
 
     // create response and do callback
-    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null, null,
-        (Object[]) null);
+    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null,
+        null, jtransport.getStreamFactory(), (Object[]) null);
     receiveMessage(returnMsg);
   }
 
   protected void internalHandlePublishDeregister(final GENMessage msg, Session lqs) throws
       MALException, MALInteractionException
   {
-    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null, null,
-        (Object[]) null);
+    GENMessage returnMsg = new GENMessage(false, createReturnHeader(msg, false), null,
+        null, jtransport.getStreamFactory(), (Object[]) null);
 
     JMSPublishHandler hdlr = publishHandlerMap.remove(createProviderKey(msg.getHeader()));
     if (null != hdlr) {
@@ -108,7 +108,7 @@ final class JMSIncomingPSMessageDecoder implements GENIncomingMessageDecoder
       }
 
       GENMessage malMsg = new GENMessage(false, new JMSMessageHeader(hdr, jmsUpdate), null, null,
-          new_objs);
+          transport.getStreamFactory(), new_objs);
       return new GENIncomingMessageHolder(malMsg.getHeader().getTransactionId(), malMsg,
           transport.new PacketToString(data));
     } catch (Throwable ex) {
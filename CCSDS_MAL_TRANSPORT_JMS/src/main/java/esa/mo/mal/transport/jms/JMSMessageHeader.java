@@ -24,7 +24,7 @@ import esa.mo.mal.transport.gen.GENMessageHeader;
 import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
 
 /**
- *
+ * The MAL message header used by the JMS transport.
  */
 public class JMSMessageHeader extends GENMessageHeader
 {
@@ -0,0 +1,145 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO JMS Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.jms;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/**
+ * A JMS session that is kept open between messages together with the producers it has created, one
+ * per destination, so that sending a message does not cost a session and producer creation on the
+ * JMS provider. The least recently used producer is closed once more than the configured number of
+ * destinations have been sent to.
+ *
+ * A JMS session must only be used by one thread at a time, instances are either owned by a single
+ * thread or borrowed from a JMSSessionPool.
+ */
+public class JMSPooledSession
+{
+
+  private final Session session;
+  private final int maxProducers;
+  private final Map<Destination, MessageProducer> producers
+      = new LinkedHashMap<Destination, MessageProducer>(16, 0.75f, true);
+
+  /**
+   * Constructor.
+   *
+   * @param session      The JMS session to use.
+   * @param maxProducers The maximum number of producers to keep open.
+   */
+  public JMSPooledSession(Session session, int maxProducers)
+  {
+    this.session = session;
+    this.maxProducers = maxProducers;
+  }
+
+  /**
+   * Returns the JMS session.
+   *
+   * @return the session.
+   */
+  public Session getSession()
+  {
+    return session;
+  }
+
+  /**
+   * Returns the non persistent producer for a destination, creating it on first use.
+   *
+   * @param destination The destination to send to.
+   * @return the producer.
+   * @throws JMSException On error creating the producer.
+   */
+  public MessageProducer getProducer(Destination destination) throws JMSException
+  {
+    MessageProducer producer = producers.get(destination);
+
+    if (null == producer) {
+      producer = session.createProducer(destination);
+      producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+      producers.put(destination, producer);
+
+      if (producers.size() > maxProducers) {
+        Iterator<MessageProducer> it = producers.values().iterator();
+        closeProducer(it.next());
+        it.remove();
+      }
+    }
+
+    return producer;
+  }
+
+  /**
+   * Commits the session if it is transacted.
+   *
+   * @throws JMSException On error committing.
+   */
+  public void commit() throws JMSException
+  {
+    if (session.getTransacted()) {
+      JMSTransport.RLOGGER.fine("Commiting transaction");
+      session.commit();
+    }
+  }
+
+  /**
+   * Closes the producers but leaves the session open.
+   */
+  public void closeProducers()
+  {
+    for (MessageProducer producer : producers.values()) {
+      closeProducer(producer);
+    }
+
+    producers.clear();
+  }
+
+  /**
+   * Closes the producers and the session.
+   */
+  public void close()
+  {
+    closeProducers();
+
+    try {
+      session.close();
+    } catch (JMSException ex) {
+      JMSTransport.RLOGGER.log(Level.FINE, "JMS error closing pooled session", ex);
+    }
+  }
+
+  private static void closeProducer(MessageProducer producer)
+  {
+    try {
+      producer.close();
+    } catch (JMSException ex) {
+      JMSTransport.RLOGGER.log(Level.FINE, "JMS error closing pooled producer", ex);
+    }
+  }
+}
@@ -21,9 +21,8 @@
 package esa.mo.mal.transport.jms;
 
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
 import javax.jms.*;
 import org.ccsds.moims.mo.mal.MALException;
@@ -35,20 +34,39 @@ import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
 import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.body.GENPublishBody;
+import esa.mo.mal.transport.gen.util.GENSubscriptionIndex;
 import org.ccsds.moims.mo.mal.MALInteractionException;
 import esa.mo.mal.transport.jms.JMSEndpoint.PublishEntry;
 import esa.mo.mal.transport.jms.util.StructureHelper;
 
 /**
- *
+ * Publishes the updates of a provider to the JMS topics of its publish register.
  */
 public class JMSPublishHandler
 {
 
   private final JMSTransport jtransport;
-  private final Set<JMSPublisherKey> keySet = new TreeSet<JMSPublisherKey>();
   private final QoSLevel registerQoS;
-  private IdentifierList domain = null;
+  // replaced as a whole on register, publishing threads read it without locking
+  private volatile Registration registration = new Registration(null,
+      new GENSubscriptionIndex<EntityKey>());
+  private JMSPooledSession batchSession = null;
+  private int batchCount = 0;
+  private ScheduledFuture batchFlush = null;
+  private final Runnable flushTask = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      synchronized (JMSPublishHandler.this) {
+        batchFlush = null;
+
+        if (0 < batchCount) {
+          commitBatch();
+        }
+      }
+    }
+  };
 
   public JMSPublishHandler(JMSTransport jtransport, final GENMessage msg)
   {
@@ -58,14 +76,17 @@ public class JMSPublishHandler
 
   void setKeyList(MALMessageHeader hdr, EntityKeyList l)
   {
-    domain = hdr.getDomain();
-    keySet.clear();
+    final GENSubscriptionIndex<EntityKey> keys = new GENSubscriptionIndex<EntityKey>();
     for (EntityKey l1 : l) {
-      keySet.add(new JMSPublisherKey(l1));
+      if (null != l1) {
+        keys.add(null, l1, l1);
+      }
     }
+
+    registration = new Registration(hdr.getDomain(), keys);
   }
 
-  protected GENMessage publish(final GENMessage msg, Session lqs) throws MALException,
+  protected GENMessage publish(final GENMessage msg, JMSPooledSession pooled) throws MALException,
       MALTransmitErrorException, MALInteractionException
   {
     final String strURL = msg.getHeader().getURITo().getValue();
@@ -82,8 +103,8 @@ public class JMSPublishHandler
     } catch (MALTransmitErrorException ex) {
       // create response and do callback
       return new GENMessage(false, JMSEndpoint.createReturnHeader(msg, true,
-          MALPubSubOperation._PUBLISH_STAGE), null, null, ex.getStandardError().getErrorNumber(),
-          ex.getStandardError().getExtraInformation());
+          MALPubSubOperation._PUBLISH_STAGE), null, null, jtransport.getStreamFactory(),
+          ex.getStandardError().getErrorNumber(), ex.getStandardError().getExtraInformation());
     }
 
     List[] valueLists = body.getUpdateLists((List[]) null);
@@ -111,71 +132,178 @@ public class JMSPublishHandler
     int service = msg.getHeader().getService().getValue();
     int operation = msg.getHeader().getOperation().getValue();
 
+    if (null != pooled) {
+      // part of a multi send, committed once the multi send completes
+      try {
+        sendUpdates(pooled, exchangeName, ldomain, lnetwork, area, service, operation, publishList);
+      } catch (Throwable e) {
+        JMSTransport.RLOGGER.log(Level.WARNING,
+            "JMS Error occurred when publishing data to " + exchangeName + " : {0}", e);
+      }
+    } else if (1 < jtransport.getPublishBatchSize()) {
+      publishBatched(exchangeName, ldomain, lnetwork, area, service, operation, publishList);
+    } else {
+      publishCommitted(exchangeName, ldomain, lnetwork, area, service, operation, publishList);
+    }
+
+    return null;
+  }
+
+  /**
+   * Sends the updates of a publish in a pooled transacted session and commits them together.
+   */
+  private void publishCommitted(String exchangeName, String ldomain, String lnetwork, int area,
+      int service, int operation, List<PublishEntry> publishList)
+  {
+    final JMSSessionPool pool = jtransport.getPublishSessionPool();
+    JMSPooledSession session = null;
+
     try {
-      // get the queue
-      Topic destTopic = jtransport.getAdministrator().getTopic(lqs, exchangeName);
-
-      MessageProducer sender = lqs.createProducer(destTopic);
-      sender.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
-
-      for (PublishEntry publishEntry : publishList) {
-        try {
-          ObjectMessage objMsg = lqs.createObjectMessage();
-          objMsg.setStringProperty(JMSEndpoint.DOM_PROPERTY, ldomain);
-          objMsg.setStringProperty(JMSEndpoint.NET_PROPERTY, lnetwork);
-          objMsg.setIntProperty(JMSEndpoint.ARR_PROPERTY, area);
-          objMsg.setIntProperty(JMSEndpoint.SVC_PROPERTY, service);
-          objMsg.setIntProperty(JMSEndpoint.OPN_PROPERTY, operation);
-          objMsg.setStringProperty(JMSEndpoint.EID_PROPERTY,
-              publishEntry.eKey.getFirstSubKey().getValue());
-          objMsg.setObjectProperty(JMSEndpoint.DID_PROPERTY, publishEntry.eKey.getSecondSubKey());
-          objMsg.setObjectProperty(JMSEndpoint.OID_PROPERTY, publishEntry.eKey.getThirdSubKey());
-          objMsg.setObjectProperty(JMSEndpoint.SID_PROPERTY, publishEntry.eKey.getFourthSubKey());
-          objMsg.setBooleanProperty(JMSEndpoint.MOD_PROPERTY, publishEntry.isModification);
-          objMsg.setObject(publishEntry.update);
-          sender.send(objMsg);
+      session = pool.borrow();
+      sendUpdates(session, exchangeName, ldomain, lnetwork, area, service, operation, publishList);
+      session.commit();
+      pool.release(session);
+    } catch (Throwable e) {
+      JMSTransport.RLOGGER.log(Level.WARNING,
+          "JMS Error occurred when publishing data to " + exchangeName + " : {0}", e);
 
-          JMSTransport.RLOGGER.log(Level.FINE,
-              "JMS Sending data to {0} with {1} and ({2}, {3}, {4}, {5})", new Object[]{
-                destTopic.getTopicName(), publishEntry.eKey, ldomain, area, service, operation});
-        } catch (Exception e) {
-          JMSTransport.RLOGGER.log(Level.WARNING, "JMS Error occurred when sending data {0}", e);
-        }
+      if (null != session) {
+        pool.discard(session);
       }
+    }
+  }
 
-      sender.close();
+  /**
+   * Sends the updates of a publish in the transacted session of this publisher, the transaction is
+   * committed once it holds the configured number of updates or when the configured latency has
+   * passed since the first uncommitted update, whichever comes first.
+   */
+  private synchronized void publishBatched(String exchangeName, String ldomain, String lnetwork,
+      int area, int service, int operation, List<PublishEntry> publishList)
+  {
+    try {
+      if (null == batchSession) {
+        batchSession = jtransport.getPublishSessionPool().borrow();
+      }
+
+      sendUpdates(batchSession, exchangeName, ldomain, lnetwork, area, service, operation,
+          publishList);
+      batchCount += publishList.size();
+
+      if (jtransport.getPublishBatchSize() <= batchCount) {
+        commitBatch();
+      } else if (null == batchFlush) {
+        batchFlush = jtransport.schedule(flushTask, jtransport.getPublishBatchLatency());
+      }
     } catch (Throwable e) {
       JMSTransport.RLOGGER.log(Level.WARNING,
           "JMS Error occurred when publishing data to " + exchangeName + " : {0}", e);
+      discardBatch();
     }
+  }
 
-    return null;
+  private void commitBatch()
+  {
+    if (null != batchFlush) {
+      batchFlush.cancel(false);
+      batchFlush = null;
+    }
+
+    try {
+      JMSTransport.RLOGGER.log(Level.FINE, "JMS committing {0} published updates", batchCount);
+      batchCount = 0;
+      batchSession.commit();
+    } catch (JMSException e) {
+      JMSTransport.RLOGGER.log(Level.WARNING, "JMS Error occurred when committing updates {0}", e);
+      discardBatch();
+    }
+  }
+
+  private void discardBatch()
+  {
+    if (null != batchFlush) {
+      batchFlush.cancel(false);
+      batchFlush = null;
+    }
+
+    batchCount = 0;
+
+    if (null != batchSession) {
+      jtransport.getPublishSessionPool().discard(batchSession);
+      batchSession = null;
+    }
+  }
+
+  private void sendUpdates(JMSPooledSession pooled, String exchangeName, String ldomain,
+      String lnetwork, int area, int service, int operation, List<PublishEntry> publishList)
+      throws Exception
+  {
+    // get the queue
+    Session lqs = pooled.getSession();
+    Topic destTopic = jtransport.getAdministrator().getTopic(lqs, exchangeName);
+
+    MessageProducer sender = pooled.getProducer(destTopic);
+
+    for (PublishEntry publishEntry : publishList) {
+      try {
+        Message objMsg = jtransport.createWireMessage(lqs, publishEntry.update);
+        objMsg.setStringProperty(JMSEndpoint.DOM_PROPERTY, ldomain);
+        objMsg.setStringProperty(JMSEndpoint.NET_PROPERTY, lnetwork);
+        objMsg.setIntProperty(JMSEndpoint.ARR_PROPERTY, area);
+        objMsg.setIntProperty(JMSEndpoint.SVC_PROPERTY, service);
+        objMsg.setIntProperty(JMSEndpoint.OPN_PROPERTY, operation);
+        objMsg.setStringProperty(JMSEndpoint.EID_PROPERTY,
+            publishEntry.eKey.getFirstSubKey().getValue());
+        objMsg.setObjectProperty(JMSEndpoint.DID_PROPERTY, publishEntry.eKey.getSecondSubKey());
+        objMsg.setObjectProperty(JMSEndpoint.OID_PROPERTY, publishEntry.eKey.getThirdSubKey());
+        objMsg.setObjectProperty(JMSEndpoint.SID_PROPERTY, publishEntry.eKey.getFourthSubKey());
+        objMsg.setBooleanProperty(JMSEndpoint.MOD_PROPERTY, publishEntry.isModification);
+        sender.send(objMsg);
+
+        JMSTransport.RLOGGER.log(Level.FINE,
+            "JMS Sending data to {0} with {1} and ({2}, {3}, {4}, {5})", new Object[]{
+              destTopic.getTopicName(), publishEntry.eKey, ldomain, area, service, operation});
+      } catch (Exception e) {
+        JMSTransport.RLOGGER.log(Level.WARNING, "JMS Error occurred when sending data {0}", e);
+      }
+    }
+  }
+
+  /**
+   * Commits any batched updates and returns the batch session to the pool.
+   */
+  public synchronized void close()
+  {
+    if (0 < batchCount) {
+      commitBatch();
+    }
+
+    if (null != batchSession) {
+      jtransport.getPublishSessionPool().release(batchSession);
+      batchSession = null;
+    }
   }
 
   public void deregister(GENMessage returnMsg)
   {
+    close();
     returnMsg.getHeader().setQoSlevel(registerQoS);
   }
 
   protected void preCheckAllowedToPublish(MALMessageHeader hdr, UpdateHeaderList updateList) throws
       MALTransmitErrorException
   {
-    if (StructureHelper.isSubDomainOf(domain, hdr.getDomain())) {
+    final Registration current = registration;
+
+    if (StructureHelper.isSubDomainOf(current.domain, hdr.getDomain())) {
       EntityKeyList lst = new EntityKeyList();
       for (UpdateHeader updateList1 : updateList) {
         UpdateHeader update = (UpdateHeader) updateList1;
         EntityKey updateKey = update.getKey();
-        boolean matched = false;
-        for (JMSPublisherKey key : keySet) {
-          if (key.matches(updateKey)) {
-            JMSTransport.RLOGGER.log(Level.FINE,
-                "JMS : Provider allowed to publish key: {0} because of: {1}",
-                new Object[]{updateKey, key});
-            matched = true;
-            break;
-          }
-        }
-        if (!matched) {
+        if ((null != updateKey) && current.keys.matches(null, updateKey)) {
+          JMSTransport.RLOGGER.log(Level.FINE,
+              "JMS : Provider allowed to publish key: {0}", updateKey);
+        } else {
           lst.add(updateKey);
         }
       }
@@ -190,4 +318,20 @@ public class JMSPublishHandler
           null), null);
     }
   }
+
+  /**
+   * The domain and keys of the latest publish register, never modified once built.
+   */
+  private static final class Registration
+  {
+
+    private final IdentifierList domain;
+    private final GENSubscriptionIndex<EntityKey> keys;
+
+    Registration(final IdentifierList domain, final GENSubscriptionIndex<EntityKey> keys)
+    {
+      this.domain = domain;
+      this.keys = keys;
+    }
+  }
 }
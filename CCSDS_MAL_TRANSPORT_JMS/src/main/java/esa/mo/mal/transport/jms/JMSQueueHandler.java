@@ -29,7 +29,7 @@ import org.ccsds.moims.mo.mal.structures.UShort;
 import esa.mo.mal.transport.jms.util.StructureHelper;
 
 /**
- *
+ * Receives JMS messages from a destination and passes them to the transport for decoding.
  */
 public class JMSQueueHandler implements MessageListener
 {
@@ -79,24 +79,36 @@ public class JMSQueueHandler implements MessageListener
     JMSTransport.RLOGGER.fine("JMS onMessage");
 
     try {
-      if (msg instanceof ObjectMessage) {
-        ObjectMessage objMsg = (ObjectMessage) msg;
-        Object dat = objMsg.getObject();
-        // we use the same message container as RMI protocol
-        if (dat instanceof byte[]) {
-          IdentifierList d = StructureHelper.stringToDomain(objMsg.getStringProperty(
-              JMSEndpoint.DOM_PROPERTY));
-          Identifier n = new Identifier(objMsg.getStringProperty(JMSEndpoint.NET_PROPERTY));
-          UShort a = new UShort(objMsg.getIntProperty(JMSEndpoint.ARR_PROPERTY));
-          UShort s = new UShort(objMsg.getIntProperty(JMSEndpoint.SVC_PROPERTY));
-          UShort o = new UShort(objMsg.getIntProperty(JMSEndpoint.OPN_PROPERTY));
+      byte[] dat = null;
 
-          endPoint.getJtransport().receive(null, createMessageDecoder(new JMSUpdate(d, n, a, s, o,
-              (byte[]) dat)));
+      if (msg instanceof BytesMessage) {
+        BytesMessage bytesMsg = (BytesMessage) msg;
+        dat = new byte[(int) bytesMsg.getBodyLength()];
+        bytesMsg.readBytes(dat);
+      } else if (msg instanceof ObjectMessage) {
+        Object obj = ((ObjectMessage) msg).getObject();
+        // we use the same message container as RMI protocol
+        if (obj instanceof byte[]) {
+          dat = (byte[]) obj;
         } else {
           JMSTransport.RLOGGER.log(Level.WARNING, "JMS received bad message format: {0}",
-              objMsg.getObject().getClass().getName());
+              (null == obj) ? null : obj.getClass().getName());
+          return;
         }
+      }
+
+      if (null != dat) {
+        IdentifierList d = StructureHelper.stringToDomain(msg.getStringProperty(
+            JMSEndpoint.DOM_PROPERTY));
+        String net = msg.getStringProperty(JMSEndpoint.NET_PROPERTY);
+        // messages sent to an endpoint queue carry no network zone
+        Identifier n = (null == net) ? null : new Identifier(net);
+        UShort a = new UShort(msg.getIntProperty(JMSEndpoint.ARR_PROPERTY));
+        UShort s = new UShort(msg.getIntProperty(JMSEndpoint.SVC_PROPERTY));
+        UShort o = new UShort(msg.getIntProperty(JMSEndpoint.OPN_PROPERTY));
+
+        endPoint.getJtransport().receive(null, createMessageDecoder(new JMSUpdate(d, n, a, s, o,
+            dat)));
       } else {
         JMSTransport.RLOGGER.log(Level.WARNING, "JMS received bad message type: {0}",
             msg.getClass().getName());
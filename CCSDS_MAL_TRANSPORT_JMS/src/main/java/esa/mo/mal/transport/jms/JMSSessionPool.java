@@ -0,0 +1,131 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO JMS Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.jms;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.jms.Session;
+
+/**
+ * A pool of JMS sessions of the transport connection. A thread borrows a session for the duration
+ * of a send and releases it afterwards, so at most one thread uses a session at any time. Up to a
+ * configured number of idle sessions are kept open, further released sessions are closed.
+ */
+public class JMSSessionPool
+{
+
+  private final JMSTransport transport;
+  private final boolean transacted;
+  private final int maxIdle;
+  private final int maxProducers;
+  private final Deque<JMSPooledSession> idle = new ArrayDeque<JMSPooledSession>();
+  private boolean closed = false;
+
+  /**
+   * Constructor.
+   *
+   * @param transport    The transport that provides the JMS connection.
+   * @param transacted   True if the sessions are transacted.
+   * @param maxIdle      The maximum number of idle sessions kept open.
+   * @param maxProducers The maximum number of producers kept open per session.
+   */
+  public JMSSessionPool(JMSTransport transport, boolean transacted, int maxIdle, int maxProducers)
+  {
+    this.transport = transport;
+    this.transacted = transacted;
+    this.maxIdle = maxIdle;
+    this.maxProducers = maxProducers;
+  }
+
+  /**
+   * Returns an idle session of the pool or a new one if none is idle.
+   *
+   * @return the session, to be released or discarded by the caller.
+   * @throws Exception On error creating a session.
+   */
+  public JMSPooledSession borrow() throws Exception
+  {
+    synchronized (idle) {
+      JMSPooledSession session = idle.pollFirst();
+
+      if (null != session) {
+        return session;
+      }
+    }
+
+    return createSession();
+  }
+
+  /**
+   * Creates a session outside of the pool, for use by a single thread until it closes it.
+   *
+   * @return the session.
+   * @throws Exception On error creating a session.
+   */
+  public JMSPooledSession createSession() throws Exception
+  {
+    return new JMSPooledSession(transport.getCurrentConnection().createSession(transacted,
+        Session.AUTO_ACKNOWLEDGE), maxProducers);
+  }
+
+  /**
+   * Returns a session to the pool.
+   *
+   * @param session The session previously borrowed.
+   */
+  public void release(JMSPooledSession session)
+  {
+    synchronized (idle) {
+      if (!closed && (idle.size() < maxIdle)) {
+        idle.addFirst(session);
+        return;
+      }
+    }
+
+    session.close();
+  }
+
+  /**
+   * Closes a session that failed instead of returning it to the pool.
+   *
+   * @param session The session previously borrowed.
+   */
+  public void discard(JMSPooledSession session)
+  {
+    session.close();
+  }
+
+  /**
+   * Closes the idle sessions, sessions released afterwards are closed too.
+   */
+  public void close()
+  {
+    synchronized (idle) {
+      closed = true;
+
+      for (JMSPooledSession session : idle) {
+        session.close();
+      }
+
+      idle.clear();
+    }
+  }
+}
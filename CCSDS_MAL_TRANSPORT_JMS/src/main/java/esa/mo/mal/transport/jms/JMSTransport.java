@@ -22,6 +22,11 @@ package esa.mo.mal.transport.jms;
 
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.jms.*;
@@ -33,6 +38,7 @@ import org.ccsds.moims.mo.mal.transport.MALTransport;
 import org.ccsds.moims.mo.mal.transport.MALTransportFactory;
 import esa.mo.mal.transport.gen.GENEndpoint;
 import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.GENMessageHeader;
 import esa.mo.mal.transport.gen.GENTransport;
 import esa.mo.mal.transport.gen.sending.GENMessageSender;
 import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
@@ -44,9 +50,9 @@ import org.ccsds.moims.mo.mal.MALStandardError;
 import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
 
 /**
- *
+ * The MAL transport that carries MAL messages over a JMS provider.
  */
-public class JMSTransport extends GENTransport implements MALTransport
+public class JMSTransport extends GENTransport<byte[], byte[]> implements MALTransport
 {
 
   /**
@@ -57,7 +63,41 @@ public class JMSTransport extends GENTransport implements MALTransport
   public static final byte[] authId = "JMS".getBytes();
   public static final char JMS_SERVICE_DELIM = '_';
   public static final char JMS_BROKER_DELIM = '[';
+  /**
+   * Property for the maximum number of idle publish sessions kept open, default 8.
+   */
+  public static final String SESSION_POOL_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.jms.sessionpool";
+  /**
+   * Property for the maximum number of producers kept open per session, default 32.
+   */
+  public static final String PRODUCERS_PROPERTY = "org.ccsds.moims.mo.mal.transport.jms.producers";
+  /**
+   * Property for the JMS message type used to carry MAL messages, "object" (default) for an
+   * ObjectMessage holding the encoded message or "bytes" for a BytesMessage. Both are accepted on
+   * reception whatever the setting.
+   */
+  public static final String WIRE_MODE_PROPERTY = "org.ccsds.moims.mo.mal.transport.jms.wiremode";
+  /**
+   * Property for the number of published updates committed together, default 1. Above 1 the
+   * updates of consecutive publishes are sent in one transaction per publisher, committed once it
+   * holds that many updates or after the publish latency.
+   */
+  public static final String PUBLISH_BATCH_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.jms.publishbatch";
+  /**
+   * Property for the longest time in milliseconds a batched update waits for its commit, default
+   * 10.
+   */
+  public static final String PUBLISH_LATENCY_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.jms.publishlatency";
   private final JMSAbstractAdministrator administrator;
+  private final JMSSessionPool sendSessions;
+  private final JMSSessionPool publishSessions;
+  private final boolean bytesWireMode;
+  private final int publishBatchSize;
+  private final long publishBatchLatency;
+  private ScheduledExecutorService scheduler = null;
   private Connection queueConnection;
   private final Hashtable namingContextEnv;
 
@@ -68,6 +108,40 @@ public class JMSTransport extends GENTransport implements MALTransport
 
     this.administrator = administrator;
 
+    int lSessionPool = 8;
+    int lProducers = 32;
+    boolean lBytesWireMode = false;
+    int lPublishBatchSize = 1;
+    long lPublishBatchLatency = 10;
+
+    if (null != properties) {
+      if (properties.containsKey(SESSION_POOL_PROPERTY)) {
+        lSessionPool = Integer.parseInt((String) properties.get(SESSION_POOL_PROPERTY));
+      }
+
+      if (properties.containsKey(PRODUCERS_PROPERTY)) {
+        lProducers = Integer.parseInt((String) properties.get(PRODUCERS_PROPERTY));
+      }
+
+      if (properties.containsKey(WIRE_MODE_PROPERTY)) {
+        lBytesWireMode = "bytes".equalsIgnoreCase((String) properties.get(WIRE_MODE_PROPERTY));
+      }
+
+      if (properties.containsKey(PUBLISH_BATCH_PROPERTY)) {
+        lPublishBatchSize = Integer.parseInt((String) properties.get(PUBLISH_BATCH_PROPERTY));
+      }
+
+      if (properties.containsKey(PUBLISH_LATENCY_PROPERTY)) {
+        lPublishBatchLatency = Long.parseLong((String) properties.get(PUBLISH_LATENCY_PROPERTY));
+      }
+    }
+
+    this.sendSessions = new JMSSessionPool(this, false, lSessionPool, lProducers);
+    this.publishSessions = new JMSSessionPool(this, true, lSessionPool, lProducers);
+    this.bytesWireMode = lBytesWireMode;
+    this.publishBatchSize = lPublishBatchSize;
+    this.publishBatchLatency = lPublishBatchLatency;
+
     namingContextEnv = new Hashtable();
 
     namingContextEnv.put("java.naming.factory.initial",
@@ -152,6 +226,82 @@ public class JMSTransport extends GENTransport implements MALTransport
     return administrator;
   }
 
+  /**
+   * Returns the pool of the transacted sessions used to publish updates.
+   *
+   * @return the publish session pool.
+   */
+  public JMSSessionPool getPublishSessionPool()
+  {
+    return publishSessions;
+  }
+
+  /**
+   * Returns the number of published updates committed together.
+   *
+   * @return the batch size, 1 if publishes are not batched.
+   */
+  public int getPublishBatchSize()
+  {
+    return publishBatchSize;
+  }
+
+  /**
+   * Returns the longest time a batched update waits for its commit.
+   *
+   * @return the latency in milliseconds.
+   */
+  public long getPublishBatchLatency()
+  {
+    return publishBatchLatency;
+  }
+
+  /**
+   * Runs a task once after a delay on the timer thread of the transport.
+   *
+   * @param task  The task to run.
+   * @param delay The delay in milliseconds.
+   * @return the scheduled task.
+   */
+  public synchronized ScheduledFuture schedule(Runnable task, long delay)
+  {
+    if (null == scheduler) {
+      scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread thread = new Thread(r, "JMSTransport timer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+
+    return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates the JMS message that carries an encoded MAL message or update. In the bytes wire mode
+   * the encoding is the body of a BytesMessage, avoiding the Java serialisation of an
+   * ObjectMessage.
+   *
+   * @param session The session to create the message with.
+   * @param data    The encoded message.
+   * @return the JMS message.
+   * @throws JMSException On error creating the message.
+   */
+  public Message createWireMessage(Session session, byte[] data) throws JMSException
+  {
+    if (bytesWireMode) {
+      BytesMessage bytesMsg = session.createBytesMessage();
+      bytesMsg.writeBytes(data);
+      return bytesMsg;
+    }
+
+    return session.createObjectMessage(data);
+  }
+
   public Connection getCurrentConnection() throws Exception
   {
     if (queueConnection == null) {
@@ -171,7 +321,32 @@ public class JMSTransport extends GENTransport implements MALTransport
   }
 
   @Override
-  protected GENMessageSender createMessageSender(GENMessage msg, String remoteRootURI) throws
+  public GENMessage createMessage(byte[] packet) throws MALException
+  {
+    return new GENMessage(wrapBodyParts, true, new GENMessageHeader(), qosProperties, packet,
+        getStreamFactory());
+  }
+
+  @Override
+  protected GENOutgoingMessageHolder<byte[]> internalEncodeMessage(String destinationRootURI,
+      String destinationURI,
+      Object multiSendHandle,
+      boolean lastForHandle,
+      String targetURI,
+      GENMessage msg) throws Exception
+  {
+    return new GENOutgoingMessageHolder<byte[]>(10,
+        destinationRootURI,
+        destinationURI,
+        multiSendHandle,
+        lastForHandle,
+        msg,
+        internalEncodeByteMessage(destinationRootURI, destinationURI, multiSendHandle, lastForHandle,
+            targetURI, msg));
+  }
+
+  @Override
+  protected GENMessageSender<byte[]> createMessageSender(GENMessage msg, String remoteRootURI) throws
       MALException, MALTransmitErrorException
   {
     RLOGGER.log(Level.FINE, "JMS received request to create connections to URI:{0}", remoteRootURI);
@@ -185,26 +360,39 @@ public class JMSTransport extends GENTransport implements MALTransport
   {
     RLOGGER.info("Transport closing");
 
+    // closing the endpoints commits the pending publish batches, so the connection must be open
+    super.close();
+
+    synchronized (this) {
+      if (null != scheduler) {
+        // delayed tasks would still run after shutdown(), so any remaining flushes are dropped
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    }
+
+    sendSessions.close();
+    publishSessions.close();
+
     try {
       getCurrentConnection().close();
     } catch (Exception e) {
       RLOGGER.log(Level.WARNING, "Transport closing exception", e);
     }
-
-    super.close();
   }
 
-  private class JMSMessageSender implements GENMessageSender
+  private class JMSMessageSender implements GENMessageSender<byte[]>
   {
 
     private final String remoteRootURI;
+    private JMSPooledSession pooledSession = null;
 
     public JMSMessageSender(String remoteRootURI)
     {
       this.remoteRootURI = remoteRootURI;
     }
 
-    public void sendEncodedMessage(GENOutgoingMessageHolder tmsg) throws IOException
+    public void sendEncodedMessage(GENOutgoingMessageHolder<byte[]> tmsg) throws IOException
     {
       String sendRoutingKey = tmsg.getDestinationURI().substring(remoteRootURI.length() + 1);
 
@@ -213,8 +401,19 @@ public class JMSTransport extends GENTransport implements MALTransport
       });
 
       Session lqs = (Session) tmsg.getMultiSendHandle();
+      final boolean pooled = (null == lqs);
 
       try {
+        if (pooled) {
+          // messages that are not part of a multi send go through the long lived session of this
+          // sender, which is only ever used by its sending thread
+          if (null == pooledSession) {
+            pooledSession = sendSessions.borrow();
+          }
+
+          lqs = pooledSession.getSession();
+        }
+
         // get the queue
         Queue destQueue = null;
         try {
@@ -227,24 +426,26 @@ public class JMSTransport extends GENTransport implements MALTransport
         }
 
         if (null != destQueue) {
-          ObjectMessage objMsg = lqs.createObjectMessage();
+          Message objMsg = createWireMessage(lqs, tmsg.getEncodedMessage());
           objMsg.setIntProperty(JMSEndpoint.ARR_PROPERTY, 1);
           objMsg.setIntProperty(JMSEndpoint.SVC_PROPERTY, 1);
           objMsg.setIntProperty(JMSEndpoint.OPN_PROPERTY, 1);
 
-          objMsg.setObject(tmsg.getEncodedMessage());
-
-          MessageProducer sender = lqs.createProducer(destQueue);
-          sender.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
-          sender.send(objMsg);
+          if (pooled) {
+            pooledSession.getProducer(destQueue).send(objMsg);
+          } else {
+            MessageProducer sender = lqs.createProducer(destQueue);
+            sender.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            sender.send(objMsg);
 
-          sender.close();
+            sender.close();
+          }
 
           RLOGGER.log(Level.FINE, "Sending data to {0} : {2}", new Object[]{
             sendRoutingKey, tmsg.getEncodedMessage()
           });
 
-          if (tmsg.isLastForHandle()) {
+          if (!pooled && tmsg.isLastForHandle()) {
             if (lqs.getTransacted()) {
               RLOGGER.fine("Commiting transaction");
               lqs.commit();
@@ -265,6 +466,16 @@ public class JMSTransport extends GENTransport implements MALTransport
         RLOGGER.log(Level.SEVERE, "Error occurred when sending data to " + sendRoutingKey + " : {0}",
             e);
 
+        if (pooled) {
+          // a failed session is replaced, it may have lost its connection to the provider
+          if ((e instanceof JMSException) && (null != pooledSession)) {
+            sendSessions.discard(pooledSession);
+            pooledSession = null;
+          }
+
+          return;
+        }
+
         try {
           if (tmsg.isLastForHandle()) {
             if (lqs.getTransacted()) {
@@ -282,6 +493,10 @@ public class JMSTransport extends GENTransport implements MALTransport
 
     public void close()
     {
+      if (null != pooledSession) {
+        sendSessions.release(pooledSession);
+        pooledSession = null;
+      }
     }
   }
 }
@@ -28,7 +28,7 @@ import org.ccsds.moims.mo.mal.transport.MALTransport;
 import org.ccsds.moims.mo.mal.transport.MALTransportFactory;
 
 /**
- *
+ * Factory for the JMS transport.
  */
 public class JMSTransportFactoryImpl extends MALTransportFactory
 {
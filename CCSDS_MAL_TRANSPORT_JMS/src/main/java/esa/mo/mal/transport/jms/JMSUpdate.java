@@ -25,7 +25,7 @@ import org.ccsds.moims.mo.mal.structures.IdentifierList;
 import org.ccsds.moims.mo.mal.structures.UShort;
 
 /**
- *
+ * A received JMS message together with the header details carried as JMS properties.
  */
 public class JMSUpdate
 {
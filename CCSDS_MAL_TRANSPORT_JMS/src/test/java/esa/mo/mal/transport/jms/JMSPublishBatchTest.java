@@ -0,0 +1,208 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO JMS Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.jms;
+
+import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.jms.JMSEndpoint.PublishEntry;
+import esa.mo.mal.transport.jms.JMSTestProvider.FakeSession;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.ccsds.moims.mo.mal.MALOperationStage;
+import org.ccsds.moims.mo.mal.MALSendOperation;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.EntityKey;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that batched publishes share one transacted session, committed once the batch is full,
+ * after the publish latency or when the publisher closes, and that a failed commit replaces the
+ * session.
+ */
+public class JMSPublishBatchTest
+{
+
+  private JMSTransport transport;
+  private JMSTestProvider provider;
+
+  @After
+  public void tearDown() throws Exception
+  {
+    if (null != transport) {
+      transport.close();
+    }
+  }
+
+  @Test
+  public void testBatchIsCommittedOnceFull() throws Exception
+  {
+    System.out.println("JMS publish batch size test");
+    JMSPublishHandler handler = handler(3, 60000);
+
+    publish(handler, 2);
+    FakeSession session = onlySession();
+    assertEquals(0, session.getCommits());
+    assertEquals(2, session.getSent().size());
+    assertNotNull(field(handler, "batchFlush"));
+
+    publish(handler, 1);
+    assertEquals(1, session.getCommits());
+    assertEquals(3, session.getSent().size());
+    assertNull(field(handler, "batchFlush"));
+    assertEquals(0, field(handler, "batchCount"));
+
+    // a publish that fills the batch on its own is committed straight away
+    publish(handler, 3);
+    assertEquals(2, session.getCommits());
+    assertSame(session, onlySession());
+  }
+
+  @Test
+  public void testBatchIsCommittedAfterTheLatency() throws Exception
+  {
+    System.out.println("JMS publish batch latency test");
+    JMSPublishHandler handler = handler(100, 200);
+
+    long start = System.nanoTime();
+    publish(handler, 1);
+    FakeSession session = onlySession();
+    assertEquals(0, session.getCommits());
+
+    for (int i = 0; (i < 1000) && (0 == session.getCommits()); i++) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(1, session.getCommits());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 190);
+    assertNull(field(handler, "batchFlush"));
+    assertEquals(0, field(handler, "batchCount"));
+  }
+
+  @Test
+  public void testCloseCommitsThePendingBatch() throws Exception
+  {
+    System.out.println("JMS publish batch close test");
+    JMSPublishHandler handler = handler(100, 60000);
+
+    publish(handler, 2);
+    FakeSession session = onlySession();
+    handler.close();
+
+    assertEquals(1, session.getCommits());
+    assertNull(field(handler, "batchFlush"));
+    assertNull(field(handler, "batchSession"));
+
+    // the session goes back to the pool still open
+    assertFalse(session.isClosed());
+    assertSame(session, JMSTestProvider.fake(
+        transport.getPublishSessionPool().borrow().getSession()));
+  }
+
+  @Test
+  public void testFailedCommitDiscardsTheSession() throws Exception
+  {
+    System.out.println("JMS publish batch commit failure test");
+    JMSPublishHandler handler = handler(2, 60000);
+
+    publish(handler, 1);
+    FakeSession failing = onlySession();
+    failing.setFailCommit(true);
+    publish(handler, 1);
+
+    assertTrue(failing.isClosed());
+    assertEquals(0, failing.getCommits());
+    assertNull(field(handler, "batchSession"));
+    assertNull(field(handler, "batchFlush"));
+
+    publish(handler, 2);
+    List<FakeSession> sessions = provider.getSessions();
+    assertEquals(2, sessions.size());
+    assertEquals(1, sessions.get(1).getCommits());
+  }
+
+  private JMSPublishHandler handler(int batchSize, long latency) throws Exception
+  {
+    Map properties = new HashMap();
+    properties.put(JMSTransport.PUBLISH_BATCH_PROPERTY, String.valueOf(batchSize));
+    properties.put(JMSTransport.PUBLISH_LATENCY_PROPERTY, String.valueOf(latency));
+    transport = JMSTestProvider.createTransport(properties);
+    provider = (JMSTestProvider) transport.getAdministrator();
+
+    GENMessageHeader header = new GENMessageHeader(new URI("jmstest://provider"), new Blob(),
+        new URI("jmstest://broker"), new Time(0), QoSLevel.BESTEFFORT, new UInteger(1),
+        new IdentifierList(), new Identifier("zone"), SessionType.LIVE, new Identifier("session"),
+        InteractionType.SEND, new UOctet((short) 1), 1L, new UShort(1), new UShort(1),
+        new UShort(1), new UOctet((short) 1), Boolean.FALSE);
+
+    return new JMSPublishHandler(transport, new GENMessage(false, header, null,
+        new MALSendOperation(new UShort(1), new Identifier("test"), false, new UShort(0),
+            new MALOperationStage(new UOctet((short) 1), new Object[0], new Object[0])),
+        transport.getStreamFactory()));
+  }
+
+  private FakeSession onlySession()
+  {
+    List<FakeSession> sessions = provider.getSessions();
+    assertEquals(1, sessions.size());
+
+    return sessions.get(0);
+  }
+
+  private static void publish(JMSPublishHandler handler, int updates) throws Exception
+  {
+    List<PublishEntry> entries = new ArrayList<PublishEntry>();
+
+    for (int i = 0; i < updates; i++) {
+      entries.add(new PublishEntry(new EntityKey(new Identifier("key"), 1L, 2L, 3L), false,
+          new byte[]{(byte) i}));
+    }
+
+    Method method = JMSPublishHandler.class.getDeclaredMethod("publishBatched", String.class,
+        String.class, String.class, int.class, int.class, int.class, List.class);
+    method.setAccessible(true);
+    method.invoke(handler, "exchange", "a.b", "net", 2, 3, 4, entries);
+  }
+
+  private static Object field(Object obj, String name) throws Exception
+  {
+    Field field = obj.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+
+    return field.get(obj);
+  }
+}
@@ -0,0 +1,226 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO JMS Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.jms;
+
+import esa.mo.mal.transport.jms.JMSTestProvider.FakeSession;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.jms.MessageProducer;
+import javax.jms.Topic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the session pool reuses released sessions, bounds its idle sessions, closes discarded
+ * ones and never hands a session to two threads at once, and that a pooled session reuses and
+ * bounds its producers.
+ */
+public class JMSSessionPoolTest
+{
+
+  private JMSTransport transport;
+  private JMSTestProvider provider;
+  private JMSSessionPool pool;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    Map properties = new HashMap();
+    properties.put(JMSTransport.SESSION_POOL_PROPERTY, "2");
+    properties.put(JMSTransport.PRODUCERS_PROPERTY, "2");
+    transport = JMSTestProvider.createTransport(properties);
+    provider = (JMSTestProvider) transport.getAdministrator();
+    pool = transport.getPublishSessionPool();
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    transport.close();
+  }
+
+  @Test
+  public void testReleasedSessionIsBorrowedAgain() throws Exception
+  {
+    System.out.println("JMS session pool reuse test");
+    JMSPooledSession session = pool.borrow();
+    assertTrue(fake(session).isTransacted());
+    pool.release(session);
+
+    assertSame(session, pool.borrow());
+    assertEquals(1, provider.getSessions().size());
+    assertFalse(fake(session).isClosed());
+  }
+
+  @Test
+  public void testIdleSessionsAreBounded() throws Exception
+  {
+    System.out.println("JMS session pool idle bound test");
+    JMSPooledSession a = pool.borrow();
+    JMSPooledSession b = pool.borrow();
+    JMSPooledSession c = pool.borrow();
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+
+    // only two idle sessions are kept, the most recently released is borrowed first
+    assertFalse(fake(a).isClosed());
+    assertFalse(fake(b).isClosed());
+    assertTrue(fake(c).isClosed());
+    assertSame(b, pool.borrow());
+    assertSame(a, pool.borrow());
+    assertNotSame(c, pool.borrow());
+    assertEquals(4, provider.getSessions().size());
+  }
+
+  @Test
+  public void testDiscardedSessionIsClosedAndNotReused() throws Exception
+  {
+    System.out.println("JMS session pool discard test");
+    JMSPooledSession session = pool.borrow();
+    pool.discard(session);
+
+    assertTrue(fake(session).isClosed());
+    assertNotSame(session, pool.borrow());
+    assertEquals(2, provider.getSessions().size());
+  }
+
+  @Test
+  public void testCloseClosesIdleAndLaterReleasedSessions() throws Exception
+  {
+    System.out.println("JMS session pool close test");
+    JMSPooledSession idle = pool.borrow();
+    JMSPooledSession borrowed = pool.borrow();
+    pool.release(idle);
+
+    pool.close();
+    assertTrue(fake(idle).isClosed());
+    assertFalse(fake(borrowed).isClosed());
+
+    pool.release(borrowed);
+    assertTrue(fake(borrowed).isClosed());
+  }
+
+  @Test
+  public void testConcurrentBorrowersNeverShareASession() throws Exception
+  {
+    System.out.println("JMS session pool concurrency test");
+    final int threads = 8;
+    final int loops = 500;
+    final Set<JMSPooledSession> inUse
+        = Collections.newSetFromMap(new ConcurrentHashMap<JMSPooledSession, Boolean>());
+    final Set<JMSPooledSession> discarded
+        = Collections.newSetFromMap(new ConcurrentHashMap<JMSPooledSession, Boolean>());
+    final AtomicInteger failures = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+
+    for (int t = 0; t < threads; t++) {
+      new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try {
+            start.await();
+
+            for (int i = 0; i < loops; i++) {
+              JMSPooledSession session = pool.borrow();
+
+              if (!inUse.add(session) || discarded.contains(session)
+                  || fake(session).isClosed()) {
+                failures.incrementAndGet();
+              }
+
+              Thread.yield();
+
+              // no longer in use before it goes back, another thread may borrow it straight away
+              inUse.remove(session);
+
+              if (49 == (i % 50)) {
+                discarded.add(session);
+                pool.discard(session);
+              } else {
+                pool.release(session);
+              }
+            }
+          } catch (Exception ex) {
+            failures.incrementAndGet();
+          }
+
+          done.countDown();
+        }
+      }.start();
+    }
+
+    start.countDown();
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+    assertEquals(0, failures.get());
+
+    for (JMSPooledSession session : discarded) {
+      assertTrue(fake(session).isClosed());
+    }
+
+    // every session has been returned, only the idle ones are still open
+    assertTrue(provider.getOpenSessions() <= 2);
+  }
+
+  @Test
+  public void testProducersAreReusedAndBounded() throws Exception
+  {
+    System.out.println("JMS pooled session producer test");
+    JMSPooledSession session = pool.borrow();
+    Topic first = provider.getTopic(null, "first");
+    Topic second = provider.getTopic(null, "second");
+    Topic third = provider.getTopic(null, "third");
+
+    MessageProducer producer = session.getProducer(first);
+    assertSame(producer, session.getProducer(first));
+    session.getProducer(second);
+
+    // using the first producer again makes the second the least recently used one
+    session.getProducer(first);
+    session.getProducer(third);
+    assertEquals(3, fake(session).getProducersCreated());
+    assertEquals(1, fake(session).getProducersClosed());
+    assertSame(producer, session.getProducer(first));
+
+    session.getProducer(second);
+    assertEquals(4, fake(session).getProducersCreated());
+
+    session.closeProducers();
+    assertEquals(4, fake(session).getProducersClosed());
+    assertFalse(fake(session).isClosed());
+  }
+
+  private static FakeSession fake(JMSPooledSession session)
+  {
+    return JMSTestProvider.fake(session.getSession());
+  }
+}
@@ -0,0 +1,547 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO JMS Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.jms;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.Topic;
+import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
+import org.ccsds.moims.mo.mal.structures.Blob;
+
+/**
+ * An in memory stand in for a JMS provider, built from dynamic proxies of the javax.jms interfaces.
+ * It records the sessions created, the messages sent and the commits made so that tests can check
+ * how the transport uses its sessions without a running broker. Messages are not delivered.
+ */
+public class JMSTestProvider extends JMSAbstractAdministrator
+{
+
+  /**
+   * The protocol of the test transports.
+   */
+  public static final String PROTOCOL = "jmstest";
+  private final List<FakeSession> sessions = new ArrayList<FakeSession>();
+  private final Map<String, Destination> destinations = new HashMap<String, Destination>();
+  private final Connection connection = proxy(Connection.class, new Fake()
+  {
+    @Override
+    protected Object call(String name, Object[] args)
+    {
+      if ("createSession".equals(name)) {
+        return createSession((Boolean) args[0]);
+      }
+
+      return null;
+    }
+  });
+
+  static {
+    // the stream factory of a protocol can only be configured through a system property
+    System.setProperty(MALElementStreamFactory.FACTORY_PROP_NAME_PREFIX + "." + PROTOCOL,
+        StreamFactory.class.getName());
+
+    // the transport copies the JNDI settings into a Hashtable, which does not accept nulls
+    setDefaultProperty("java.naming.factory.initial", "none");
+    setDefaultProperty("java.naming.factory.host", "localhost");
+    setDefaultProperty("java.naming.factory.port", "0");
+  }
+
+  /**
+   * Creates and initialises a JMS transport on a new test provider.
+   *
+   * @param properties The transport properties, may be null.
+   * @return the transport.
+   * @throws Exception On error.
+   */
+  public static JMSTransport createTransport(Map properties) throws Exception
+  {
+    JMSTransport transport = new JMSTransport(null, PROTOCOL, new JMSTestProvider(), properties);
+    transport.init();
+
+    return transport;
+  }
+
+  /**
+   * Returns the recording behind a session created by a test provider.
+   *
+   * @param session The session.
+   * @return the recording of the session.
+   */
+  public static FakeSession fake(Session session)
+  {
+    return (FakeSession) Proxy.getInvocationHandler(session);
+  }
+
+  /**
+   * Returns the sessions created so far.
+   *
+   * @return the sessions in creation order.
+   */
+  public synchronized List<FakeSession> getSessions()
+  {
+    return new ArrayList<FakeSession>(sessions);
+  }
+
+  /**
+   * Returns the number of sessions created and not closed.
+   *
+   * @return the open session count.
+   */
+  public synchronized int getOpenSessions()
+  {
+    int count = 0;
+
+    for (FakeSession session : sessions) {
+      if (!session.isClosed()) {
+        ++count;
+      }
+    }
+
+    return count;
+  }
+
+  @Override
+  public Topic createTopic(String name)
+  {
+    return destination(Topic.class, name);
+  }
+
+  @Override
+  public void bindTopic(Session session, Topic topic)
+  {
+  }
+
+  @Override
+  public Topic getTopic(Session session, String name)
+  {
+    return destination(Topic.class, name);
+  }
+
+  @Override
+  public void deleteTopic(Session session, Topic topic)
+  {
+  }
+
+  @Override
+  public Queue createQueue(Session session, String name)
+  {
+    return destination(Queue.class, name);
+  }
+
+  @Override
+  public void bindQueue(Session session, Queue queue)
+  {
+  }
+
+  @Override
+  public Queue getQueue(Session session, String name)
+  {
+    return destination(Queue.class, name);
+  }
+
+  @Override
+  public void deleteQueue(Session session, Queue queue)
+  {
+  }
+
+  @Override
+  public ConnectionFactory getConnectionFactory()
+  {
+    return proxy(ConnectionFactory.class, new Fake()
+    {
+      @Override
+      protected Object call(String name, Object[] args)
+      {
+        return connection;
+      }
+    });
+  }
+
+  private synchronized Session createSession(boolean transacted)
+  {
+    FakeSession session = new FakeSession(transacted);
+    sessions.add(session);
+
+    return session.getSession();
+  }
+
+  private synchronized <T extends Destination> T destination(Class<T> type, final String name)
+  {
+    Destination destination = destinations.get(type.getSimpleName() + ":" + name);
+
+    if (null == destination) {
+      destination = proxy(type, new Fake()
+      {
+        @Override
+        protected Object call(String method, Object[] args)
+        {
+          return name;
+        }
+
+        @Override
+        public String toString()
+        {
+          return name;
+        }
+      });
+      destinations.put(type.getSimpleName() + ":" + name, destination);
+    }
+
+    return type.cast(destination);
+  }
+
+  private static void setDefaultProperty(String name, String value)
+  {
+    if (null == System.getProperty(name)) {
+      System.setProperty(name, value);
+    }
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler)
+  {
+    return type.cast(Proxy.newProxyInstance(JMSTestProvider.class.getClassLoader(),
+        new Class[]{type}, handler));
+  }
+
+  /**
+   * The base of the proxy handlers, proxies are only equal to themselves and unhandled methods
+   * return null or the default of their primitive type.
+   */
+  private abstract static class Fake implements InvocationHandler
+  {
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+      String name = method.getName();
+      Class<?>[] params = method.getParameterTypes();
+
+      if ("equals".equals(name) && (1 == params.length) && (Object.class == params[0])) {
+        return proxy == args[0];
+      }
+
+      if ("hashCode".equals(name) && (0 == params.length)) {
+        return System.identityHashCode(proxy);
+      }
+
+      if ("toString".equals(name) && (0 == params.length)) {
+        return toString();
+      }
+
+      Object rv = call(name, args);
+      Class<?> type = method.getReturnType();
+
+      if ((null == rv) && type.isPrimitive() && (void.class != type)) {
+        return Array.get(Array.newInstance(type, 1), 0);
+      }
+
+      return rv;
+    }
+
+    protected abstract Object call(String name, Object[] args) throws JMSException;
+  }
+
+  /**
+   * A session that records its commits, its producers and the messages sent through them.
+   */
+  public static class FakeSession extends Fake
+  {
+
+    private final boolean transacted;
+    private final Session session;
+    private final List<Message> sent = new ArrayList<Message>();
+    private int commits = 0;
+    private int producersCreated = 0;
+    private int producersClosed = 0;
+    private boolean failCommit = false;
+    private volatile boolean closed = false;
+
+    private FakeSession(boolean transacted)
+    {
+      this.transacted = transacted;
+      this.session = proxy(Session.class, this);
+    }
+
+    /**
+     * Returns the JMS session.
+     *
+     * @return the session.
+     */
+    public Session getSession()
+    {
+      return session;
+    }
+
+    /**
+     * Returns true if the session is transacted.
+     *
+     * @return the transacted flag.
+     */
+    public boolean isTransacted()
+    {
+      return transacted;
+    }
+
+    /**
+     * Returns true once the session has been closed.
+     *
+     * @return the closed flag.
+     */
+    public boolean isClosed()
+    {
+      return closed;
+    }
+
+    /**
+     * Returns the number of successful commits.
+     *
+     * @return the commit count.
+     */
+    public synchronized int getCommits()
+    {
+      return commits;
+    }
+
+    /**
+     * Returns the messages sent through the producers of the session.
+     *
+     * @return the messages in sending order.
+     */
+    public synchronized List<Message> getSent()
+    {
+      return new ArrayList<Message>(sent);
+    }
+
+    /**
+     * Returns the number of producers created.
+     *
+     * @return the producer count.
+     */
+    public synchronized int getProducersCreated()
+    {
+      return producersCreated;
+    }
+
+    /**
+     * Returns the number of producers closed.
+     *
+     * @return the closed producer count.
+     */
+    public synchronized int getProducersClosed()
+    {
+      return producersClosed;
+    }
+
+    /**
+     * Makes the following commits fail with a JMSException.
+     *
+     * @param failCommit True to fail commits.
+     */
+    public synchronized void setFailCommit(boolean failCommit)
+    {
+      this.failCommit = failCommit;
+    }
+
+    @Override
+    protected synchronized Object call(String name, Object[] args) throws JMSException
+    {
+      if ("getTransacted".equals(name)) {
+        return transacted;
+      } else if ("commit".equals(name)) {
+        if (closed || failCommit) {
+          throw new JMSException("Commit failed");
+        }
+
+        ++commits;
+      } else if ("close".equals(name)) {
+        closed = true;
+      } else if ("createProducer".equals(name)) {
+        ++producersCreated;
+        return proxy(MessageProducer.class, new FakeProducer(this));
+      } else if ("createConsumer".equals(name)) {
+        // consumers are never given messages
+        return proxy(MessageConsumer.class, new Fake()
+        {
+          @Override
+          protected Object call(String method, Object[] params)
+          {
+            return null;
+          }
+        });
+      } else if ("createBytesMessage".equals(name)) {
+        return proxy(BytesMessage.class, new FakeMessage(null));
+      } else if ("createObjectMessage".equals(name)) {
+        return proxy(ObjectMessage.class, new FakeMessage((null == args) ? null : args[0]));
+      }
+
+      return null;
+    }
+
+    private synchronized void send(Message msg) throws JMSException
+    {
+      if (closed) {
+        throw new JMSException("Session closed");
+      }
+
+      sent.add(msg);
+    }
+
+    private synchronized void producerClosed()
+    {
+      ++producersClosed;
+    }
+  }
+
+  /**
+   * A producer that passes the messages it sends to its session.
+   */
+  private static class FakeProducer extends Fake
+  {
+
+    private final FakeSession session;
+    private boolean closed = false;
+
+    FakeProducer(FakeSession session)
+    {
+      this.session = session;
+    }
+
+    @Override
+    protected Object call(String name, Object[] args) throws JMSException
+    {
+      if ("send".equals(name)) {
+        if (closed) {
+          throw new JMSException("Producer closed");
+        }
+
+        session.send((Message) args[args.length - 1]);
+      } else if ("close".equals(name)) {
+        closed = true;
+        session.producerClosed();
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * A bytes or object message holding its body and properties in memory.
+   */
+  private static class FakeMessage extends Fake
+  {
+
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+    private Object object;
+    private byte[] body = new byte[0];
+
+    FakeMessage(Object object)
+    {
+      this.object = object;
+    }
+
+    @Override
+    protected Object call(String name, Object[] args)
+    {
+      if (name.endsWith("Property") && name.startsWith("set")) {
+        properties.put((String) args[0], args[1]);
+      } else if (name.endsWith("Property") && name.startsWith("get")) {
+        return properties.get((String) args[0]);
+      } else if ("writeBytes".equals(name)) {
+        byte[] data = (byte[]) args[0];
+        byte[] joined = new byte[body.length + data.length];
+        System.arraycopy(body, 0, joined, 0, body.length);
+        System.arraycopy(data, 0, joined, body.length, data.length);
+        body = joined;
+      } else if ("getBodyLength".equals(name)) {
+        return (long) body.length;
+      } else if ("readBytes".equals(name)) {
+        byte[] data = (byte[]) args[0];
+        int length = Math.min(data.length, body.length);
+        System.arraycopy(body, 0, data, 0, length);
+        return length;
+      } else if ("getObject".equals(name)) {
+        return object;
+      } else if ("setObject".equals(name)) {
+        object = args[0];
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * The stream factory of the test protocol, the tests never encode or decode.
+   */
+  public static class StreamFactory extends MALElementStreamFactory
+  {
+
+    @Override
+    protected void init(String protocol, Map properties)
+    {
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(InputStream is)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(byte[] bytes, int offset)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MALElementOutputStream createOutputStream(OutputStream os)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Blob encode(Object[] elements, MALEncodingContext ctx)
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
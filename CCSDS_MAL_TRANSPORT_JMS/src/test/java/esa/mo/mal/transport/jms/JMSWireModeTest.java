@@ -0,0 +1,179 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO JMS Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.jms;
+
+import esa.mo.mal.transport.gen.receivers.GENIncomingMessageDecoder;
+import esa.mo.mal.transport.gen.receivers.GENIncomingMessageHolder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import javax.jms.Topic;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the wire mode selects the JMS message type that carries encoded MAL messages, and that
+ * both message types are received whatever the wire mode.
+ */
+public class JMSWireModeTest
+{
+
+  private static final byte[] DATA = new byte[]{1, 2, 3, 4, 5};
+  private JMSTransport transport;
+
+  @After
+  public void tearDown() throws Exception
+  {
+    if (null != transport) {
+      transport.close();
+    }
+  }
+
+  @Test
+  public void testObjectMessageIsTheDefault() throws Exception
+  {
+    System.out.println("JMS object wire mode test");
+    transport = JMSTestProvider.createTransport(null);
+    Message msg = transport.createWireMessage(session(), DATA);
+
+    assertTrue(msg instanceof ObjectMessage);
+    assertFalse(msg instanceof BytesMessage);
+    assertArrayEquals(DATA, (byte[]) ((ObjectMessage) msg).getObject());
+  }
+
+  @Test
+  public void testBytesModeSendsBytesMessages() throws Exception
+  {
+    System.out.println("JMS bytes wire mode test");
+    transport = JMSTestProvider.createTransport(bytesMode());
+    Message msg = transport.createWireMessage(session(), DATA);
+
+    assertTrue(msg instanceof BytesMessage);
+    BytesMessage bytesMsg = (BytesMessage) msg;
+    byte[] body = new byte[(int) bytesMsg.getBodyLength()];
+    bytesMsg.readBytes(body);
+    assertArrayEquals(DATA, body);
+  }
+
+  @Test
+  public void testBothMessageTypesAreReceived() throws Exception
+  {
+    System.out.println("JMS wire mode reception test");
+    transport = JMSTestProvider.createTransport(bytesMode());
+    JMSEndpoint endpoint = (JMSEndpoint) transport.createEndpoint("wire", null);
+    Session session = session();
+    Topic topic = ((JMSTestProvider) transport.getAdministrator()).getTopic(session, "wire");
+    RecordingHandler handler = new RecordingHandler(endpoint, session, topic, 2);
+
+    BytesMessage bytesMsg = session.createBytesMessage();
+    bytesMsg.writeBytes(DATA);
+    handler.onMessage(properties(bytesMsg));
+
+    // an object message holding anything but the encoded message is dropped
+    handler.onMessage(properties(session.createObjectMessage("not encoded")));
+    handler.onMessage(properties(session.createObjectMessage(new byte[]{9, 8})));
+
+    assertTrue(handler.done.await(30, TimeUnit.SECONDS));
+    List<JMSUpdate> updates = handler.getUpdates();
+    assertEquals(2, updates.size());
+    assertArrayEquals(DATA, updates.get(0).getDat());
+    assertArrayEquals(new byte[]{9, 8}, updates.get(1).getDat());
+
+    for (JMSUpdate update : updates) {
+      assertEquals("a", update.getDomain().get(0).getValue());
+      assertEquals("b", update.getDomain().get(1).getValue());
+      assertEquals("net", update.getNetwork().getValue());
+      assertEquals(2, update.getServiceArea().getValue());
+      assertEquals(3, update.getService().getValue());
+      assertEquals(4, update.getOperation().getValue());
+    }
+  }
+
+  private Session session() throws Exception
+  {
+    return transport.getPublishSessionPool().borrow().getSession();
+  }
+
+  private static Map bytesMode()
+  {
+    Map properties = new HashMap();
+    properties.put(JMSTransport.WIRE_MODE_PROPERTY, "bytes");
+    return properties;
+  }
+
+  private static Message properties(Message msg) throws Exception
+  {
+    msg.setStringProperty(JMSEndpoint.DOM_PROPERTY, "a.b");
+    msg.setStringProperty(JMSEndpoint.NET_PROPERTY, "net");
+    msg.setIntProperty(JMSEndpoint.ARR_PROPERTY, 2);
+    msg.setIntProperty(JMSEndpoint.SVC_PROPERTY, 3);
+    msg.setIntProperty(JMSEndpoint.OPN_PROPERTY, 4);
+    return msg;
+  }
+
+  /**
+   * Records the updates passed on for decoding instead of decoding them.
+   */
+  private static class RecordingHandler extends JMSQueueHandler
+  {
+
+    private final List<JMSUpdate> updates = new ArrayList<JMSUpdate>();
+    private final CountDownLatch done;
+
+    RecordingHandler(JMSEndpoint endpoint, Session session, Topic topic, int expected)
+        throws Exception
+    {
+      super(endpoint, new Object(), session, topic, "wire");
+      this.done = new CountDownLatch(expected);
+    }
+
+    synchronized List<JMSUpdate> getUpdates()
+    {
+      return new ArrayList<JMSUpdate>(updates);
+    }
+
+    @Override
+    protected GENIncomingMessageDecoder createMessageDecoder(final JMSUpdate update)
+    {
+      return new GENIncomingMessageDecoder()
+      {
+        @Override
+        public GENIncomingMessageHolder decodeAndCreateMessage()
+        {
+          synchronized (RecordingHandler.this) {
+            updates.add(update);
+          }
+
+          done.countDown();
+          return null;
+        }
+      };
+    }
+  }
+}
@@ -107,14 +107,7 @@ public class SPPTimeHandler extends BinaryTimeHandler
       MALException
   {
     long s = getIntFromBytes(sourceBuffer, 4) * 1000;
-    byte[] ss = sourceBuffer.directGetBytes(3);
-
-    byte[] b = new byte[4];
-    b[0] = 0;
-    b[1] = ss[0];
-    b[2] = ss[1];
-    b[3] = ss[2];
-    int ms = java.nio.ByteBuffer.wrap(b).getInt();
+    int ms = (int) sourceBuffer.getFixedUnsigned(3);
 
     s += ms;
     return new Duration(((double) s) / 1000.0);
@@ -129,8 +122,8 @@ public class SPPTimeHandler extends BinaryTimeHandler
       int ms = (int) (tm % 1000);
       int s = (int) (tm / 1000);
 
-      outputStream.directAdd(java.nio.ByteBuffer.allocate(4).putInt(s).array(), 0, 4);
-      outputStream.directAdd(java.nio.ByteBuffer.allocate(4).putInt(ms).array(), 1, 3);
+      outputStream.addFixedUnsignedInt(s);
+      outputStream.addFixedUnsigned(ms, 3);
     } catch (IOException ex) {
       throw new MALException(IO_EXCEPTION_STR, ex);
     }
@@ -183,7 +176,7 @@ public class SPPTimeHandler extends BinaryTimeHandler
       }
 
       int ff = Math.min(4, timeMajorUnitFieldLength);
-      outputStream.directAdd(java.nio.ByteBuffer.allocate(4).putInt(s).array(), 4 - ff, ff);
+      outputStream.addFixedUnsigned(s, ff);
 
       double subseconds = ((double) ms) / 1000.0;
       for (int i = 0; i < timeMinorUnitFieldLength; ++i) {
@@ -242,7 +235,7 @@ public class SPPTimeHandler extends BinaryTimeHandler
       }
 
       int ff = Math.min(4, fineTimeMajorUnitFieldLength);
-      outputStream.directAdd(java.nio.ByteBuffer.allocate(4).putInt((int) s).array(), 4 - ff, ff);
+      outputStream.addFixedUnsigned((int) s, ff);
 
       double subseconds = ((double) ms) / 1000000000000.0;
       for (int i = 0; i < fineTimeMinorUnitFieldLength; ++i) {
@@ -257,15 +250,6 @@ public class SPPTimeHandler extends BinaryTimeHandler
   private int getIntFromBytes(final BaseBinaryDecoder.BaseBinaryBufferHolder sourceBuffer,
       int countToRead) throws MALException
   {
-    byte[] fs = sourceBuffer.directGetBytes(countToRead);
-
-    byte[] b = new byte[4];
-    b[0] = 0;
-    b[1] = 0;
-    b[2] = 0;
-    b[3] = 0;
-
-    System.arraycopy(fs, 0, b, 4 - countToRead, countToRead);
-    return java.nio.ByteBuffer.wrap(b).getInt();
+    return (int) sourceBuffer.getFixedUnsigned(countToRead);
   }
 }
@@ -27,7 +27,6 @@ import esa.mo.mal.transport.gen.GENTransport;
 import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -35,13 +34,16 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALStandardError;
 import org.ccsds.moims.mo.mal.broker.MALBrokerBinding;
 import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
 import org.ccsds.moims.mo.mal.structures.Blob;
 import org.ccsds.moims.mo.mal.structures.InteractionType;
 import org.ccsds.moims.mo.mal.structures.QoSLevel;
 import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.URI;
 import org.ccsds.moims.mo.mal.transport.MALEndpoint;
+import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
 import org.ccsds.moims.mo.mal.transport.MALTransportFactory;
 
 public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffer>>
@@ -66,16 +68,45 @@ public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffe
   public static final String PRIORITY_FLAG = "org.ccsds.moims.mo.malspp.priorityFlag";
   public static final String SESSION_NAME_FLAG = "org.ccsds.moims.mo.malspp.sessionNameFlag";
   public static final String TIMESTAMP_FLAG = "org.ccsds.moims.mo.malspp.timestampFlag";
+  /**
+   * Age, in milliseconds, after which an incomplete segmented message is discarded, 0 to disable.
+   */
+  public static final String REASSEMBLY_TIMEOUT_PROPERTY
+      = "org.ccsds.moims.mo.malspp.reassemblyTimeout";
+  /**
+   * Maximum number of bytes held for incomplete messages per APID, counting the segments and the
+   * slot arrays they are held in.
+   */
+  public static final String REASSEMBLY_MAX_SIZE_PROPERTY
+      = "org.ccsds.moims.mo.malspp.reassemblyMaxSize";
+  /**
+   * File the source sequence counts are kept in between runs of the transport, none if not set.
+   */
+  public static final String SEQUENCE_COUNTER_FILE_PROPERTY
+      = "org.ccsds.moims.mo.malspp.sequenceCounterFile";
+  /**
+   * Number of counts the marks in the sequence counter file are kept ahead of the counters, the
+   * file is written once every that many counts, default 1024.
+   */
+  public static final String SEQUENCE_COUNTER_RESERVE_PROPERTY
+      = "org.ccsds.moims.mo.malspp.sequenceCounterReserve";
 
   protected final SPPConfiguration defaultConfiguration;
   protected final SPPURIRepresentation uriRep;
   protected final SPPSourceSequenceCounterSimple ssc;
   protected final int defaultApidQualifier;
   protected final int defaultApid;
-  protected final Map<QualifiedApid, SPPConfiguration> apidConfigurations
-      = new HashMap<QualifiedApid, SPPConfiguration>();
-  protected final Map<QualifiedApid, Map<Long, SPPSegmentsHandler>> segmentHandlers
-      = new HashMap<QualifiedApid, Map<Long, SPPSegmentsHandler>>();
+  /**
+   * The configurations of APIDs that differ from the default, keyed by SPPRoutingTable.key(apid
+   * qualifier, APID).
+   */
+  protected final SPPRoutingTable<SPPConfiguration> apidConfigurations
+      = new SPPRoutingTable<SPPConfiguration>();
+  protected final SPPReassemblyManager reassemblyManager;
+  /**
+   * The source sequence counters, per APID qualifier and APID of the primary header.
+   */
+  protected final SPPSourceSequenceCounterTable sourceSequenceCounters;
   /**
    * The stream factory used for encoding and decoding message headers.
    */
@@ -99,8 +130,10 @@ public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffe
         factory, properties);
 
     this.defaultConfiguration = configuration;
-    this.uriRep = uriRep;
+    this.uriRep = (uriRep instanceof SPPURIRepresentationCache) ? uriRep
+        : new SPPURIRepresentationCache(uriRep);
     this.ssc = ssc;
+    this.reassemblyManager = new SPPReassemblyManager(this, properties);
 
     int aq = -1;
     int a = 1;
@@ -118,6 +151,7 @@ public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffe
 
     this.defaultApidQualifier = aq;
     this.defaultApid = a;
+    this.sourceSequenceCounters = new SPPSourceSequenceCounterTable(ssc, aq, a, properties);
 
     MALElementStreamFactory lsf = super.getStreamFactory();
 
@@ -214,8 +248,30 @@ public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffe
   protected GENEndpoint internalCreateEndpoint(final String localName, final String routingName,
       final Map properties) throws MALException
   {
-    return new SPPEndpoint(this, defaultConfiguration, defaultApidQualifier, uriRep, ssc, localName,
-        routingName, uriBase + routingName, wrapBodyParts, properties);
+    final URI uri = new URI(uriBase + routingName);
+
+    return new SPPEndpoint(this, defaultConfiguration, defaultApidQualifier, uriRep,
+        getSourceSequenceCounter(uri), localName, routingName, uri.getValue(), wrapBodyParts,
+        properties);
+  }
+
+  /**
+   * Returns the source sequence counter of the APID of an endpoint URI.
+   *
+   * @param uri The endpoint URI.
+   * @return The counter, the default one if the URI has no APID qualifier and APID.
+   */
+  protected SPPSourceSequenceCounter getSourceSequenceCounter(final URI uri)
+  {
+    try {
+      if (uriRep.hasQualifier(uri)) {
+        return sourceSequenceCounters.getCounter(uriRep.getQualifier(uri), uriRep.getApid(uri));
+      }
+    } catch (NumberFormatException ex) {
+      LOGGER.log(Level.FINE, "Using the default source sequence counter for {0}", uri);
+    }
+
+    return ssc;
   }
 
   protected GENOutgoingMessageHolder<List<ByteBuffer>> internalEncodeMessage(
@@ -226,25 +282,43 @@ public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffe
       final String targetURI,
       final GENMessage msg) throws Exception
   {
-    byte[] buf = internalEncodeByteMessage(destinationRootURI, destinationURI, multiSendHandle,
-        lastForHandle, targetURI, msg);
-
-    int sequenceFlags = (buf[2] & 0xC0) >> 6;
+    List<ByteBuffer> encodedMessage;
 
-    List<ByteBuffer> encodedMessage = new ArrayList<ByteBuffer>();
+    if (msg instanceof SPPMessage) {
+      // segmented straight from the encoded body, without encoding the whole message first
+      try {
+        encodedMessage = ((SPPMessage) msg).encodePackets(getStreamFactory(),
+            sourceSequenceCounters);
+      } catch (MALException ex) {
+        LOGGER.log(Level.SEVERE, "SPP could not encode message!", ex);
+        throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
+            MALHelper.BAD_ENCODING_ERROR_NUMBER, null), null);
+      }
 
-    if (3 == sequenceFlags) {
-      encodedMessage.add(ByteBuffer.wrap(buf));
+      LOGGER.log(Level.FINE, "SPP Sending {0} packets to {1}", new Object[]{
+        encodedMessage.size(), targetURI
+      });
     } else {
-      ByteBuffer buffer = ByteBuffer.wrap(buf);
-      int index = 0;
-      while ((buf.length - index) > 0) {
-        short shortVal = buffer.getShort(index + 4);
-        int bodyLength = shortVal >= 0 ? shortVal : 0x10000 + shortVal;
-        bodyLength += 7;
-
-        encodedMessage.add(ByteBuffer.wrap(buf, index, bodyLength));
-        index += bodyLength;
+      byte[] buf = internalEncodeByteMessage(destinationRootURI, destinationURI, multiSendHandle,
+          lastForHandle, targetURI, msg);
+
+      int sequenceFlags = (buf[2] & 0xC0) >> 6;
+
+      encodedMessage = new ArrayList<ByteBuffer>();
+
+      if (3 == sequenceFlags) {
+        encodedMessage.add(ByteBuffer.wrap(buf));
+      } else {
+        ByteBuffer buffer = ByteBuffer.wrap(buf);
+        int index = 0;
+        while ((buf.length - index) > 0) {
+          short shortVal = buffer.getShort(index + 4);
+          int bodyLength = shortVal >= 0 ? shortVal : 0x10000 + shortVal;
+          bodyLength += 7;
+
+          encodedMessage.add(ByteBuffer.wrap(buf, index, bodyLength));
+          index += bodyLength;
+        }
       }
     }
 
@@ -261,65 +335,27 @@ public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffe
       int sequenceFlags, final byte[] packet) throws MALException
   {
     if (3 == sequenceFlags) {
-      SPPConfiguration configuration
-          = apidConfigurations.get(new QualifiedApid(apidQualifier, apid));
-      if (null == configuration) {
-        configuration = defaultConfiguration;
-      }
+      final SPPConfiguration configuration = getConfiguration(apidQualifier, apid);
 
       MALElementStreamFactory localBodyStreamFactory = hdrStreamFactory;
       if (!configuration.isFixedBody()) {
         localBodyStreamFactory = getStreamFactory();
       }
 
-      // need to decode in two stages, first message header
-      SPPMessage dummyMessage = internalDecodeMessageHeader(apidQualifier, apid, packet);
-
-      // now full message including body
-      try {
-        return new SPPMessage(hdrStreamFactory, configuration, null, wrapBodyParts, false,
-            (GENMessageHeader) dummyMessage.getHeader(), qosProperties,
-            dummyMessage.getBody().getEncodedBody().getEncodedBody().getValue(),
-            localBodyStreamFactory);
-      } catch (MALException ex) {
-        returnErrorMessage(null,
-            dummyMessage,
-            MALHelper.INTERNAL_ERROR_NUMBER,
-            "The message body could not be decoded. The message will be discarded!");
+      // only the header is decoded here, the body is decoded from the packet when accessed
+      SPPMessageHeader header = new SPPMessageHeader(hdrStreamFactory, configuration, null,
+          apidQualifier, uriRep, ssc);
+      Blob body = GENMessage.decodeHeader(header, qosProperties, packet, hdrStreamFactory);
 
-        return null;
-      }
+      return new SPPMessage(hdrStreamFactory, configuration, null, wrapBodyParts, header,
+          qosProperties, body.getValue(), body.getOffset(), localBodyStreamFactory);
     } else {
-      // find packet segment handler
-      final Long transactionId = (long) java.nio.ByteBuffer.wrap(packet).getLong(18);
-
-      Map<Long, SPPSegmentsHandler> map
-          = segmentHandlers.get(new QualifiedApid(apidQualifier, apid));
-
-      if (null == map) {
-        map = new HashMap<Long, SPPSegmentsHandler>();
-        segmentHandlers.put(new QualifiedApid(apidQualifier, apid), map);
-      }
-
-      SPPSegmentsHandler segmentHandler = map.get(transactionId);
+      final long transactionId = java.nio.ByteBuffer.wrap(packet).getLong(18);
 
-      if (null == segmentHandler) {
-        segmentHandler = new SPPSegmentsHandler(this, apidQualifier, apid);
-        map.put(transactionId, segmentHandler);
-      }
-
-      segmentHandler.addSegment(sequenceFlags, packet);
-      byte[] sppRaw = segmentHandler.getNextMessage();
+      byte[] sppRaw = reassemblyManager.addSegment(apidQualifier, apid, transactionId,
+          sequenceFlags, packet);
 
       if (sppRaw != null) {
-        if (map.get(transactionId).isEmpty()) {
-          map.remove(transactionId);
-        }
-
-        // We don't remove the map from the segmentHandlers because we are not expecting
-        // to have a big number of different consumers connected. Removing it and
-        // re-adding it from/to the map every time we have a new message would
-        // make things go slower. The map won't grow like crazy, no worries...
         GENMessage msg = internalCreateMessage(apidQualifier, apid, 3, sppRaw);
         LOGGER.log(Level.FINE, "Decoded SPP segmented message: {0}", msg.getHeader());
         return msg;
@@ -329,63 +365,62 @@ public abstract class SPPBaseTransport<I> extends GENTransport<I, List<ByteBuffe
     }
   }
 
-  protected SPPMessage internalDecodeMessageHeader(final int apidQualifier, final int apid,
+  /**
+   * Decodes the header of a packet to find where its body starts.
+   *
+   * @param apidQualifier The APID qualifier the packet was received on.
+   * @param apid The APID the packet was received on.
+   * @param packet The packet.
+   * @return The offset of the body in the packet.
+   * @throws MALException On header decoding error.
+   */
+  protected int internalDecodeBodyOffset(final int apidQualifier, final int apid,
       final byte[] packet) throws MALException
   {
-    SPPConfiguration configuration = apidConfigurations.get(new QualifiedApid(apidQualifier, apid));
-    if (null == configuration) {
-      configuration = defaultConfiguration;
-    }
+    final Blob body = GENMessage.decodeHeader(new SPPMessageHeader(hdrStreamFactory,
+        getConfiguration(apidQualifier, apid), null, apidQualifier, uriRep, ssc), qosProperties,
+        packet, hdrStreamFactory);
 
-    // need to decode in two stages, first message header
-    return new SPPMessage(hdrStreamFactory, configuration, null, wrapBodyParts, true,
-        new SPPMessageHeader(hdrStreamFactory, configuration, null, apidQualifier, uriRep, ssc),
-        qosProperties, packet, hdrStreamFactory);
+    // the body runs to the end of the packet, also when it is a copy of the remainder
+    return packet.length - body.getLength();
   }
 
-  protected MALElementStreamFactory getHeaderStreamFactory()
+  /**
+   * Returns the configuration of an APID, the default configuration if it has none of its own.
+   *
+   * @param apidQualifier The APID qualifier.
+   * @param apid The APID.
+   * @return The configuration.
+   */
+  protected SPPConfiguration getConfiguration(final int apidQualifier, final int apid)
   {
-    return hdrStreamFactory;
+    final SPPConfiguration configuration
+        = apidConfigurations.get(SPPRoutingTable.key(apidQualifier, apid));
+
+    return (null == configuration) ? defaultConfiguration : configuration;
   }
 
-  public static class QualifiedApid
+  /**
+   * Returns the manager of the incomplete segmented messages, for access to its counters.
+   *
+   * @return the reassembly manager.
+   */
+  public SPPReassemblyManager getReassemblyManager()
   {
+    return reassemblyManager;
+  }
 
-    public final int apidQualifier;
-    public final int apid;
-
-    public QualifiedApid(int apidQualifier, int apid)
-    {
-      this.apidQualifier = apidQualifier;
-      this.apid = apid;
-    }
+  @Override
+  public void close() throws MALException
+  {
+    super.close();
 
-    @Override
-    public int hashCode()
-    {
-      int hash = 3;
-      hash = 29 * hash + this.apidQualifier;
-      hash = 29 * hash + this.apid;
-      return hash;
-    }
+    reassemblyManager.clear();
+    sourceSequenceCounters.save();
+  }
 
-    @Override
-    public boolean equals(Object obj)
-    {
-      if (this == obj) {
-        return true;
-      }
-      if (obj == null) {
-        return false;
-      }
-      if (getClass() != obj.getClass()) {
-        return false;
-      }
-      final QualifiedApid other = (QualifiedApid) obj;
-      if (this.apidQualifier != other.apidQualifier) {
-        return false;
-      }
-      return this.apid == other.apid;
-    }
+  protected MALElementStreamFactory getHeaderStreamFactory()
+  {
+    return hdrStreamFactory;
   }
 }
@@ -29,6 +29,9 @@ import static esa.mo.mal.transport.spp.SPPBaseTransport.SEGMENT_MAX_SIZE_PROPERT
 import static esa.mo.mal.transport.spp.SPPBaseTransport.SESSION_NAME_FLAG;
 import static esa.mo.mal.transport.spp.SPPBaseTransport.TIMESTAMP_FLAG;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.ccsds.moims.mo.mal.structures.URI;
 
 /**
  * Small class that holds the encoding configuration for out going messages.
@@ -47,6 +50,8 @@ public class SPPConfiguration
   private boolean session;
   private boolean domain;
   private boolean auth;
+  private final ConcurrentMap<URI, ConcurrentMap<URI, SPPHeaderCodec.Route[]>> routes
+      = new ConcurrentHashMap<URI, ConcurrentMap<URI, SPPHeaderCodec.Route[]>>();
 
   public SPPConfiguration(boolean fixedBody,
       int segmentSize,
@@ -115,6 +120,21 @@ public class SPPConfiguration
         auth);
   }
 
+  /**
+   * Returns the header fields of packets between a source and a destination.
+   *
+   * @param uriRep The URI representation of the transport.
+   * @param from The source URI.
+   * @param to The destination URI.
+   * @param isTC True for a TC packet, false for TM.
+   * @return The cached route.
+   */
+  public SPPHeaderCodec.Route getRoute(final SPPURIRepresentation uriRep, final URI from,
+      final URI to, final boolean isTC)
+  {
+    return SPPHeaderCodec.getRoute(routes, this, uriRep, from, to, isTC);
+  }
+
   public boolean isFixedBody()
   {
     return fixedBody;
@@ -216,6 +236,7 @@ public class SPPConfiguration
   private void updateFlags()
   {
     flags = calculateFlags(srcSubId, dstSubId, priority, timestamp, network, session, domain, auth);
+    routes.clear();
   }
 
   private static int calculateFlags(boolean srcSubId,
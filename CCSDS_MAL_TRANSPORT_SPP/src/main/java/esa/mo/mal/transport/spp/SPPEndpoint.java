@@ -25,7 +25,6 @@ import esa.mo.mal.transport.gen.GENMessageHeader;
 import esa.mo.mal.transport.gen.GENTransport;
 import static esa.mo.mal.transport.spp.SPPBaseTransport.APID_QUALIFIER_PROPERTY;
 import static esa.mo.mal.transport.spp.SPPBaseTransport.IS_TC_PACKET_PROPERTY;
-import java.util.HashMap;
 import java.util.Map;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALInteractionException;
@@ -55,8 +54,7 @@ public class SPPEndpoint extends GENEndpoint
   private final Boolean forceTC;
   private final SPPURIRepresentation uriRep;
   private final SPPSourceSequenceCounter ssCounter;
-  private final Map<SegmentIndex, SPPSegmentCounter> segmentCounterMap
-      = new HashMap<SegmentIndex, SPPSegmentCounter>();
+  private final SPPSegmentCounter segmentCounter = new SPPSegmentCounter();
 
   public SPPEndpoint(GENTransport transport,
       SPPConfiguration configuration,
@@ -139,7 +137,7 @@ public class SPPEndpoint extends GENEndpoint
 
       return new SPPMessage(((SPPBaseTransport) transport).getHeaderStreamFactory(),
           hdr.getConfiguration(),
-          getMessageSegmentCounter(hdr),
+          segmentCounter,
           false, hdr,
           qosProperties, null, transport.getStreamFactory(), body);
     } catch (MALInteractionException ex) {
@@ -190,7 +188,7 @@ public class SPPEndpoint extends GENEndpoint
           qosProperties);
 
       return new SPPMessage(((SPPBaseTransport) transport).getHeaderStreamFactory(),
-          hdr.getConfiguration(), getMessageSegmentCounter(hdr), false, hdr,
+          hdr.getConfiguration(), segmentCounter, false, hdr,
           qosProperties, null, transport.getStreamFactory(), body);
     } catch (MALInteractionException ex) {
       throw new MALException("Error creating message", ex);
@@ -236,7 +234,7 @@ public class SPPEndpoint extends GENEndpoint
           qosProperties);
 
       return new SPPMessage(((SPPBaseTransport) transport).getHeaderStreamFactory(),
-          hdr.getConfiguration(), getMessageSegmentCounter(hdr), false, hdr,
+          hdr.getConfiguration(), segmentCounter, false, hdr,
           qosProperties,
           op,
           transport.getStreamFactory(), body);
@@ -284,7 +282,7 @@ public class SPPEndpoint extends GENEndpoint
           qosProperties);
 
       return new SPPMessage(((SPPBaseTransport) transport).getHeaderStreamFactory(),
-          hdr.getConfiguration(), getMessageSegmentCounter(hdr), false, hdr,
+          hdr.getConfiguration(), segmentCounter, false, hdr,
           qosProperties,
           op,
           transport.getStreamFactory(), body);
@@ -335,125 +333,4 @@ public class SPPEndpoint extends GENEndpoint
         serviceVersion,
         isErrorMessage);
   }
-
-  private SPPSegmentCounter getMessageSegmentCounter(GENMessageHeader hdr)
-  {
-    SegmentIndex idx = new SegmentIndex(hdr);
-
-    SPPSegmentCounter cnt = segmentCounterMap.get(idx);
-
-    if (null == cnt) {
-      cnt = new SPPSegmentCounter();
-      segmentCounterMap.put(idx, cnt);
-    }
-
-    return cnt;
-  }
-
-  private static class SegmentIndex
-  {
-
-    private final URI uriFrom;
-    private final URI uriTo;
-    private final IdentifierList domain;
-    private final Identifier networkZone;
-    private final SessionType session;
-    private final Identifier sessionName;
-    private final InteractionType interactionType;
-    private final Long transactionId;
-    private final UShort serviceArea;
-    private final UShort service;
-    private final UShort operation;
-
-    public SegmentIndex(GENMessageHeader hdr)
-    {
-      this.uriFrom = hdr.getURIFrom();
-      this.uriTo = hdr.getURITo();
-      this.domain = hdr.getDomain();
-      this.networkZone = hdr.getNetworkZone();
-      this.session = hdr.getSession();
-      this.sessionName = hdr.getSessionName();
-      this.interactionType = hdr.getInteractionType();
-      this.transactionId = hdr.getTransactionId();
-      this.serviceArea = hdr.getAreaNumber();
-      this.service = hdr.getService();
-      this.operation = hdr.getOperation();
-    }
-
-    @Override
-    public int hashCode()
-    {
-      int hash = 3;
-      hash = 47 * hash + (this.uriFrom != null ? this.uriFrom.hashCode() : 0);
-      hash = 47 * hash + (this.uriTo != null ? this.uriTo.hashCode() : 0);
-      hash = 47 * hash + (this.domain != null ? this.domain.hashCode() : 0);
-      hash = 47 * hash + (this.networkZone != null ? this.networkZone.hashCode() : 0);
-      hash = 47 * hash + (this.session != null ? this.session.hashCode() : 0);
-      hash = 47 * hash + (this.sessionName != null ? this.sessionName.hashCode() : 0);
-      hash = 47 * hash + (this.interactionType != null ? this.interactionType.hashCode() : 0);
-      hash = 47 * hash + (this.transactionId != null ? this.transactionId.hashCode() : 0);
-      hash = 47 * hash + (this.serviceArea != null ? this.serviceArea.hashCode() : 0);
-      hash = 47 * hash + (this.service != null ? this.service.hashCode() : 0);
-      hash = 47 * hash + (this.operation != null ? this.operation.hashCode() : 0);
-      return hash;
-    }
-
-    @Override
-    public boolean equals(Object obj)
-    {
-      if (this == obj) {
-        return true;
-      }
-      if (obj == null) {
-        return false;
-      }
-      if (getClass() != obj.getClass()) {
-        return false;
-      }
-      final SegmentIndex other = (SegmentIndex) obj;
-      if (this.uriFrom != other.uriFrom && (this.uriFrom == null || !this.uriFrom.equals(
-          other.uriFrom))) {
-        return false;
-      }
-      if (this.uriTo != other.uriTo && (this.uriTo == null || !this.uriTo.equals(other.uriTo))) {
-        return false;
-      }
-      if (this.domain != other.domain && (this.domain == null || !this.domain.equals(other.domain))) {
-        return false;
-      }
-      if (this.networkZone != other.networkZone && (this.networkZone == null || !this.networkZone.equals(
-          other.networkZone))) {
-        return false;
-      }
-      if (this.session != other.session && (this.session == null || !this.session.equals(
-          other.session))) {
-        return false;
-      }
-      if (this.sessionName != other.sessionName && (this.sessionName == null || !this.sessionName.equals(
-          other.sessionName))) {
-        return false;
-      }
-      if (this.interactionType != other.interactionType && (this.interactionType == null || !this.interactionType.equals(
-          other.interactionType))) {
-        return false;
-      }
-      if (this.transactionId != other.transactionId && (this.transactionId == null || !this.transactionId.equals(
-          other.transactionId))) {
-        return false;
-      }
-      if (this.serviceArea != other.serviceArea && (this.serviceArea == null || !this.serviceArea.equals(
-          other.serviceArea))) {
-        return false;
-      }
-      if (this.service != other.service && (this.service == null || !this.service.equals(
-          other.service))) {
-        return false;
-      }
-      if (this.operation != other.operation && (this.operation == null || !this.operation.equals(
-          other.operation))) {
-        return false;
-      }
-      return true;
-    }
-  }
 }
@@ -0,0 +1,255 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.ccsds.moims.mo.mal.structures.URI;
+
+/**
+ * Encodes the fixed part of the SPP packet header, the primary header and the secondary header up
+ * to the optional fields, from primitive values into a byte array. The fields derived from the
+ * source and destination URIs, the APIDs, the APID qualifier, the secondary header flags and the
+ * sub ids, are held in a Route that is cached per source, destination and packet type.
+ *
+ * The layout, in bytes, is the same as that produced by the fixed binary encoder for the
+ * corresponding MAL types: packet identification (2), sequence control (2), packet length (2), SDU
+ * type (1), area (2), service (2), operation (2), area version (1), error, QoS, session and
+ * secondary APID (2), secondary APID qualifier (2), transaction id (8), flags (1), optional
+ * source and destination sub ids (1 each) and, for segments, the segment counter (4).
+ */
+public class SPPHeaderCodec
+{
+
+  /**
+   * Offset of the sequence flags and source sequence count.
+   */
+  public static final int SEQUENCE_OFFSET = 2;
+  /**
+   * Offset of the packet length.
+   */
+  public static final int LENGTH_OFFSET = 4;
+  /**
+   * Offset of the transaction identifier.
+   */
+  public static final int TRANSACTION_ID_OFFSET = 18;
+  /**
+   * Offset of the secondary header flags.
+   */
+  public static final int FLAGS_OFFSET = 26;
+  /**
+   * Largest encoded fixed part, with both sub ids and the segment counter.
+   */
+  public static final int MAX_FIXED_LENGTH = 33;
+  private static final int MAX_DESTINATIONS = 1024;
+
+  private SPPHeaderCodec()
+  {
+  }
+
+  /**
+   * Encodes the fixed part of a header.
+   *
+   * @param buf The array to encode into, at least MAX_FIXED_LENGTH long.
+   * @param route The routing fields of the packet.
+   * @param sequenceControl The sequence flags and source sequence count.
+   * @param sduType The SDU type.
+   * @param area The service area number.
+   * @param service The service number.
+   * @param operation The operation number.
+   * @param areaVersion The area version.
+   * @param moHdrBits The error, QoS level and session bits of the secondary APID field.
+   * @param transactionId The transaction identifier.
+   * @param segmented True if the segment counter is to be included, it is encoded as zero.
+   * @return The number of bytes encoded.
+   */
+  public static int encode(final byte[] buf, final Route route, final int sequenceControl,
+      final int sduType, final int area, final int service, final int operation,
+      final int areaVersion, final int moHdrBits, final long transactionId,
+      final boolean segmented)
+  {
+    putShort(buf, 0, route.packetIdentification);
+    putShort(buf, SEQUENCE_OFFSET, sequenceControl);
+    putShort(buf, LENGTH_OFFSET, 0);
+    buf[6] = (byte) sduType;
+    putShort(buf, 7, area);
+    putShort(buf, 9, service);
+    putShort(buf, 11, operation);
+    buf[13] = (byte) areaVersion;
+    putShort(buf, 14, moHdrBits | route.secondaryApid);
+    putShort(buf, 16, route.secondaryApidQualifier);
+
+    for (int i = 0; i < 8; i++) {
+      buf[TRANSACTION_ID_OFFSET + i] = (byte) (transactionId >>> (56 - (i * 8)));
+    }
+
+    buf[FLAGS_OFFSET] = (byte) route.flags;
+    int index = FLAGS_OFFSET + 1;
+
+    if (0 <= route.sourceSubId) {
+      buf[index++] = (byte) route.sourceSubId;
+    }
+
+    if (0 <= route.destinationSubId) {
+      buf[index++] = (byte) route.destinationSubId;
+    }
+
+    if (segmented) {
+      buf[index++] = 0;
+      buf[index++] = 0;
+      buf[index++] = 0;
+      buf[index++] = 0;
+    }
+
+    return index;
+  }
+
+  /**
+   * Returns the routing fields for a packet, from the cache of the configuration or newly
+   * calculated.
+   *
+   * @param cache The route cache of the configuration.
+   * @param configuration The configuration the packet is encoded with.
+   * @param uriRep The URI representation of the transport.
+   * @param from The source URI.
+   * @param to The destination URI.
+   * @param isTC True for a TC packet, false for TM.
+   * @return The route.
+   */
+  static Route getRoute(final ConcurrentMap<URI, ConcurrentMap<URI, Route[]>> cache,
+      final SPPConfiguration configuration, final SPPURIRepresentation uriRep, final URI from,
+      final URI to, final boolean isTC)
+  {
+    ConcurrentMap<URI, Route[]> destinations = cache.get(from);
+
+    if (null == destinations) {
+      destinations = new ConcurrentHashMap<URI, Route[]>();
+      final ConcurrentMap<URI, Route[]> existing = cache.putIfAbsent(from, destinations);
+
+      if (null != existing) {
+        destinations = existing;
+      }
+    }
+
+    Route[] routes = destinations.get(to);
+
+    if (null == routes) {
+      if (MAX_DESTINATIONS <= destinations.size()) {
+        destinations.clear();
+      }
+
+      routes = new Route[2];
+      destinations.put(to, routes);
+    }
+
+    final int index = isTC ? 1 : 0;
+    Route route = routes[index];
+
+    if ((null == route) || (route.uriRep != uriRep)) {
+      route = new Route(configuration, uriRep, from, to, isTC);
+      routes[index] = route;
+    }
+
+    return route;
+  }
+
+  private static void putShort(final byte[] buf, final int offset, final int value)
+  {
+    buf[offset] = (byte) (value >> 8);
+    buf[offset + 1] = (byte) value;
+  }
+
+  /**
+   * The header fields that only depend on the source and destination of a packet.
+   */
+  public static final class Route
+  {
+
+    private final SPPURIRepresentation uriRep;
+    private final int packetIdentification;
+    private final int primaryApidQualifier;
+    private final int secondaryApid;
+    private final int secondaryApidQualifier;
+    private final int flags;
+    private final int sourceSubId;
+    private final int destinationSubId;
+
+    Route(final SPPConfiguration configuration, final SPPURIRepresentation uriRep,
+        final URI from, final URI to, final boolean isTC)
+    {
+      this.uriRep = uriRep;
+
+      if (isTC) {
+        packetIdentification = 0x1800 | uriRep.getApid(to);
+        secondaryApidQualifier = uriRep.getQualifier(from);
+        secondaryApid = uriRep.getApid(from);
+      } else {
+        packetIdentification = 0x0800 | uriRep.getApid(from);
+        secondaryApidQualifier = uriRep.getQualifier(to);
+        secondaryApid = uriRep.getApid(to);
+      }
+
+      final URI primary = isTC ? to : from;
+      primaryApidQualifier = uriRep.hasQualifier(primary) ? uriRep.getQualifier(primary) : -1;
+
+      final boolean hasFromSubId = uriRep.hasSubId(from);
+      final boolean hasToSubId = uriRep.hasSubId(to);
+
+      flags = configuration.getFlags(hasFromSubId, hasToSubId);
+      sourceSubId = (configuration.isSrcSubId() && hasFromSubId) ? uriRep.getSubId(from) : -1;
+      destinationSubId = (configuration.isDstSubId() && hasToSubId) ? uriRep.getSubId(to) : -1;
+
+      // -1 is a sub id that is not encoded
+      checkRange("APID qualifier", secondaryApidQualifier, 0, 0xFFFF);
+      checkRange("Source sub id", sourceSubId, -1, 0xFF);
+      checkRange("Destination sub id", destinationSubId, -1, 0xFF);
+    }
+
+    /**
+     * Returns the APID of the primary header, the destination one for a TC packet and the source
+     * one for a TM packet.
+     *
+     * @return the APID.
+     */
+    public int getPrimaryApid()
+    {
+      return packetIdentification & 0x7FF;
+    }
+
+    /**
+     * Returns the APID qualifier of the primary header APID.
+     *
+     * @return the APID qualifier, -1 if the URI of the primary APID has none.
+     */
+    public int getPrimaryApidQualifier()
+    {
+      return primaryApidQualifier;
+    }
+
+    private static void checkRange(final String field, final int value, final int min,
+        final int max)
+    {
+      if ((min > value) || (max < value)) {
+        throw new IllegalArgumentException(field + " " + value + " cannot be encoded");
+      }
+    }
+  }
+}
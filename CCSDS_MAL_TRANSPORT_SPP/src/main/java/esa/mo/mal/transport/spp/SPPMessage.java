@@ -20,15 +20,17 @@
  */
 package esa.mo.mal.transport.spp;
 
-import esa.mo.mal.encoder.binary.fixed.FixedBinaryElementOutputStream;
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.gen.util.GENPooledOutputStream;
 import static esa.mo.mal.transport.spp.SPPBaseTransport.LOGGER;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import org.ccsds.moims.mo.mal.MALException;
@@ -99,6 +101,32 @@ public class SPPMessage extends GENMessage
     this.segmentCounter = segmentCounter;
   }
 
+  /**
+   * Constructor for a received message whose header has already been decoded. The body is left
+   * encoded in the packet until it is accessed.
+   *
+   * @param configuration The SPP configuration to use for this message.
+   * @param wrapBodyParts True if the encoded body parts should be wrapped in BLOBs.
+   * @param header        The decoded message header.
+   * @param qosProperties The QoS properties for this message.
+   * @param packet        The message in encoded form.
+   * @param bodyOffset    The offset of the encoded body in the packet.
+   * @param encFactory    The stream factory to use for decoding.
+   * @throws MALException On decoding error.
+   */
+  public SPPMessage(final MALElementStreamFactory hdrStreamFactory,
+      final SPPConfiguration configuration,
+      final SPPSegmentCounter segmentCounter,
+      boolean wrapBodyParts, GENMessageHeader header, Map qosProperties,
+      byte[] packet, int bodyOffset, MALElementStreamFactory encFactory) throws MALException
+  {
+    super(wrapBodyParts, header, qosProperties, packet, bodyOffset, encFactory);
+
+    this.hdrStreamFactory = hdrStreamFactory;
+    this.configuration = configuration;
+    this.segmentCounter = segmentCounter;
+  }
+
   /**
    * Constructor.
    *
@@ -131,86 +159,153 @@ public class SPPMessage extends GENMessage
       final boolean writeHeader) throws MALException
   {
     try {
-      MALElementStreamFactory localBodyStreamFactory = hdrStreamFactory;
-      if (!configuration.isFixedBody()) {
-        localBodyStreamFactory = streamFactory;
+      for (ByteBuffer packet : encodePackets(streamFactory)) {
+        lowLevelOutputStream.write(packet.array(), packet.arrayOffset() + packet.position(),
+            packet.remaining());
       }
+    } catch (IOException ex) {
+      throw new MALException("Internal error encoding message", ex);
+    }
+  }
 
-      final ByteArrayOutputStream hdrBaos = new ByteArrayOutputStream();
-      FixedBinaryElementOutputStream hdrEnc
-          = (FixedBinaryElementOutputStream) hdrStreamFactory.createOutputStream(hdrBaos);
-      final ByteArrayOutputStream bodyBaos = new ByteArrayOutputStream();
-      final MALElementOutputStream bodyEnc = localBodyStreamFactory.createOutputStream(bodyBaos);
+  /**
+   * Encodes the message into its SPP packets, taking the source sequence counts from the counter of
+   * the header.
+   *
+   * @param streamFactory The stream factory to use for the body if it is not of fixed encoding.
+   * @return The packets of the message.
+   * @throws MALException On encoding error.
+   * @see #encodePackets(MALElementStreamFactory, SPPSourceSequenceCounterTable)
+   */
+  public List<ByteBuffer> encodePackets(final MALElementStreamFactory streamFactory)
+      throws MALException
+  {
+    return encodePackets(streamFactory, null);
+  }
 
-      super.encodeMessage(localBodyStreamFactory, bodyEnc, bodyBaos, false);
+  /**
+   * Encodes the message into its SPP packets, held in a single array with one view per packet. The
+   * body is encoded once and copied once, into the array. When the message has to be segmented the
+   * header is also encoded once, into a template that has the segment counter field. Each segment
+   * takes a copy of the template with the sequence flags, source sequence count, packet length and
+   * segment counter patched in. The segments of a message get consecutive source sequence counts,
+   * from the counter of the APID of the primary header.
+   *
+   * @param streamFactory The stream factory to use for the body if it is not of fixed encoding.
+   * @param counters The source sequence counters of the transport, the counter of the header is
+   * used if null.
+   * @return The packets of the message.
+   * @throws MALException On encoding error.
+   */
+  public List<ByteBuffer> encodePackets(final MALElementStreamFactory streamFactory,
+      final SPPSourceSequenceCounterTable counters) throws MALException
+  {
+    MALElementStreamFactory localBodyStreamFactory = hdrStreamFactory;
+    if (!configuration.isFixedBody()) {
+      localBodyStreamFactory = streamFactory;
+    }
+
+    final GENPooledOutputStream bodyOut = new GENPooledOutputStream();
+
+    try {
+      super.encodeMessage(localBodyStreamFactory,
+          localBodyStreamFactory.createOutputStream(bodyOut), bodyOut, false);
+      final byte[] body = bodyOut.getBuffer();
+      final int bodyLength = bodyOut.size();
 
-      MALEncodingContext ctx = new MALEncodingContext(header, operation, 0, qosProperties,
+      final ByteArrayOutputStream hdrBaos = new ByteArrayOutputStream();
+      final MALElementOutputStream hdrEnc = hdrStreamFactory.createOutputStream(hdrBaos);
+      final MALEncodingContext ctx = new MALEncodingContext(header, operation, 0, qosProperties,
           qosProperties);
+      int segmentCount = 1;
+      int segmentBodySize = bodyLength;
+
       hdrEnc.writeElement(header, ctx);
-      byte[] hdrBuf = hdrBaos.toByteArray();
-      byte[] bodyBuf = bodyBaos.toByteArray();
+      final byte[] hdrBuf = hdrBaos.toByteArray();
 
       LOGGER.log(Level.FINE, "Check segmenting: Segment size is {0} and required length is {1}",
           new Object[]{
-            configuration.getSegmentSize(), bodyBuf.length + hdrBuf.length - 6
+            configuration.getSegmentSize(), bodyLength + hdrBuf.length - 6
           });
-      if ((bodyBuf.length + hdrBuf.length - 6) > configuration.getSegmentSize()) {
-        // encode segmented header
-        ((SPPMessageHeader) header).setSegmentFlags((byte) 0x40);
-        hdrBaos.reset();
-        hdrEnc = (FixedBinaryElementOutputStream) hdrStreamFactory.createOutputStream(hdrBaos);
-        hdrEnc.writeElement(header, ctx);
-        hdrBuf = hdrBaos.toByteArray();
-
-        final int adjustedSegmentSize = configuration.getSegmentSize() - (hdrBuf.length - 6);
+      if ((bodyLength + hdrBuf.length - 6) > configuration.getSegmentSize()) {
+        // a segmented header also has the segment counter
+        segmentBodySize = configuration.getSegmentSize() - (hdrBuf.length + 4 - 6);
         // first check to see if we can actually fit any data in the body when we have a large header and small segment size
-        if (0 >= adjustedSegmentSize) {
+        if (0 >= segmentBodySize) {
           throw new MALException(
-              "SPP Segment size of " + configuration.getSegmentSize() + " is too small for encoded MAL Message header or size " + (hdrBuf.length - 6),
+              "SPP Segment size of " + configuration.getSegmentSize() + " is too small for encoded MAL Message header or size " + (hdrBuf.length + 4 - 6),
               new MALInteractionException(
                   new MALStandardError(MALHelper.INTERNAL_ERROR_NUMBER, null)));
         }
 
-        // segment data
-        ByteBuffer hdrBytes = ByteBuffer.wrap(hdrBuf);
-        int index = 0;
-        int extra = (hdrBuf[26] & 0x80) != 0 ? 1 : 0;
-        extra += (hdrBuf[26] & 0x40) != 0 ? 1 : 0;
-        boolean first = true;
-
-        SPPSegmentCounter localSegmentCounter = new SPPSegmentCounter();
-
-        while (index < bodyBuf.length) {
-          int packetSize = Math.min(adjustedSegmentSize, bodyBuf.length - index);
-
-          if (first) {
-            first = false;
-          } //else if (packetSize < adjustedSegmentSize)
-          else if ((index + packetSize) >= bodyBuf.length) {
-            hdrBuf[2] = (byte) ((hdrBuf[2] & 0x3F) | 0x80);
-          } else {
-            hdrBuf[2] = (byte) ((hdrBuf[2] & 0x3F));
-          }
-
-          // increment the SSC
-          hdrBytes.putShort(4, (short) (packetSize + hdrBuf.length - 7));
-          int count = localSegmentCounter.getNextSegmentCount();
-          hdrBytes.putInt(27 + extra, count);
-
-          LOGGER.log(Level.FINE, "Segment: {0} : {1} : {2} : {3}", new Object[]{
-            hdrBuf[2] & 0xC0, packetSize + hdrBuf.length - 7, count, index
-          });
-          lowLevelOutputStream.write(hdrBuf);
-          lowLevelOutputStream.write(bodyBuf, index, packetSize);
-          index += packetSize;
+        segmentCount = (bodyLength + segmentBodySize - 1) / segmentBodySize;
+      }
+
+      // the segments of a message take consecutive source sequence counts
+      int firstSsc = ((SPPMessageHeader) header).reserveSourceSequenceCounts(counters,
+          segmentCount);
+      if (0 > firstSsc) {
+        firstSsc = ((hdrBuf[2] & 0x3F) << 8) | (hdrBuf[3] & 0xFF);
+      }
+
+      final List<ByteBuffer> packets = new ArrayList<ByteBuffer>(segmentCount);
+
+      if (1 == segmentCount) {
+        final byte[] packet = new byte[hdrBuf.length + bodyLength];
+        System.arraycopy(hdrBuf, 0, packet, 0, hdrBuf.length);
+        System.arraycopy(body, 0, packet, hdrBuf.length, bodyLength);
+        final ByteBuffer bytes = ByteBuffer.wrap(packet);
+        bytes.putShort(2, (short) (((hdrBuf[2] & 0xC0) << 8) | firstSsc));
+        bytes.putShort(4, (short) (packet.length - 7));
+        packets.add(bytes);
+
+        return packets;
+      }
+
+      // segment counter goes after the secondary header flags and optional sub ids
+      int counterOffset = 27;
+      counterOffset += (hdrBuf[26] & 0x80) != 0 ? 1 : 0;
+      counterOffset += (hdrBuf[26] & 0x40) != 0 ? 1 : 0;
+
+      final byte[] template = new byte[hdrBuf.length + 4];
+      System.arraycopy(hdrBuf, 0, template, 0, counterOffset);
+      System.arraycopy(hdrBuf, counterOffset, template, counterOffset + 4,
+          hdrBuf.length - counterOffset);
+
+      final byte[] buf = new byte[segmentCount * template.length + bodyLength];
+      final ByteBuffer bytes = ByteBuffer.wrap(buf);
+      int index = 0;
+      int bodyIndex = 0;
+
+      for (int i = 0; i < segmentCount; i++) {
+        final int packetSize = Math.min(segmentBodySize, bodyLength - bodyIndex);
+        final int sequenceFlags;
+
+        if (0 == i) {
+          sequenceFlags = 0x4000;
+        } else if ((segmentCount - 1) == i) {
+          sequenceFlags = 0x8000;
+        } else {
+          sequenceFlags = 0;
         }
-      } else {
-        java.nio.ByteBuffer.wrap(hdrBuf).putShort(4, (short) (bodyBuf.length + hdrBuf.length - 7));
-        lowLevelOutputStream.write(hdrBuf);
-        lowLevelOutputStream.write(bodyBuf);
+
+        System.arraycopy(template, 0, buf, index, template.length);
+        bytes.putShort(index + 2, (short) (sequenceFlags | ((firstSsc + i) & 0x3FFF)));
+        bytes.putShort(index + 4, (short) (packetSize + template.length - 7));
+        bytes.putInt(index + counterOffset, i);
+        System.arraycopy(body, bodyIndex, buf, index + template.length, packetSize);
+
+        LOGGER.log(Level.FINE, "Segment: {0} : {1} : {2} : {3}", new Object[]{
+          sequenceFlags >> 8, packetSize + template.length - 7, i, bodyIndex
+        });
+        packets.add(ByteBuffer.wrap(buf, index, template.length + packetSize));
+        index += template.length + packetSize;
+        bodyIndex += packetSize;
       }
-    } catch (IOException ex) {
-      throw new MALException("Internal error encoding message", ex);
+
+      return packets;
+    } finally {
+      bodyOut.release();
     }
   }
 }
@@ -20,13 +20,15 @@
  */
 package esa.mo.mal.transport.spp;
 
+import esa.mo.mal.encoder.binary.base.BaseBinaryDecoder;
+import esa.mo.mal.encoder.binary.base.BaseBinaryEncoder;
 import esa.mo.mal.encoder.binary.fixed.FixedBinaryDecoder;
 import esa.mo.mal.encoder.binary.fixed.FixedBinaryEncoder;
 import esa.mo.mal.encoder.binary.variable.VariableBinaryDecoder;
 import esa.mo.mal.encoder.binary.variable.VariableBinaryEncoder;
 import esa.mo.mal.transport.gen.GENMessageHeader;
 import static esa.mo.mal.transport.spp.SPPBaseTransport.LOGGER;
-import java.util.Date;
+import java.io.IOException;
 import java.util.logging.Level;
 import org.ccsds.moims.mo.mal.MALDecoder;
 import org.ccsds.moims.mo.mal.MALEncoder;
@@ -50,6 +52,7 @@ public class SPPMessageHeader extends GENMessageHeader
   private final SPPConfiguration configuration;
   private final SPPURIRepresentation uriRepresentation;
   private final SPPSourceSequenceCounter ssCounter;
+  private SPPHeaderCodec.Route route = null;
   private final MALElementStreamFactory secondaryFactory;
   private short ssc = -1;
   private int segmentFlags = 0x0000C000;
@@ -139,59 +142,29 @@ public class SPPMessageHeader extends GENMessageHeader
   @Override
   public void encode(final MALEncoder encoder) throws MALException
   {
-    short pktType = getPacketType();
-    short primaryApid;
-    int secondaryApidQualifier;
-    short secondaryApid;
-
-    if (0 == pktType) {
-      //TM
-      primaryApid = uriRepresentation.getApid(URIFrom);
-      secondaryApidQualifier = uriRepresentation.getQualifier(URITo);
-      secondaryApid = uriRepresentation.getApid(URITo);
+    final short pktType = getPacketType();
+    route = configuration.getRoute(uriRepresentation, URIFrom, URITo, 0 != pktType);
+
+    checkForNull(transactionId);
+
+    // CCSDS packet header and fixed part of the MAL SPP header, the source sequence count is set
+    // in the packets once the number of segments is known, see reserveSourceSequenceCounts
+    final byte[] fixed = new byte[SPPHeaderCodec.MAX_FIXED_LENGTH];
+    final int fixedLength = SPPHeaderCodec.encode(fixed, route,
+        segmentFlags | ((0 <= ssc) ? ssc : 0),
+        getSDUType(interactionType, interactionStage), serviceArea.getValue(),
+        service.getValue(), operation.getValue(), areaVersion.getValue(),
+        getErrorFlag(isErrorMessage) | getQoSLevelBits() | getSessionBits(), transactionId,
+        0xC000 != segmentFlags);
+
+    if (encoder instanceof BaseBinaryEncoder) {
+      try {
+        ((BaseBinaryEncoder) encoder).getStreamHolder().directAdd(fixed, 0, fixedLength);
+      } catch (IOException ex) {
+        throw new MALException("Unable to encode SPP header", ex);
+      }
     } else {
-      // TC
-      primaryApid = uriRepresentation.getApid(URITo);
-      secondaryApidQualifier = uriRepresentation.getQualifier(URIFrom);
-      secondaryApid = uriRepresentation.getApid(URIFrom);
-    }
-
-    // CCSDS packet header
-    encoder.encodeUShort(new UShort(pktType | 0x00000800 | primaryApid));
-    int lssc = 0;
-    if (null != ssCounter) {
-      lssc = ssCounter.getNextSourceSequenceCount();
-      ssc = (short) lssc;
-    }
-    encoder.encodeUShort(new UShort(segmentFlags | lssc));
-    encoder.encodeUShort(new UShort(0));
-
-    // MAL SPP Header
-    encoder.encodeUOctet(new UOctet(getSDUType(interactionType, interactionStage)));
-    encoder.encodeUShort(serviceArea);
-    encoder.encodeUShort(service);
-    encoder.encodeUShort(operation);
-    encoder.encodeUOctet(areaVersion);
-    encoder.encodeUShort(new UShort(
-        getErrorFlag(isErrorMessage) | getQoSLevelBits() | getSessionBits() | secondaryApid));
-    encoder.encodeUShort(new UShort(secondaryApidQualifier));
-    encoder.encodeLong(transactionId);
-
-    boolean hasFromSubId = uriRepresentation.hasSubId(URIFrom);
-    boolean hasToSubId = uriRepresentation.hasSubId(URITo);
-
-    encoder.encodeUOctet(new UOctet((short) configuration.getFlags(hasFromSubId, hasToSubId)));
-
-    if (configuration.isSrcSubId() && hasFromSubId) {
-      encoder.encodeUOctet(new UOctet(uriRepresentation.getSubId(URIFrom)));
-    }
-
-    if (configuration.isDstSubId() && hasToSubId) {
-      encoder.encodeUOctet(new UOctet(uriRepresentation.getSubId(URITo)));
-    }
-
-    if (0xC000 != segmentFlags) {
-      encoder.encodeUInteger(new UInteger(0));
+      encodeFixedFields(encoder, fixed, fixedLength);
     }
 
     // nasty hack for now
@@ -231,46 +204,58 @@ public class SPPMessageHeader extends GENMessageHeader
   @Override
   public Element decode(final MALDecoder decoder) throws MALException
   {
-    // CCSDS packet header
-    final int ccsdsHdrPt1 = decoder.decodeUShort().getValue();
-    final int ccsdsHdrPt2 = decoder.decodeUShort().getValue();
-    decoder.decodeUShort();
+    // CCSDS packet header and fixed part of the MAL SPP header, read without wrapper objects when
+    // the decoder is a binary one
+    final FixedFieldReader reader = (decoder instanceof BaseBinaryDecoder)
+        ? new BufferFieldReader(((BaseBinaryDecoder) decoder).getBufferHolder())
+        : new DecoderFieldReader(decoder);
+    final int ccsdsHdrPt1 = (int) reader.getFixedUnsigned(2);
+    final int ccsdsHdrPt2 = (int) reader.getFixedUnsigned(2);
+    reader.getFixedUnsigned(2);
     ssc = (short) (ccsdsHdrPt2 & 0x3FFF);
     segmentFlags = (ccsdsHdrPt2 & 0xC000);
 
     // MAL SPP Header
-    short sduType = decoder.decodeUOctet().getValue();
-    serviceArea = decoder.decodeUShort();
-    service = decoder.decodeUShort();
-    operation = decoder.decodeUShort();
-    areaVersion = decoder.decodeUOctet();
-    final int moHdrPt1 = decoder.decodeUShort().getValue();
-    int apidQualifier = decoder.decodeUShort().getValue();
-    transactionId = decoder.decodeLong();
+    short sduType = (short) (reader.get8() & 0xFF);
+    serviceArea = new UShort((int) reader.getFixedUnsigned(2));
+    service = new UShort((int) reader.getFixedUnsigned(2));
+    operation = new UShort((int) reader.getFixedUnsigned(2));
+    areaVersion = new UOctet((short) (reader.get8() & 0xFF));
+    final int moHdrPt1 = (int) reader.getFixedUnsigned(2);
+    int apidQualifier = (int) reader.getFixedUnsigned(2);
+    transactionId = reader.getFixedUnsigned(8);
     if (0 == transactionId) {
       transactionId = (long) ssc;
     }
-    short flags = decoder.decodeUOctet().getValue();
+    short flags = (short) (reader.get8() & 0xFF);
     Short sourceSubId = null;
     Short destSubId = null;
 
     if (0 != (flags & 0x80)) {
-      sourceSubId = decoder.decodeUOctet().getValue();
+      sourceSubId = (short) (reader.get8() & 0xFF);
     }
 
     if (0 != (flags & 0x40)) {
-      destSubId = decoder.decodeUOctet().getValue();
+      destSubId = (short) (reader.get8() & 0xFF);
     }
 
     if (0xC000 != segmentFlags) {
-      segmentCounter = decoder.decodeUInteger().getValue();
+      segmentCounter = reader.getFixedUnsigned(4);
     }
 
     // nasty hack for now
     MALDecoder usurperDecoder = decoder;
+    FixedBinaryDecoder fixedDecoder = null;
+    int variableStart = 0;
     if (!configuration.isFixedBody()) {
-      FixedBinaryDecoder fixedDecoder = (FixedBinaryDecoder) decoder;
-      usurperDecoder = new VariableBinaryDecoder(fixedDecoder.getBufferHolder(),
+      // encode writes the optional fields with a variable binary encoder, so they are read with a
+      // variable binary buffer over the same bytes, the fixed buffer reads integers fixed length
+      fixedDecoder = (FixedBinaryDecoder) decoder;
+      variableStart = fixedDecoder.getSourceOffset();
+      if (0 > variableStart) {
+        throw new MALException("SPP header with a variable body can only be decoded from an array");
+      }
+      usurperDecoder = new VariableBinaryDecoder(fixedDecoder.getSourceArray(), variableStart,
           fixedDecoder.getTimeHandler());
     }
 
@@ -282,7 +267,7 @@ public class SPPMessageHeader extends GENMessageHeader
     if (0 != (flags & 0x10)) {
       timestamp = usurperDecoder.decodeTime();
     } else {
-      timestamp = new Time(new Date().getTime());
+      timestamp = new Time(System.currentTimeMillis());
     }
     if (0 != (flags & 0x08)) {
       networkZone = usurperDecoder.decodeIdentifier();
@@ -305,6 +290,12 @@ public class SPPMessageHeader extends GENMessageHeader
       authenticationId = new Blob(new byte[0]);
     }
 
+    if (null != fixedDecoder) {
+      // moves the fixed buffer past the optional fields, to the start of the body
+      fixedDecoder.getBufferHolder().directGetBytes(
+          ((VariableBinaryDecoder) usurperDecoder).getSourceOffset() - variableStart);
+    }
+
     boolean isTC = 0 != (0x00001000 & ccsdsHdrPt1);
     Integer sourceQualifier;
     short sourceApid;
@@ -387,6 +378,109 @@ public class SPPMessageHeader extends GENMessageHeader
     return configuration;
   }
 
+  /**
+   * Takes the source sequence counts of the packets of the message, once the header has been
+   * encoded. They are taken from the counter of the APID qualifier and APID of the primary header in
+   * the supplied table, or from the counter of the header if there is no table. The first count
+   * becomes the count of the header.
+   *
+   * @param counters The counters of the transport, may be null.
+   * @param count The number of packets.
+   * @return The count of the first packet, the others follow it modulo 16384. -1 if there is no
+   * counter, the packets then keep the count they were encoded with.
+   */
+  public int reserveSourceSequenceCounts(final SPPSourceSequenceCounterTable counters,
+      final int count)
+  {
+    final SPPSourceSequenceCounter counter = ((null != counters) && (null != route))
+        ? counters.getCounter(route.getPrimaryApidQualifier(), route.getPrimaryApid())
+        : ssCounter;
+
+    if (null == counter) {
+      return -1;
+    }
+
+    final int first = reserveSourceSequenceCounts(counter, count);
+    ssc = (short) first;
+
+    return first;
+  }
+
+  /**
+   * Takes a block of consecutive source sequence counts from a counter, in one step if the counter
+   * supports it and otherwise one at a time while holding the monitor of the counter.
+   *
+   * @param counter The counter.
+   * @param count The number of counts.
+   * @return The first count, the others follow it modulo 16384.
+   */
+  public static int reserveSourceSequenceCounts(final SPPSourceSequenceCounter counter,
+      final int count)
+  {
+    if (1 == count) {
+      return counter.getNextSourceSequenceCount();
+    }
+
+    if (counter instanceof SPPSourceSequenceCounterSimple) {
+      return ((SPPSourceSequenceCounterSimple) counter).getNextSourceSequenceCounts(count);
+    }
+
+    synchronized (counter) {
+      final int first = counter.getNextSourceSequenceCount();
+
+      for (int i = 1; i < count; i++) {
+        counter.getNextSourceSequenceCount();
+      }
+
+      return first;
+    }
+  }
+
+  /**
+   * Encodes the fixed part of the header, already held in an array, field by field for encoders
+   * that cannot take the encoded bytes directly.
+   *
+   * @param encoder The encoder.
+   * @param fixed The encoded fixed part.
+   * @param length The length of the fixed part.
+   * @throws MALException On encoding error.
+   */
+  private static void encodeFixedFields(final MALEncoder encoder, final byte[] fixed,
+      final int length) throws MALException
+  {
+    final java.nio.ByteBuffer b = java.nio.ByteBuffer.wrap(fixed, 0, length);
+    final boolean segmented = 0xC000 != (b.getShort(2) & 0xC000);
+
+    encoder.encodeUShort(new UShort(b.getShort(0) & 0xFFFF));
+    encoder.encodeUShort(new UShort(b.getShort(2) & 0xFFFF));
+    encoder.encodeUShort(new UShort(b.getShort(4) & 0xFFFF));
+    encoder.encodeUOctet(new UOctet((short) (fixed[6] & 0xFF)));
+    encoder.encodeUShort(new UShort(b.getShort(7) & 0xFFFF));
+    encoder.encodeUShort(new UShort(b.getShort(9) & 0xFFFF));
+    encoder.encodeUShort(new UShort(b.getShort(11) & 0xFFFF));
+    encoder.encodeUOctet(new UOctet((short) (fixed[13] & 0xFF)));
+    encoder.encodeUShort(new UShort(b.getShort(14) & 0xFFFF));
+    encoder.encodeUShort(new UShort(b.getShort(16) & 0xFFFF));
+    encoder.encodeLong(b.getLong(18));
+
+    // flags, then the sub ids it announces and the segment counter of a segmented message
+    final int subIdEnd = segmented ? length - 4 : length;
+    for (int i = 26; i < subIdEnd; i++) {
+      encoder.encodeUOctet(new UOctet((short) (fixed[i] & 0xFF)));
+    }
+
+    if (segmented) {
+      encoder.encodeUInteger(new UInteger(b.getInt(subIdEnd) & 0xFFFFFFFFL));
+    }
+  }
+
+  private static void checkForNull(final Object value) throws MALException
+  {
+    if (null == value) {
+      throw new MALException("Null value supplied in a non-nullable field");
+    }
+  }
+
   protected static int getErrorFlag(boolean isError)
   {
     if (isError) {
@@ -640,4 +734,74 @@ public class SPPMessageHeader extends GENMessageHeader
         sduType);
     return null;
   }
+
+  /**
+   * Reads the unsigned fixed size fields of the header.
+   */
+  private interface FixedFieldReader
+  {
+
+    byte get8() throws MALException;
+
+    long getFixedUnsigned(int size) throws MALException;
+  }
+
+  /**
+   * Reads the fields straight from the buffer of a binary decoder.
+   */
+  private static final class BufferFieldReader implements FixedFieldReader
+  {
+
+    private final BaseBinaryDecoder.BaseBinaryBufferHolder holder;
+
+    BufferFieldReader(final BaseBinaryDecoder.BaseBinaryBufferHolder holder)
+    {
+      this.holder = holder;
+    }
+
+    @Override
+    public byte get8() throws MALException
+    {
+      return holder.get8();
+    }
+
+    @Override
+    public long getFixedUnsigned(final int size) throws MALException
+    {
+      return holder.getFixedUnsigned(size);
+    }
+  }
+
+  /**
+   * Reads the fields through the MAL types of any other decoder.
+   */
+  private static final class DecoderFieldReader implements FixedFieldReader
+  {
+
+    private final MALDecoder decoder;
+
+    DecoderFieldReader(final MALDecoder decoder)
+    {
+      this.decoder = decoder;
+    }
+
+    @Override
+    public byte get8() throws MALException
+    {
+      return (byte) decoder.decodeUOctet().getValue();
+    }
+
+    @Override
+    public long getFixedUnsigned(final int size) throws MALException
+    {
+      switch (size) {
+        case 2:
+          return decoder.decodeUShort().getValue();
+        case 4:
+          return decoder.decodeUInteger().getValue();
+        default:
+          return decoder.decodeLong();
+      }
+    }
+  }
 }
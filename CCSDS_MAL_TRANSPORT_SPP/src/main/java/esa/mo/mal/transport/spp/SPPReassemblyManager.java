@@ -0,0 +1,320 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import static esa.mo.mal.transport.spp.SPPBaseTransport.LOGGER;
+import static esa.mo.mal.transport.spp.SPPBaseTransport.REASSEMBLY_MAX_SIZE_PROPERTY;
+import static esa.mo.mal.transport.spp.SPPBaseTransport.REASSEMBLY_TIMEOUT_PROPERTY;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import org.ccsds.moims.mo.mal.MALException;
+
+/**
+ * Holds the segment handlers of the transport and bounds the memory they use. Incomplete messages
+ * older than the reassembly timeout are discarded, and when the segments held for an APID exceed
+ * the per APID budget the oldest incomplete messages of that APID are evicted until it fits again.
+ * Handlers with nothing left to reassemble are removed, the state of an APID is kept so that the
+ * next message of the APID finds it without a table update, and removed by the expiry check once
+ * it has been empty for a whole check interval.
+ *
+ * Expiry is checked as segments arrive, so an incomplete message is held for at most one and a
+ * half times the timeout while the transport is receiving.
+ */
+public class SPPReassemblyManager
+{
+
+  /**
+   * Default age, in milliseconds, after which an incomplete message is discarded.
+   */
+  public static final long DEFAULT_TIMEOUT = 60000;
+  /**
+   * Default number of bytes held per APID, the segments and the slot arrays they are held in.
+   */
+  public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+  private final SPPBaseTransport transport;
+  private final long timeout;
+  private final long maxSize;
+  private final SPPRoutingTable<ApidReassembly> apids = new SPPRoutingTable<ApidReassembly>();
+  private final AtomicLong assembledMessages = new AtomicLong();
+  private final AtomicLong expiredMessages = new AtomicLong();
+  private final AtomicLong evictedMessages = new AtomicLong();
+  private final AtomicLong failedMessages = new AtomicLong();
+  private final AtomicLong droppedSegments = new AtomicLong();
+  private long nextSweep = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param transport The transport used to decode the segment headers.
+   * @param properties The transport properties, may be null.
+   */
+  public SPPReassemblyManager(SPPBaseTransport transport, final Map properties)
+  {
+    this.transport = transport;
+
+    long t = DEFAULT_TIMEOUT;
+    long s = DEFAULT_MAX_SIZE;
+
+    if (null != properties) {
+      if (properties.containsKey(REASSEMBLY_TIMEOUT_PROPERTY)) {
+        t = Long.parseLong(properties.get(REASSEMBLY_TIMEOUT_PROPERTY).toString());
+      }
+
+      if (properties.containsKey(REASSEMBLY_MAX_SIZE_PROPERTY)) {
+        s = Long.parseLong(properties.get(REASSEMBLY_MAX_SIZE_PROPERTY).toString());
+      }
+    }
+
+    this.timeout = t;
+    this.maxSize = s;
+  }
+
+  /**
+   * Adds a segment and returns the message it completes, if any.
+   *
+   * @param apidQualifier The APID qualifier the segment was received on.
+   * @param apid The APID the segment was received on.
+   * @param transactionId The transaction identifier of the segment.
+   * @param sequenceFlags The sequence flags of the segment.
+   * @param packet The segment packet.
+   * @return The assembled message or null if none is complete.
+   */
+  public synchronized byte[] addSegment(final int apidQualifier, final int apid,
+      final long transactionId, final int sequenceFlags, final byte[] packet)
+  {
+    final long now = System.currentTimeMillis();
+
+    if ((0 < timeout) && (now >= nextSweep)) {
+      expire(now - timeout);
+      nextSweep = now + Math.max(1, timeout / 2);
+    }
+
+    final long key = SPPRoutingTable.key(apidQualifier, apid);
+    ApidReassembly state = apids.get(key);
+
+    if (null == state) {
+      state = new ApidReassembly(key);
+      apids.put(key, state);
+    }
+
+    state.idle = false;
+
+    SPPSegmentsHandler handler = state.handlers.get(transactionId);
+
+    if (null == handler) {
+      handler = new SPPSegmentsHandler(transport, apidQualifier, apid);
+      state.handlers.put(transactionId, handler);
+    }
+
+    final long before = handler.getSize();
+    byte[] out = null;
+
+    try {
+      if (handler.addSegment(sequenceFlags, packet)) {
+        out = handler.getNextMessage();
+
+        if (null != out) {
+          assembledMessages.incrementAndGet();
+        }
+      } else {
+        droppedSegments.incrementAndGet();
+        LOGGER.log(Level.FINE, "Dropped duplicate or invalid SPP segment for APID {0}/{1}",
+            new Object[]{apidQualifier, apid});
+      }
+    } catch (MALException ex) {
+      failedMessages.incrementAndGet();
+      LOGGER.log(Level.SEVERE,
+          "The message could not be assembled. One of the segments header could not be decoded. "
+          + "The whole message will be discarded.", ex);
+    }
+
+    state.bytes += handler.getSize() - before;
+
+    if (handler.isEmpty()) {
+      state.handlers.remove(transactionId);
+    }
+
+    while (state.bytes > maxSize) {
+      evictOldest(state);
+      LOGGER.log(Level.WARNING,
+          "Evicted incomplete SPP message of APID {0}/{1}, reassembly budget of {2} bytes exceeded",
+          new Object[]{apidQualifier, apid, maxSize});
+    }
+
+    return out;
+  }
+
+  /**
+   * Discards all incomplete messages.
+   */
+  public synchronized void clear()
+  {
+    apids.clear();
+  }
+
+  /**
+   * Returns the number of bytes currently held for incomplete messages, the segments and the slot
+   * arrays they are held in.
+   *
+   * @return the held byte count.
+   */
+  public synchronized long getPendingBytes()
+  {
+    long bytes = 0;
+
+    for (ApidReassembly state : apids.values()) {
+      bytes += state.bytes;
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Returns the number of messages assembled.
+   *
+   * @return the count.
+   */
+  public long getAssembledMessages()
+  {
+    return assembledMessages.get();
+  }
+
+  /**
+   * Returns the number of incomplete messages discarded because of the reassembly timeout.
+   *
+   * @return the count.
+   */
+  public long getExpiredMessages()
+  {
+    return expiredMessages.get();
+  }
+
+  /**
+   * Returns the number of incomplete messages evicted because an APID exceeded its budget.
+   *
+   * @return the count.
+   */
+  public long getEvictedMessages()
+  {
+    return evictedMessages.get();
+  }
+
+  /**
+   * Returns the number of complete messages discarded because a segment header was damaged.
+   *
+   * @return the count.
+   */
+  public long getFailedMessages()
+  {
+    return failedMessages.get();
+  }
+
+  /**
+   * Returns the number of duplicate, out of range or truncated segments dropped.
+   *
+   * @return the count.
+   */
+  public long getDroppedSegments()
+  {
+    return droppedSegments.get();
+  }
+
+  private void expire(final long cutoff)
+  {
+    for (ApidReassembly state : apids.values()) {
+      final Iterator<SPPSegmentsHandler> hit = state.handlers.values().iterator();
+
+      while (hit.hasNext()) {
+        final SPPSegmentsHandler handler = hit.next();
+        final long before = handler.getSize();
+        final int count = handler.expire(cutoff);
+
+        if (0 < count) {
+          expiredMessages.addAndGet(count);
+          state.bytes += handler.getSize() - before;
+          LOGGER.log(Level.FINE, "Discarded {0} incomplete SPP messages after timeout", count);
+        }
+
+        if (handler.isEmpty()) {
+          hit.remove();
+        }
+      }
+
+      if (state.handlers.isEmpty()) {
+        if (state.idle) {
+          apids.remove(state.key);
+        }
+        state.idle = true;
+      }
+    }
+  }
+
+  private void evictOldest(final ApidReassembly state)
+  {
+    Long oldestId = null;
+    SPPSegmentsHandler oldestHandler = null;
+    SPPSegmentsAssembler oldest = null;
+
+    for (Map.Entry<Long, SPPSegmentsHandler> entry : state.handlers.entrySet()) {
+      final SPPSegmentsAssembler assembler = entry.getValue().getOldest();
+
+      if ((null != assembler)
+          && ((null == oldest) || (assembler.getCreationTime() < oldest.getCreationTime()))) {
+        oldestId = entry.getKey();
+        oldestHandler = entry.getValue();
+        oldest = assembler;
+      }
+    }
+
+    if (null == oldest) {
+      state.bytes = 0;
+      return;
+    }
+
+    oldestHandler.remove(oldest);
+    state.bytes -= oldest.getHeldSize();
+    evictedMessages.incrementAndGet();
+
+    if (oldestHandler.isEmpty()) {
+      state.handlers.remove(oldestId);
+    }
+  }
+
+  /**
+   * The segment handlers of one APID, keyed by transaction identifier, and the bytes they hold.
+   */
+  private static final class ApidReassembly
+  {
+
+    private final long key;
+    private final Map<Long, SPPSegmentsHandler> handlers = new HashMap<Long, SPPSegmentsHandler>();
+    private long bytes = 0;
+    private boolean idle = false;
+
+    ApidReassembly(long key)
+    {
+      this.key = key;
+    }
+  }
+}
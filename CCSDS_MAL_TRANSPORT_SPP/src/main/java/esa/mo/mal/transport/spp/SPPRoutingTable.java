@@ -0,0 +1,63 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import esa.mo.mal.transport.gen.util.GENLongKeyTable;
+
+/**
+ * A table of values keyed by APID qualifier, APID and sub id, packed into a long so that a lookup
+ * needs no key object.
+ *
+ * @param <V> The type of the values, null values are not supported.
+ */
+public class SPPRoutingTable<V> extends GENLongKeyTable<V>
+{
+
+  /**
+   * The sub id part of keys that do not include a sub id.
+   */
+  public static final int NO_SUB_ID = 0xFFFF;
+
+  /**
+   * Returns the key of an APID qualifier and APID.
+   *
+   * @param apidQualifier The APID qualifier.
+   * @param apid The APID.
+   * @return The packed key.
+   */
+  public static long key(final int apidQualifier, final int apid)
+  {
+    return key(apidQualifier, apid, NO_SUB_ID);
+  }
+
+  /**
+   * Returns the key of an APID qualifier, APID and sub id.
+   *
+   * @param apidQualifier The APID qualifier.
+   * @param apid The APID, only the lower 16 bits are used.
+   * @param subId The sub id, only the lower 16 bits are used, NO_SUB_ID for none.
+   * @return The packed key.
+   */
+  public static long key(final int apidQualifier, final int apid, final int subId)
+  {
+    return ((long) apidQualifier << 32) | ((apid & 0xFFFFL) << 16) | (subId & 0xFFFFL);
+  }
+}
@@ -20,26 +20,19 @@
  */
 package esa.mo.mal.transport.spp;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Small class that implements a simple segment counter.
+ * Small class that implements a simple segment counter. The count wraps to 0 after
+ * Integer.MAX_VALUE, values are taken without locking.
  */
 public class SPPSegmentCounter
 {
 
-  private int sequenceCount = 0;
+  private final AtomicInteger sequenceCount = new AtomicInteger(0);
 
   public int getNextSegmentCount()
   {
-    int i;
-
-    synchronized (this) {
-      i = sequenceCount++;
-
-      if (sequenceCount < 0) {
-        sequenceCount = 0;
-      }
-    }
-
-    return i;
+    return sequenceCount.getAndIncrement() & Integer.MAX_VALUE;
   }
 }
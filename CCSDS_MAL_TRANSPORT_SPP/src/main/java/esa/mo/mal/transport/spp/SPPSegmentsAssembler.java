@@ -20,21 +20,34 @@
  */
 package esa.mo.mal.transport.spp;
 
-import java.util.TreeMap;
 import org.ccsds.moims.mo.mal.MALException;
 
 /**
+ * Collects the segments of one message. Segments are held in a slot per segment index, together
+ * with counts of the distinct segments and bytes received, so adding a segment and checking for
+ * completion take constant time. All segments of a message carry the same header, so the header of
+ * the first segment is decoded once to find where the body starts in each of them.
  *
  * @author Cesar Coelho
  */
 public class SPPSegmentsAssembler
 {
 
-  private final TreeMap<Long, SPPSegment> segmentsMap = new TreeMap<Long, SPPSegment>(); // use TreeMap so that key is kept sorted
+  /**
+   * Highest segment index accepted, protects against damaged segment counters.
+   */
+  public static final int MAX_SEGMENTS = 1 << 18;
+  /**
+   * Bytes counted for each slot of the segment array, the size of an object reference.
+   */
+  public static final int SLOT_SIZE = 8;
   private final long sequenceIndex;
+  private final long creationTime = System.currentTimeMillis();
+  private byte[][] segments = new byte[4][];
+  private int received = 0;
+  private int maxIndex = -1;
+  private int lastIndex = -1;
   private int totalSize = 0;
-  private boolean receivedFirst = false;
-  private boolean receivedLast = false;
 
   SPPSegmentsAssembler(long sequenceIndex)
   {
@@ -46,79 +59,116 @@ public class SPPSegmentsAssembler
     return sequenceIndex;
   }
 
+  /**
+   * Returns the time the first segment of the message arrived.
+   *
+   * @return the arrival time in milliseconds.
+   */
+  public long getCreationTime()
+  {
+    return creationTime;
+  }
+
+  /**
+   * Returns the number of segment bytes held.
+   *
+   * @return the byte count.
+   */
+  public int getTotalSize()
+  {
+    return totalSize;
+  }
+
+  /**
+   * Returns the memory held for the message, the segment bytes and the slot array. A single segment
+   * with a high index grows the slot array, so the array is counted too.
+   *
+   * @return the byte count.
+   */
+  public long getHeldSize()
+  {
+    return totalSize + ((long) segments.length * SLOT_SIZE);
+  }
+
   public boolean isReady()
   {
-    if (!receivedLast) { // Most likely to occur
-      return false;
-    }
+    // distinct indexes from 0 to the last one, so none can be missing
+    return (0 <= lastIndex) && (maxIndex == lastIndex) && (received == lastIndex + 1);
+  }
 
-    if (!receivedFirst) {
+  /**
+   * Adds a segment of the message.
+   *
+   * @param segmentIndex The index of the segment in the message.
+   * @param segmentFlags The sequence flags of the segment.
+   * @param packet The segment packet.
+   * @return False if the segment index is out of range or a segment with the same index is already
+   * held, the segment is then ignored.
+   */
+  public boolean addSegment(long segmentIndex, int segmentFlags, byte[] packet)
+  {
+    if ((0 > segmentIndex) || (MAX_SEGMENTS <= segmentIndex)
+        || ((1 == segmentFlags) != (0 == segmentIndex))) {
       return false;
     }
 
-    int segChecker = 0;
+    final int index = (int) segmentIndex;
 
-    // check if we indeed have all of them without gaps...
-    for (SPPSegment segment : segmentsMap.values()) {
-      if (segment.getSegmentIndex() != segChecker++) {
-        return false;
-      }
+    if (index >= segments.length) {
+      byte[][] grown = new byte[Math.max(index + 1, segments.length * 2)][];
+      System.arraycopy(segments, 0, grown, 0, segments.length);
+      segments = grown;
     }
 
-    return true;
-  }
-
-  public void addSegment(long segmentIndex, SPPSegment segment)
-  {
-    segmentsMap.put(segmentIndex, segment);
-
-    if (segment.isFirst()) {
-      receivedFirst = true;
+    if (null != segments[index]) {
+      return false;
     }
 
-    if (segment.isLast()) {
-      receivedLast = true;
+    segments[index] = packet;
+    ++received;
+    totalSize += packet.length;
+    maxIndex = Math.max(maxIndex, index);
+
+    if (2 == segmentFlags) {
+      lastIndex = index;
     }
 
-    totalSize += segment.getPacket().length;
+    return true;
   }
 
   /**
-   * Tries to get a message if there is one that can be assembled from the segments. Returns null if
-   * the message is still not available.
+   * Assembles the message, the first segment as received followed by the bodies of the other
+   * segments, with a single copy of each segment into a buffer of the final size.
    *
-   * @return A new message or null if there are none available.
-   * @throws MALException if any of the segments header could not be decoded.
+   * @param transport The transport used to decode the header of the first segment.
+   * @param apid The APID of the message.
+   * @param apidQualifier The APID qualifier of the message.
+   * @return The assembled message.
+   * @throws MALException if the header of the first segment could not be decoded.
    */
   public byte[] getCompleteMessage(final SPPBaseTransport transport,
       final int apid, final int apidQualifier) throws MALException
   {
-    byte[] concatenated = new byte[totalSize];
-    byte[] tmpPacket;
-    int index = 0;
-
-    for (SPPSegment segment : segmentsMap.values()) { // Tree garantees order
-      if (segment.isFirst()) {
-        System.arraycopy(segment.getPacket(), 0, concatenated, 0, segment.getPacket().length);
-        index = segment.getPacket().length;
-        continue;
+    final byte[] first = segments[0];
+    final int bodyOffset = transport.internalDecodeBodyOffset(apidQualifier, apid, first);
+
+    for (int i = 1; i <= lastIndex; i++) {
+      if (segments[i].length < bodyOffset) {
+        throw new MALException("Segment " + i + " is shorter than the message header");
       }
+    }
 
-      SPPMessage msg = transport.internalDecodeMessageHeader(apidQualifier, apid,
-          segment.getPacket());
-      tmpPacket = msg.getBody().getEncodedBody().getEncodedBody().getValue();
+    final byte[] out = new byte[totalSize - (lastIndex * bodyOffset)];
 
-      System.arraycopy(tmpPacket, 0, concatenated, index, tmpPacket.length);
-      index += tmpPacket.length;
+    System.arraycopy(first, 0, out, 0, first.length);
+    int index = first.length;
 
-      if (segment.isLast()) {
-        byte[] out = new byte[index]; // Trim to fit!
-        System.arraycopy(concatenated, 0, out, 0, index);
-        return out;
-      }
+    for (int i = 1; i <= lastIndex; i++) {
+      final int length = segments[i].length - bodyOffset;
+      System.arraycopy(segments[i], bodyOffset, out, index, length);
+      index += length;
     }
 
-    return null;
+    return out;
   }
-
 }
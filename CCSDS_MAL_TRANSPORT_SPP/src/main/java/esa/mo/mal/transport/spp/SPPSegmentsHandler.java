@@ -21,9 +21,10 @@
 package esa.mo.mal.transport.spp;
 
 import static esa.mo.mal.transport.spp.SPPBaseTransport.LOGGER;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 import org.ccsds.moims.mo.mal.MALException;
 
 /**
@@ -33,11 +34,13 @@ import org.ccsds.moims.mo.mal.MALException;
 public class SPPSegmentsHandler
 {
 
-  private final HashMap<Long, SPPSegmentsAssembler> segmentsAssemblerMap
-      = new HashMap<Long, SPPSegmentsAssembler>(); // use TreeMap so that key is kept sorted
+  private final Map<Long, SPPSegmentsAssembler> segmentsAssemblerMap
+      = new LinkedHashMap<Long, SPPSegmentsAssembler>(); // insertion order, oldest message first
   private final int apidQualifier;
   private final int apid;
   private final SPPBaseTransport transport;
+  private SPPSegmentsAssembler lastAdded = null;
+  private long size = 0;
 
   SPPSegmentsHandler(SPPBaseTransport transport, int apidQualifier, int apid)
   {
@@ -46,67 +49,176 @@ public class SPPSegmentsHandler
     this.apidQualifier = apidQualifier;
   }
 
-  public void addSegment(int segmentFlags, byte[] packet)
-  {
-    long localSSC = java.nio.ByteBuffer.wrap(packet).getShort(2) & 0x3FFF; // Mask to remove the sequence Flags
+  /**
+   * Offset of the secondary header flags in a segment, the segment counter follows them after the
+   * optional fields they announce.
+   */
+  private static final int FLAGS_OFFSET = 26;
 
-    int extra = (packet[26] & 0x80) != 0 ? 1 : 0; // Flags
-    extra += (packet[26] & 0x40) != 0 ? 1 : 0; // Flags
-    long segmentIndex = java.nio.ByteBuffer.wrap(packet).getInt(27 + extra);
-    LOGGER.log(Level.FINE, "Segment index: " + segmentIndex + " - Local SSC: " + localSSC);
+  /**
+   * Adds a segment to the assembler of its message.
+   *
+   * @param segmentFlags The sequence flags of the segment.
+   * @param packet The segment packet.
+   * @return False if the segment was a duplicate, out of range or too short to hold a segment
+   * counter, and has been ignored.
+   */
+  public boolean addSegment(int segmentFlags, byte[] packet)
+  {
+    if (packet.length <= FLAGS_OFFSET) {
+      LOGGER.log(Level.WARNING, "Dropped SPP segment of {0} bytes, too short for its header",
+          packet.length);
+      return false;
+    }
 
-    long segAssemblerIndex = localSSC - segmentIndex;
+    int extra = (packet[FLAGS_OFFSET] & 0x80) != 0 ? 1 : 0; // Flags
+    extra += (packet[FLAGS_OFFSET] & 0x40) != 0 ? 1 : 0; // Flags
 
-    if (segAssemblerIndex < 0) {  // Cope with transition zone
-      segAssemblerIndex += 16384;
+    if (packet.length < FLAGS_OFFSET + 1 + extra + 4) {
+      LOGGER.log(Level.WARNING,
+          "Dropped SPP segment of {0} bytes, too short for its segment counter", packet.length);
+      return false;
     }
 
-    SPPSegmentsAssembler assembler;
+    long localSSC = java.nio.ByteBuffer.wrap(packet).getShort(2) & 0x3FFF; // Mask to remove the sequence Flags
+    long segmentIndex = java.nio.ByteBuffer.wrap(packet).getInt(FLAGS_OFFSET + 1 + extra);
+    LOGGER.log(Level.FINE, "Segment index: " + segmentIndex + " - Local SSC: " + localSSC);
+
+    // SSC of the first segment, the count wraps at 16384 however many segments the message has
+    long segAssemblerIndex = (localSSC - segmentIndex) & 0x3FFF;
 
     synchronized (segmentsAssemblerMap) {
-      assembler = segmentsAssemblerMap.get(segAssemblerIndex);
+      SPPSegmentsAssembler assembler = segmentsAssemblerMap.get(segAssemblerIndex);
+      final boolean created = (null == assembler);
+      long before = 0;
 
-      if (assembler == null) {
+      if (created) {
         assembler = new SPPSegmentsAssembler(segAssemblerIndex);
+      } else {
+        before = assembler.getHeldSize();
+      }
+
+      if (!assembler.addSegment(segmentIndex, segmentFlags, packet)) {
+        return false;
+      }
+
+      // only kept once it holds a segment, a rejected first segment leaves nothing behind
+      if (created) {
         segmentsAssemblerMap.put(segAssemblerIndex, assembler);
       }
-    }
 
-    SPPSegment segment = new SPPSegment(segmentIndex, segmentFlags, localSSC, packet);
-    assembler.addSegment(segmentIndex, segment);
+      lastAdded = assembler;
+      size += assembler.getHeldSize() - before;
+      return true;
+    }
   }
 
   /**
-   * Checks if any of the assemblers contains all the segments of its message and returns the
-   * assembled message. If none is ready, a null will be returned. If the header of a segment is
-   * damaged, the exception will be logged and the assembler will be removed from this handler.
+   * Checks if the last segment added completed its message and returns the assembled message, only
+   * a new segment can complete a message. If none is ready, a null will be returned. The assembler
+   * of a ready message is removed from this handler, also when the header of its first segment is
+   * damaged.
    *
    * @return The assembled message or null if none available.
+   * @throws MALException if the header of the first segment could not be decoded.
    */
-  public byte[] getNextMessage()
+  public byte[] getNextMessage() throws MALException
   {
     synchronized (segmentsAssemblerMap) {
-      for (SPPSegmentsAssembler assembler : segmentsAssemblerMap.values()) {
-        if (assembler.isReady()) {
-          byte[] out = null;
-          try {
-            out = assembler.getCompleteMessage(transport, apid, apidQualifier);
-          } catch (MALException ex) {
-            Logger.getLogger(SPPBaseTransport.class.getName()).log(Level.SEVERE,
-                "The message could not be assembled. One of the segments header could not be decoded. "
-                + "The whole message will be discarded.", ex);
-          }
-          segmentsAssemblerMap.remove(assembler.getSequenceIndex());
-          return out;
-        }
+      final SPPSegmentsAssembler assembler = lastAdded;
+      lastAdded = null;
+
+      if ((null != assembler) && assembler.isReady()) {
+        remove(assembler);
+        return assembler.getCompleteMessage(transport, apid, apidQualifier);
       }
     }
 
     return null;  // No messages found!
   }
 
+  /**
+   * Returns the assembler of the oldest incomplete message.
+   *
+   * @return The assembler or null if the handler is empty.
+   */
+  public SPPSegmentsAssembler getOldest()
+  {
+    synchronized (segmentsAssemblerMap) {
+      Iterator<SPPSegmentsAssembler> it = segmentsAssemblerMap.values().iterator();
+      return it.hasNext() ? it.next() : null;
+    }
+  }
+
+  /**
+   * Discards an incomplete message.
+   *
+   * @param assembler The assembler of the message.
+   */
+  public void remove(SPPSegmentsAssembler assembler)
+  {
+    synchronized (segmentsAssemblerMap) {
+      if (assembler == lastAdded) {
+        lastAdded = null;
+      }
+
+      if (null != segmentsAssemblerMap.remove(assembler.getSequenceIndex())) {
+        size -= assembler.getHeldSize();
+      }
+    }
+  }
+
+  /**
+   * Discards the incomplete messages whose first segment arrived before a point in time.
+   *
+   * @param cutoff The time, in milliseconds, before which messages are discarded.
+   * @return The number of messages discarded.
+   */
+  public int expire(long cutoff)
+  {
+    int count = 0;
+
+    synchronized (segmentsAssemblerMap) {
+      Iterator<SPPSegmentsAssembler> it = segmentsAssemblerMap.values().iterator();
+
+      while (it.hasNext()) {
+        SPPSegmentsAssembler assembler = it.next();
+
+        if (assembler.getCreationTime() >= cutoff) {
+          break;
+        }
+
+        it.remove();
+        size -= assembler.getHeldSize();
+
+        if (assembler == lastAdded) {
+          lastAdded = null;
+        }
+
+        ++count;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the memory held by this handler, the segment bytes and the slot arrays of the
+   * assemblers.
+   *
+   * @return the byte count.
+   */
+  public long getSize()
+  {
+    synchronized (segmentsAssemblerMap) {
+      return size;
+    }
+  }
+
   public boolean isEmpty()
   {
-    return segmentsAssemblerMap.isEmpty();
+    synchronized (segmentsAssemblerMap) {
+      return segmentsAssemblerMap.isEmpty();
+    }
   }
 }
@@ -20,27 +20,125 @@
  */
 package esa.mo.mal.transport.spp;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Small class that implements a simple SSC.
+ * Small class that implements a simple SSC. The count is held in an atomic integer and wraps to 0
+ * after 16383, values are taken without locking.
+ *
+ * A counter kept by an SPPSourceSequenceCounterTable with a counter file also holds the limit the
+ * file covers, the count the file would restart from. Taking counts up to the limit stays lock
+ * free, the table is only called to move the limit forward once it is reached.
  */
 public class SPPSourceSequenceCounterSimple implements SPPSourceSequenceCounter
 {
 
-  private int sequenceCount = 0;
+  private static final int SSC_MASK = 0x3FFF;
+  private final AtomicInteger sequenceCount;
+  private volatile SPPSourceSequenceCounterTable table = null;
+  private volatile int limit;
+
+  public SPPSourceSequenceCounterSimple()
+  {
+    this(0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param initialCount The first value returned, taken modulo 16384.
+   */
+  public SPPSourceSequenceCounterSimple(int initialCount)
+  {
+    sequenceCount = new AtomicInteger(initialCount & SSC_MASK);
+    limit = initialCount & SSC_MASK;
+  }
 
   @Override
   public int getNextSourceSequenceCount()
   {
-    int i;
+    return getNextSourceSequenceCounts(1);
+  }
 
-    synchronized (this) {
-      i = sequenceCount++;
+  /**
+   * Reserves a block of consecutive values of the sequence count, for the segments of a message.
+   * The values of the block are the returned value plus 0 to count - 1, modulo 16384.
+   *
+   * @param count The number of values to reserve.
+   * @return the first SPP SSC of the block.
+   */
+  public int getNextSourceSequenceCounts(int count)
+  {
+    // 2^32 is a multiple of 2^14, so the masked count also wraps correctly on integer overflow
+    final int first = sequenceCount.getAndAdd(count);
+    final SPPSourceSequenceCounterTable owner = table;
 
-      if (sequenceCount > 16383) {
-        sequenceCount = 0;
-      }
+    // the limit is moved and saved before any count beyond it is returned
+    if ((null != owner) && (0 < (first + count) - limit)) {
+      owner.reserve(this, first + count);
     }
 
-    return i;
+    return first & SSC_MASK;
+  }
+
+  /**
+   * Returns the value the next call to getNextSourceSequenceCount will return.
+   *
+   * @return the next SPP SSC.
+   */
+  public int getSourceSequenceCount()
+  {
+    return sequenceCount.get() & SSC_MASK;
+  }
+
+  /**
+   * Sets the value the next call to getNextSourceSequenceCount will return.
+   *
+   * @param count The next SPP SSC, taken modulo 16384.
+   */
+  public void setSourceSequenceCount(int count)
+  {
+    sequenceCount.set(count & SSC_MASK);
+    limit = count & SSC_MASK;
+  }
+
+  /**
+   * Makes the counter call a table before returning counts beyond its limit.
+   *
+   * @param table The table that persists the limit.
+   */
+  void setTable(SPPSourceSequenceCounterTable table)
+  {
+    this.table = table;
+  }
+
+  /**
+   * Returns the count the counter file covers, unmasked.
+   *
+   * @return the limit.
+   */
+  int getLimit()
+  {
+    return limit;
+  }
+
+  /**
+   * Sets the count the counter file covers, unmasked.
+   *
+   * @param limit The limit.
+   */
+  void setLimit(int limit)
+  {
+    this.limit = limit;
+  }
+
+  /**
+   * Returns the next count, unmasked.
+   *
+   * @return the count.
+   */
+  int getCount()
+  {
+    return sequenceCount.get();
   }
 }
@@ -0,0 +1,250 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import static esa.mo.mal.transport.spp.SPPBaseTransport.LOGGER;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * The source sequence counters of a transport, one per APID qualifier and APID, so that senders on
+ * different APIDs never touch the same counter. Counters are created on first use.
+ *
+ * If a counter file is configured a restarted transport continues the sequences of the previous run
+ * rather than starting from 0 again. The file is a properties file with one "qualifier/apid=count"
+ * entry per counter. While the transport runs each entry holds a high-water mark a reserve of
+ * counts ahead of the counter, written before the counter passes it, so the file is only written
+ * once every reserve counts and a crash skips at most a reserve of counts instead of reusing them.
+ * Counts are loaded from the file when the table is created, and the exact counts are written when
+ * the transport is closed.
+ */
+public class SPPSourceSequenceCounterTable
+{
+
+  /**
+   * Default number of counts the marks in the counter file are kept ahead of the counters.
+   */
+  public static final int DEFAULT_RESERVE = 1024;
+  private static final int SSC_MASK = 0x3FFF;
+  private final SPPRoutingTable<Entry> counters = new SPPRoutingTable<Entry>();
+  private final File file;
+  private final int reserve;
+
+  /**
+   * Constructor.
+   *
+   * @param defaultCounter The counter to use for the default APID.
+   * @param defaultApidQualifier The default APID qualifier of the transport.
+   * @param defaultApid The default APID of the transport.
+   * @param properties The transport properties, may be null.
+   */
+  public SPPSourceSequenceCounterTable(final SPPSourceSequenceCounterSimple defaultCounter,
+      final int defaultApidQualifier, final int defaultApid, final Map properties)
+  {
+    counters.put(SPPRoutingTable.key(defaultApidQualifier, defaultApid),
+        new Entry(defaultApidQualifier, defaultApid, defaultCounter));
+
+    int r = DEFAULT_RESERVE;
+
+    if ((null != properties)
+        && properties.containsKey(SPPBaseTransport.SEQUENCE_COUNTER_RESERVE_PROPERTY)) {
+      r = Integer.parseInt(
+          properties.get(SPPBaseTransport.SEQUENCE_COUNTER_RESERVE_PROPERTY).toString());
+    }
+
+    // a mark a whole count cycle ahead would wrap back behind the counter
+    this.reserve = Math.max(1, Math.min(r, SSC_MASK));
+
+    if ((null != properties)
+        && properties.containsKey(SPPBaseTransport.SEQUENCE_COUNTER_FILE_PROPERTY)) {
+      file = new File(properties.get(SPPBaseTransport.SEQUENCE_COUNTER_FILE_PROPERTY).toString());
+      load();
+
+      for (Entry entry : counters.values()) {
+        entry.counter.setTable(this);
+      }
+    } else {
+      file = null;
+    }
+  }
+
+  /**
+   * Returns the counter of an APID.
+   *
+   * @param apidQualifier The APID qualifier.
+   * @param apid The APID.
+   * @return The counter.
+   */
+  public SPPSourceSequenceCounterSimple getCounter(final int apidQualifier, final int apid)
+  {
+    final long key = SPPRoutingTable.key(apidQualifier, apid);
+    Entry entry = counters.get(key);
+
+    if (null == entry) {
+      entry = counters.putIfAbsent(key,
+          new Entry(apidQualifier, apid, new SPPSourceSequenceCounterSimple()));
+
+      if (null != file) {
+        entry.counter.setTable(this);
+      }
+    }
+
+    return entry.counter;
+  }
+
+  /**
+   * Writes the exact counts to the counter file, if one is configured. Counts taken afterwards move
+   * the marks forward again.
+   */
+  public synchronized void save()
+  {
+    if (null == file) {
+      return;
+    }
+
+    for (Entry entry : counters.values()) {
+      entry.counter.setLimit(entry.counter.getCount());
+    }
+
+    write(null, 0);
+  }
+
+  /**
+   * Called by a counter about to return counts beyond its mark, writes a mark a reserve of counts
+   * further on before the counter may use it.
+   *
+   * @param counter The counter.
+   * @param next The count following the ones being returned, unmasked.
+   */
+  synchronized void reserve(final SPPSourceSequenceCounterSimple counter, final int next)
+  {
+    // another thread may have moved the mark while this one waited
+    if (0 < next - counter.getLimit()) {
+      final int mark = next + reserve;
+
+      write(counter, mark);
+      counter.setLimit(mark);
+    }
+  }
+
+  private void write(final SPPSourceSequenceCounterSimple moved, final int mark)
+  {
+    final Properties counts = new Properties();
+
+    for (Entry entry : counters.values()) {
+      final int limit = (entry.counter == moved) ? mark : entry.counter.getLimit();
+
+      counts.setProperty(entry.apidQualifier + "/" + entry.apid,
+          String.valueOf(limit & SSC_MASK));
+    }
+
+    // written next to the file first so that a failed write does not lose the previous counts
+    final File tmp = new File(file.getPath() + ".tmp");
+    OutputStream out = null;
+
+    try {
+      out = new FileOutputStream(tmp);
+      counts.store(out, "SPP source sequence counts");
+      out.close();
+      out = null;
+
+      if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+        throw new IOException("Unable to rename " + tmp + " to " + file);
+      }
+    } catch (IOException ex) {
+      // the mark still moves, a restart after a crash may then reuse counts
+      LOGGER.log(Level.WARNING, "Unable to save SPP source sequence counts to " + file, ex);
+    } finally {
+      close(out);
+    }
+  }
+
+  private void load()
+  {
+    if (!file.exists()) {
+      return;
+    }
+
+    final Properties counts = new Properties();
+    InputStream in = null;
+
+    try {
+      in = new FileInputStream(file);
+      counts.load(in);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Unable to load SPP source sequence counts from " + file, ex);
+      return;
+    } finally {
+      close(in);
+    }
+
+    for (String name : counts.stringPropertyNames()) {
+      try {
+        final int i = name.indexOf('/');
+        final int apidQualifier = Integer.parseInt(name.substring(0, i));
+        final int apid = Integer.parseInt(name.substring(i + 1));
+
+        getCounter(apidQualifier, apid).setSourceSequenceCount(
+            Integer.parseInt(counts.getProperty(name)));
+      } catch (RuntimeException ex) {
+        LOGGER.log(Level.WARNING, "Ignoring SPP source sequence count entry {0} of {1}",
+            new Object[]{name, file});
+      }
+    }
+  }
+
+  private static void close(final Closeable stream)
+  {
+    if (null != stream) {
+      try {
+        stream.close();
+      } catch (IOException ex) {
+        // nothing to do
+      }
+    }
+  }
+
+  /**
+   * A counter and the APID it counts for.
+   */
+  private static final class Entry
+  {
+
+    private final int apidQualifier;
+    private final int apid;
+    private final SPPSourceSequenceCounterSimple counter;
+
+    Entry(int apidQualifier, int apid, SPPSourceSequenceCounterSimple counter)
+    {
+      this.apidQualifier = apidQualifier;
+      this.apid = apid;
+      this.counter = counter;
+    }
+  }
+}
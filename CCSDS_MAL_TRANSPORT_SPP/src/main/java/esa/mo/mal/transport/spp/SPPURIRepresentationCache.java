@@ -0,0 +1,168 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.ccsds.moims.mo.mal.structures.URI;
+
+/**
+ * A URI representation that caches the results of another one. The APID, qualifier and sub id of a
+ * URI are parsed once and then looked up by URI value, and the URIs created from an APID
+ * qualifier, APID and sub id are interned so that decoding a packet header from a known source or
+ * destination returns the same URI instance without building a new string.
+ *
+ * Both caches are reset when they reach their maximum size, so a transport that talks to an
+ * unbounded number of sub ids does not grow without limit.
+ */
+public class SPPURIRepresentationCache implements SPPURIRepresentation
+{
+
+  private static final int MAX_ENTRIES = 4096;
+  private final SPPURIRepresentation delegate;
+  private final ConcurrentMap<URI, ParsedURI> parsed = new ConcurrentHashMap<URI, ParsedURI>();
+  private final SPPRoutingTable<URI> qualifiedURIs = new SPPRoutingTable<URI>();
+  private final SPPRoutingTable<URI> unqualifiedURIs = new SPPRoutingTable<URI>();
+
+  /**
+   * Constructor.
+   *
+   * @param delegate The representation that does the actual conversion.
+   */
+  public SPPURIRepresentationCache(SPPURIRepresentation delegate)
+  {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public short getApid(URI uri)
+  {
+    final ParsedURI p = parse(uri);
+
+    return (null == p) ? delegate.getApid(uri) : p.apid;
+  }
+
+  @Override
+  public boolean hasQualifier(URI uri)
+  {
+    final ParsedURI p = parse(uri);
+
+    return (null == p) ? delegate.hasQualifier(uri) : p.hasQualifier;
+  }
+
+  @Override
+  public int getQualifier(URI uri)
+  {
+    final ParsedURI p = parse(uri);
+
+    return ((null == p) || !p.hasQualifier) ? delegate.getQualifier(uri) : p.qualifier;
+  }
+
+  @Override
+  public boolean hasSubId(URI uri)
+  {
+    final ParsedURI p = parse(uri);
+
+    return (null == p) ? delegate.hasSubId(uri) : p.hasSubId;
+  }
+
+  @Override
+  public short getSubId(URI uri)
+  {
+    final ParsedURI p = parse(uri);
+
+    return ((null == p) || !p.hasSubId) ? delegate.getSubId(uri) : p.subId;
+  }
+
+  @Override
+  public URI getURI(Integer qualifier, short apid, Short subId)
+  {
+    if ((null != subId) && ((0 > subId) || (0xFF < subId))) {
+      return delegate.getURI(qualifier, apid, subId);
+    }
+
+    final SPPRoutingTable<URI> uris = (null == qualifier) ? unqualifiedURIs : qualifiedURIs;
+    final long key = SPPRoutingTable.key((null == qualifier) ? 0 : qualifier, apid,
+        (null == subId) ? SPPRoutingTable.NO_SUB_ID : subId);
+
+    URI uri = uris.get(key);
+
+    if (null == uri) {
+      if (MAX_ENTRIES <= uris.size()) {
+        uris.clear();
+      }
+
+      uri = uris.putIfAbsent(key, delegate.getURI(qualifier, apid, subId));
+    }
+
+    return uri;
+  }
+
+  /**
+   * Returns the cached parts of a URI, parsing it on first use.
+   *
+   * @param uri The URI.
+   * @return The parts, null if the URI could not be parsed by the delegate.
+   */
+  private ParsedURI parse(URI uri)
+  {
+    ParsedURI p = parsed.get(uri);
+
+    if (null == p) {
+      try {
+        p = new ParsedURI(delegate, uri);
+      } catch (RuntimeException ex) {
+        // left to the delegate so that the caller sees its exception
+        return null;
+      }
+
+      if (MAX_ENTRIES <= parsed.size()) {
+        parsed.clear();
+      }
+
+      parsed.put(uri, p);
+    }
+
+    return p;
+  }
+
+  /**
+   * The parts of a URI. The qualifier and the sub id are only held if the URI has them.
+   */
+  private static final class ParsedURI
+  {
+
+    private final short apid;
+    private final boolean hasQualifier;
+    private final int qualifier;
+    private final boolean hasSubId;
+    private final short subId;
+
+    ParsedURI(SPPURIRepresentation rep, URI uri)
+    {
+      apid = rep.getApid(uri);
+      hasQualifier = rep.hasQualifier(uri);
+      qualifier = hasQualifier ? rep.getQualifier(uri) : 0;
+      hasSubId = rep.hasSubId(uri);
+      subId = hasSubId ? rep.getSubId(uri) : 0;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import esa.mo.mal.transport.gen.GENMessage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Decodes received packets with the fixed binary encoding for header and body, and with a fixed
+ * binary header followed by a split binary body that is only decoded when accessed.
+ */
+public class SPPMessageDecodingTest
+{
+
+  private static final String FROM = "malspp:3/5/1";
+  private static final String TO = "malspp:0/6/2";
+  private static final String FIXED_BINARY_FACTORY
+      = "esa.mo.mal.encoder.spp.SPPFixedBinaryStreamFactory";
+  private static final String SPLIT_BINARY_FACTORY
+      = "esa.mo.mal.encoder.binary.split.SplitBinaryStreamFactory";
+
+  @Test
+  public void testFixedBinaryRoundTrip() throws Exception
+  {
+    System.out.println("SPP fixed binary round trip test");
+    SPPTestTransport transport = new SPPTestTransport(65000);
+    byte[] packet = transport.encode(transport.message(300, FROM, TO));
+
+    assertBody(300, transport.receive(0, SPPTestTransport.getApid(packet), packet));
+    assertTrue(0 < transport.bodyOffset(packet));
+  }
+
+  @Test
+  public void testSplitBinaryBodyRoundTrip() throws Exception
+  {
+    System.out.println("SPP split binary body round trip test");
+    SPPTestTransport transport = new SPPTestTransport(65000, splitBinary());
+    byte[] packet = transport.encode(transport.message(300, FROM, TO));
+
+    GENMessage msg = transport.receive(0, SPPTestTransport.getApid(packet), packet);
+    assertEquals(TO, msg.getHeader().getURITo().getValue());
+    assertEquals(FROM, msg.getHeader().getURIFrom().getValue());
+    assertBody(300, msg);
+  }
+
+  @Test
+  public void testSplitBinaryBodySegmentedRoundTrip() throws Exception
+  {
+    System.out.println("SPP split binary body segmented round trip test");
+    SPPTestTransport transport = new SPPTestTransport(100, splitBinary());
+    List<byte[]> packets = SPPTestTransport.split(
+        transport.encode(transport.message(1000, FROM, TO)));
+    assertTrue(1 < packets.size());
+
+    GENMessage msg = null;
+    for (byte[] packet : packets) {
+      assertNull(msg);
+      msg = transport.receive(0, SPPTestTransport.getApid(packet), packet);
+    }
+
+    assertNotNull(msg);
+    assertBody(1000, msg);
+  }
+
+  private static Map splitBinary()
+  {
+    Map properties = new HashMap();
+    properties.put(SPPTestTransport.ENCODING_PROPERTY, SPLIT_BINARY_FACTORY);
+    properties.put(SPPTestTransport.HEADER_ENCODING_PROPERTY, FIXED_BINARY_FACTORY);
+    return properties;
+  }
+
+  private static void assertBody(int bodyLength, GENMessage msg) throws Exception
+  {
+    Blob body = (Blob) msg.getBody().getBodyElement(0, new Blob());
+    byte[] value = Arrays.copyOfRange(body.getValue(), body.getOffset(),
+        body.getOffset() + body.getLength());
+
+    assertArrayEquals(SPPTestTransport.body(bodyLength), value);
+  }
+}
@@ -0,0 +1,297 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import esa.mo.mal.encoder.binary.base.BinaryTimeHandler;
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryDecoder;
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryEncoder;
+import esa.mo.mal.encoder.binary.fixed.FixedBinaryListDecoder;
+import esa.mo.mal.encoder.gen.GENDecoder;
+import esa.mo.mal.encoder.gen.GENEncoder;
+import esa.mo.mal.transport.gen.GENMessage;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALListDecoder;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the SPP message header encodes the same bytes as before it was encoded from
+ * primitives, for TC and TM packets, error messages, QoS levels, sub ids and segmented messages,
+ * and that encoders and decoders other than the binary ones still work field by field.
+ */
+public class SPPMessageHeaderTest
+{
+
+  private static final String FROM = "malspp:3/5/1";
+  private static final String[] TO = new String[]{
+    "malspp:0/6/2", "malspp:7/6", "malspp:300/2047/255"
+  };
+  private static final Object[][] STAGES = new Object[][]{
+    {InteractionType.SEND, 1, false, QoSLevel.BESTEFFORT},
+    {InteractionType.REQUEST, 2, true, QoSLevel.QUEUED},
+    {InteractionType.PUBSUB, 6, false, QoSLevel.ASSURED}
+  };
+  /**
+   * Packets of messages with an empty body, as encoded before the header was encoded from
+   * primitives.
+   */
+  private static final String[] SINGLE_PACKETS = new String[]{
+    // malspp:0/6/2 SEND
+    "1806c0000052000384000100010100050003000000000000004dff0102000000016ffa8d8800000000000002" +
+    "6e7a000000044c49564500000002010000000161010000000162000000020102010001000001000001000000" +
+    "00",
+    // malspp:0/6/2 REQUEST
+    "0805c00100490403840001000101c0060000000000000000004dff0102000000016ffa8d8800000000000002" +
+    "6e7a000000044c4956450000000201000000016101000000016200000002010200000000",
+    // malspp:0/6/2 PUBSUB
+    "0805c0020049110384000100010120060000000000000000004dff0102000000016ffa8d8800000000000002" +
+    "6e7a000000044c4956450000000201000000016101000000016200000002010200000000",
+    // malspp:7/6 SEND
+    "1806c0030051000384000100010100050003000000000000004dbf01000000016ffa8d88000000000000026e" +
+    "7a000000044c4956450000000201000000016101000000016200000002010201000100000100000100000000",
+    // malspp:7/6 REQUEST
+    "0805c00400480403840001000101c0060007000000000000004dbf01000000016ffa8d88000000000000026e" +
+    "7a000000044c4956450000000201000000016101000000016200000002010200000000",
+    // malspp:7/6 PUBSUB
+    "0805c0050048110384000100010120060007000000000000004dbf01000000016ffa8d88000000000000026e" +
+    "7a000000044c4956450000000201000000016101000000016200000002010200000000",
+    // malspp:300/2047/255 SEND
+    "1fffc0060052000384000100010100050003000000000000004dff01ff000000016ffa8d8800000000000002" +
+    "6e7a000000044c49564500000002010000000161010000000162000000020102010001000001000001000000" +
+    "00",
+    // malspp:300/2047/255 REQUEST
+    "0805c00700490403840001000101c7ff012c000000000000004dff01ff000000016ffa8d8800000000000002" +
+    "6e7a000000044c4956450000000201000000016101000000016200000002010200000000",
+    // malspp:300/2047/255 PUBSUB
+    "0805c0080049110384000100010127ff012c000000000000004dff01ff000000016ffa8d8800000000000002" +
+    "6e7a000000044c4956450000000201000000016101000000016200000002010200000000"
+  };
+  /**
+   * First segments of messages with a 300 byte body in 100 byte segments, as encoded before the
+   * header was encoded from primitives.
+   */
+  private static final String[] FIRST_SEGMENTS = new String[]{
+    // malspp:0/6/2 SEND
+    "180640090063000384000100010100050003000000000000004dff010200000000000000016ffa8d88000000" +
+    "000000026e7a000000044c495645000000020100000001610100000001620000000201020100010000010000" +
+    "010000012c8e50fdbfc1b0eecb6558104c7d",
+    // malspp:0/6/2 REQUEST
+    "0805401600630403840001000101c0060000000000000000004dff010200000000000000016ffa8d88000000" +
+    "000000026e7a000000044c495645000000020100000001610100000001620000000201020000012c8e50fdbf" +
+    "c1b0eecb6558104c7d2138c6c948ffbb39b9",
+    // malspp:0/6/2 PUBSUB
+    "080540220063110384000100010120060000000000000000004dff010200000000000000016ffa8d88000000" +
+    "000000026e7a000000044c495645000000020100000001610100000001620000000201020000012c8e50fdbf" +
+    "c1b0eecb6558104c7d2138c6c948ffbb39b9",
+    // malspp:7/6 SEND
+    "1806402e0063000384000100010100050003000000000000004dbf0100000000000000016ffa8d8800000000" +
+    "0000026e7a000000044c49564500000002010000000161010000000162000000020102010001000001000001" +
+    "0000012c8e50fdbfc1b0eecb6558104c7d21",
+    // malspp:7/6 REQUEST
+    "0805403a00630403840001000101c0060007000000000000004dbf0100000000000000016ffa8d8800000000" +
+    "0000026e7a000000044c495645000000020100000001610100000001620000000201020000012c8e50fdbfc1" +
+    "b0eecb6558104c7d2138c6c948ffbb39b957",
+    // malspp:7/6 PUBSUB
+    "080540460063110384000100010120060007000000000000004dbf0100000000000000016ffa8d8800000000" +
+    "0000026e7a000000044c495645000000020100000001610100000001620000000201020000012c8e50fdbfc1" +
+    "b0eecb6558104c7d2138c6c948ffbb39b957",
+    // malspp:300/2047/255 SEND
+    "1fff40520063000384000100010100050003000000000000004dff01ff00000000000000016ffa8d88000000" +
+    "000000026e7a000000044c495645000000020100000001610100000001620000000201020100010000010000" +
+    "010000012c8e50fdbfc1b0eecb6558104c7d",
+    // malspp:300/2047/255 REQUEST
+    "0805405f00630403840001000101c7ff012c000000000000004dff01ff00000000000000016ffa8d88000000" +
+    "000000026e7a000000044c495645000000020100000001610100000001620000000201020000012c8e50fdbf" +
+    "c1b0eecb6558104c7d2138c6c948ffbb39b9",
+    // malspp:300/2047/255 PUBSUB
+    "0805406b0063110384000100010127ff012c000000000000004dff01ff00000000000000016ffa8d88000000" +
+    "000000026e7a000000044c495645000000020100000001610100000001620000000201020000012c8e50fdbf" +
+    "c1b0eecb6558104c7d2138c6c948ffbb39b9"
+  };
+
+  @Test
+  public void testMatchesPreviousEncoding() throws Exception
+  {
+    System.out.println("SPPMessageHeader previous encoding test");
+    SPPTestTransport single = new SPPTestTransport(65000);
+    SPPTestTransport segmented = new SPPTestTransport(100);
+    int v = 0;
+
+    for (String to : TO) {
+      for (Object[] stage : STAGES) {
+        List<byte[]> packets = SPPTestTransport.split(single.encode(message(single, 0, to, stage)));
+        assertEquals(1, packets.size());
+        assertPacket(to + " " + stage[0], SINGLE_PACKETS[v], packets.get(0));
+
+        packets = SPPTestTransport.split(segmented.encode(message(segmented, 300, to, stage)));
+        assertTrue(1 < packets.size());
+        assertPacket(to + " " + stage[0] + " segmented", FIRST_SEGMENTS[v], packets.get(0));
+        ++v;
+      }
+    }
+  }
+
+  @Test
+  public void testDecodesPreviousEncoding() throws Exception
+  {
+    System.out.println("SPPMessageHeader previous decoding test");
+    SPPTestTransport transport = new SPPTestTransport(65000);
+    int v = 0;
+
+    for (String to : TO) {
+      for (Object[] stage : STAGES) {
+        byte[] packet = hex(SINGLE_PACKETS[v++]);
+
+        GENMessage msg = transport.receive(primaryQualifier(to, packet),
+            SPPTestTransport.getApid(packet), packet);
+        assertHeader(message(transport, 0, to, stage).getHeader(), msg.getHeader());
+      }
+    }
+  }
+
+  @Test
+  public void testOtherEncoderAndDecoder() throws Exception
+  {
+    System.out.println("SPPMessageHeader field by field test");
+    SPPTestTransport transport = new SPPTestTransport(65000);
+    IdentifierList domain = new IdentifierList();
+    domain.add(new Identifier("a"));
+
+    for (String to : TO) {
+      for (Object[] stage : STAGES) {
+        SPPMessageHeader hdr = transport.header(FROM, to, (InteractionType) stage[0],
+            (Integer) stage[1], (Boolean) stage[2], (QoSLevel) stage[3], domain);
+        hdr.setSegmentFlags((byte) 0x40);
+
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        FixedBinaryEncoder binaryEncoder = new FixedBinaryEncoder(direct,
+                new BinaryTimeHandler(), true);
+        hdr.encode(binaryEncoder);
+        binaryEncoder.close();
+
+        ByteArrayOutputStream fields = new ByteArrayOutputStream();
+        GENEncoder encoder = new GENEncoder(new FixedBinaryEncoder.FixedBinaryStreamHolder(fields,
+            true))
+        {
+        };
+        hdr.encode(encoder);
+        encoder.close();
+
+        // the fixed part is identical, the rest is encoded by the encoder as it likes
+        byte[] expected = direct.toByteArray();
+        byte[] actual = fields.toByteArray();
+        int fixedLength = SPPTestTransport.segmentCounterOffset(expected) + 4;
+        assertArrayEquals(Arrays.copyOf(expected, fixedLength), Arrays.copyOf(actual, fixedLength));
+
+        final FixedBinaryDecoder.FixedBinaryBufferHolder holder
+            = new FixedBinaryDecoder.FixedBinaryBufferHolder(null, actual, 0, actual.length, true);
+        GENDecoder decoder = new GENDecoder(holder)
+        {
+          @Override
+          public MALListDecoder createListDecoder(List list) throws MALException
+          {
+            return new FixedBinaryListDecoder(list, holder, new BinaryTimeHandler());
+          }
+
+          @Override
+          public byte[] getRemainingEncodedData() throws MALException
+          {
+            return new byte[0];
+          }
+        };
+        SPPMessageHeader decoded = new SPPMessageHeader(null, transport.defaultConfiguration,
+            null, primaryQualifier(to, expected), transport.uriRep, transport.ssc);
+        decoded.decode(decoder);
+        assertHeader(hdr, decoded);
+        assertEquals(hdr.getTimestamp(), decoded.getTimestamp());
+        assertEquals(hdr.getDomain(), decoded.getDomain());
+      }
+    }
+  }
+
+  private static SPPMessage message(SPPTestTransport transport, int bodyLength, String to,
+      Object[] stage) throws Exception
+  {
+    return transport.message(bodyLength, FROM, to, (InteractionType) stage[0], (Integer) stage[1],
+        (Boolean) stage[2], (QoSLevel) stage[3]);
+  }
+
+  private static int primaryQualifier(String to, byte[] packet)
+  {
+    // the qualifier of the primary APID is the one the packet is received on, the destination one
+    // for a TC packet and the source one for a TM packet
+    String primary = (0 != (packet[0] & 0x10)) ? to : FROM;
+
+    return Integer.parseInt(primary.substring(7, primary.indexOf('/')));
+  }
+
+  private static void assertPacket(String variant, String expected, byte[] actual)
+  {
+    byte[] packet = hex(expected);
+
+    // the source sequence count depends on the packets sent before
+    SPPTestTransport.setSsc(packet, 0);
+    byte[] masked = actual.clone();
+    SPPTestTransport.setSsc(masked, 0);
+    assertArrayEquals(variant, packet, masked);
+  }
+
+  private static void assertHeader(MALMessageHeader expected, MALMessageHeader actual)
+  {
+    assertEquals(expected.getURIFrom(), actual.getURIFrom());
+    assertEquals(expected.getURITo(), actual.getURITo());
+    assertEquals(expected.getQoSlevel(), actual.getQoSlevel());
+    assertEquals(expected.getSession(), actual.getSession());
+    assertEquals(expected.getInteractionType(), actual.getInteractionType());
+    // SEND has a single stage, so the SDU type does not carry it
+    assertEquals(InteractionType.SEND.equals(expected.getInteractionType())
+        ? new UOctet((short) 0) : expected.getInteractionStage(), actual.getInteractionStage());
+    assertEquals(expected.getTransactionId(), actual.getTransactionId());
+    assertEquals(expected.getServiceArea(), actual.getServiceArea());
+    assertEquals(expected.getService(), actual.getService());
+    assertEquals(expected.getOperation(), actual.getOperation());
+    assertEquals(expected.getAreaVersion(), actual.getAreaVersion());
+    assertEquals(expected.getIsErrorMessage(), actual.getIsErrorMessage());
+    assertEquals(expected.getPriority(), actual.getPriority());
+    assertEquals(expected.getNetworkZone(), actual.getNetworkZone());
+    assertEquals(expected.getSessionName(), actual.getSessionName());
+  }
+
+  private static byte[] hex(String value)
+  {
+    byte[] bytes = new byte[value.length() / 2];
+
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+    }
+
+    return bytes;
+  }
+}
@@ -0,0 +1,191 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the reassembly manager discards incomplete messages after the timeout, evicts the
+ * oldest ones when an APID exceeds its budget, and counts what it did.
+ */
+public class SPPReassemblyManagerTest
+{
+
+  private static final String FROM = "malspp:3/5/1";
+  private static final String TO = "malspp:0/6/2";
+
+  @Test
+  public void testAssemble() throws Exception
+  {
+    System.out.println("SPPReassemblyManager assemble test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    SPPReassemblyManager manager = manager(transport, null, null);
+    List<byte[]> segments = segments(transport, 300);
+
+    for (int i = 0; i < segments.size() - 1; i++) {
+      assertNull(add(manager, segments.get(i)));
+    }
+
+    assertNull(add(manager, segments.get(1)));
+    assertEquals(1, manager.getDroppedSegments());
+    assertTrue(0 < manager.getPendingBytes());
+
+    assertArrayEquals(transport.assembled(segments),
+        add(manager, segments.get(segments.size() - 1)));
+    assertEquals(1, manager.getAssembledMessages());
+    assertEquals(0, manager.getPendingBytes());
+    assertEquals(0, manager.getExpiredMessages());
+    assertEquals(0, manager.getEvictedMessages());
+    assertEquals(0, manager.getFailedMessages());
+  }
+
+  @Test
+  public void testExpiry() throws Exception
+  {
+    System.out.println("SPPReassemblyManager expiry test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    SPPReassemblyManager manager = manager(transport, 50L, null);
+    List<byte[]> stale = segments(transport, 300);
+    List<byte[]> fresh = segments(transport, 300);
+
+    assertNull(add(manager, stale.get(0)));
+    assertNull(add(manager, stale.get(1)));
+    Thread.sleep(150);
+
+    // the next segment triggers the sweep, which discards the stale message only
+    assertNull(add(manager, fresh.get(0)));
+    assertEquals(1, manager.getExpiredMessages());
+    assertEquals(held(transport, fresh.get(0)), manager.getPendingBytes());
+
+    // the rest of the stale message can no longer complete it
+    for (int i = 2; i < stale.size(); i++) {
+      assertNull(add(manager, stale.get(i)));
+    }
+
+    for (int i = 1; i < fresh.size(); i++) {
+      byte[] out = add(manager, fresh.get(i));
+      assertEquals(fresh.size() - 1 == i, null != out);
+    }
+
+    assertEquals(1, manager.getAssembledMessages());
+  }
+
+  @Test
+  public void testBudgetEviction() throws Exception
+  {
+    System.out.println("SPPReassemblyManager budget eviction test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    List<byte[]> older = segments(transport, 300);
+    List<byte[]> newer = segments(transport, 300);
+
+    // room for the older first segment and all but the last segment of the newer message
+    long budget = held(transport, older.get(0))
+        + held(transport, newer.subList(0, newer.size() - 2).toArray(new byte[0][]));
+
+    SPPReassemblyManager manager = manager(transport, null, budget);
+
+    assertNull(add(manager, older.get(0)));
+    for (int i = 0; i < newer.size() - 2; i++) {
+      assertNull(add(manager, newer.get(i)));
+    }
+    assertEquals(0, manager.getEvictedMessages());
+    assertEquals(budget, manager.getPendingBytes());
+
+    // the next segment exceeds the budget and evicts the older message
+    assertNull(add(manager, newer.get(newer.size() - 2)));
+    assertEquals(1, manager.getEvictedMessages());
+    assertEquals(held(transport, newer.subList(0, newer.size() - 1).toArray(new byte[0][])),
+        manager.getPendingBytes());
+
+    assertArrayEquals(transport.assembled(newer), add(manager, newer.get(newer.size() - 1)));
+    assertEquals(1, manager.getAssembledMessages());
+    assertEquals(0, manager.getPendingBytes());
+  }
+
+  @Test
+  public void testBudgetPerApid() throws Exception
+  {
+    System.out.println("SPPReassemblyManager budget per APID test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    List<byte[]> first = segments(transport, 300);
+    List<byte[]> second = segments(transport, 300);
+    SPPReassemblyManager manager = manager(transport, null, held(transport, first.get(0)));
+
+    // the same segments on two APIDs fit the budget of each
+    assertNull(manager.addSegment(0, 6, 77L, 1, first.get(0)));
+    assertNull(manager.addSegment(0, 7, 77L, 1, first.get(0)));
+    assertEquals(0, manager.getEvictedMessages());
+    assertEquals(2 * held(transport, first.get(0)), manager.getPendingBytes());
+
+    assertNull(manager.addSegment(0, 6, 77L, 1, second.get(0)));
+    assertEquals(1, manager.getEvictedMessages());
+    assertEquals(2 * held(transport, first.get(0)), manager.getPendingBytes());
+
+    manager.clear();
+    assertEquals(0, manager.getPendingBytes());
+  }
+
+  private static SPPReassemblyManager manager(SPPTestTransport transport, Long timeout,
+      Long maxSize)
+  {
+    Map properties = new HashMap();
+
+    if (null != timeout) {
+      properties.put(SPPBaseTransport.REASSEMBLY_TIMEOUT_PROPERTY, timeout.toString());
+    }
+
+    if (null != maxSize) {
+      properties.put(SPPBaseTransport.REASSEMBLY_MAX_SIZE_PROPERTY, maxSize.toString());
+    }
+
+    return new SPPReassemblyManager(transport, properties);
+  }
+
+  private static List<byte[]> segments(SPPTestTransport transport, int bodyLength)
+      throws Exception
+  {
+    List<byte[]> segments = SPPTestTransport.split(
+        transport.encode(transport.message(bodyLength, FROM, TO)));
+    assertTrue(3 < segments.size());
+
+    return segments;
+  }
+
+  private static long held(SPPTestTransport transport, byte[]... packets)
+  {
+    SPPSegmentsHandler handler = new SPPSegmentsHandler(transport, 0, 6);
+
+    for (byte[] packet : packets) {
+      assertTrue(handler.addSegment((packet[2] & 0xC0) >> 6, packet));
+    }
+
+    return handler.getSize();
+  }
+
+  private static byte[] add(SPPReassemblyManager manager, byte[] packet)
+  {
+    return manager.addSegment(0, 6, 77L, (packet[2] & 0xC0) >> 6, packet);
+  }
+}
@@ -0,0 +1,244 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that segmenting a message from a header template gives the same packets as segmenting it
+ * the way it was done before, when the segmented header was encoded again and every segment was
+ * built from a copy of it.
+ */
+public class SPPSegmentationTest
+{
+
+  private static final String FROM = "malspp:3/5/1";
+  private static final String[] TO = new String[]{
+    "malspp:0/6/2", "malspp:7/6", "malspp:300/2047/255"
+  };
+
+  @Test
+  public void testMatchesPreviousSegmentation() throws Exception
+  {
+    System.out.println("SPP segmentation test");
+    SPPTestTransport single = new SPPTestTransport(65000);
+    int[] segmentSizes = new int[]{100, 101, 250, 1024};
+    int[] bodyLengths = new int[]{150, 300, 301, 5000};
+
+    for (String to : TO) {
+      for (int segmentSize : segmentSizes) {
+        SPPTestTransport segmented = new SPPTestTransport(segmentSize);
+
+        for (int bodyLength : bodyLengths) {
+          byte[] packet = single.encode(single.message(bodyLength, FROM, to));
+          List<byte[]> expected = previousSegments(packet, single.bodyOffset(packet), segmentSize);
+          List<byte[]> actual = SPPTestTransport.split(
+              segmented.encode(segmented.message(bodyLength, FROM, to)));
+
+          String variant = to + " " + segmentSize + " " + bodyLength;
+          assertEquals(variant, expected.size(), actual.size());
+
+          for (int i = 0; i < expected.size(); i++) {
+            assertPacket(variant + " segment " + i, expected.get(i), actual.get(i));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLastSegment() throws Exception
+  {
+    System.out.println("SPP last segment test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    List<byte[]> packets = SPPTestTransport.split(
+        transport.encode(transport.message(300, FROM, TO[0])));
+    int bodyTotal = 0;
+
+    for (int i = 0; i < packets.size(); i++) {
+      byte[] packet = packets.get(i);
+      int flags = packet[2] & 0xC0;
+      int headerLength = transport.bodyOffset(packet);
+      assertEquals((0 == i) ? 0x40 : ((packets.size() - 1 == i) ? 0x80 : 0x00), flags);
+      assertEquals(packet.length - 7, ByteBuffer.wrap(packet).getShort(4) & 0xFFFF);
+      assertEquals(i, ByteBuffer.wrap(packet).getInt(SPPTestTransport.segmentCounterOffset(packet)));
+      assertTrue(packet.length - 6 <= 100);
+      bodyTotal += packet.length - headerLength;
+    }
+
+    // the last segment carries the remainder of the body only
+    byte[] last = packets.get(packets.size() - 1);
+    assertTrue(last.length < packets.get(0).length);
+
+    SPPTestTransport single = new SPPTestTransport(65000);
+    byte[] packet = single.encode(single.message(300, FROM, TO[0]));
+    assertEquals(packet.length - single.bodyOffset(packet), bodyTotal);
+  }
+
+  @Test
+  public void testSingleSegment() throws Exception
+  {
+    System.out.println("SPP single segment test");
+    SPPTestTransport single = new SPPTestTransport(65000);
+    byte[] packet = single.encode(single.message(200, FROM, TO[0]));
+
+    // a segment size the unsegmented packet fits exactly into does not segment the message
+    SPPTestTransport exact = new SPPTestTransport(packet.length - 6);
+    List<byte[]> packets = SPPTestTransport.split(
+        exact.encode(exact.message(200, FROM, TO[0])));
+    assertEquals(1, packets.size());
+    assertEquals(0xC0, packets.get(0)[2] & 0xC0);
+    assertPacket("exact", packet, packets.get(0));
+
+    // one byte less and it is segmented
+    SPPTestTransport smaller = new SPPTestTransport(packet.length - 7);
+    packets = SPPTestTransport.split(smaller.encode(smaller.message(200, FROM, TO[0])));
+    assertEquals(2, packets.size());
+  }
+
+  @Test
+  public void testConsecutiveSequenceCounts() throws Exception
+  {
+    System.out.println("SPP segment sequence count test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    transport.counter(0, 6).setSourceSequenceCount(16380);
+
+    List<byte[]> packets = SPPTestTransport.split(
+        transport.encode(transport.message(1000, FROM, TO[0])));
+    assertTrue(5 < packets.size());
+
+    for (int i = 0; i < packets.size(); i++) {
+      assertEquals((16380 + i) & 0x3FFF, SPPTestTransport.getSsc(packets.get(i)));
+    }
+
+    // the next message carries on from the last segment
+    byte[] next = transport.encode(transport.message(0, FROM, TO[0]));
+    assertEquals((16380 + packets.size()) & 0x3FFF, SPPTestTransport.getSsc(next));
+  }
+
+  @Test
+  public void testSequenceCountsPerPrimaryApid() throws Exception
+  {
+    System.out.println("SPP sequence count per primary APID test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    transport.counter(0, 6).setSourceSequenceCount(1000);
+    transport.counter(7, 6).setSourceSequenceCount(2000);
+    transport.counter(3, 5).setSourceSequenceCount(3000);
+
+    // a TC packet counts on the destination APID
+    List<byte[]> packets = SPPTestTransport.split(
+        transport.encode(transport.message(300, FROM, TO[0])));
+    assertEquals(1000, SPPTestTransport.getSsc(packets.get(0)));
+    assertEquals(1000 + packets.size(), transport.counter(0, 6).getSourceSequenceCount());
+
+    byte[] packet = transport.encode(transport.message(0, FROM, TO[1]));
+    assertEquals(2000, SPPTestTransport.getSsc(packet));
+    assertEquals(2001, transport.counter(7, 6).getSourceSequenceCount());
+
+    // a TM packet counts on the source APID, whatever its destination
+    packet = transport.encode(transport.message(0, FROM, TO[1], InteractionType.REQUEST, 2, false,
+        QoSLevel.BESTEFFORT));
+    assertEquals(3000, SPPTestTransport.getSsc(packet));
+    packet = transport.encode(transport.message(0, FROM, TO[2], InteractionType.REQUEST, 2, false,
+        QoSLevel.BESTEFFORT));
+    assertEquals(3001, SPPTestTransport.getSsc(packet));
+    assertEquals(1000 + packets.size(), transport.counter(0, 6).getSourceSequenceCount());
+  }
+
+  @Test
+  public void testOtherCounter() throws Exception
+  {
+    System.out.println("SPP sequence counter without block reservation test");
+    final int[] next = new int[]{16382};
+    SPPSourceSequenceCounter counter = new SPPSourceSequenceCounter()
+    {
+      @Override
+      public int getNextSourceSequenceCount()
+      {
+        return next[0]++ & 0x3FFF;
+      }
+    };
+
+    assertEquals(16382, SPPMessageHeader.reserveSourceSequenceCounts(counter, 1));
+    assertEquals(16383, SPPMessageHeader.reserveSourceSequenceCounts(counter, 4));
+    assertEquals(3, SPPMessageHeader.reserveSourceSequenceCounts(counter, 1));
+
+    SPPSourceSequenceCounterSimple simple = new SPPSourceSequenceCounterSimple(16383);
+    assertEquals(16383, SPPMessageHeader.reserveSourceSequenceCounts(simple, 4));
+    assertEquals(3, simple.getSourceSequenceCount());
+  }
+
+  /**
+   * Segments a packet as it was done before, header with the segment counter followed by at most
+   * as much of the body as fits in the segment size, all with the same source sequence count. A
+   * packet that fits in the segment size is left as it is.
+   */
+  private static List<byte[]> previousSegments(byte[] packet, int bodyOffset, int segmentSize)
+  {
+    if (packet.length - 6 <= segmentSize) {
+      return Arrays.asList(packet);
+    }
+
+    int counterOffset = SPPTestTransport.segmentCounterOffset(packet);
+    byte[] hdr = new byte[bodyOffset + 4];
+    System.arraycopy(packet, 0, hdr, 0, counterOffset);
+    System.arraycopy(packet, counterOffset, hdr, counterOffset + 4, bodyOffset - counterOffset);
+    byte[] body = Arrays.copyOfRange(packet, bodyOffset, packet.length);
+
+    int adjustedSize = segmentSize - (hdr.length - 6);
+    int segmentCount = (body.length + adjustedSize - 1) / adjustedSize;
+    List<byte[]> segments = new ArrayList<byte[]>();
+
+    for (int i = 0; i < segmentCount; i++) {
+      int start = i * adjustedSize;
+      int length = Math.min(adjustedSize, body.length - start);
+      byte[] segment = new byte[hdr.length + length];
+      System.arraycopy(hdr, 0, segment, 0, hdr.length);
+      System.arraycopy(body, start, segment, hdr.length, length);
+
+      ByteBuffer b = ByteBuffer.wrap(segment);
+      int flags = (0 == i) ? 0x40 : ((segmentCount - 1 == i) ? 0x80 : 0x00);
+      segment[2] = (byte) (flags | (segment[2] & 0x3F));
+      b.putShort(4, (short) (segment.length - 7));
+      b.putInt(counterOffset, i);
+      segments.add(segment);
+    }
+
+    return segments;
+  }
+
+  private static void assertPacket(String variant, byte[] expected, byte[] actual)
+  {
+    // the source sequence counts are compared separately
+    byte[] e = expected.clone();
+    byte[] a = actual.clone();
+    SPPTestTransport.setSsc(e, 0);
+    SPPTestTransport.setSsc(a, 0);
+    assertArrayEquals(variant, e, a);
+  }
+}
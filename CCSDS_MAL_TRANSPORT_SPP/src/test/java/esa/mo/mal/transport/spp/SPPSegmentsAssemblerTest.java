@@ -0,0 +1,248 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import esa.mo.mal.transport.gen.GENMessage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the reassembly of the segments of a message, in and out of order, with duplicates,
+ * damaged sequence flags and source sequence counts that wrap.
+ */
+public class SPPSegmentsAssemblerTest
+{
+
+  private static final String FROM = "malspp:3/5/1";
+  private static final String TO = "malspp:0/6/2";
+
+  @Test
+  public void testInOrder() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler in order test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    List<byte[]> segments = segments(transport, 1000);
+
+    assertReassembled(transport, segments, segments);
+  }
+
+  @Test
+  public void testOutOfOrder() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler out of order test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    List<byte[]> segments = segments(transport, 1000);
+
+    List<byte[]> reversed = new ArrayList<byte[]>(segments);
+    Collections.reverse(reversed);
+    assertReassembled(transport, segments, reversed);
+
+    List<byte[]> shuffled = new ArrayList<byte[]>(segments);
+    Collections.swap(shuffled, 0, 3);
+    Collections.swap(shuffled, 1, shuffled.size() - 1);
+    assertReassembled(transport, segments, shuffled);
+  }
+
+  @Test
+  public void testReceive() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler receive test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    List<byte[]> segments = segments(transport, 1000);
+    GENMessage msg = null;
+
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      assertNull(msg);
+      msg = transport.receive(0, 6, segments.get(i));
+    }
+
+    assertNotNull(msg);
+    assertEquals(new URI(FROM), msg.getHeader().getURIFrom());
+    assertArrayEquals(SPPTestTransport.body(1000),
+        ((Blob) msg.getBody().getBodyElement(0, new Blob())).getValue());
+  }
+
+  @Test
+  public void testDuplicates() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler duplicates test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    List<byte[]> segments = segments(transport, 300);
+    SPPSegmentsHandler handler = new SPPSegmentsHandler(transport, 0, 6);
+
+    assertTrue(handler.addSegment(flags(segments.get(0)), segments.get(0)));
+    assertFalse(handler.addSegment(flags(segments.get(0)), segments.get(0)));
+    assertTrue(handler.addSegment(flags(segments.get(1)), segments.get(1)));
+    assertFalse(handler.addSegment(flags(segments.get(1)), segments.get(1)));
+    assertEquals(segments.get(0).length + segments.get(1).length,
+        handler.getOldest().getTotalSize());
+    assertEquals(handler.getOldest().getHeldSize(), handler.getSize());
+
+    for (int i = 2; i < segments.size(); i++) {
+      assertTrue(handler.addSegment(flags(segments.get(i)), segments.get(i)));
+    }
+
+    assertArrayEquals(transport.assembled(segments), handler.getNextMessage());
+    assertTrue(handler.isEmpty());
+    assertEquals(0, handler.getSize());
+  }
+
+  @Test
+  public void testSequenceFlags()
+  {
+    System.out.println("SPPSegmentsAssembler sequence flags test");
+    SPPSegmentsAssembler assembler = new SPPSegmentsAssembler(0);
+    byte[] packet = new byte[40];
+
+    // a first flag is only valid on index 0, and index 0 has to carry it
+    assertFalse(assembler.addSegment(3, 1, packet));
+    assertFalse(assembler.addSegment(0, 0, packet));
+    assertFalse(assembler.addSegment(0, 2, packet));
+    assertFalse(assembler.addSegment(-1, 0, packet));
+    assertFalse(assembler.addSegment(SPPSegmentsAssembler.MAX_SEGMENTS, 2, packet));
+    assertEquals(0, assembler.getTotalSize());
+
+    assertTrue(assembler.addSegment(0, 1, packet));
+    assertTrue(assembler.addSegment(2, 2, packet));
+    assertFalse(assembler.isReady());
+    assertTrue(assembler.addSegment(1, 0, packet));
+    assertTrue(assembler.isReady());
+  }
+
+  @Test
+  public void testSequenceCountWrap() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler sequence count wrap test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    transport.counter(0, 6).setSourceSequenceCount(16382);
+    List<byte[]> segments = segments(transport, 1000);
+
+    assertEquals(16382, SPPTestTransport.getSsc(segments.get(0)));
+    assertEquals(0, SPPTestTransport.getSsc(segments.get(2)));
+
+    List<byte[]> reversed = new ArrayList<byte[]>(segments);
+    Collections.reverse(reversed);
+    assertReassembled(transport, segments, reversed);
+  }
+
+  @Test
+  public void testSegmentIndexBeyondSequenceCount() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler large segment index test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    transport.counter(0, 6).setSourceSequenceCount(100);
+    List<byte[]> segments = segments(transport, 300);
+    SPPSegmentsHandler handler = new SPPSegmentsHandler(transport, 0, 6);
+
+    // a segment far into a long message, its count has wrapped more than once since the first one
+    byte[] far = segments.get(1).clone();
+    ByteBuffer.wrap(far).putInt(SPPTestTransport.segmentCounterOffset(far), 40000);
+    SPPTestTransport.setSsc(far, 100 + 40000);
+
+    assertTrue(handler.addSegment(flags(segments.get(0)), segments.get(0)));
+    assertTrue(handler.addSegment(flags(far), far));
+    assertEquals(100, handler.getOldest().getSequenceIndex());
+    assertEquals(segments.get(0).length + far.length, handler.getOldest().getTotalSize());
+  }
+
+  @Test
+  public void testShortSegmentsAreDropped() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler short segment test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    byte[] segment = segments(transport, 300).get(1);
+    SPPSegmentsHandler handler = new SPPSegmentsHandler(transport, 0, 6);
+    int counterEnd = SPPTestTransport.segmentCounterOffset(segment) + 4;
+
+    // cut before the flags, and before the end of the segment counter
+    for (int length : new int[]{0, 10, 26, 27, counterEnd - 1}) {
+      assertFalse(handler.addSegment(flags(segment), Arrays.copyOf(segment, length)));
+    }
+
+    assertTrue(handler.isEmpty());
+    assertEquals(0, handler.getSize());
+    assertTrue(handler.addSegment(flags(segment), Arrays.copyOf(segment, counterEnd)));
+  }
+
+  @Test
+  public void testSlotArrayIsCounted() throws Exception
+  {
+    System.out.println("SPPSegmentsAssembler slot array test");
+    SPPTestTransport transport = new SPPTestTransport(100);
+    transport.counter(0, 6).setSourceSequenceCount(100);
+    byte[] far = segments(transport, 300).get(1).clone();
+    SPPSegmentsHandler handler = new SPPSegmentsHandler(transport, 0, 6);
+
+    // a single small segment with a high index costs a slot for every index below it
+    ByteBuffer.wrap(far).putInt(SPPTestTransport.segmentCounterOffset(far), 100000);
+    SPPTestTransport.setSsc(far, 100 + 100000);
+    assertTrue(handler.addSegment(flags(far), far));
+    assertTrue(handler.getSize() >= far.length + 100001L * SPPSegmentsAssembler.SLOT_SIZE);
+
+    handler.remove(handler.getOldest());
+    assertEquals(0, handler.getSize());
+
+    // a rejected first segment leaves no assembler behind
+    ByteBuffer.wrap(far).putInt(SPPTestTransport.segmentCounterOffset(far),
+        SPPSegmentsAssembler.MAX_SEGMENTS);
+    assertFalse(handler.addSegment(flags(far), far));
+    assertTrue(handler.isEmpty());
+    assertEquals(0, handler.getSize());
+  }
+
+  private static List<byte[]> segments(SPPTestTransport transport, int bodyLength)
+      throws Exception
+  {
+    List<byte[]> segments = SPPTestTransport.split(
+        transport.encode(transport.message(bodyLength, FROM, TO)));
+    assertTrue(2 < segments.size());
+
+    return segments;
+  }
+
+  private static int flags(byte[] packet)
+  {
+    return (packet[2] & 0xC0) >> 6;
+  }
+
+  private static void assertReassembled(SPPTestTransport transport, List<byte[]> segments,
+      List<byte[]> order) throws Exception
+  {
+    SPPSegmentsHandler handler = new SPPSegmentsHandler(transport, 0, 6);
+
+    for (int i = 0; i < order.size() - 1; i++) {
+      assertTrue(handler.addSegment(flags(order.get(i)), order.get(i)));
+      assertNull(handler.getNextMessage());
+    }
+
+    byte[] last = order.get(order.size() - 1);
+    assertTrue(handler.addSegment(flags(last), last));
+    assertArrayEquals(transport.assembled(segments), handler.getNextMessage());
+    assertTrue(handler.isEmpty());
+  }
+}
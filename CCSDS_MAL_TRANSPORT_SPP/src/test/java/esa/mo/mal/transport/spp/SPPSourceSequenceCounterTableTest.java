@@ -0,0 +1,194 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the counter file holds a mark ahead of every count taken, written once every reserve
+ * counts, that a table restarts from the mark after a crash and from the exact count after a save.
+ */
+public class SPPSourceSequenceCounterTableTest
+{
+
+  private static final String KEY = "0/6";
+  private File file;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    file = File.createTempFile("ssc", ".properties");
+    assertTrue(file.delete());
+  }
+
+  @After
+  public void tearDown()
+  {
+    file.delete();
+    new File(file.getPath() + ".tmp").delete();
+  }
+
+  @Test
+  public void testMarkIsWrittenOnceEveryReserve() throws Exception
+  {
+    System.out.println("SPPSourceSequenceCounterTable mark test");
+    SPPSourceSequenceCounterSimple counter = table(10).getCounter(0, 6);
+
+    assertEquals(0, counter.getNextSourceSequenceCount());
+    assertEquals(11, mark());
+
+    // the counts up to the mark are taken without writing the file
+    assertTrue(file.delete());
+    for (int i = 1; i <= 10; i++) {
+      assertEquals(i, counter.getNextSourceSequenceCount());
+    }
+    assertFalse(file.exists());
+
+    assertEquals(11, counter.getNextSourceSequenceCount());
+    assertEquals(22, mark());
+
+    // a block of counts beyond the mark moves it past the whole block
+    assertEquals(12, counter.getNextSourceSequenceCounts(15));
+    assertEquals(37, mark());
+  }
+
+  @Test
+  public void testRestartAfterCrashStartsFromTheMark() throws Exception
+  {
+    System.out.println("SPPSourceSequenceCounterTable crash restart test");
+    SPPSourceSequenceCounterSimple counter = table(10).getCounter(0, 6);
+
+    for (int i = 0; i < 15; i++) {
+      counter.getNextSourceSequenceCount();
+    }
+
+    // not saved, as if the transport had not been closed, the counts 0 to 14 are not reused
+    assertEquals(22, table(10).getCounter(0, 6).getNextSourceSequenceCount());
+  }
+
+  @Test
+  public void testSaveWritesTheExactCounts() throws Exception
+  {
+    System.out.println("SPPSourceSequenceCounterTable save test");
+    SPPSourceSequenceCounterTable table = table(10);
+    SPPSourceSequenceCounterSimple counter = table.getCounter(0, 6);
+
+    for (int i = 0; i < 5; i++) {
+      counter.getNextSourceSequenceCount();
+    }
+
+    table.save();
+    assertEquals(5, mark());
+    assertEquals(5, table(10).getCounter(0, 6).getSourceSequenceCount());
+
+    // a count taken after the save moves the mark ahead again
+    assertEquals(5, counter.getNextSourceSequenceCount());
+    assertEquals(16, mark());
+  }
+
+  @Test
+  public void testMarkWraps() throws Exception
+  {
+    System.out.println("SPPSourceSequenceCounterTable wrap test");
+    SPPSourceSequenceCounterTable table = table(10);
+    SPPSourceSequenceCounterSimple counter = table.getCounter(0, 6);
+    counter.setSourceSequenceCount(16380);
+
+    assertEquals(16380, counter.getNextSourceSequenceCount());
+    assertEquals(7, mark());
+    assertEquals(7, table(10).getCounter(0, 6).getNextSourceSequenceCount());
+  }
+
+  @Test
+  public void testMarkCoversConcurrentCounts() throws Exception
+  {
+    System.out.println("SPPSourceSequenceCounterTable concurrency test");
+    final int threads = 8;
+    final int counts = 1000;
+    final SPPSourceSequenceCounterSimple counter = table(64).getCounter(0, 6);
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+
+    for (int t = 0; t < threads; t++) {
+      new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try {
+            start.await();
+
+            for (int i = 0; i < counts; i++) {
+              counter.getNextSourceSequenceCount();
+            }
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+
+          done.countDown();
+        }
+      }.start();
+    }
+
+    start.countDown();
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+
+    // every count taken is below the mark, and at most a reserve of counts is skipped
+    int restart = table(64).getCounter(0, 6).getSourceSequenceCount();
+    assertTrue(restart >= threads * counts);
+    assertTrue(restart <= threads * counts + 64);
+  }
+
+  private SPPSourceSequenceCounterTable table(int reserve)
+  {
+    Map properties = new HashMap();
+    properties.put(SPPBaseTransport.SEQUENCE_COUNTER_FILE_PROPERTY, file.getPath());
+    properties.put(SPPBaseTransport.SEQUENCE_COUNTER_RESERVE_PROPERTY, String.valueOf(reserve));
+
+    return new SPPSourceSequenceCounterTable(new SPPSourceSequenceCounterSimple(), 0, 6,
+        properties);
+  }
+
+  private int mark() throws Exception
+  {
+    Properties counts = new Properties();
+    InputStream in = new FileInputStream(file);
+
+    try {
+      counts.load(in);
+    } finally {
+      in.close();
+    }
+
+    return Integer.parseInt(counts.getProperty(KEY));
+  }
+}
@@ -0,0 +1,378 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2015      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO SPP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.spp;
+
+import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.sending.GENMessageSender;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.ccsds.moims.mo.mal.MALArea;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALOperationStage;
+import org.ccsds.moims.mo.mal.MALSendOperation;
+import org.ccsds.moims.mo.mal.MALService;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+
+/**
+ * An SPP transport without a link, for encoding messages into packets and feeding packets back in.
+ * Messages carry a Blob of random bytes, seeded with the body length, in a SEND operation of a
+ * private area.
+ */
+public class SPPTestTransport extends SPPBaseTransport<byte[]>
+{
+
+  public static final MALSendOperation SEND_OP = new MALSendOperation(new UShort(1),
+      new Identifier("Send"), Boolean.FALSE, new UShort(0),
+      new MALOperationStage(new UOctet((short) 1), new Object[]{null}, new Object[]{null}));
+  /**
+   * The property selecting the stream factory of the transport, fixed binary if not supplied.
+   */
+  public static final String ENCODING_PROPERTY
+      = "org.ccsds.moims.mo.mal.encoding.protocol.malspp";
+  /**
+   * The property selecting a separate stream factory for the headers. When supplied the body is not
+   * fixed and is encoded with the stream factory of the transport, otherwise the stream factory of
+   * the transport encodes both.
+   */
+  public static final String HEADER_ENCODING_PROPERTY
+      = "org.ccsds.moims.mo.mal.encoding.protocol.malspp_header";
+  private static final String FIXED_BINARY_FACTORY
+      = "esa.mo.mal.encoder.spp.SPPFixedBinaryStreamFactory";
+  private static boolean areaRegistered = false;
+
+  /**
+   * Creates a transport with a segment size and the default properties otherwise.
+   *
+   * @param segmentSize The maximum segment size.
+   * @throws MALException On error.
+   */
+  public SPPTestTransport(int segmentSize) throws MALException
+  {
+    this(segmentSize, new HashMap());
+  }
+
+  /**
+   * Creates a transport with a segment size and additional transport properties.
+   *
+   * @param segmentSize The maximum segment size.
+   * @param properties The additional properties.
+   * @throws MALException On error.
+   */
+  public SPPTestTransport(int segmentSize, Map properties) throws MALException
+  {
+    super(new SPPConfiguration(!properties.containsKey(HEADER_ENCODING_PROPERTY), segmentSize,
+        true, true, true, true, true, true, true, true),
+        new SPPURIRepresentationSimple(), new SPPSourceSequenceCounterSimple(), "malspp", ":",
+        '/', '/', false, false, null, properties(segmentSize, properties));
+  }
+
+  /**
+   * Creates a SEND message.
+   *
+   * @param bodyLength The length of the Blob in the body.
+   * @param from The source URI.
+   * @param to The destination URI.
+   * @return the message.
+   * @throws Exception On error.
+   */
+  public SPPMessage message(int bodyLength, String from, String to) throws Exception
+  {
+    return message(bodyLength, from, to, InteractionType.SEND, 1, false, QoSLevel.BESTEFFORT);
+  }
+
+  /**
+   * Creates a message of any interaction stage, all with the body of the SEND operation.
+   *
+   * @param bodyLength The length of the Blob in the body.
+   * @param from The source URI.
+   * @param to The destination URI.
+   * @param type The interaction type.
+   * @param stage The interaction stage.
+   * @param isError True for an error message.
+   * @param qos The QoS level.
+   * @return the message.
+   * @throws Exception On error.
+   */
+  public SPPMessage message(int bodyLength, String from, String to, InteractionType type,
+      int stage, boolean isError, QoSLevel qos) throws Exception
+  {
+    IdentifierList domain = new IdentifierList();
+    domain.add(new Identifier("a"));
+    domain.add(new Identifier("b"));
+
+    SPPMessageHeader hdr = header(from, to, type, stage, isError, qos, domain);
+
+    return new SPPMessage(getHeaderStreamFactory(), defaultConfiguration, new SPPSegmentCounter(),
+        false, hdr, qosProperties, SEND_OP, getStreamFactory(), new Blob(body(bodyLength)));
+  }
+
+  /**
+   * Creates a message header.
+   *
+   * @param from The source URI.
+   * @param to The destination URI.
+   * @param type The interaction type.
+   * @param stage The interaction stage.
+   * @param isError True for an error message.
+   * @param qos The QoS level.
+   * @param domain The domain.
+   * @return the header.
+   */
+  public SPPMessageHeader header(String from, String to, InteractionType type, int stage,
+      boolean isError, QoSLevel qos, IdentifierList domain)
+  {
+    return new SPPMessageHeader(getHeaderStreamFactory(), defaultConfiguration, null, 0, uriRep,
+        ssc, new URI(from), new Blob(new byte[]{1, 2}), new URI(to), new Time(1500000000000L),
+        qos, new UInteger(1), domain, new Identifier("nz"), SessionType.LIVE,
+        new Identifier("LIVE"), type, new UOctet((short) stage), 77L, new UShort(900),
+        new UShort(1), new UShort(1), new UOctet((short) 1), isError);
+  }
+
+  /**
+   * Encodes a message into its packets as the transport sends them, with the source sequence
+   * counts of the APID of the primary header.
+   *
+   * @param msg The message.
+   * @return the packets, one after the other.
+   * @throws Exception On error.
+   */
+  public byte[] encode(SPPMessage msg) throws Exception
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    for (ByteBuffer packet : msg.encodePackets(getStreamFactory(), sourceSequenceCounters)) {
+      baos.write(packet.array(), packet.arrayOffset() + packet.position(), packet.remaining());
+    }
+
+    return baos.toByteArray();
+  }
+
+  /**
+   * Returns the source sequence counter of an APID.
+   *
+   * @param apidQualifier The APID qualifier.
+   * @param apid The APID.
+   * @return the counter.
+   */
+  public SPPSourceSequenceCounterSimple counter(int apidQualifier, int apid)
+  {
+    return sourceSequenceCounters.getCounter(apidQualifier, apid);
+  }
+
+  /**
+   * Passes a received packet to the transport.
+   *
+   * @param apidQualifier The APID qualifier the packet was received on.
+   * @param apid The APID the packet was received on.
+   * @param packet The packet.
+   * @return The message, or null if the packet did not complete one.
+   * @throws MALException On error.
+   */
+  public GENMessage receive(int apidQualifier, int apid, byte[] packet) throws MALException
+  {
+    return internalCreateMessage(apidQualifier, apid, (packet[2] & 0xC0) >> 6, packet);
+  }
+
+  /**
+   * Returns where the body of a packet starts.
+   *
+   * @param packet The packet.
+   * @return the offset of the body.
+   * @throws MALException On error.
+   */
+  public int bodyOffset(byte[] packet) throws MALException
+  {
+    return internalDecodeBodyOffset(0, 0, packet);
+  }
+
+  /**
+   * Returns a segmented message as the reassembly gives it, the first segment followed by the
+   * bodies of the others.
+   *
+   * @param segments The segments in order.
+   * @return the message.
+   * @throws MALException On error.
+   */
+  public byte[] assembled(List<byte[]> segments) throws MALException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int bodyOffset = bodyOffset(segments.get(0));
+    out.write(segments.get(0), 0, segments.get(0).length);
+
+    for (int i = 1; i < segments.size(); i++) {
+      out.write(segments.get(i), bodyOffset, segments.get(i).length - bodyOffset);
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Returns the body of a test message.
+   *
+   * @param length The length of the body.
+   * @return the body bytes.
+   */
+  public static byte[] body(int length)
+  {
+    byte[] body = new byte[length];
+    new Random(length).nextBytes(body);
+
+    return body;
+  }
+
+  /**
+   * Splits encoded packets on their packet length fields.
+   *
+   * @param buf The packets.
+   * @return the separate packets.
+   */
+  public static List<byte[]> split(byte[] buf)
+  {
+    List<byte[]> packets = new ArrayList<byte[]>();
+    ByteBuffer b = ByteBuffer.wrap(buf);
+    int index = 0;
+
+    while (index < buf.length) {
+      int length = (b.getShort(index + 4) & 0xFFFF) + 7;
+      packets.add(Arrays.copyOfRange(buf, index, index + length));
+      index += length;
+    }
+
+    return packets;
+  }
+
+  /**
+   * Returns the APID of the primary header of a packet.
+   *
+   * @param packet The packet.
+   * @return the APID.
+   */
+  public static int getApid(byte[] packet)
+  {
+    return ((packet[0] & 0x07) << 8) | (packet[1] & 0xFF);
+  }
+
+  /**
+   * Returns the source sequence count of a packet.
+   *
+   * @param packet The packet.
+   * @return the count.
+   */
+  public static int getSsc(byte[] packet)
+  {
+    return ((packet[2] & 0x3F) << 8) | (packet[3] & 0xFF);
+  }
+
+  /**
+   * Sets the source sequence count of a packet, keeping its sequence flags.
+   *
+   * @param packet The packet.
+   * @param ssc The count, taken modulo 16384.
+   */
+  public static void setSsc(byte[] packet, int ssc)
+  {
+    packet[2] = (byte) ((packet[2] & 0xC0) | ((ssc >> 8) & 0x3F));
+    packet[3] = (byte) ssc;
+  }
+
+  /**
+   * Returns the offset of the segment counter of a segmented packet.
+   *
+   * @param packet The packet.
+   * @return the offset.
+   */
+  public static int segmentCounterOffset(byte[] packet)
+  {
+    int extra = (0 != (packet[26] & 0x80)) ? 1 : 0;
+    extra += (0 != (packet[26] & 0x40)) ? 1 : 0;
+
+    return 27 + extra;
+  }
+
+  @Override
+  public GENMessage createMessage(byte[] packet) throws MALException
+  {
+    return receive(0, getApid(packet), packet);
+  }
+
+  @Override
+  protected String createTransportAddress()
+  {
+    return "test";
+  }
+
+  @Override
+  protected GENMessageSender createMessageSender(GENMessage msg, String remoteRootURI)
+  {
+    return null;
+  }
+
+  private static synchronized Map properties(int segmentSize, Map extra) throws MALException
+  {
+    if (!areaRegistered) {
+      MALHelper.init(MALContextFactory.getElementFactoryRegistry());
+
+      MALService service = new MALService(new UShort(1), new Identifier("TestService"));
+      service.addOperation(SEND_OP);
+
+      MALArea area = new MALArea(new UShort(900), new Identifier("Test"), new UOctet((short) 1));
+      area.addService(service);
+      MALContextFactory.registerArea(area);
+
+      areaRegistered = true;
+    }
+
+    // the stream factory of a protocol is read from the system property
+    String encoding = extra.containsKey(ENCODING_PROPERTY)
+        ? (String) extra.get(ENCODING_PROPERTY) : FIXED_BINARY_FACTORY;
+    System.setProperty(ENCODING_PROPERTY, encoding);
+
+    if (extra.containsKey(HEADER_ENCODING_PROPERTY)) {
+      System.setProperty(HEADER_ENCODING_PROPERTY, (String) extra.get(HEADER_ENCODING_PROPERTY));
+    } else {
+      System.clearProperty(HEADER_ENCODING_PROPERTY);
+    }
+
+    Map properties = new HashMap(extra);
+    properties.put(ENCODING_PROPERTY, encoding);
+    properties.put(SEGMENT_MAX_SIZE_PROPERTY, String.valueOf(segmentSize));
+
+    return properties;
+  }
+}
@@ -50,7 +50,7 @@ public class TCPIPFixedBinaryDecoder extends FixedBinaryDecoder
   public TCPIPFixedBinaryDecoder(byte[] buf, int offset,
       final BinaryTimeHandler timeHandler)
   {
-    super(new TCPIPBufferHolder(null, buf, offset, 0), timeHandler);
+    super(new TCPIPBufferHolder(null, buf, offset, buf.length), timeHandler);
   }
 
   public TCPIPFixedBinaryDecoder(final BufferHolder srcBuffer,
@@ -113,6 +113,13 @@ public class TCPIPFixedBinaryDecoder extends FixedBinaryDecoder
     return new Blob(sourceBuffer.directGetBytes(sz));
   }
 
+  @Override
+  public int skipBlob() throws MALException
+  {
+    // blobs have their own length field in this encoding, leave them to decodeBlob
+    return -1;
+  }
+
   public int getBufferOffset()
   {
     return ((TCPIPBufferHolder) this.sourceBuffer).getOffset();
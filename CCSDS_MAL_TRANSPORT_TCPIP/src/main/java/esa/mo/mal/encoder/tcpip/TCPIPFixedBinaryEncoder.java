@@ -165,6 +165,21 @@ public class TCPIPFixedBinaryEncoder extends FixedBinaryEncoder
     }
   }
 
+  @Override
+  public void encodeBlob(final byte[] value, final int offset, final int length)
+      throws MALException
+  {
+    encodeUInteger(new UInteger(length));
+
+    if (length > 0) {
+      try {
+        outputStream.directAdd(value, offset, length);
+      } catch (IOException ex) {
+        throw new MALException(ENCODING_EXCEPTION_STR, ex);
+      }
+    }
+  }
+
   public static class TCPIPStreamHolder extends FixedBinaryStreamHolder
   {
 
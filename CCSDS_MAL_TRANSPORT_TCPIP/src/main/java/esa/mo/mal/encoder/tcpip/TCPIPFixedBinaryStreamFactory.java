@@ -21,7 +21,12 @@
 package esa.mo.mal.encoder.tcpip;
 
 import esa.mo.mal.encoder.binary.base.BaseBinaryStreamFactory;
+import esa.mo.mal.encoder.binary.base.BinaryStreamSupplier;
 import esa.mo.mal.encoder.binary.base.BinaryTimeHandler;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
+import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
 
 /**
  * A factory implementation for the generation of input and output stream classes, which manage
@@ -33,9 +38,33 @@ import esa.mo.mal.encoder.binary.base.BinaryTimeHandler;
 public class TCPIPFixedBinaryStreamFactory extends BaseBinaryStreamFactory
 {
 
+  private static final BinaryStreamSupplier STREAM_SUPPLIER = new BinaryStreamSupplier()
+  {
+    @Override
+    public MALElementInputStream createInputStream(final byte[] bytes, final int offset,
+        final BinaryTimeHandler timeHandler)
+    {
+      return new TCPIPFixedBinaryElementInputStream(bytes, offset, timeHandler);
+    }
+
+    @Override
+    public MALElementInputStream createInputStream(final InputStream is,
+        final BinaryTimeHandler timeHandler)
+    {
+      return new TCPIPFixedBinaryElementInputStream(is, timeHandler);
+    }
+
+    @Override
+    public MALElementOutputStream createOutputStream(final OutputStream os,
+        final BinaryTimeHandler timeHandler)
+    {
+      return new TCPIPFixedBinaryElementOutputStream(os, timeHandler);
+    }
+  };
+
   public TCPIPFixedBinaryStreamFactory()
   {
     super(TCPIPFixedBinaryElementInputStream.class, TCPIPFixedBinaryElementOutputStream.class,
-        new BinaryTimeHandler());
+        STREAM_SUPPLIER, new BinaryTimeHandler());
   }
 }
@@ -0,0 +1,248 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.tcpip;
+
+import java.util.List;
+import java.util.Map;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALInteractionException;
+import org.ccsds.moims.mo.mal.MALOperation;
+import org.ccsds.moims.mo.mal.MALPubSubOperation;
+import org.ccsds.moims.mo.mal.MALStandardError;
+import org.ccsds.moims.mo.mal.broker.MALBrokerBinding;
+import org.ccsds.moims.mo.mal.structures.*;
+import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
+import org.ccsds.moims.mo.mal.transport.MALTransmitErrorListener;
+
+/**
+ * The broker binding of the TCPIP transport level broker. The broker itself is a
+ * TCPIPBrokerHandler attached to the endpoint of the binding, the binding only sends the messages
+ * requested by the MAL layer.
+ */
+public class TCPIPBrokerBinding implements MALBrokerBinding
+{
+
+  private final TCPIPTransport transport;
+  private final TCPIPEndpoint endpoint;
+  private final boolean ownEndpoint;
+  private final TCPIPBrokerHandler handler;
+  private final QoSLevel[] expectedQos;
+  private final UInteger priorityLevelNumber;
+  private Blob authenticationId;
+  private MALTransmitErrorListener listener = null;
+
+  /**
+   * Constructor, attaches the broker to the endpoint.
+   *
+   * @param transport           The parent transport.
+   * @param endpoint            The endpoint that receives the broker messages.
+   * @param ownEndpoint         True if the endpoint was created for the broker and is deleted when
+   *                            the binding is closed.
+   * @param authenticationId    The authentication identifier of the broker.
+   * @param expectedQos         The QoS levels the broker supports.
+   * @param priorityLevelNumber The number of priorities the broker supports.
+   */
+  public TCPIPBrokerBinding(TCPIPTransport transport, TCPIPEndpoint endpoint, boolean ownEndpoint,
+      Blob authenticationId, QoSLevel[] expectedQos, UInteger priorityLevelNumber)
+  {
+    this.transport = transport;
+    this.endpoint = endpoint;
+    this.ownEndpoint = ownEndpoint;
+    this.authenticationId = authenticationId;
+    this.expectedQos = expectedQos;
+    this.priorityLevelNumber = priorityLevelNumber;
+    this.handler = new TCPIPBrokerHandler(this, endpoint, transport);
+
+    endpoint.setBrokerHandler(handler);
+    transport.addBrokerHandler(handler);
+  }
+
+  @Override
+  public URI getURI()
+  {
+    return endpoint.getURI();
+  }
+
+  @Override
+  public Blob getAuthenticationId()
+  {
+    return authenticationId;
+  }
+
+  @Override
+  public Blob setAuthenticationId(Blob newAuthenticationId)
+  {
+    Blob previous = authenticationId;
+    authenticationId = newAuthenticationId;
+    return previous;
+  }
+
+  @Override
+  public void setTransmitErrorListener(MALTransmitErrorListener listener) throws MALException
+  {
+    this.listener = listener;
+  }
+
+  @Override
+  public MALTransmitErrorListener getTransmitErrorListener() throws MALException
+  {
+    return listener;
+  }
+
+  @Override
+  public MALMessage sendNotify(UShort area, UShort service, UShort operation, UOctet version,
+      URI subscriber, Long transactionId, IdentifierList domainId, Identifier networkZone,
+      SessionType sessionType, Identifier sessionName, QoSLevel notifyQos, Map notifyQosProps,
+      UInteger notifyPriority, Identifier subscriptionId, UpdateHeaderList updateHeaderList,
+      List... updateList) throws IllegalArgumentException, MALInteractionException, MALException
+  {
+    final Object[] body = new Object[2 + updateList.length];
+    body[0] = subscriptionId;
+    body[1] = updateHeaderList;
+    System.arraycopy(updateList, 0, body, 2, updateList.length);
+
+    return send(endpoint.createMessage(authenticationId, subscriber, now(), notifyQos,
+        notifyPriority, domainId, networkZone, sessionType, sessionName, InteractionType.PUBSUB,
+        MALPubSubOperation.NOTIFY_STAGE, transactionId, area, service, operation, version,
+        Boolean.FALSE, notifyQosProps, body));
+  }
+
+  @Override
+  public MALMessage sendNotify(MALOperation op, URI subscriber, Long transactionId,
+      IdentifierList domainId, Identifier networkZone, SessionType sessionType,
+      Identifier sessionName, QoSLevel notifyQos, Map notifyQosProps, UInteger notifyPriority,
+      Identifier subscriptionId, UpdateHeaderList updateHeaderList, List... updateList) throws
+      IllegalArgumentException, MALInteractionException, MALException
+  {
+    final Object[] body = new Object[2 + updateList.length];
+    body[0] = subscriptionId;
+    body[1] = updateHeaderList;
+    System.arraycopy(updateList, 0, body, 2, updateList.length);
+
+    return send(endpoint.createMessage(authenticationId, subscriber, now(), notifyQos,
+        notifyPriority, domainId, networkZone, sessionType, sessionName, transactionId,
+        Boolean.FALSE, op, MALPubSubOperation.NOTIFY_STAGE, notifyQosProps, body));
+  }
+
+  @Override
+  public MALMessage sendNotifyError(UShort area, UShort service, UShort operation, UOctet version,
+      URI subscriber, Long transactionId, IdentifierList domainId, Identifier networkZone,
+      SessionType sessionType, Identifier sessionName, QoSLevel notifyQos, Map notifyQosProps,
+      UInteger notifyPriority, MALStandardError error) throws IllegalArgumentException,
+      MALInteractionException, MALException
+  {
+    return send(endpoint.createMessage(authenticationId, subscriber, now(), notifyQos,
+        notifyPriority, domainId, networkZone, sessionType, sessionName, InteractionType.PUBSUB,
+        MALPubSubOperation.NOTIFY_STAGE, transactionId, area, service, operation, version,
+        Boolean.TRUE, notifyQosProps, error.getErrorNumber(), error.getExtraInformation()));
+  }
+
+  @Override
+  public MALMessage sendNotifyError(MALOperation op, URI subscriber, Long transactionId,
+      IdentifierList domainId, Identifier networkZone, SessionType sessionType,
+      Identifier sessionName, QoSLevel notifyQos, Map notifyQosProps, UInteger notifyPriority,
+      MALStandardError error) throws IllegalArgumentException, MALInteractionException, MALException
+  {
+    return send(endpoint.createMessage(authenticationId, subscriber, now(), notifyQos,
+        notifyPriority, domainId, networkZone, sessionType, sessionName, transactionId,
+        Boolean.TRUE, op, MALPubSubOperation.NOTIFY_STAGE, notifyQosProps,
+        error.getErrorNumber(), error.getExtraInformation()));
+  }
+
+  @Override
+  public MALMessage sendPublishError(UShort area, UShort service, UShort operation, UOctet version,
+      URI publisher, Long transactionId, IdentifierList domainId, Identifier networkZone,
+      SessionType sessionType, Identifier sessionName, QoSLevel qos, Map qosProps, UInteger priority,
+      MALStandardError error) throws IllegalArgumentException, MALInteractionException, MALException
+  {
+    return send(endpoint.createMessage(authenticationId, publisher, now(), qos, priority,
+        domainId, networkZone, sessionType, sessionName, InteractionType.PUBSUB,
+        MALPubSubOperation.PUBLISH_STAGE, transactionId, area, service, operation, version,
+        Boolean.TRUE, qosProps, error.getErrorNumber(), error.getExtraInformation()));
+  }
+
+  @Override
+  public MALMessage sendPublishError(MALOperation op, URI publisher, Long transactionId,
+      IdentifierList domainId, Identifier networkZone, SessionType sessionType,
+      Identifier sessionName, QoSLevel qos, Map qosProps, UInteger priority, MALStandardError error)
+      throws IllegalArgumentException, MALInteractionException, MALException
+  {
+    return send(endpoint.createMessage(authenticationId, publisher, now(), qos, priority,
+        domainId, networkZone, sessionType, sessionName, transactionId, Boolean.TRUE, op,
+        MALPubSubOperation.PUBLISH_STAGE, qosProps, error.getErrorNumber(),
+        error.getExtraInformation()));
+  }
+
+  @Override
+  public void close() throws MALException
+  {
+    endpoint.setBrokerHandler(null);
+    transport.removeBrokerHandler(handler);
+    handler.clear();
+
+    if (ownEndpoint) {
+      endpoint.stopMessageDelivery();
+      transport.deleteEndpoint(endpoint.getLocalName());
+    }
+  }
+
+  /**
+   * Returns the QoS levels the broker was created for.
+   *
+   * @return the expected QoS levels.
+   */
+  public QoSLevel[] getExpectedQos()
+  {
+    return expectedQos;
+  }
+
+  /**
+   * Returns the number of priorities the broker was created for.
+   *
+   * @return the priority level number.
+   */
+  public UInteger getPriorityLevelNumber()
+  {
+    return priorityLevelNumber;
+  }
+
+  private MALMessage send(final MALMessage msg) throws MALException
+  {
+    try {
+      endpoint.sendMessage(msg);
+    } catch (MALTransmitErrorException ex) {
+      if (null != listener) {
+        listener.onTransmitError(endpoint, ex.getHeader(), ex.getStandardError(),
+            ex.getQosProperties());
+      }
+
+      throw new MALException("Error sending broker message", ex);
+    }
+
+    return msg;
+  }
+
+  private static Time now()
+  {
+    return new Time(System.currentTimeMillis());
+  }
+}
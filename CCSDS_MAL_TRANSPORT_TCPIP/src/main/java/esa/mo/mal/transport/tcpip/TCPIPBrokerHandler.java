@@ -0,0 +1,936 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.tcpip;
+
+import esa.mo.mal.transport.gen.GENMessage;
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import esa.mo.mal.transport.gen.sending.GENSendListener;
+import esa.mo.mal.transport.gen.util.GENPooledOutputStream;
+import esa.mo.mal.transport.gen.util.GENSubscriptionIndex;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALInteractionException;
+import org.ccsds.moims.mo.mal.MALPubSubOperation;
+import org.ccsds.moims.mo.mal.MALStandardError;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.Element;
+import org.ccsds.moims.mo.mal.structures.EntityKey;
+import org.ccsds.moims.mo.mal.structures.EntityKeyList;
+import org.ccsds.moims.mo.mal.structures.EntityRequest;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.Subscription;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.Union;
+import org.ccsds.moims.mo.mal.structures.UpdateHeader;
+import org.ccsds.moims.mo.mal.structures.UpdateHeaderList;
+import org.ccsds.moims.mo.mal.structures.UpdateType;
+import org.ccsds.moims.mo.mal.transport.MALDeregisterBody;
+import org.ccsds.moims.mo.mal.transport.MALEncodedBody;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.ccsds.moims.mo.mal.transport.MALPublishBody;
+import org.ccsds.moims.mo.mal.transport.MALPublishRegisterBody;
+import org.ccsds.moims.mo.mal.transport.MALRegisterBody;
+import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
+import org.ccsds.moims.mo.mal.transport.MALTransmitErrorListener;
+import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
+
+/**
+ * The PUBSUB broker of the TCPIP transport. It is attached to an endpoint and handles the broker
+ * side stages of the PUBSUB interactions sent to that endpoint, REGISTER, DEREGISTER,
+ * PUBLISH_REGISTER, PUBLISH_DEREGISTER and PUBLISH, so that no separate MAL level broker is needed.
+ *
+ * The entity requests of the subscriptions are indexed by network zone, session, area, service and
+ * operation, and below that by domain and entity key in a GENSubscriptionIndex, so a published
+ * update is only compared with the requests that can select it. Requests that match all areas,
+ * services or operations are held in a separate index per network zone and session.
+ *
+ * The notify body for the subscribers that share a subscription identifier and selected the same
+ * updates is encoded once and the encoded buffer is shared by all of their notify messages.
+ * Subscribers that are endpoints of the same transport are passed the decoded updates instead.
+ *
+ * The transport calls removeRemote when a connection closes or fails, which drops the consumers and
+ * providers of that remote transport so that later publishes do not try to notify them.
+ */
+public class TCPIPBrokerHandler
+{
+
+  private final TCPIPBrokerBinding binding;
+  private final TCPIPEndpoint endpoint;
+  private final TCPIPTransport transport;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<String, ConsumerEntry> consumers = new HashMap<String, ConsumerEntry>();
+  private final Map<String, GENSubscriptionIndex<RequestEntry>> requestIndex
+      = new HashMap<String, GENSubscriptionIndex<RequestEntry>>();
+  private final Map<String, GENSubscriptionIndex<RequestEntry>> wildcardRequests
+      = new HashMap<String, GENSubscriptionIndex<RequestEntry>>();
+  private final Map<String, PublisherEntry> publishers = new HashMap<String, PublisherEntry>();
+  private final GENSendListener notifyErrorReporter = new GENSendListener()
+  {
+    @Override
+    public void sendCompleted(GENOutgoingMessageHolder message, Boolean result)
+    {
+      if (!Boolean.TRUE.equals(result)) {
+        reportTransmitError(message.getOriginalMessage().getHeader());
+      }
+    }
+  };
+
+  /**
+   * Constructor.
+   *
+   * @param binding   The broker binding that owns this handler.
+   * @param endpoint  The endpoint that receives the broker messages.
+   * @param transport The parent transport.
+   */
+  public TCPIPBrokerHandler(TCPIPBrokerBinding binding, TCPIPEndpoint endpoint,
+      TCPIPTransport transport)
+  {
+    this.binding = binding;
+    this.endpoint = endpoint;
+    this.transport = transport;
+  }
+
+  /**
+   * Handles a message received by the broker endpoint if it is a broker side PUBSUB stage.
+   *
+   * @param msg The received message.
+   * @return True if the message was handled by the broker, false if it is for the endpoint
+   * listener.
+   */
+  public boolean handleMessage(final GENMessage msg)
+  {
+    final MALMessageHeader hdr = msg.getHeader();
+
+    if ((InteractionType._PUBSUB_INDEX != hdr.getInteractionType().getOrdinal())
+        || hdr.getIsErrorMessage()) {
+      return false;
+    }
+
+    final short stage = hdr.getInteractionStage().getValue();
+
+    try {
+      switch (stage) {
+        case MALPubSubOperation._REGISTER_STAGE:
+          handleRegister(msg);
+          break;
+        case MALPubSubOperation._PUBLISH_REGISTER_STAGE:
+          handlePublishRegister(msg);
+          break;
+        case MALPubSubOperation._PUBLISH_STAGE:
+          handlePublish(msg);
+          break;
+        case MALPubSubOperation._DEREGISTER_STAGE:
+          handleDeregister(msg);
+          break;
+        case MALPubSubOperation._PUBLISH_DEREGISTER_STAGE:
+          handlePublishDeregister(msg);
+          break;
+        default:
+          return false;
+      }
+    } catch (MALException ex) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker could not process message " + hdr, ex);
+      returnError(hdr, msg.getQoSProperties(), MALHelper.INTERNAL_ERROR_NUMBER,
+          new Union(ex.getMessage()));
+    } catch (RuntimeException ex) {
+      // for example a malformed body, the sender still gets an error rather than no reply
+      RLOGGER.log(Level.WARNING, "TCPIP broker failed to process message " + hdr, ex);
+      returnError(hdr, msg.getQoSProperties(), MALHelper.INTERNAL_ERROR_NUMBER,
+          new Union(String.valueOf(ex)));
+    }
+
+    return true;
+  }
+
+  /**
+   * Removes the subscriptions and publisher registrations of all consumers and providers reached
+   * through a remote root URI, called when the connection to it is closed or fails.
+   *
+   * @param remoteRootURI The root URI of the remote transport.
+   */
+  public void removeRemote(final String remoteRootURI)
+  {
+    int removed = 0;
+
+    lock.writeLock().lock();
+    try {
+      final Iterator<ConsumerEntry> consumerIt = consumers.values().iterator();
+      while (consumerIt.hasNext()) {
+        final ConsumerEntry consumer = consumerIt.next();
+
+        if (isFrom(consumer.header, remoteRootURI)) {
+          for (SubscriptionEntry entry : consumer.subscriptions.values()) {
+            removeSubscription(entry);
+          }
+
+          consumerIt.remove();
+          ++removed;
+        }
+      }
+
+      final Iterator<PublisherEntry> publisherIt = publishers.values().iterator();
+      while (publisherIt.hasNext()) {
+        if (remoteRootURI.equals(transport.getRootURI(publisherIt.next().uriFrom))) {
+          publisherIt.remove();
+          ++removed;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    if (0 < removed) {
+      RLOGGER.log(Level.INFO, "TCPIP broker removed {0} consumers and providers of {1}",
+          new Object[]{
+            removed, remoteRootURI
+          });
+    }
+  }
+
+  /**
+   * Removes all subscriptions and publisher registrations.
+   */
+  public void clear()
+  {
+    lock.writeLock().lock();
+    try {
+      consumers.clear();
+      requestIndex.clear();
+      wildcardRequests.clear();
+      publishers.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void handleRegister(final GENMessage msg) throws MALException
+  {
+    final MALMessageHeader hdr = msg.getHeader();
+    final Subscription subscription = ((MALRegisterBody) msg.getBody()).getSubscription();
+    final String consumerKey = interactionKey(hdr);
+    final String subId = subscription.getSubscriptionId().getValue();
+
+    lock.writeLock().lock();
+    try {
+      ConsumerEntry consumer = consumers.get(consumerKey);
+      if (null == consumer) {
+        consumer = new ConsumerEntry();
+        consumers.put(consumerKey, consumer);
+      }
+
+      consumer.header = hdr;
+      consumer.qosProperties = msg.getQoSProperties();
+      removeSubscription(consumer.subscriptions.remove(subId));
+
+      final SubscriptionEntry entry = new SubscriptionEntry(consumer,
+          subscription.getSubscriptionId());
+      final String sessionKey = sessionKey(hdr);
+
+      if (null != subscription.getEntities()) {
+        for (EntityRequest rqst : subscription.getEntities()) {
+          final RequestEntry request = new RequestEntry(entry, sessionKey, hdr, rqst);
+          entry.requests.add(request);
+
+          final Map<String, GENSubscriptionIndex<RequestEntry>> indexes
+              = request.isWildcardOperation() ? wildcardRequests : requestIndex;
+          final String indexKey = request.indexKey();
+          GENSubscriptionIndex<RequestEntry> index = indexes.get(indexKey);
+          if (null == index) {
+            index = new GENSubscriptionIndex<RequestEntry>();
+            indexes.put(indexKey, index);
+          }
+
+          for (EntityKey key : request.keys) {
+            index.add(request.domain, key, request);
+          }
+        }
+      }
+
+      consumer.subscriptions.put(subId, entry);
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    RLOGGER.log(Level.FINE, "TCPIP broker registered {0} for {1}", new Object[]{
+      subId, hdr.getURIFrom()
+    });
+
+    returnAck(hdr, msg.getQoSProperties());
+  }
+
+  private void handleDeregister(final GENMessage msg) throws MALException
+  {
+    final MALMessageHeader hdr = msg.getHeader();
+    final IdentifierList subIds = ((MALDeregisterBody) msg.getBody()).getIdentifierList();
+    final String consumerKey = interactionKey(hdr);
+
+    lock.writeLock().lock();
+    try {
+      final ConsumerEntry consumer = consumers.get(consumerKey);
+
+      if ((null != consumer) && (null != subIds)) {
+        for (Identifier subId : subIds) {
+          if (null != subId) {
+            removeSubscription(consumer.subscriptions.remove(subId.getValue()));
+          }
+        }
+
+        if (consumer.subscriptions.isEmpty()) {
+          consumers.remove(consumerKey);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    returnAck(hdr, msg.getQoSProperties());
+  }
+
+  private void handlePublishRegister(final GENMessage msg) throws MALException
+  {
+    final MALMessageHeader hdr = msg.getHeader();
+    final EntityKeyList keys = ((MALPublishRegisterBody) msg.getBody()).getEntityKeyList();
+
+    lock.writeLock().lock();
+    try {
+      publishers.put(interactionKey(hdr), new PublisherEntry(hdr.getURIFrom().getValue(), keys));
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    returnAck(hdr, msg.getQoSProperties());
+  }
+
+  private void handlePublishDeregister(final GENMessage msg) throws MALException
+  {
+    final MALMessageHeader hdr = msg.getHeader();
+
+    lock.writeLock().lock();
+    try {
+      publishers.remove(interactionKey(hdr));
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    returnAck(hdr, msg.getQoSProperties());
+  }
+
+  private void handlePublish(final GENMessage msg) throws MALException
+  {
+    final MALMessageHeader hdr = msg.getHeader();
+    final MALPublishBody body = (MALPublishBody) msg.getBody();
+    final UpdateHeaderList updateHeaders = body.getUpdateHeaderList();
+
+    if ((null == updateHeaders) || updateHeaders.isEmpty()) {
+      return;
+    }
+
+    final String sessionKey = sessionKey(hdr);
+    final String opKey = operationKey(sessionKey, hdr.getServiceArea().getValue(),
+        hdr.getService().getValue(), hdr.getOperation().getValue());
+    final IdentifierList domain = hdr.getDomain();
+    final Map<SubscriptionEntry, BitSet> matches = new LinkedHashMap<SubscriptionEntry, BitSet>();
+    final List<NotifyTarget> targets = new ArrayList<NotifyTarget>();
+    final EntityKeyList rejectedKeys;
+
+    lock.readLock().lock();
+    try {
+      final PublisherEntry publisher = publishers.get(interactionKey(hdr));
+
+      if (null == publisher) {
+        rejectedKeys = null;
+      } else {
+        rejectedKeys = publisher.rejectedKeys(updateHeaders);
+
+        if (rejectedKeys.isEmpty()) {
+          final GENSubscriptionIndex<RequestEntry> requests = requestIndex.get(opKey);
+          final GENSubscriptionIndex<RequestEntry> wildcards = wildcardRequests.get(sessionKey);
+          final Set<RequestEntry> selected = new LinkedHashSet<RequestEntry>();
+
+          for (int i = 0; i < updateHeaders.size(); i++) {
+            final UpdateHeader update = updateHeaders.get(i);
+
+            if (null != update) {
+              if (null != requests) {
+                requests.match(domain, update.getKey(), selected);
+              }
+
+              if (null != wildcards) {
+                wildcards.match(domain, update.getKey(), selected);
+              }
+
+              for (RequestEntry request : selected) {
+                if (request.matchesOperation(hdr)) {
+                  request.select(i, update, updateHeaders.size(), matches);
+                }
+              }
+
+              selected.clear();
+            }
+          }
+
+          // take a copy of the subscriber details so that the lock is not held while sending
+          for (Map.Entry<SubscriptionEntry, BitSet> match : matches.entrySet()) {
+            final ConsumerEntry consumer = match.getKey().consumer;
+            targets.add(new NotifyTarget(consumer.header, consumer.qosProperties,
+                match.getKey().subscriptionId, match.getValue()));
+          }
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    if (null == rejectedKeys) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker received publish from unregistered publisher {0}",
+          hdr.getURIFrom());
+      returnPublishError(hdr, msg.getQoSProperties(), MALHelper.INCORRECT_STATE_ERROR_NUMBER, null);
+    } else if (!rejectedKeys.isEmpty()) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker rejected publish of keys {0} from {1}",
+          new Object[]{
+            rejectedKeys, hdr.getURIFrom()
+          });
+      returnPublishError(hdr, msg.getQoSProperties(), MALHelper.UNKNOWN_ERROR_NUMBER,
+          rejectedKeys);
+    } else if (!targets.isEmpty()) {
+      sendNotifies(hdr, updateHeaders, body.getUpdateLists((List[]) null), targets);
+    }
+  }
+
+  private void sendNotifies(final MALMessageHeader pubHdr, final UpdateHeaderList updateHeaders,
+      final List[] updateLists, final List<NotifyTarget> targets)
+  {
+    final MALElementStreamFactory streamFactory = transport.getStreamFactory();
+    final Map<NotifyBodyKey, NotifyBody> bodies = new HashMap<NotifyBodyKey, NotifyBody>();
+
+    for (NotifyTarget target : targets) {
+      final MALMessageHeader subHdr = target.header;
+
+      try {
+        final NotifyBodyKey bodyKey = new NotifyBodyKey(target.subscriptionId.getValue(),
+            target.selection);
+        NotifyBody notifyBody = bodies.get(bodyKey);
+        if (null == notifyBody) {
+          notifyBody = new NotifyBody(createNotifyParts(target.subscriptionId, target.selection,
+              updateHeaders, updateLists));
+          bodies.put(bodyKey, notifyBody);
+        }
+
+        final GENMessageHeader notifyHdr = endpoint.createMessageHeader(endpoint.getURI(),
+            binding.getAuthenticationId(),
+            subHdr.getURIFrom(),
+            new Time(System.currentTimeMillis()),
+            subHdr.getQoSlevel(),
+            subHdr.getPriority(),
+            subHdr.getDomain(),
+            subHdr.getNetworkZone(),
+            subHdr.getSession(),
+            subHdr.getSessionName(),
+            InteractionType.PUBSUB,
+            MALPubSubOperation.NOTIFY_STAGE,
+            subHdr.getTransactionId(),
+            pubHdr.getServiceArea(),
+            pubHdr.getService(),
+            pubHdr.getOperation(),
+            pubHdr.getAreaVersion(),
+            Boolean.FALSE,
+            target.qosProperties);
+
+        final TCPIPMessage notifyMsg;
+
+        if (transport.isRoutedInProcess(subHdr.getURIFrom().getValue())) {
+          notifyMsg = new TCPIPMessage(false, notifyHdr, target.qosProperties, null, streamFactory,
+              notifyBody.parts);
+        } else {
+          if (null == notifyBody.encoded) {
+            notifyBody.encoded = encodeNotifyBody(notifyHdr, target.qosProperties,
+                notifyBody.parts);
+          }
+
+          notifyMsg = new TCPIPMessage(false, notifyHdr, target.qosProperties, null, streamFactory,
+              notifyBody.encoded);
+        }
+
+        transport.sendMessageAsync(null, true, notifyMsg).addListener(notifyErrorReporter);
+      } catch (MALTransmitErrorException ex) {
+        RLOGGER.log(Level.WARNING, "TCPIP broker could not notify " + subHdr.getURIFrom(), ex);
+        reportTransmitError(ex.getHeader());
+      } catch (Exception ex) {
+        RLOGGER.log(Level.WARNING, "TCPIP broker could not notify " + subHdr.getURIFrom(), ex);
+      }
+    }
+  }
+
+  private MALEncodedBody encodeNotifyBody(final GENMessageHeader notifyHdr,
+      final Map qosProperties, final Object[] parts)
+      throws MALException, MALInteractionException
+  {
+    final MALElementStreamFactory streamFactory = transport.getStreamFactory();
+    final TCPIPMessage template = new TCPIPMessage(false, notifyHdr, qosProperties, null,
+        streamFactory, parts);
+    final GENPooledOutputStream baos = new GENPooledOutputStream();
+
+    try {
+      template.encodeMessage(streamFactory, streamFactory.createOutputStream(baos), baos, false);
+
+      return new MALEncodedBody(new Blob(baos.toByteArray()));
+    } finally {
+      baos.release();
+    }
+  }
+
+  private static Object[] createNotifyParts(final Identifier subscriptionId,
+      final BitSet selection, final UpdateHeaderList updateHeaders, final List[] updateLists)
+  {
+    final Object[] parts = new Object[2 + updateLists.length];
+    parts[0] = subscriptionId;
+
+    if (selection.cardinality() == updateHeaders.size()) {
+      // every update was selected, the published lists can be used as they are
+      parts[1] = updateHeaders;
+      System.arraycopy(updateLists, 0, parts, 2, updateLists.length);
+    } else {
+      final UpdateHeaderList selectedHeaders = new UpdateHeaderList(selection.cardinality());
+      for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+        selectedHeaders.add(updateHeaders.get(i));
+      }
+      parts[1] = selectedHeaders;
+
+      for (int l = 0; l < updateLists.length; l++) {
+        final List updateList = updateLists[l];
+
+        if (null != updateList) {
+          final List selectedUpdates = (updateList instanceof Element)
+              ? (List) ((Element) updateList).createElement()
+              : new ArrayList(selection.cardinality());
+
+          for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+            selectedUpdates.add(updateList.get(i));
+          }
+
+          parts[2 + l] = selectedUpdates;
+        }
+      }
+    }
+
+    return parts;
+  }
+
+  private void returnAck(final MALMessageHeader srcHdr, final Map qosProperties)
+  {
+    try {
+      final GENMessage ackMsg = (GENMessage) endpoint.createMessage(binding.getAuthenticationId(),
+          srcHdr.getURIFrom(),
+          new Time(System.currentTimeMillis()),
+          srcHdr.getQoSlevel(),
+          srcHdr.getPriority(),
+          srcHdr.getDomain(),
+          srcHdr.getNetworkZone(),
+          srcHdr.getSession(),
+          srcHdr.getSessionName(),
+          srcHdr.getInteractionType(),
+          new UOctet((short) (srcHdr.getInteractionStage().getValue() + 1)),
+          srcHdr.getTransactionId(),
+          srcHdr.getServiceArea(),
+          srcHdr.getService(),
+          srcHdr.getOperation(),
+          srcHdr.getAreaVersion(),
+          Boolean.FALSE,
+          qosProperties);
+
+      transport.sendMessageAsync(null, true, ackMsg).addListener(notifyErrorReporter);
+    } catch (MALException ex) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker could not create acknowledgement", ex);
+    } catch (MALTransmitErrorException ex) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker could not acknowledge " + srcHdr.getURIFrom(), ex);
+      reportTransmitError(ex.getHeader());
+    }
+  }
+
+  private void returnError(final MALMessageHeader srcHdr, final Map qosProperties,
+      final UInteger errorNumber, final Object extraInfo)
+  {
+    final short stage = srcHdr.getInteractionStage().getValue();
+
+    if (MALPubSubOperation._PUBLISH_STAGE == stage) {
+      returnPublishError(srcHdr, qosProperties, errorNumber, extraInfo);
+    } else {
+      sendError(srcHdr, qosProperties, new UOctet((short) (stage + 1)), errorNumber, extraInfo);
+    }
+  }
+
+  private void returnPublishError(final MALMessageHeader srcHdr, final Map qosProperties,
+      final UInteger errorNumber, final Object extraInfo)
+  {
+    sendError(srcHdr, qosProperties, MALPubSubOperation.PUBLISH_STAGE, errorNumber, extraInfo);
+  }
+
+  private void sendError(final MALMessageHeader srcHdr, final Map qosProperties,
+      final UOctet stage, final UInteger errorNumber, final Object extraInfo)
+  {
+    try {
+      final GENMessage errMsg = (GENMessage) endpoint.createMessage(binding.getAuthenticationId(),
+          srcHdr.getURIFrom(),
+          new Time(System.currentTimeMillis()),
+          srcHdr.getQoSlevel(),
+          srcHdr.getPriority(),
+          srcHdr.getDomain(),
+          srcHdr.getNetworkZone(),
+          srcHdr.getSession(),
+          srcHdr.getSessionName(),
+          srcHdr.getInteractionType(),
+          stage,
+          srcHdr.getTransactionId(),
+          srcHdr.getServiceArea(),
+          srcHdr.getService(),
+          srcHdr.getOperation(),
+          srcHdr.getAreaVersion(),
+          Boolean.TRUE,
+          qosProperties,
+          errorNumber, extraInfo);
+
+      transport.sendMessageAsync(null, true, errMsg).addListener(notifyErrorReporter);
+    } catch (MALException ex) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker could not create error message", ex);
+    } catch (MALTransmitErrorException ex) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker could not return error to " + srcHdr.getURIFrom(),
+          ex);
+    }
+  }
+
+  private void reportTransmitError(final MALMessageHeader hdr)
+  {
+    try {
+      final MALTransmitErrorListener listener = binding.getTransmitErrorListener();
+
+      if (null != listener) {
+        listener.onTransmitError(endpoint, hdr,
+            new MALStandardError(MALHelper.DELIVERY_FAILED_ERROR_NUMBER, null), null);
+      }
+    } catch (MALException ex) {
+      RLOGGER.log(Level.WARNING, "TCPIP broker could not report transmit error", ex);
+    }
+  }
+
+  private boolean isFrom(final MALMessageHeader hdr, final String remoteRootURI)
+  {
+    return remoteRootURI.equals(transport.getRootURI(hdr.getURIFrom().getValue()));
+  }
+
+  private void removeSubscription(final SubscriptionEntry entry)
+  {
+    if (null != entry) {
+      for (RequestEntry request : entry.requests) {
+        final Map<String, GENSubscriptionIndex<RequestEntry>> indexes
+            = request.isWildcardOperation() ? wildcardRequests : requestIndex;
+        final String indexKey = request.indexKey();
+        final GENSubscriptionIndex<RequestEntry> index = indexes.get(indexKey);
+
+        if (null != index) {
+          for (EntityKey key : request.keys) {
+            index.remove(request.domain, key, request);
+          }
+
+          if (index.isEmpty()) {
+            indexes.remove(indexKey);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the key that identifies the consumer or provider side of an interaction, the source
+   * URI plus the domain, session and operation of the message.
+   */
+  private static String interactionKey(final MALMessageHeader hdr)
+  {
+    final StringBuilder buf = new StringBuilder(128);
+    buf.append(hdr.getURIFrom()).append('|');
+    appendDomain(buf, hdr.getDomain());
+    buf.append('|').append(sessionKey(hdr));
+
+    return operationKey(buf.toString(), hdr.getServiceArea().getValue(),
+        hdr.getService().getValue(), hdr.getOperation().getValue());
+  }
+
+  private static String sessionKey(final MALMessageHeader hdr)
+  {
+    return String.valueOf(hdr.getNetworkZone()) + '|' + hdr.getSession() + '|'
+        + hdr.getSessionName();
+  }
+
+  private static String operationKey(final String sessionKey, final int area, final int service,
+      final int operation)
+  {
+    return sessionKey + '|' + area + '|' + service + '|' + operation;
+  }
+
+  private static void appendDomain(final StringBuilder buf, final IdentifierList domain)
+  {
+    if (null != domain) {
+      for (int i = 0; i < domain.size(); i++) {
+        if (0 < i) {
+          buf.append('.');
+        }
+        buf.append(domain.get(i));
+      }
+    }
+  }
+
+  /**
+   * The keys a provider has registered to publish.
+   */
+  private static final class PublisherEntry
+  {
+
+    private final String uriFrom;
+    private final GENSubscriptionIndex<EntityKey> keys = new GENSubscriptionIndex<EntityKey>();
+
+    PublisherEntry(final String uriFrom, final EntityKeyList keyList)
+    {
+      this.uriFrom = uriFrom;
+
+      if (null != keyList) {
+        for (EntityKey key : keyList) {
+          if (null != key) {
+            keys.add(null, key, key);
+          }
+        }
+      }
+    }
+
+    EntityKeyList rejectedKeys(final UpdateHeaderList updateHeaders)
+    {
+      final EntityKeyList rejected = new EntityKeyList();
+
+      for (UpdateHeader update : updateHeaders) {
+        final EntityKey updateKey = (null == update) ? null : update.getKey();
+
+        if ((null == updateKey) || !keys.matches(null, updateKey)) {
+          rejected.add(updateKey);
+        }
+      }
+
+      return rejected;
+    }
+  }
+
+  /**
+   * The subscriptions of one consumer of an operation, with the details of its latest register
+   * message that are used to address the notify messages.
+   */
+  private static final class ConsumerEntry
+  {
+
+    private final Map<String, SubscriptionEntry> subscriptions
+        = new HashMap<String, SubscriptionEntry>();
+    private MALMessageHeader header;
+    private Map qosProperties;
+  }
+
+  private static final class SubscriptionEntry
+  {
+
+    private final ConsumerEntry consumer;
+    private final Identifier subscriptionId;
+    private final List<RequestEntry> requests = new ArrayList<RequestEntry>();
+
+    SubscriptionEntry(final ConsumerEntry consumer, final Identifier subscriptionId)
+    {
+      this.consumer = consumer;
+      this.subscriptionId = subscriptionId;
+    }
+  }
+
+  /**
+   * One entity request of a subscription, with the domain to match built from the register domain
+   * and the request sub domain. A trailing "*" in the sub domain matches any number of further
+   * domain parts, a "*" elsewhere matches exactly one part.
+   */
+  private static final class RequestEntry
+  {
+
+    private final SubscriptionEntry subscription;
+    private final String sessionKey;
+    private final int area;
+    private final int service;
+    private final int operation;
+    private final IdentifierList domain;
+    private final boolean onlyOnChange;
+    private final List<EntityKey> keys = new ArrayList<EntityKey>();
+
+    RequestEntry(final SubscriptionEntry subscription, final String sessionKey,
+        final MALMessageHeader hdr, final EntityRequest rqst)
+    {
+      this.subscription = subscription;
+      this.sessionKey = sessionKey;
+      this.area = Boolean.TRUE.equals(rqst.getAllAreas()) ? -1 : hdr.getServiceArea().getValue();
+      this.service = Boolean.TRUE.equals(rqst.getAllServices()) ? -1 : hdr.getService().getValue();
+      this.operation = Boolean.TRUE.equals(rqst.getAllOperations()) ? -1
+          : hdr.getOperation().getValue();
+      this.onlyOnChange = Boolean.TRUE.equals(rqst.getOnlyOnChange());
+
+      this.domain = new IdentifierList();
+      if (null != hdr.getDomain()) {
+        this.domain.addAll(hdr.getDomain());
+      }
+      if (null != rqst.getSubDomain()) {
+        this.domain.addAll(rqst.getSubDomain());
+      }
+
+      if (null != rqst.getEntityKeys()) {
+        for (EntityKey key : rqst.getEntityKeys()) {
+          if (null != key) {
+            keys.add(key);
+          }
+        }
+      }
+
+      // like the JMS transport a request without entity keys does not restrict the keys
+      if (keys.isEmpty()) {
+        keys.add(new EntityKey(new Identifier(GENSubscriptionIndex.ALL_ID),
+            GENSubscriptionIndex.ALL_NUMBER, GENSubscriptionIndex.ALL_NUMBER,
+            GENSubscriptionIndex.ALL_NUMBER));
+      }
+    }
+
+    boolean isWildcardOperation()
+    {
+      return (0 > area) || (0 > service) || (0 > operation);
+    }
+
+    String indexKey()
+    {
+      return isWildcardOperation() ? sessionKey
+          : operationKey(sessionKey, area, service, operation);
+    }
+
+    boolean matchesOperation(final MALMessageHeader hdr)
+    {
+      return ((0 > area) || (area == hdr.getServiceArea().getValue()))
+          && ((0 > service) || (service == hdr.getService().getValue()))
+          && ((0 > operation) || (operation == hdr.getOperation().getValue()));
+    }
+
+    /**
+     * Marks an update matched by the index in the selection of the subscription of this request.
+     */
+    void select(final int index, final UpdateHeader update, final int updateCount,
+        final Map<SubscriptionEntry, BitSet> matches)
+    {
+      if (onlyOnChange && UpdateType.UPDATE.equals(update.getUpdateType())) {
+        return;
+      }
+
+      BitSet selection = matches.get(subscription);
+      if (null == selection) {
+        selection = new BitSet(updateCount);
+        matches.put(subscription, selection);
+      }
+      selection.set(index);
+    }
+  }
+
+  private static final class NotifyTarget
+  {
+
+    private final MALMessageHeader header;
+    private final Map qosProperties;
+    private final Identifier subscriptionId;
+    private final BitSet selection;
+
+    NotifyTarget(final MALMessageHeader header, final Map qosProperties,
+        final Identifier subscriptionId, final BitSet selection)
+    {
+      this.header = header;
+      this.qosProperties = qosProperties;
+      this.subscriptionId = subscriptionId;
+      this.selection = selection;
+    }
+  }
+
+  /**
+   * Identifies a notify body, the subscription identifier plus the selected updates.
+   */
+  private static final class NotifyBodyKey
+  {
+
+    private final String subscriptionId;
+    private final BitSet selection;
+
+    NotifyBodyKey(final String subscriptionId, final BitSet selection)
+    {
+      this.subscriptionId = subscriptionId;
+      this.selection = selection;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof NotifyBodyKey)) {
+        return false;
+      }
+
+      final NotifyBodyKey other = (NotifyBodyKey) obj;
+
+      return ((null == subscriptionId) ? (null == other.subscriptionId)
+          : subscriptionId.equals(other.subscriptionId))
+          && selection.equals(other.selection);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * ((null == subscriptionId) ? 0 : subscriptionId.hashCode())
+          + selection.hashCode();
+    }
+  }
+
+  private static final class NotifyBody
+  {
+
+    private final Object[] parts;
+    private MALEncodedBody encoded = null;
+
+    NotifyBody(final Object[] parts)
+    {
+      this.parts = parts;
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.tcpip;
+
+import esa.mo.mal.transport.gen.GENReceptionHandler;
+import esa.mo.mal.transport.gen.sending.GENBatchMessageSender;
+import esa.mo.mal.transport.gen.sending.GENMessageSender;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.logging.Level;
+import org.ccsds.moims.mo.mal.structures.URI;
+import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
+
+/**
+ * A non-blocking TCPIP connection served by a TCPIPSelectorLoop. It is both the reception handler
+ * and the message sender of the connection.
+ *
+ * Incoming bytes are framed incrementally by the selector thread: the fixed 23 byte MAL TCPIP
+ * header is collected first, the body length is taken from its last four bytes and then the body is
+ * collected, so a message may arrive spread over any number of reads. A header announcing a message
+ * larger than the configured maximum fails the connection, which is then closed. Complete messages are passed
+ * to the transport for decoding, exactly as the blocking transceiver does.
+ *
+ * Outgoing messages are written by the calling sender thread. If the socket buffer is full the
+ * sender waits for the selector to report the channel as writable, so the sender sees the same
+ * back pressure as with a blocking socket.
+ */
+public class TCPIPChannelConnection implements GENReceptionHandler, GENBatchMessageSender<byte[]>
+{
+
+  private static final int HEADER_SIZE = 23;
+  private static final long WRITE_WAIT_MILLIS = 100;
+  private final TCPIPTransport transport;
+  private final TCPIPSelectorLoop loop;
+  private final SocketChannel channel;
+  private final URI from;
+  private final URI to;
+  private final int maxMessageSize;
+  private final Object writeLock = new Object();
+  private final byte[] header = new byte[HEADER_SIZE];
+  private int headerFill = 0;
+  private byte[] packet = null;
+  private int packetFill = 0;
+  private SelectionKey key = null;
+  private volatile boolean closed = false;
+  private volatile String remoteURI = null;
+
+  /**
+   * Constructor.
+   *
+   * @param transport The parent transport.
+   * @param loop      The selector loop that serves this connection.
+   * @param channel   The connected channel.
+   * @param localPort The port that identifies this transport in the URI to of incoming messages.
+   * @param maxMessageSize The largest accepted incoming message in bytes, header included.
+   */
+  public TCPIPChannelConnection(TCPIPTransport transport, TCPIPSelectorLoop loop,
+      SocketChannel channel, int localPort, int maxMessageSize)
+  {
+    this.transport = transport;
+    this.loop = loop;
+    this.channel = channel;
+    this.maxMessageSize = maxMessageSize;
+
+    // same addressing as TCPIPTransportDataTransceiver
+    String remoteHost = channel.socket().getInetAddress().getHostAddress();
+    int remotePort = channel.socket().getPort();
+    String localHost = channel.socket().getLocalAddress().getHostAddress();
+    this.from = new URI("maltcp://" + remoteHost + ":" + remotePort);
+    this.to = new URI("maltcp://" + localHost + ":" + localPort);
+  }
+
+  @Override
+  public void sendEncodedMessage(GENOutgoingMessageHolder<byte[]> packetData) throws IOException
+  {
+    write(new ByteBuffer[]{
+      ByteBuffer.wrap(packetData.getEncodedMessage())
+    });
+  }
+
+  /**
+   * Sends the messages with a single gathering write where the socket buffer allows.
+   *
+   * @param packets The encoded messages to send
+   * @throws IOException if the channel is closed or fails.
+   */
+  @Override
+  public void sendEncodedMessages(List<GENOutgoingMessageHolder<byte[]>> packets)
+      throws IOException
+  {
+    ByteBuffer[] buffers = new ByteBuffer[packets.size()];
+
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = ByteBuffer.wrap(packets.get(i).getEncodedMessage());
+    }
+
+    write(buffers);
+  }
+
+  @Override
+  public String getRemoteURI()
+  {
+    return remoteURI;
+  }
+
+  @Override
+  public void setRemoteURI(String newURI)
+  {
+    this.remoteURI = newURI;
+  }
+
+  @Override
+  public GENMessageSender getMessageSender()
+  {
+    return this;
+  }
+
+  @Override
+  public void close()
+  {
+    if (!closed) {
+      closed = true;
+      RLOGGER.log(Level.FINE, "Closing channel connection to {0}", from);
+
+      try {
+        channel.close();
+      } catch (IOException e) {
+        RLOGGER.log(Level.WARNING, "An exception occured while trying to close the channel!", e);
+      }
+
+      synchronized (writeLock) {
+        writeLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns true once the connection has been closed.
+   *
+   * @return true if closed.
+   */
+  public boolean isClosed()
+  {
+    return closed;
+  }
+
+  /**
+   * Returns the channel of this connection.
+   *
+   * @return the channel.
+   */
+  SocketChannel getChannel()
+  {
+    return channel;
+  }
+
+  /**
+   * Sets the selection key once the channel is registered with the selector.
+   *
+   * @param key the selection key.
+   */
+  void setKey(SelectionKey key)
+  {
+    this.key = key;
+  }
+
+  /**
+   * Returns the selection key of the channel, null until registered.
+   *
+   * @return the selection key.
+   */
+  SelectionKey getKey()
+  {
+    return key;
+  }
+
+  /**
+   * Called by the selector thread when the channel can be written again.
+   */
+  void writable()
+  {
+    synchronized (writeLock) {
+      writeLock.notifyAll();
+    }
+  }
+
+  /**
+   * Called by the selector thread with the bytes just read from the channel. Completed messages are
+   * passed to the transport, any partial message is kept for the next read.
+   *
+   * @param buffer the bytes read, positioned for reading.
+   * @throws IOException if the stream does not hold a valid MAL TCPIP framing or announces a
+   * message larger than the maximum.
+   */
+  void received(ByteBuffer buffer) throws IOException
+  {
+    while (buffer.hasRemaining()) {
+      if (null == packet) {
+        int n = Math.min(HEADER_SIZE - headerFill, buffer.remaining());
+        buffer.get(header, headerFill, n);
+        headerFill += n;
+
+        if (HEADER_SIZE > headerFill) {
+          return;
+        }
+
+        // the body length is the last field of the fixed header
+        final int bodyLength = (header[19] & 0xFF) << 24 | (header[20] & 0xFF) << 16
+            | (header[21] & 0xFF) << 8 | (header[22] & 0xFF);
+
+        if ((0 > bodyLength) || (maxMessageSize - HEADER_SIZE < bodyLength)) {
+          throw new IOException("Invalid MAL TCPIP body length " + bodyLength + " from " + from
+              + ", the maximum message size is " + maxMessageSize);
+        }
+
+        packet = new byte[HEADER_SIZE + bodyLength];
+        System.arraycopy(header, 0, packet, 0, HEADER_SIZE);
+        packetFill = HEADER_SIZE;
+        headerFill = 0;
+      }
+
+      int n = Math.min(packet.length - packetFill, buffer.remaining());
+      buffer.get(packet, packetFill, n);
+      packetFill += n;
+
+      if (packet.length == packetFill) {
+        byte[] complete = packet;
+        packet = null;
+
+        transport.receive(this, new TCPIPMessageDecoderFactory.TCPIPMessageDecoder(transport,
+            new TCPIPPacketInfoHolder(complete, from, to)));
+      }
+    }
+  }
+
+  /**
+   * Called by the selector thread when the peer closes the connection or reading fails.
+   *
+   * @param ex the cause.
+   */
+  void failed(IOException ex)
+  {
+    if (!closed) {
+      if (ex instanceof EOFException) {
+        RLOGGER.log(Level.INFO, "Client closing connection: {0}", remoteURI);
+        transport.closeConnection(remoteURI, this);
+      } else {
+        RLOGGER.log(Level.WARNING, "Cannot read message from client", ex);
+        transport.communicationError(remoteURI, this);
+      }
+
+      close();
+    }
+  }
+
+  private void write(ByteBuffer[] buffers) throws IOException
+  {
+    synchronized (writeLock) {
+      int index = 0;
+
+      while (index < buffers.length) {
+        if (closed) {
+          throw new EOFException("Connection closed to " + from);
+        }
+
+        channel.write(buffers, index, buffers.length - index);
+
+        while ((index < buffers.length) && !buffers[index].hasRemaining()) {
+          ++index;
+        }
+
+        if (index < buffers.length) {
+          // socket buffer full, wait for the selector to report the channel writable
+          loop.requestWrite(this);
+
+          try {
+            writeLock.wait(WRITE_WAIT_MILLIS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing to " + from);
+          }
+        }
+      }
+    }
+  }
+}
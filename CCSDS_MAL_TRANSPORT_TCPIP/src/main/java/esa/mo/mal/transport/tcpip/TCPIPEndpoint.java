@@ -20,9 +20,12 @@
  */
 package esa.mo.mal.transport.tcpip;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import esa.mo.mal.transport.gen.GENEndpoint;
+import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
 import esa.mo.mal.transport.gen.GENTransport;
 
@@ -43,6 +46,11 @@ import org.ccsds.moims.mo.mal.transport.MALMessage;
 public class TCPIPEndpoint extends GENEndpoint
 {
 
+  /**
+   * The broker attached to this endpoint, null if the endpoint is not used by a broker.
+   */
+  private volatile TCPIPBrokerHandler brokerHandler = null;
+
   public TCPIPEndpoint(GENTransport transport, String localName,
       String routingName, String uri, boolean wrapBodyParts)
   {
@@ -135,6 +143,56 @@ public class TCPIPEndpoint extends GENEndpoint
     }
   }
 
+  /**
+   * Passes the broker side PUBSUB messages to the attached broker, all other messages to the
+   * message listener.
+   *
+   * @param pmsg The received message.
+   * @throws MALException on an error.
+   */
+  @Override
+  public void receiveMessage(final MALMessage pmsg) throws MALException
+  {
+    final TCPIPBrokerHandler handler = brokerHandler;
+
+    if ((null == handler) || !(pmsg instanceof GENMessage)
+        || !handler.handleMessage((GENMessage) pmsg)) {
+      super.receiveMessage(pmsg);
+    }
+  }
+
+  @Override
+  public void receiveMessages(final GENMessage[] pmsgs) throws MALException
+  {
+    final TCPIPBrokerHandler handler = brokerHandler;
+
+    if (null == handler) {
+      super.receiveMessages(pmsgs);
+    } else {
+      final List<GENMessage> others = new ArrayList<GENMessage>(pmsgs.length);
+
+      for (GENMessage pmsg : pmsgs) {
+        if (!handler.handleMessage(pmsg)) {
+          others.add(pmsg);
+        }
+      }
+
+      if (!others.isEmpty()) {
+        super.receiveMessages(others.toArray(new GENMessage[others.size()]));
+      }
+    }
+  }
+
+  /**
+   * Attaches a broker to this endpoint, or detaches it when null.
+   *
+   * @param brokerHandler The broker, may be null.
+   */
+  void setBrokerHandler(final TCPIPBrokerHandler brokerHandler)
+  {
+    this.brokerHandler = brokerHandler;
+  }
+
   /**
    * Create a message header with all header properties set. The serviceFrom and serviceTo
    * parameters will be explicitly set in the header, so that they include only the routing part of
@@ -21,11 +21,8 @@
 package esa.mo.mal.transport.tcpip;
 
 import esa.mo.mal.encoder.tcpip.TCPIPFixedBinaryStreamFactory;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Map;
 
 import org.ccsds.moims.mo.mal.MALException;
@@ -36,6 +33,7 @@ import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
 
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.gen.util.GENPooledOutputStream;
 import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
 
 /**
@@ -55,6 +53,24 @@ public class TCPIPMessage extends GENMessage
     super(wrapBodyParts, true, header, qosProperties, packet, encFactory);
   }
 
+  /**
+   * Constructor for a received message whose header has already been decoded. The body is left
+   * encoded in the packet until it is accessed.
+   *
+   * @param wrapBodyParts True if the encoded body parts should be wrapped in BLOBs.
+   * @param header        The decoded message header.
+   * @param qosProperties The QoS properties for this message.
+   * @param packet        The message in encoded form.
+   * @param bodyOffset    The offset of the encoded body in the packet.
+   * @param encFactory    The stream factory to use for decoding the body.
+   * @throws MALException On decoding error.
+   */
+  public TCPIPMessage(boolean wrapBodyParts, TCPIPMessageHeader header, Map qosProperties,
+      byte[] packet, int bodyOffset, MALElementStreamFactory encFactory) throws MALException
+  {
+    super(wrapBodyParts, header, qosProperties, packet, bodyOffset, encFactory);
+  }
+
   public TCPIPMessage(boolean wrapBodyParts, GENMessageHeader header, Map qosProperties,
       MALOperation operation,
       MALElementStreamFactory encFactory, Object... body) throws MALInteractionException
@@ -79,31 +95,36 @@ public class TCPIPMessage extends GENMessage
       throws MALException
   {
     // encode header and body using TCPIPEncoder class
-    ByteArrayOutputStream hdrBaos = new ByteArrayOutputStream();
-    ByteArrayOutputStream bodyBaos = new ByteArrayOutputStream();
-    MALElementOutputStream bodyEncoder = bodyStreamFactory.createOutputStream(bodyBaos);
-    // Header must be always Fixed Binary
-    final MALElementStreamFactory headerStreamFactory = new TCPIPFixedBinaryStreamFactory();
+    GENPooledOutputStream hdrBaos = new GENPooledOutputStream();
+    GENPooledOutputStream bodyBaos = new GENPooledOutputStream();
+
+    try {
+      MALElementOutputStream bodyEncoder = bodyStreamFactory.createOutputStream(bodyBaos);
+      // Header must be always Fixed Binary
+      final MALElementStreamFactory headerStreamFactory = new TCPIPFixedBinaryStreamFactory();
 
-    super.encodeMessage(headerStreamFactory, headerStreamFactory.createOutputStream(hdrBaos),
-        hdrBaos, true);
-    super.encodeMessage(bodyStreamFactory, bodyEncoder, bodyBaos, false);
+      super.encodeMessage(headerStreamFactory, headerStreamFactory.createOutputStream(hdrBaos),
+          hdrBaos, true);
+      super.encodeMessage(bodyStreamFactory, bodyEncoder, bodyBaos, false);
 
-    // overwrite bodysize parameter in the header
-    byte[] hdrBuf = hdrBaos.toByteArray();
-    ByteBuffer b = ByteBuffer.allocate(4);
-    b.order(ByteOrder.BIG_ENDIAN);
-    b.putInt(hdrBaos.size() + bodyBaos.size() - 23);
-    System.arraycopy(b.array(), 0, hdrBuf, 19, 4);
+      // overwrite bodysize parameter in the header, in place
+      final int bodySize = hdrBaos.size() + bodyBaos.size() - 23;
+      final byte[] hdrBuf = hdrBaos.getBuffer();
+      hdrBuf[19] = (byte) (bodySize >>> 24);
+      hdrBuf[20] = (byte) (bodySize >>> 16);
+      hdrBuf[21] = (byte) (bodySize >>> 8);
+      hdrBuf[22] = (byte) bodySize;
 
-    try {
-      lowLevelOutputStream.write(hdrBuf);
+      hdrBaos.writeTo(lowLevelOutputStream);
       if (this.getBody() != null) {
-        lowLevelOutputStream.write(bodyBaos.toByteArray());
+        bodyBaos.writeTo(lowLevelOutputStream);
       }
     } catch (IOException e) {
       RLOGGER.warning("An IOException was thrown during message encoding! " + e.getMessage());
       throw new MALException(e.getMessage());
+    } finally {
+      hdrBaos.release();
+      bodyBaos.release();
     }
   }
 
@@ -0,0 +1,183 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.tcpip;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
+
+/**
+ * The NIO engine of the TCPIP transport. Instead of a listener thread plus a poller thread per
+ * connection, all connections are served by a small fixed set of TCPIPSelectorLoop threads. New
+ * connections, accepted or initiated, are spread over the loops round robin.
+ *
+ * The framing on the wire is unchanged so an engine can talk to a transport using the blocking
+ * engine and the other way round.
+ */
+public class TCPIPSelectorEngine
+{
+
+  private final TCPIPTransport transport;
+  private final TCPIPSelectorLoop[] loops;
+  private final AtomicInteger nextLoop = new AtomicInteger();
+  private final List<TCPIPChannelConnection> connections
+      = new ArrayList<TCPIPChannelConnection>();
+  private boolean closed = false;
+
+  /**
+   * Constructor, the loops are started straight away.
+   *
+   * @param transport The parent transport.
+   * @param loopCount The number of selector loops.
+   * @throws IOException if a selector cannot be opened.
+   */
+  public TCPIPSelectorEngine(TCPIPTransport transport, int loopCount) throws IOException
+  {
+    this.transport = transport;
+    this.loops = new TCPIPSelectorLoop[Math.max(1, loopCount)];
+
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new TCPIPSelectorLoop(this, i);
+      loops[i].start();
+    }
+
+    RLOGGER.log(Level.INFO, "Started TCPIP NIO engine with {0} selector loops", loops.length);
+  }
+
+  /**
+   * Accepts connections on the supplied server channel.
+   *
+   * @param serverChannel the bound server channel.
+   * @throws IOException if the channel cannot be made non-blocking.
+   */
+  public void listen(ServerSocketChannel serverChannel) throws IOException
+  {
+    serverChannel.configureBlocking(false);
+    loops[0].listen(serverChannel);
+  }
+
+  /**
+   * Opens a connection to a remote transport. The local port is used if available, as the
+   * blocking engine does, otherwise an ephemeral port is used.
+   *
+   * @param localClientPort the preferred local port.
+   * @param host            the remote host.
+   * @param port            the remote port.
+   * @param remoteRootURI   the remote root URI the connection is for.
+   * @param timeout         the time in milliseconds to wait for the connection, zero for no limit.
+   * @return the new connection.
+   * @throws IOException if the connection cannot be established.
+   * @throws java.net.SocketTimeoutException if the timeout expires first.
+   */
+  public TCPIPChannelConnection connect(int localClientPort, String host, int port,
+      String remoteRootURI, int timeout) throws IOException
+  {
+    SocketChannel channel = SocketChannel.open();
+
+    try {
+      try {
+        channel.socket().bind(new InetSocketAddress(localClientPort));
+      } catch (IOException e) {
+        RLOGGER.log(Level.WARNING, "Failed to create a socket at port {0}! {1}",
+            new Object[]{localClientPort, e.getMessage()});
+        channel.socket().bind(null);
+      }
+
+      // connect in blocking mode, then hand over to a selector
+      channel.socket().connect(new InetSocketAddress(host, port), timeout);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    return adopt(channel, remoteRootURI);
+  }
+
+  /**
+   * Hands a connected channel to the next selector loop.
+   *
+   * @param channel       the connected channel.
+   * @param remoteRootURI the remote root URI if known, otherwise null.
+   * @return the new connection.
+   * @throws IOException if the channel cannot be made non-blocking or the engine is closed.
+   */
+  public TCPIPChannelConnection adopt(SocketChannel channel, String remoteRootURI)
+      throws IOException
+  {
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+
+    TCPIPSelectorLoop loop
+        = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    TCPIPChannelConnection connection = transport.createChannelConnection(loop, channel);
+
+    if (null != remoteRootURI) {
+      connection.setRemoteURI(remoteRootURI);
+    }
+
+    synchronized (connections) {
+      if (closed) {
+        // the engine was closed while the channel was being connected or accepted
+        connection.close();
+        throw new IOException("TCPIP NIO engine closed");
+      }
+
+      // forget connections that have been closed since
+      for (int i = connections.size() - 1; i >= 0; i--) {
+        if (connections.get(i).isClosed()) {
+          connections.remove(i);
+        }
+      }
+
+      connections.add(connection);
+    }
+
+    loop.register(connection);
+
+    return connection;
+  }
+
+  /**
+   * Closes all connections and stops the selector loops.
+   */
+  public void close()
+  {
+    synchronized (connections) {
+      closed = true;
+
+      for (TCPIPChannelConnection connection : connections) {
+        connection.close();
+      }
+
+      connections.clear();
+    }
+
+    for (TCPIPSelectorLoop loop : loops) {
+      loop.close();
+    }
+  }
+}
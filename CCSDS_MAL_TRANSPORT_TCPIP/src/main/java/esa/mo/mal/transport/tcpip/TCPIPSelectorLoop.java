@@ -0,0 +1,251 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ * ----------------------------------------------------------------------------
+ */
+package esa.mo.mal.transport.tcpip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
+
+/**
+ * A selector event loop of the NIO TCPIP engine. Each loop serves any number of connections from a
+ * single thread, reading and framing their incoming data and waking their senders when the socket
+ * buffer has space again. The first loop of an engine also accepts new connections.
+ *
+ * Registrations and interest changes requested by other threads are queued and applied by the loop
+ * thread itself after waking the selector.
+ */
+public class TCPIPSelectorLoop extends Thread
+{
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  private final TCPIPSelectorEngine engine;
+  private final Selector selector;
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+  private final Queue<Object> pendingRegistrations = new ConcurrentLinkedQueue<Object>();
+  private final Queue<TCPIPChannelConnection> pendingWrites
+      = new ConcurrentLinkedQueue<TCPIPChannelConnection>();
+  private volatile boolean running = true;
+
+  /**
+   * Constructor.
+   *
+   * @param engine The engine this loop belongs to.
+   * @param index  The index of this loop, used in the thread name.
+   * @throws IOException if the selector cannot be opened.
+   */
+  public TCPIPSelectorLoop(TCPIPSelectorEngine engine, int index) throws IOException
+  {
+    this.engine = engine;
+    this.selector = Selector.open();
+    setName("TCPIPSelectorLoop_" + index);
+    setDaemon(true);
+  }
+
+  /**
+   * Registers a listening channel to accept new connections.
+   *
+   * @param serverChannel the non-blocking server channel.
+   */
+  public void listen(ServerSocketChannel serverChannel)
+  {
+    pendingRegistrations.add(serverChannel);
+    selector.wakeup();
+  }
+
+  /**
+   * Registers a connection for reading.
+   *
+   * @param connection the connection to serve.
+   */
+  public void register(TCPIPChannelConnection connection)
+  {
+    pendingRegistrations.add(connection);
+    selector.wakeup();
+  }
+
+  /**
+   * Asks to be told when the channel of the connection can be written.
+   *
+   * @param connection the connection waiting to write.
+   */
+  public void requestWrite(TCPIPChannelConnection connection)
+  {
+    pendingWrites.add(connection);
+    selector.wakeup();
+  }
+
+  /**
+   * Stops the loop and closes its selector. Connections are closed by the engine.
+   */
+  public void close()
+  {
+    running = false;
+    selector.wakeup();
+  }
+
+  @Override
+  public void run()
+  {
+    try {
+      while (running) {
+        selector.select();
+
+        applyPendingRegistrations();
+        applyPendingWrites();
+
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+        while (it.hasNext()) {
+          SelectionKey key = it.next();
+          it.remove();
+
+          try {
+            handle(key);
+          } catch (CancelledKeyException ex) {
+            // connection closed while being served
+          }
+        }
+      }
+    } catch (ClosedSelectorException ex) {
+      // closing
+    } catch (IOException ex) {
+      RLOGGER.log(Level.SEVERE, "TCPIP selector loop failed", ex);
+    } finally {
+      try {
+        selector.close();
+      } catch (IOException ex) {
+        RLOGGER.log(Level.WARNING, "Error while closing selector", ex);
+      }
+    }
+  }
+
+  private void handle(SelectionKey key)
+  {
+    if (key.isAcceptable()) {
+      accept((ServerSocketChannel) key.channel());
+      return;
+    }
+
+    TCPIPChannelConnection connection = (TCPIPChannelConnection) key.attachment();
+
+    if (key.isWritable()) {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      connection.writable();
+    }
+
+    if (key.isReadable()) {
+      read(key, connection);
+    }
+  }
+
+  private void accept(ServerSocketChannel serverChannel)
+  {
+    try {
+      SocketChannel channel = serverChannel.accept();
+
+      if (null != channel) {
+        RLOGGER.log(Level.INFO, "Socket accepted at port {0}", channel.socket().getPort());
+        engine.adopt(channel, null);
+      }
+    } catch (IOException ex) {
+      RLOGGER.log(Level.WARNING, "Error while accepting connection", ex);
+    }
+  }
+
+  private void read(SelectionKey key, TCPIPChannelConnection connection)
+  {
+    try {
+      int n;
+
+      do {
+        readBuffer.clear();
+        n = connection.getChannel().read(readBuffer);
+
+        if (0 < n) {
+          readBuffer.flip();
+          connection.received(readBuffer);
+        }
+      } while (READ_BUFFER_SIZE == n);
+
+      if (0 > n) {
+        key.cancel();
+        connection.failed(new EOFException());
+      }
+    } catch (IOException ex) {
+      key.cancel();
+      connection.failed(ex);
+    }
+  }
+
+  private void applyPendingRegistrations()
+  {
+    Object pending;
+
+    while (null != (pending = pendingRegistrations.poll())) {
+      try {
+        if (pending instanceof ServerSocketChannel) {
+          ((ServerSocketChannel) pending).register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+          TCPIPChannelConnection connection = (TCPIPChannelConnection) pending;
+
+          if (!connection.isClosed()) {
+            connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ,
+                connection));
+          }
+        }
+      } catch (IOException ex) {
+        RLOGGER.log(Level.WARNING, "Error while registering channel with selector", ex);
+      }
+    }
+  }
+
+  private void applyPendingWrites()
+  {
+    TCPIPChannelConnection connection;
+
+    while (null != (connection = pendingWrites.poll())) {
+      SelectionKey key = connection.getKey();
+
+      try {
+        if ((null != key) && key.isValid()) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+          continue;
+        }
+      } catch (CancelledKeyException ex) {
+        // closed in the meantime
+      }
+
+      // not registered yet or closed, let the writer retry
+      connection.writable();
+    }
+  }
+}
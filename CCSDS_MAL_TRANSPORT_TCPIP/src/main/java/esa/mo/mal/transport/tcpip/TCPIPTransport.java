@@ -25,11 +25,12 @@ import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
 import esa.mo.mal.transport.gen.GENEndpoint;
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.gen.GENReceptionHandler;
 import esa.mo.mal.transport.gen.GENTransport;
 import esa.mo.mal.transport.gen.sending.GENMessageSender;
 import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
 import esa.mo.mal.transport.gen.util.GENMessagePoller;
-import java.io.ByteArrayOutputStream;
+import esa.mo.mal.transport.gen.util.GENPooledOutputStream;
 import java.io.IOException;
 import java.net.Inet6Address;
 import java.net.InetAddress;
@@ -39,6 +40,8 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -46,6 +49,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -72,6 +76,15 @@ import org.ccsds.moims.mo.mal.transport.MALTransportFactory;
  * will use for incoming connections. In case of a pure client (i.e. not offering any services) this
  * property should be omitted. org.ccsds.moims.mo.mal.transport.tcpip.port == port that the
  * transport listens to. In case this is a pure client, this property should be omitted.
+ * org.ccsds.moims.mo.mal.transport.tcpip.engine == "blocking" (default) for a thread per
+ * connection using blocking sockets, or "nio" for a small set of selector threads serving all
+ * connections. org.ccsds.moims.mo.mal.transport.tcpip.selectors == number of selector threads of
+ * the nio engine. org.ccsds.moims.mo.mal.transport.tcpip.connecttimeout == time in milliseconds
+ * the nio engine waits for an outgoing connection to be established, by default the delivery
+ * timeout. org.ccsds.moims.mo.mal.transport.tcpip.maxmessagesize == largest accepted incoming
+ * message in bytes, a connection announcing a larger message is closed (default 64 MiB).
+ * org.ccsds.moims.mo.mal.transport.tcpip.broker == "true" to provide brokers at transport level,
+ * or "false" (default) to leave PUBSUB to the MAL implementation layer.
  *
  * The general logic is the following: The transport at first initializes the server listen port (if
  * this is a server, offering services). On receiving a request to send a MAL Message the transport
@@ -113,6 +126,39 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
    */
   private static final char PORT_DELIMITER = ':';
 
+  /**
+   * Property selecting the connection engine, "blocking" (default) or "nio".
+   */
+  public static final String ENGINE_PROPERTY = "org.ccsds.moims.mo.mal.transport.tcpip.engine";
+
+  /**
+   * Property setting the number of selector threads of the nio engine.
+   */
+  public static final String SELECTORS_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.tcpip.selectors";
+
+  /**
+   * Property setting the time in milliseconds the nio engine waits for an outgoing connection.
+   */
+  public static final String CONNECT_TIMEOUT_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.tcpip.connecttimeout";
+
+  /**
+   * Property setting the largest accepted incoming message in bytes, header included.
+   */
+  public static final String MAX_MESSAGE_SIZE_PROPERTY
+      = "org.ccsds.moims.mo.mal.transport.tcpip.maxmessagesize";
+
+  /**
+   * The default largest accepted incoming message.
+   */
+  public static final int DEFAULT_MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Property enabling the transport level PUBSUB broker, "true" or "false" (default).
+   */
+  public static final String BROKER_PROPERTY = "org.ccsds.moims.mo.mal.transport.tcpip.broker";
+
   /**
    * The server port that the TCP transport listens for incoming connections
    */
@@ -142,6 +188,42 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
   private ServerSocket serverSocket;
   private final Map<String, Integer> socketsList = new HashMap<String, Integer>();
 
+  /**
+   * True if the nio engine is used instead of blocking sockets.
+   */
+  private final boolean nioEngine;
+
+  /**
+   * The number of selector threads of the nio engine.
+   */
+  private final int selectorCount;
+
+  /**
+   * The time in milliseconds the nio engine waits for an outgoing connection.
+   */
+  private final int connectTimeout;
+
+  /**
+   * The largest accepted incoming message in bytes.
+   */
+  private final int maxMessageSize;
+
+  /**
+   * The nio engine, null if the blocking engine is used.
+   */
+  private TCPIPSelectorEngine selectorEngine = null;
+
+  /**
+   * True if the transport provides PUBSUB brokers.
+   */
+  private final boolean brokerSupport;
+
+  /**
+   * The brokers of the transport, told when a connection closes.
+   */
+  private final List<TCPIPBrokerHandler> brokerHandlers
+      = new CopyOnWriteArrayList<TCPIPBrokerHandler>();
+
   /**
    * Holds the list of data poller threads
    */
@@ -166,6 +248,40 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
 
     RLOGGER.fine("TCPIPTransport (constructor)");
 
+    boolean lNioEngine = false;
+    int lSelectorCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    int lConnectTimeout = deliveryTimeout * 1000;
+    int lMaxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+    boolean lBrokerSupport = false;
+
+    if (properties != null) {
+      if (properties.containsKey(ENGINE_PROPERTY)) {
+        lNioEngine = "nio".equalsIgnoreCase((String) properties.get(ENGINE_PROPERTY));
+      }
+
+      if (properties.containsKey(SELECTORS_PROPERTY)) {
+        lSelectorCount = Integer.parseInt((String) properties.get(SELECTORS_PROPERTY));
+      }
+
+      if (properties.containsKey(CONNECT_TIMEOUT_PROPERTY)) {
+        lConnectTimeout = Integer.parseInt((String) properties.get(CONNECT_TIMEOUT_PROPERTY));
+      }
+
+      if (properties.containsKey(MAX_MESSAGE_SIZE_PROPERTY)) {
+        lMaxMessageSize = Integer.parseInt((String) properties.get(MAX_MESSAGE_SIZE_PROPERTY));
+      }
+
+      if (properties.containsKey(BROKER_PROPERTY)) {
+        lBrokerSupport = Boolean.parseBoolean((String) properties.get(BROKER_PROPERTY));
+      }
+    }
+
+    this.nioEngine = lNioEngine;
+    this.selectorCount = lSelectorCount;
+    this.connectTimeout = lConnectTimeout;
+    this.maxMessageSize = lMaxMessageSize;
+    this.brokerSupport = lBrokerSupport;
+
     // decode configuration
     if (properties != null) {
       if (properties.containsKey("org.ccsds.moims.mo.mal.transport.tcpip.autohost")) {
@@ -203,7 +319,7 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
             this.serverPort = Integer.parseInt((String) properties.get(
                 "org.ccsds.moims.mo.mal.transport.tcpip.port"));
             InetAddress serverHostAddr = InetAddress.getByName(serverHost);
-            serverSocket = new ServerSocket(this.serverPort, 0, serverHostAddr);
+            serverSocket = createServerSocket(this.serverPort, serverHostAddr);
           } catch (NumberFormatException ex) {
             RLOGGER.log(Level.WARNING,
                 "Cannot parse server port number from properties file to Integer", ex);
@@ -222,7 +338,7 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
 
             while (true) {
               try {
-                serverSocket = new ServerSocket(portNumber, 0, serverHostAddr);
+                serverSocket = createServerSocket(portNumber, serverHostAddr);
                 break;
               } catch (Exception ex) {
                 RLOGGER.log(Level.FINE, "Port " + portNumber + " already in use...");
@@ -280,11 +396,37 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
   @Override
   public void init() throws MALException
   {
+    if (nioEngine && overrides("createDataTransceiver", Socket.class)
+        && !overrides("createChannelConnection", TCPIPSelectorLoop.class, SocketChannel.class)) {
+      if (null != serverSocket) {
+        try {
+          serverSocket.close();
+        } catch (IOException e) {
+          RLOGGER.log(Level.WARNING, "Error while closing server socket", e);
+        }
+      }
+
+      throw new MALException(getClass().getName() + " replaces createDataTransceiver but not "
+          + "createChannelConnection, it cannot use the nio engine");
+    }
+
     super.init();
     RLOGGER.fine("TCPIPTransport.init()");
 
-    // Is it a server?
-    if (serverHost != null) {
+    if (nioEngine) {
+      try {
+        synchronized (this) {
+          selectorEngine = new TCPIPSelectorEngine(this, selectorCount);
+
+          if ((serverHost != null) && (null != serverSocket)) {
+            selectorEngine.listen(serverSocket.getChannel());
+          }
+        }
+      } catch (IOException ex) {
+        throw new MALException("Error initialising TCP NIO engine", ex);
+      }
+    } else if (serverHost != null) {
+      // Is it a server?
       // start server socket on predefined port / interface
       try {
         // create thread that will listen for connections
@@ -307,8 +449,17 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
       throws MALException
   {
     RLOGGER.fine("TCPIPTransport.createBroker()");
-    // not support by TCPIP transport
-    return null;
+
+    if (!brokerSupport) {
+      return null;
+    }
+
+    final TCPIPEndpoint endpoint
+        = (TCPIPEndpoint) createEndpoint(localName, defaultQoSProperties);
+    endpoint.startMessageDelivery();
+
+    return new TCPIPBrokerBinding(this, endpoint, true, authenticationId, expectedQos,
+        priorityLevelNumber);
   }
 
   @Override
@@ -317,14 +468,24 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
       final UInteger priorities, final Map properties)
       throws MALException
   {
-    RLOGGER.info("TCPIPTransport.createBroker() 2");
-    // not support by TCPIP transport
-    return null;
+    RLOGGER.fine("TCPIPTransport.createBroker() 2");
+
+    if (!brokerSupport) {
+      return null;
+    }
+
+    if (!(endpoint instanceof TCPIPEndpoint)) {
+      throw new MALException("Endpoint was not created by the TCPIP transport: " + endpoint);
+    }
+
+    return new TCPIPBrokerBinding(this, (TCPIPEndpoint) endpoint, false, authenticationId,
+        qosLevels, priorities);
   }
 
   /**
-   * The MAL TCPIP binding supports SEND, SUBMIT, REQUEST, INVOKE and PROGRESS. PUBSUB is not
-   * supported. A MAL implementation layer has to support PUBSUB itself.
+   * The MAL TCPIP binding supports SEND, SUBMIT, REQUEST, INVOKE and PROGRESS. PUBSUB is supported
+   * by the transport level broker, unless it has been disabled in which case a MAL implementation
+   * layer has to support PUBSUB itself.
    *
    * @param type
    * @return
@@ -332,7 +493,7 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
   @Override
   public boolean isSupportedInteractionType(final InteractionType type)
   {
-    return InteractionType.PUBSUB.getOrdinal() != type.getOrdinal();
+    return brokerSupport || (InteractionType.PUBSUB.getOrdinal() != type.getOrdinal());
   }
 
   /**
@@ -360,6 +521,10 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
     synchronized (this) {
       TCPIPConnectionPoolManager.INSTANCE.close();
 
+      if (null != selectorEngine) {
+        selectorEngine.close();
+      }
+
       for (GENMessagePoller entry : messagePollerThreadPool) {
         entry.close();
       }
@@ -374,9 +539,59 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
         serverConnectionListener.interrupt();
 
       }
+
+      if (nioEngine && (null != serverSocket)) {
+        try {
+          serverSocket.close();
+        } catch (IOException e) {
+          RLOGGER.log(Level.WARNING, "Error while closing server socket", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the connection as GENTransport does and removes the subscriptions and publisher
+   * registrations that the brokers of this transport hold for the remote transport.
+   *
+   * @param uriTo            the remote root URI, may be null.
+   * @param receptionHandler the reception handler of the connection, may be null.
+   */
+  @Override
+  public void closeConnection(final String uriTo, final GENReceptionHandler receptionHandler)
+  {
+    final String remoteRootURI = ((null == uriTo) && (null != receptionHandler))
+        ? receptionHandler.getRemoteURI() : uriTo;
+
+    super.closeConnection(uriTo, receptionHandler);
+
+    if (null != remoteRootURI) {
+      for (TCPIPBrokerHandler handler : brokerHandlers) {
+        handler.removeRemote(remoteRootURI);
+      }
     }
   }
 
+  /**
+   * Adds a broker to be told about closed connections.
+   *
+   * @param handler The broker.
+   */
+  void addBrokerHandler(final TCPIPBrokerHandler handler)
+  {
+    brokerHandlers.add(handler);
+  }
+
+  /**
+   * Removes a broker added with addBrokerHandler.
+   *
+   * @param handler The broker.
+   */
+  void removeBrokerHandler(final TCPIPBrokerHandler handler)
+  {
+    brokerHandlers.remove(handler);
+  }
+
   /**
    * Internal method for encoding the message.
    *
@@ -395,9 +610,9 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
       final Object multiSendHandle, final boolean lastForHandle,
       final String targetURI, final GENMessage msg) throws Exception
   {
+    final GENPooledOutputStream lowLevelOutputStream = new GENPooledOutputStream();
     try {
       // try to encode the TCPIP Message
-      final ByteArrayOutputStream lowLevelOutputStream = new ByteArrayOutputStream();
       ((TCPIPMessage) msg).encodeMessage(getStreamFactory(), lowLevelOutputStream);
       byte[] data = lowLevelOutputStream.toByteArray();
 
@@ -411,6 +626,8 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
       LOGGER.log(Level.SEVERE, "GEN could not encode message!", ex);
       throw new MALTransmitErrorException(msg.getHeader(), new MALStandardError(
           MALHelper.BAD_ENCODING_ERROR_NUMBER, null), null);
+    } finally {
+      lowLevelOutputStream.release();
     }
   }
 
@@ -468,10 +685,9 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
    * information. Later, during decoding, the full URL is formed from the information in the message
    * header.
    *
-   * The raw message data is split up in a packet, describing the header, and a packet for the body.
-   * These are each decoded separately; the header is decoded using an implementation that follows
-   * the MAL TCPIP Transport Binding specification. The body is decoded using whatever we have
-   * selected.
+   * Only the header is decoded here, using an implementation that follows the MAL TCPIP Transport
+   * Binding specification. The body is left in the packet and is decoded, using whatever we have
+   * selected, when it is first accessed.
    *
    * @param packetInfo
    * @return
@@ -492,26 +708,14 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
     // preset header
     TCPIPMessageHeader header = new TCPIPMessageHeader(new URI(from), new URI(to));
 
-    // msg with decoded header and empty body
     byte[] packetData = packetInfo.getPacketData();
 
     // Header must be always Fixed Binary
-    TCPIPMessage msg = new TCPIPMessage(wrapBodyParts, header, qosProperties, packetData,
+    Blob body = GENMessage.decodeHeader(header, qosProperties, packetData,
         new TCPIPFixedBinaryStreamFactory());
 
-    int decodedHeaderBytes = ((TCPIPMessageHeader) msg.getHeader()).decodedHeaderBytes;
-    int bodySize = ((TCPIPMessageHeader) msg.getHeader()).getBodyLength() + 23 - decodedHeaderBytes;
-
-    // copy body to separate packet
-    byte[] bodyPacketData = new byte[bodySize];
-    System.arraycopy(packetData, decodedHeaderBytes, bodyPacketData, 0, bodySize);
-
-    // decode the body
-    TCPIPMessage messageWithBody = new TCPIPMessage(wrapBodyParts,
-        (TCPIPMessageHeader) msg.getHeader(), qosProperties,
-        bodyPacketData, getStreamFactory());
-
-    return messageWithBody;
+    return new TCPIPMessage(wrapBodyParts, header, qosProperties, body.getValue(),
+        body.getOffset(), getStreamFactory());
   }
 
   /**
@@ -539,6 +743,11 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
 
       ConnectionTuple toCt = getConnectionParts(remoteRootURI);
 
+      if (nioEngine) {
+        return selectorEngine.connect(localPort, toCt.host, toCt.port, remoteRootURI,
+            connectTimeout);
+      }
+
       Socket s = TCPIPConnectionPoolManager.INSTANCE.get(localPort);
 
       try {
@@ -570,6 +779,12 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
       LOGGER.log(Level.FINE, "TCPIP could not find host  :" + remoteRootURI, e);
       throw new MALTransmitErrorException(msg.getHeader(),
           new MALStandardError(MALHelper.DESTINATION_UNKNOWN_ERROR_NUMBER, null), null);
+    } catch (java.net.SocketTimeoutException e) {
+      LOGGER.log(Level.WARNING, "TCPIP timed out connecting to : {0}", remoteRootURI);
+      throw new MALTransmitErrorException(
+          msg.getHeader(),
+          new MALStandardError(
+              MALHelper.DESTINATION_TRANSIENT_ERROR_NUMBER, null), null);
     } catch (java.net.ConnectException e) {
       LOGGER.log(Level.WARNING, "TCPIP could not connect to : {0}", remoteRootURI);
       LOGGER.log(Level.FINE, "TCPIP could not connect to : " + remoteRootURI, e);
@@ -589,10 +804,40 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
     }
   }
 
+  /**
+   * Creates the server socket. For the nio engine the socket is created from a server channel so
+   * that it can be registered with a selector.
+   *
+   * @param port the port to listen on.
+   * @param addr the local address to listen on.
+   * @return the bound server socket.
+   * @throws IOException if the socket cannot be bound.
+   */
+  private ServerSocket createServerSocket(int port, InetAddress addr) throws IOException
+  {
+    if (!nioEngine) {
+      return new ServerSocket(port, 0, addr);
+    }
+
+    ServerSocketChannel channel = ServerSocketChannel.open();
+
+    try {
+      channel.socket().bind(new InetSocketAddress(addr, port));
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    return channel.socket();
+  }
+
   /**
    * Allows transport derived from this, where the message encoding is changed for example, to
    * easily replace the message transceiver without worrying about the TCPIP connection
    *
+   * Only used by the blocking engine, see createChannelConnection for the nio engine. A transport
+   * that replaces this method but not createChannelConnection cannot use the nio engine.
+   *
    * @param socket the TCPIP socket
    * @return the new transceiver
    * @throws IOException if there is an error
@@ -600,7 +845,46 @@ public class TCPIPTransport extends GENTransport<byte[], byte[]>
   protected TCPIPTransportDataTransceiver createDataTransceiver(Socket socket) throws IOException
   {
     RLOGGER.fine("TCPIPTransport.createDataTransceiver()");
-    return new TCPIPTransportDataTransceiver(socket, ((clientPort == 0) ? serverPort : clientPort));
+    return new TCPIPTransportDataTransceiver(socket, ((clientPort == 0) ? serverPort : clientPort),
+        maxMessageSize);
+  }
+
+  /**
+   * The nio engine equivalent of createDataTransceiver, allows transports derived from this to
+   * replace the connection used for a channel accepted or opened by the nio engine.
+   *
+   * @param loop    the selector loop that will serve the connection
+   * @param channel the connected channel
+   * @return the new connection
+   * @throws IOException if there is an error
+   */
+  protected TCPIPChannelConnection createChannelConnection(TCPIPSelectorLoop loop,
+      SocketChannel channel) throws IOException
+  {
+    RLOGGER.fine("TCPIPTransport.createChannelConnection()");
+    return new TCPIPChannelConnection(this, loop, channel,
+        ((clientPort == 0) ? serverPort : clientPort), maxMessageSize);
+  }
+
+  /**
+   * Returns true if a class derived from this one declares the given method.
+   *
+   * @param name       the method name
+   * @param parameters the parameter types of the method
+   * @return true if the method is replaced below TCPIPTransport
+   */
+  private boolean overrides(String name, Class<?>... parameters)
+  {
+    for (Class<?> c = getClass(); TCPIPTransport.class != c; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod(name, parameters);
+        return true;
+      } catch (NoSuchMethodException ex) {
+        // not in this class
+      }
+    }
+
+    return false;
   }
 
   /**
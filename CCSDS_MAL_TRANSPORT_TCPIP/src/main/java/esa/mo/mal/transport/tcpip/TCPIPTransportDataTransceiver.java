@@ -20,7 +20,7 @@
  */
 package esa.mo.mal.transport.tcpip;
 
-import esa.mo.mal.transport.gen.sending.GENMessageSender;
+import esa.mo.mal.transport.gen.sending.GENBatchMessageSender;
 import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import org.ccsds.moims.mo.mal.structures.URI;
 import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
@@ -41,16 +42,24 @@ import static esa.mo.mal.transport.tcpip.TCPIPTransport.RLOGGER;
  */
 public class TCPIPTransportDataTransceiver implements
     esa.mo.mal.transport.gen.util.GENMessagePoller.GENMessageReceiver<TCPIPPacketInfoHolder>,
-    GENMessageSender
+    GENBatchMessageSender<byte[]>
 {
 
   private boolean closed = false;
   private final static int HEADER_SIZE = 23;
+  /**
+   * The largest staging buffer kept between batches, larger batches use a buffer of their own that
+   * is released once written.
+   */
+  private final static int MAX_RETAINED_BATCH_BUFFER = 65536;
+  private final static byte[] NO_BATCH_BUFFER = new byte[0];
   protected final Socket socket;
   protected final DataOutputStream socketWriteIf;
   protected final DataInputStream socketReadIf;
   private final URI from;
   private final URI to;
+  private final int maxMessageSize;
+  private byte[] batchBuffer = NO_BATCH_BUFFER;
 
   /**
    * Constructor.
@@ -60,9 +69,24 @@ public class TCPIPTransportDataTransceiver implements
    * @throws IOException if there is an error.
    */
   public TCPIPTransportDataTransceiver(Socket socket, int localPort) throws IOException
+  {
+    this(socket, localPort, TCPIPTransport.DEFAULT_MAX_MESSAGE_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param socket         the TCPIP socket.
+   * @param localPort      the port that identifies the transport in the URI to of incoming messages.
+   * @param maxMessageSize the largest accepted incoming message in bytes, header included.
+   * @throws IOException if there is an error.
+   */
+  public TCPIPTransportDataTransceiver(Socket socket, int localPort, int maxMessageSize)
+      throws IOException
   {
     RLOGGER.log(Level.FINE, "Creating new Data Transceiver");
     this.socket = socket;
+    this.maxMessageSize = maxMessageSize;
     socketWriteIf = new DataOutputStream(socket.getOutputStream());
     socketReadIf = new DataInputStream(socket.getInputStream());
 
@@ -81,14 +105,56 @@ public class TCPIPTransportDataTransceiver implements
    * @throws java.io.IOException
    */
   @Override
-  public void sendEncodedMessage(GENOutgoingMessageHolder packetData) throws IOException
+  public void sendEncodedMessage(GENOutgoingMessageHolder<byte[]> packetData) throws IOException
   {
     if (!closed) {
-      socketWriteIf.write((byte[]) packetData.getEncodedMessage());
+      socketWriteIf.write(packetData.getEncodedMessage());
       socketWriteIf.flush();
     }
   }
 
+  /**
+   * Send several encoded messages out over the socket as a single write. The messages are copied
+   * back to back into a staging buffer, which is kept for the next batch unless it has grown beyond
+   * MAX_RETAINED_BATCH_BUFFER.
+   *
+   * @param packets The encoded messages to send
+   * @throws java.io.IOException
+   */
+  @Override
+  public void sendEncodedMessages(List<GENOutgoingMessageHolder<byte[]>> packets)
+      throws IOException
+  {
+    if (!closed) {
+      int total = 0;
+
+      for (GENOutgoingMessageHolder<byte[]> packet : packets) {
+        total += packet.getEncodedMessage().length;
+      }
+
+      if (batchBuffer.length < total) {
+        batchBuffer = new byte[total];
+      }
+
+      int offset = 0;
+
+      for (GENOutgoingMessageHolder<byte[]> packet : packets) {
+        byte[] data = packet.getEncodedMessage();
+        System.arraycopy(data, 0, batchBuffer, offset, data.length);
+        offset += data.length;
+      }
+
+      try {
+        socketWriteIf.write(batchBuffer, 0, total);
+        socketWriteIf.flush();
+      } finally {
+        if (MAX_RETAINED_BATCH_BUFFER < batchBuffer.length) {
+          batchBuffer = NO_BATCH_BUFFER;
+        }
+      }
+    }
+  }
+
   /**
    * Read an encoded message from the socket. The message is read into a byte array. The encoded
    * message header contains the length of the variable-size body of the message. Therefore, this
@@ -127,6 +193,11 @@ public class TCPIPTransportDataTransceiver implements
     // Get the lenght of the body directly at the byte level
     final int bodyLength = byteArrayToInt(Arrays.copyOfRange(rawHeader, 19, 23));
 
+    if ((0 > bodyLength) || (maxMessageSize - HEADER_SIZE < bodyLength)) {
+      throw new IOException("Invalid MAL TCPIP body length " + bodyLength + " from " + from
+          + ", the maximum message size is " + maxMessageSize);
+    }
+
     // Allocate memory for header and body
     byte[] totalPacketData = new byte[HEADER_SIZE + bodyLength];
     System.arraycopy(rawHeader, 0, totalPacketData, 0, HEADER_SIZE);
@@ -0,0 +1,417 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import esa.mo.mal.transport.gen.GENTransport;
+import esa.mo.mal.transport.tcpip.TCPIPEndpoint;
+import esa.mo.mal.transport.tcpip.TCPIPMessage;
+import esa.mo.mal.transport.tcpip.TCPIPTransport;
+import esa.mo.mal.transport.tcpip.TCPIPTransportFactoryImpl;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.ccsds.moims.mo.mal.MALArea;
+import org.ccsds.moims.mo.mal.MALContextFactory;
+import org.ccsds.moims.mo.mal.MALHelper;
+import org.ccsds.moims.mo.mal.MALPubSubOperation;
+import org.ccsds.moims.mo.mal.MALService;
+import org.ccsds.moims.mo.mal.MALStandardError;
+import org.ccsds.moims.mo.mal.broker.MALBrokerBinding;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.ccsds.moims.mo.mal.structures.EntityKey;
+import org.ccsds.moims.mo.mal.structures.EntityKeyList;
+import org.ccsds.moims.mo.mal.structures.EntityRequest;
+import org.ccsds.moims.mo.mal.structures.EntityRequestList;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.SessionType;
+import org.ccsds.moims.mo.mal.structures.Subscription;
+import org.ccsds.moims.mo.mal.structures.Time;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.structures.UOctet;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.structures.UShort;
+import org.ccsds.moims.mo.mal.structures.UpdateHeader;
+import org.ccsds.moims.mo.mal.structures.UpdateHeaderList;
+import org.ccsds.moims.mo.mal.structures.UpdateType;
+import org.ccsds.moims.mo.mal.transport.MALEndpoint;
+import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.ccsds.moims.mo.mal.transport.MALMessageBody;
+import org.ccsds.moims.mo.mal.transport.MALMessageListener;
+import org.ccsds.moims.mo.mal.transport.MALNotifyBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the PUBSUB interactions through the transport level broker of a TCPIP transport that sends
+ * to itself over the loopback interface, so the notify bodies are encoded and shared.
+ */
+public class TCPIPBrokerHandlerTest
+{
+
+  private static final UShort AREA_NUMBER = new UShort(901);
+  private static final UOctet AREA_VERSION = new UOctet((short) 1);
+  private static final MALPubSubOperation MONITOR_OP = new MALPubSubOperation(new UShort(1),
+      new Identifier("Monitor"), Boolean.FALSE, new UShort(0),
+      new Object[]{IdentifierList.SHORT_FORM}, new Object[]{IdentifierList.SHORT_FORM});
+  private static final long TIMEOUT_SECONDS = 10;
+  private static boolean areaRegistered = false;
+  private final Blob authenticationId = new Blob(new byte[]{1});
+  private final IdentifierList domain = new IdentifierList();
+  private TCPIPTransport transport;
+  private MALBrokerBinding broker;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    registerArea();
+    domain.add(new Identifier("esa"));
+
+    Map properties = new HashMap();
+    properties.put(TCPIPTransport.BROKER_PROPERTY, "true");
+    properties.put(GENTransport.INPROC_PROPERTY, "false");
+    properties.put("org.ccsds.moims.mo.mal.transport.tcpip.host", "127.0.0.1");
+    properties.put("org.ccsds.moims.mo.mal.transport.tcpip.port", String.valueOf(freePort()));
+    System.setProperty("org.ccsds.moims.mo.mal.encoding.protocol.maltcp",
+        "esa.mo.mal.encoder.binary.fixed.FixedBinaryStreamFactory");
+
+    transport = (TCPIPTransport) new TCPIPTransportFactoryImpl("maltcp")
+        .createTransport(null, properties);
+    broker = transport.createBroker("Broker", authenticationId,
+        new QoSLevel[]{QoSLevel.ASSURED}, new UInteger(1), properties);
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    if (null != broker) {
+      broker.close();
+    }
+
+    if (null != transport) {
+      transport.close();
+    }
+  }
+
+  @Test
+  public void testBrokerIsOptIn() throws Exception
+  {
+    System.out.println("TCPIPBrokerHandler opt in test");
+    assertNotNull(broker);
+    assertTrue(transport.isSupportedInteractionType(
+        org.ccsds.moims.mo.mal.structures.InteractionType.PUBSUB));
+
+    TCPIPTransport plain = (TCPIPTransport) new TCPIPTransportFactoryImpl("maltcp")
+        .createTransport(null, new HashMap());
+
+    try {
+      assertNull(plain.createBroker("Plain", authenticationId, new QoSLevel[]{QoSLevel.ASSURED},
+          new UInteger(1), new HashMap()));
+      assertFalse(plain.isSupportedInteractionType(
+          org.ccsds.moims.mo.mal.structures.InteractionType.PUBSUB));
+    } finally {
+      plain.close();
+    }
+  }
+
+  @Test
+  public void testRegisterPublishNotifyDeregister() throws Exception
+  {
+    System.out.println("TCPIPBrokerHandler loopback test");
+    Client first = new Client("First");
+    Client second = new Client("Second");
+    Client other = new Client("Other");
+    Client keyB = new Client("KeyB");
+    Client provider = new Client("Provider");
+
+    // the first two share a subscription identifier and a selection, so share a notify body
+    first.send(MALPubSubOperation.REGISTER_STAGE, 1L, subscription("Sub", "A"));
+    second.send(MALPubSubOperation.REGISTER_STAGE, 2L, subscription("Sub", "A"));
+    other.send(MALPubSubOperation.REGISTER_STAGE, 3L, subscription("OtherSub", "A"));
+    keyB.send(MALPubSubOperation.REGISTER_STAGE, 4L, subscription("Sub", "B"));
+    first.expectAck(MALPubSubOperation.REGISTER_ACK_STAGE);
+    second.expectAck(MALPubSubOperation.REGISTER_ACK_STAGE);
+    other.expectAck(MALPubSubOperation.REGISTER_ACK_STAGE);
+    keyB.expectAck(MALPubSubOperation.REGISTER_ACK_STAGE);
+
+    EntityKeyList providerKeys = new EntityKeyList();
+    providerKeys.add(new EntityKey(new Identifier("*"), 0L, 0L, 0L));
+    provider.send(MALPubSubOperation.PUBLISH_REGISTER_STAGE, 5L, providerKeys);
+    provider.expectAck(MALPubSubOperation.PUBLISH_REGISTER_ACK_STAGE);
+
+    provider.publish(6L, "A", "B");
+
+    first.expectNotify(1L, "Sub", "A");
+    second.expectNotify(2L, "Sub", "A");
+    other.expectNotify(3L, "OtherSub", "A");
+    keyB.expectNotify(4L, "Sub", "B");
+
+    IdentifierList subIds = new IdentifierList();
+    subIds.add(new Identifier("Sub"));
+    first.send(MALPubSubOperation.DEREGISTER_STAGE, 1L, subIds);
+    first.expectAck(MALPubSubOperation.DEREGISTER_ACK_STAGE);
+
+    provider.publish(6L, "A");
+
+    second.expectNotify(2L, "Sub", "A");
+    other.expectNotify(3L, "OtherSub", "A");
+    keyB.expectNothing();
+    first.expectNothing();
+
+    provider.send(MALPubSubOperation.PUBLISH_DEREGISTER_STAGE, 7L);
+    provider.expectAck(MALPubSubOperation.PUBLISH_DEREGISTER_ACK_STAGE);
+
+    // the provider is no longer registered so its publish is rejected
+    provider.publish(6L, "A");
+    MALMessage error = provider.receive();
+    assertTrue(error.getHeader().getIsErrorMessage());
+    assertEquals(MALHelper.INCORRECT_STATE_ERROR_NUMBER,
+        ((org.ccsds.moims.mo.mal.transport.MALErrorBody) error.getBody()).getError()
+        .getErrorNumber());
+    second.expectNothing();
+  }
+
+  @Test
+  public void testRuntimeExceptionIsReturnedAsInternalError() throws Exception
+  {
+    System.out.println("TCPIPBrokerHandler runtime exception test");
+    Client consumer = new Client("Consumer");
+    MALMessage template = consumer.create(MALPubSubOperation.REGISTER_STAGE, 1L,
+        subscription("Sub", "A"));
+
+    // a body that cannot be read, as for a malformed message
+    TCPIPMessage broken = new TCPIPMessage(false, (GENMessageHeader) template.getHeader(),
+        new HashMap(), MONITOR_OP, transport.getStreamFactory(), subscription("Sub", "A"))
+    {
+      @Override
+      public MALMessageBody getBody()
+      {
+        throw new IllegalStateException("Unreadable body");
+      }
+    };
+    ((TCPIPEndpoint) transport.getEndpoint(broker.getURI())).receiveMessage(broken);
+
+    MALMessage error = consumer.receive();
+    assertTrue(error.getHeader().getIsErrorMessage());
+    assertEquals(MALPubSubOperation.REGISTER_ACK_STAGE, error.getHeader().getInteractionStage());
+    assertEquals(MALHelper.INTERNAL_ERROR_NUMBER,
+        ((org.ccsds.moims.mo.mal.transport.MALErrorBody) error.getBody()).getError()
+        .getErrorNumber());
+  }
+
+  @Test
+  public void testClosedConnectionRemovesConsumersAndProviders() throws Exception
+  {
+    System.out.println("TCPIPBrokerHandler closed connection test");
+    Client consumer = new Client("Consumer");
+    Client provider = new Client("Provider");
+    EntityKeyList providerKeys = new EntityKeyList();
+    providerKeys.add(new EntityKey(new Identifier("*"), 0L, 0L, 0L));
+
+    consumer.send(MALPubSubOperation.REGISTER_STAGE, 1L, subscription("Sub", "A"));
+    consumer.expectAck(MALPubSubOperation.REGISTER_ACK_STAGE);
+    provider.send(MALPubSubOperation.PUBLISH_REGISTER_STAGE, 2L, providerKeys);
+    provider.expectAck(MALPubSubOperation.PUBLISH_REGISTER_ACK_STAGE);
+
+    Object handler = field(broker, "handler");
+    assertEquals(1, ((Map) field(handler, "consumers")).size());
+    assertEquals(1, ((Map) field(handler, "publishers")).size());
+
+    // a connection to an unrelated transport closing leaves the registrations
+    transport.closeConnection("maltcp://127.0.0.1:1", null);
+    assertEquals(1, ((Map) field(handler, "consumers")).size());
+    assertEquals(1, ((Map) field(handler, "publishers")).size());
+
+    // the clients share the root URI of the transport, so both registrations go
+    transport.closeConnection(transport.getRootURI(broker.getURI().getValue()), null);
+    assertTrue(((Map) field(handler, "consumers")).isEmpty());
+    assertTrue(((Map) field(handler, "publishers")).isEmpty());
+    assertTrue(((Map) field(handler, "requestIndex")).isEmpty());
+  }
+
+  private static Object field(Object obj, String name) throws Exception
+  {
+    Field field = obj.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+
+    return field.get(obj);
+  }
+
+  private static synchronized void registerArea() throws Exception
+  {
+    if (!areaRegistered) {
+      MALHelper.init(MALContextFactory.getElementFactoryRegistry());
+
+      MALService service = new MALService(new UShort(1), new Identifier("BrokerTestService"));
+      service.addOperation(MONITOR_OP);
+
+      MALArea area = new MALArea(AREA_NUMBER, new Identifier("BrokerTest"), AREA_VERSION);
+      area.addService(service);
+      MALContextFactory.registerArea(area);
+
+      areaRegistered = true;
+    }
+  }
+
+  private static Subscription subscription(String subId, String key)
+  {
+    EntityKeyList keys = new EntityKeyList();
+    keys.add(new EntityKey(new Identifier(key), 0L, 0L, 0L));
+    EntityRequestList requests = new EntityRequestList();
+    requests.add(new EntityRequest(null, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE,
+        Boolean.FALSE, keys));
+
+    return new Subscription(new Identifier(subId), requests);
+  }
+
+  private static int freePort() throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * An endpoint of the transport acting as consumer or provider.
+   */
+  private final class Client implements MALMessageListener
+  {
+
+    private final BlockingQueue<MALMessage> received = new LinkedBlockingQueue<MALMessage>();
+    private final MALEndpoint endpoint;
+
+    Client(String name) throws Exception
+    {
+      endpoint = transport.createEndpoint(name, new HashMap());
+      endpoint.setMessageListener(this);
+      endpoint.startMessageDelivery();
+    }
+
+    MALMessage create(UOctet stage, long transactionId, Object... body) throws Exception
+    {
+      return endpoint.createMessage(authenticationId, broker.getURI(),
+          new Time(System.currentTimeMillis()), QoSLevel.ASSURED, new UInteger(1), domain,
+          new Identifier("Network"), SessionType.LIVE, new Identifier("LIVE"), transactionId,
+          Boolean.FALSE, MONITOR_OP, stage, new HashMap(), body);
+    }
+
+    void send(UOctet stage, long transactionId, Object... body) throws Exception
+    {
+      endpoint.sendMessage(create(stage, transactionId, body));
+    }
+
+    void publish(long transactionId, String... keys) throws Exception
+    {
+      UpdateHeaderList headers = new UpdateHeaderList();
+      IdentifierList updates = new IdentifierList();
+
+      for (String key : keys) {
+        headers.add(new UpdateHeader(new Time(System.currentTimeMillis()), endpoint.getURI(),
+            UpdateType.UPDATE, new EntityKey(new Identifier(key), 0L, 0L, 0L)));
+        updates.add(new Identifier("value" + key));
+      }
+
+      endpoint.sendMessage(endpoint.createMessage(authenticationId, broker.getURI(),
+          new Time(System.currentTimeMillis()), QoSLevel.ASSURED, new UInteger(1), domain,
+          new Identifier("Network"), SessionType.LIVE, new Identifier("LIVE"), transactionId,
+          Boolean.FALSE, MONITOR_OP, MALPubSubOperation.PUBLISH_STAGE, new HashMap(), headers,
+          updates));
+    }
+
+    MALMessage receive() throws Exception
+    {
+      MALMessage msg = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      assertNotNull("Nothing received by " + endpoint.getURI(), msg);
+
+      return msg;
+    }
+
+    void expectAck(UOctet stage) throws Exception
+    {
+      MALMessage msg = receive();
+      assertFalse(msg.getHeader().getIsErrorMessage());
+      assertEquals(stage, msg.getHeader().getInteractionStage());
+    }
+
+    void expectNotify(long transactionId, String subId, String key) throws Exception
+    {
+      MALMessage msg = receive();
+      assertEquals(MALPubSubOperation.NOTIFY_STAGE, msg.getHeader().getInteractionStage());
+      assertEquals(Long.valueOf(transactionId), msg.getHeader().getTransactionId());
+
+      MALNotifyBody body = (MALNotifyBody) msg.getBody();
+      assertEquals(new Identifier(subId), body.getSubscriptionId());
+      assertEquals(1, body.getUpdateHeaderList().size());
+      assertEquals(new Identifier(key), body.getUpdateHeaderList().get(0).getKey()
+          .getFirstSubKey());
+
+      List updates = body.getUpdateList(0, new IdentifierList());
+      assertEquals(1, updates.size());
+      assertEquals(new Identifier("value" + key), updates.get(0));
+    }
+
+    void expectNothing() throws Exception
+    {
+      assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public void onMessage(MALEndpoint callingEndpoint, MALMessage msg)
+    {
+      received.add(msg);
+    }
+
+    @Override
+    public void onMessages(MALEndpoint callingEndpoint, MALMessage[] msgList)
+    {
+      for (MALMessage msg : msgList) {
+        received.add(msg);
+      }
+    }
+
+    @Override
+    public void onInternalError(MALEndpoint callingEndpoint, Throwable err)
+    {
+      err.printStackTrace();
+    }
+
+    @Override
+    public void onTransmitError(MALEndpoint callingEndpoint, MALMessageHeader srcMessageHeader,
+        MALStandardError err, Map qosMap)
+    {
+      fail("Transmit error: " + err);
+    }
+  }
+}
@@ -0,0 +1,346 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.GENReceptionHandler;
+import esa.mo.mal.transport.gen.GENTransport;
+import esa.mo.mal.transport.gen.receivers.GENIncomingMessageDecoder;
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import esa.mo.mal.transport.tcpip.TCPIPChannelConnection;
+import esa.mo.mal.transport.tcpip.TCPIPPacketInfoHolder;
+import esa.mo.mal.transport.tcpip.TCPIPSelectorLoop;
+import esa.mo.mal.transport.tcpip.TCPIPTransport;
+import esa.mo.mal.transport.tcpip.TCPIPTransportDataTransceiver;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.ccsds.moims.mo.mal.MALException;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the framing, back pressure and shutdown of the nio engine over the loopback interface. The
+ * transport under test records the framed packets instead of decoding them.
+ */
+public class TCPIPSelectorEngineTest
+{
+
+  private static final int HEADER_SIZE = 23;
+  private static final long TIMEOUT_SECONDS = 10;
+  private RecordingTransport transport;
+  private Socket client;
+
+  @After
+  public void tearDown() throws Exception
+  {
+    if (null != client) {
+      client.close();
+    }
+
+    if (null != transport) {
+      transport.close();
+    }
+  }
+
+  @Test
+  public void testFramesArrivingByteByByte() throws Exception
+  {
+    System.out.println("TCPIP nio partial read framing test");
+    transport = new RecordingTransport(properties(null));
+    client = connect();
+    byte[] first = frame(40, (byte) 1);
+    byte[] second = frame(0, (byte) 2);
+    OutputStream out = client.getOutputStream();
+
+    for (byte b : concat(first, second)) {
+      out.write(b);
+      out.flush();
+    }
+
+    assertArrayEquals(first, transport.nextPacket());
+    assertArrayEquals(second, transport.nextPacket());
+  }
+
+  @Test
+  public void testHeaderSplitAcrossReads() throws Exception
+  {
+    System.out.println("TCPIP nio split header test");
+    transport = new RecordingTransport(properties(null));
+    client = connect();
+    byte[] first = frame(100, (byte) 3);
+    byte[] second = frame(10, (byte) 4);
+    byte[] all = concat(first, second);
+    OutputStream out = client.getOutputStream();
+
+    // the first header in two parts, then the second header split after the first body
+    int[] cuts = {10, first.length + 5, all.length};
+    int from = 0;
+    for (int cut : cuts) {
+      out.write(all, from, cut - from);
+      out.flush();
+      from = cut;
+      Thread.sleep(100);
+    }
+
+    assertArrayEquals(first, transport.nextPacket());
+    assertArrayEquals(second, transport.nextPacket());
+  }
+
+  @Test
+  public void testOversizedFrameClosesTheConnection() throws Exception
+  {
+    System.out.println("TCPIP nio maximum message size test");
+    transport = new RecordingTransport(properties("1024"));
+    client = connect();
+    TCPIPChannelConnection connection = transport.nextConnection();
+    client.getOutputStream().write(Arrays.copyOf(frame(4096, (byte) 5), HEADER_SIZE));
+    client.getOutputStream().flush();
+
+    client.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    assertEquals(-1, client.getInputStream().read());
+    assertTrue(connection.isClosed());
+    assertNull(transport.packets.poll());
+  }
+
+  @Test
+  public void testWriteWaitsForTheReader() throws Exception
+  {
+    System.out.println("TCPIP nio write back pressure test");
+    transport = new RecordingTransport(properties(null));
+    client = connect();
+    final TCPIPChannelConnection connection = transport.nextConnection();
+    final byte[] data = frame(16 * 1024 * 1024, (byte) 6);
+    final CountDownLatch sent = new CountDownLatch(1);
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    Thread sender = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try {
+          connection.sendEncodedMessage(new GENOutgoingMessageHolder<byte[]>(10, null, null, null,
+              true, null, data));
+        } catch (Exception ex) {
+          failure.set(ex);
+        }
+
+        sent.countDown();
+      }
+    };
+    sender.start();
+
+    // nothing is read so the socket buffers fill and the sender has to wait
+    assertFalse(sent.await(500, TimeUnit.MILLISECONDS));
+
+    byte[] received = new byte[data.length];
+    client.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    new DataInputStream(client.getInputStream()).readFully(received);
+
+    assertTrue(sent.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertNull(failure.get());
+    assertArrayEquals(data, received);
+  }
+
+  @Test
+  public void testCloseStopsTheLoopsAndClosesTheConnections() throws Exception
+  {
+    System.out.println("TCPIP nio shutdown test");
+    transport = new RecordingTransport(properties(null));
+    client = connect();
+    TCPIPChannelConnection connection = transport.nextConnection();
+    assertTrue(0 < selectorLoops());
+
+    transport.close();
+    transport = null;
+
+    client.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    assertEquals(-1, client.getInputStream().read());
+    assertTrue(connection.isClosed());
+
+    for (int i = 0; (i < 1000) && (0 < selectorLoops()); i++) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(0, selectorLoops());
+  }
+
+  @Test
+  public void testReplacedBlockingTransceiverRejectsNio() throws Exception
+  {
+    System.out.println("TCPIP nio transceiver hook test");
+
+    TCPIPTransport blockingOnly = null;
+
+    try {
+      blockingOnly = new TCPIPTransport("maltcp", '/', false, null, properties(null))
+      {
+        @Override
+        protected TCPIPTransportDataTransceiver createDataTransceiver(Socket socket)
+            throws IOException
+        {
+          return super.createDataTransceiver(socket);
+        }
+      };
+      blockingOnly.init();
+      fail("The nio engine cannot use a replaced blocking transceiver");
+    } catch (MALException ex) {
+      // expected
+    } finally {
+      if (null != blockingOnly) {
+        blockingOnly.close();
+      }
+    }
+  }
+
+  private Socket connect() throws IOException
+  {
+    Socket socket = new Socket("127.0.0.1", transport.port);
+    socket.setTcpNoDelay(true);
+    return socket;
+  }
+
+  private static Map properties(String maxMessageSize) throws IOException
+  {
+    Map properties = new HashMap();
+    properties.put(TCPIPTransport.ENGINE_PROPERTY, "nio");
+    properties.put(GENTransport.INPROC_PROPERTY, "false");
+    properties.put("org.ccsds.moims.mo.mal.transport.tcpip.host", "127.0.0.1");
+    properties.put("org.ccsds.moims.mo.mal.transport.tcpip.port", String.valueOf(freePort()));
+
+    if (null != maxMessageSize) {
+      properties.put(TCPIPTransport.MAX_MESSAGE_SIZE_PROPERTY, maxMessageSize);
+    }
+
+    System.setProperty("org.ccsds.moims.mo.mal.encoding.protocol.maltcp",
+        "esa.mo.mal.encoder.binary.fixed.FixedBinaryStreamFactory");
+    return properties;
+  }
+
+  private static int freePort() throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static int selectorLoops()
+  {
+    int count = 0;
+
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive() && thread.getName().startsWith("TCPIPSelectorLoop_")) {
+        ++count;
+      }
+    }
+
+    return count;
+  }
+
+  private static byte[] frame(int bodyLength, byte fill)
+  {
+    byte[] packet = new byte[HEADER_SIZE + bodyLength];
+    Arrays.fill(packet, fill);
+    packet[19] = (byte) (bodyLength >>> 24);
+    packet[20] = (byte) (bodyLength >>> 16);
+    packet[21] = (byte) (bodyLength >>> 8);
+    packet[22] = (byte) bodyLength;
+    return packet;
+  }
+
+  private static byte[] concat(byte[] a, byte[] b)
+  {
+    byte[] both = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, both, a.length, b.length);
+    return both;
+  }
+
+  /**
+   * A nio TCPIP transport that records the connections it creates and the packets they frame.
+   */
+  private static class RecordingTransport extends TCPIPTransport
+  {
+
+    private final int port;
+    private final BlockingQueue<byte[]> packets = new LinkedBlockingQueue<byte[]>();
+    private final BlockingQueue<TCPIPChannelConnection> connections
+        = new LinkedBlockingQueue<TCPIPChannelConnection>();
+
+    RecordingTransport(Map properties) throws MALException
+    {
+      super("maltcp", '/', false, null, properties);
+      port = Integer.parseInt((String) properties.get(
+          "org.ccsds.moims.mo.mal.transport.tcpip.port"));
+      init();
+    }
+
+    byte[] nextPacket() throws InterruptedException
+    {
+      byte[] packet = packets.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      assertNotNull(packet);
+      return packet;
+    }
+
+    TCPIPChannelConnection nextConnection() throws InterruptedException
+    {
+      TCPIPChannelConnection connection = connections.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      assertNotNull(connection);
+      return connection;
+    }
+
+    @Override
+    protected TCPIPChannelConnection createChannelConnection(TCPIPSelectorLoop loop,
+        SocketChannel channel) throws IOException
+    {
+      TCPIPChannelConnection connection = super.createChannelConnection(loop, channel);
+      connections.add(connection);
+      return connection;
+    }
+
+    @Override
+    public void receive(GENReceptionHandler receptionHandler, GENIncomingMessageDecoder decoder)
+    {
+      try {
+        Field field = decoder.getClass().getDeclaredField("packetInfo");
+        field.setAccessible(true);
+        packets.add(((TCPIPPacketInfoHolder) field.get(decoder)).getPacketData());
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2014      European Space Agency
+ *                         European Space Operations Centre
+ *                         Darmstadt
+ *                         Germany
+ * ----------------------------------------------------------------------------
+ * System                : CCSDS MO TCP/IP Transport Framework
+ * ----------------------------------------------------------------------------
+ * Licensed under the European Space Agency Public License, Version 2.0
+ * You may not use this file except in compliance with the License.
+ *
+ * Except as expressly set forth in this License, the Software is provided to
+ * You on an "as is" basis and without warranties of any kind, including without
+ * limitation merchantability, fitness for a particular purpose, absence of
+ * defects or errors, accuracy or non-infringement of intellectual property rights.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ----------------------------------------------------------------------------
+ */
+
+import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
+import esa.mo.mal.transport.tcpip.TCPIPTransportDataTransceiver;
+import java.io.DataInputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that batches are written back to back and in order, and that a staging buffer grown by a
+ * large batch is not kept.
+ */
+public class TCPIPTransportDataTransceiverTest
+{
+
+  private ServerSocket server;
+  private Socket client;
+  private Socket accepted;
+  private TCPIPTransportDataTransceiver transceiver;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    accepted = server.accept();
+    transceiver = new TCPIPTransportDataTransceiver(client, server.getLocalPort());
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    transceiver.close();
+    accepted.close();
+    server.close();
+  }
+
+  @Test
+  public void testBatchIsWrittenInOrder() throws Exception
+  {
+    System.out.println("TCPIP batch write test");
+    List<GENOutgoingMessageHolder<byte[]>> batch = batch(3, 100);
+    transceiver.sendEncodedMessages(batch);
+
+    DataInputStream in = new DataInputStream(accepted.getInputStream());
+    for (GENOutgoingMessageHolder<byte[]> holder : batch) {
+      byte[] received = new byte[100];
+      in.readFully(received);
+      assertArrayEquals(holder.getEncodedMessage(), received);
+    }
+
+    assertEquals(300, batchBuffer().length);
+  }
+
+  @Test
+  public void testLargeBatchBufferIsReleased() throws Exception
+  {
+    System.out.println("TCPIP batch buffer release test");
+    final int size = 40000;
+    final List<GENOutgoingMessageHolder<byte[]>> batch = batch(4, size);
+
+    // read concurrently as the batch is larger than the socket buffers
+    final byte[] received = new byte[4 * size];
+    Thread reader = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try {
+          new DataInputStream(accepted.getInputStream()).readFully(received);
+        } catch (Exception ex) {
+          ex.printStackTrace();
+        }
+      }
+    };
+    reader.start();
+    transceiver.sendEncodedMessages(batch);
+    reader.join(30000);
+
+    for (int i = 0; i < batch.size(); i++) {
+      assertEquals(batch.get(i).getEncodedMessage()[0], received[i * size]);
+      assertEquals(batch.get(i).getEncodedMessage()[size - 1], received[(i + 1) * size - 1]);
+    }
+
+    assertEquals(0, batchBuffer().length);
+  }
+
+  private byte[] batchBuffer() throws Exception
+  {
+    Field field = TCPIPTransportDataTransceiver.class.getDeclaredField("batchBuffer");
+    field.setAccessible(true);
+    return (byte[]) field.get(transceiver);
+  }
+
+  private static List<GENOutgoingMessageHolder<byte[]>> batch(int count, int size)
+  {
+    List<GENOutgoingMessageHolder<byte[]>> batch
+        = new ArrayList<GENOutgoingMessageHolder<byte[]>>();
+
+    for (int i = 0; i < count; i++) {
+      byte[] data = new byte[size];
+      for (int j = 0; j < size; j++) {
+        data[j] = (byte) (i * 31 + j);
+      }
+
+      batch.add(new GENOutgoingMessageHolder<byte[]>(10, "maltcp://localhost:1",
+          "maltcp://localhost:1/x", null, true, null, data));
+    }
+
+    return batch;
+  }
+}
@@ -170,7 +170,7 @@ public class ZMTPHeaderDecoder extends FixedBinaryDecoder
         throw new MALException("Cannot resolve String MDK " + mdk + ". Missing directory entry.");
       }
     } else {
-      ret = new String(sourceBuffer.directGetBytes(lengthOrMDK));
+      ret = ((FixedBinaryBufferHolder) sourceBuffer).directGetString(lengthOrMDK);
     }
     return ret;
   }
@@ -20,9 +20,10 @@
  */
 package esa.mo.mal.transport.zmtp;
 
-import esa.mo.mal.transport.gen.sending.GENMessageSender;
+import esa.mo.mal.transport.gen.sending.GENBatchMessageSender;
 import esa.mo.mal.transport.gen.sending.GENOutgoingMessageHolder;
 import java.io.IOException;
+import java.util.List;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMsg;
 
@@ -34,7 +35,7 @@ import org.zeromq.ZMsg;
  * ZMTPTransport.
  *
  */
-public class ZMTPChannelSource implements GENMessageSender<byte[]>
+public class ZMTPChannelSource implements GENBatchMessageSender<byte[]>
 {
 
   /**
@@ -60,6 +61,22 @@ public class ZMTPChannelSource implements GENMessageSender<byte[]>
     outMsg.send(socket, true);
   }
 
+  /**
+   * Each message remains a separate ZMTP message, ZeroMQ coalesces the frames queued on the socket
+   * into its own writes so the batch saves the per message hand over between sender threads.
+   *
+   * @param packets The encoded messages to send
+   * @throws IOException
+   */
+  @Override
+  public void sendEncodedMessages(List<GENOutgoingMessageHolder<byte[]>> packets)
+      throws IOException
+  {
+    for (GENOutgoingMessageHolder<byte[]> packetData : packets) {
+      sendEncodedMessage(packetData);
+    }
+  }
+
   @Override
   public void close()
   {
@@ -22,7 +22,7 @@ package esa.mo.mal.transport.zmtp;
 
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
-import java.io.ByteArrayOutputStream;
+import esa.mo.mal.transport.gen.util.GENPooledOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -84,6 +84,28 @@ public class ZMTPMessage extends GENMessage
     this.hdrStreamFactory = hdrStreamFactory;
   }
 
+  /**
+   * Constructor for a received message whose header has already been decoded. The body is left
+   * encoded in the packet until it is accessed.
+   *
+   * @param hdrStreamFactory The stream factory to use for message header encoding.
+   * @param wrapBodyParts    True if the encoded body parts should be wrapped in BLOBs.
+   * @param header           The decoded message header.
+   * @param qosProperties    The QoS properties for this message.
+   * @param packet           The message in encoded form.
+   * @param bodyOffset       The offset of the encoded body in the packet.
+   * @param encFactory       The stream factory to use for message body encoding.
+   * @throws MALException On decoding error.
+   */
+  public ZMTPMessage(final MALElementStreamFactory hdrStreamFactory, final boolean wrapBodyParts,
+      final GENMessageHeader header, final Map qosProperties, final byte[] packet,
+      final int bodyOffset, final MALElementStreamFactory encFactory) throws MALException
+  {
+    super(wrapBodyParts, header, qosProperties, packet, bodyOffset, encFactory);
+
+    this.hdrStreamFactory = hdrStreamFactory;
+  }
+
   /**
    * Constructor.
    *
@@ -111,10 +133,11 @@ public class ZMTPMessage extends GENMessage
       final OutputStream lowLevelOutputStream,
       final boolean writeHeader) throws MALException
   {
+    final GENPooledOutputStream hdrBaos = new GENPooledOutputStream();
+    final GENPooledOutputStream bodyBaos = new GENPooledOutputStream();
+
     try {
-      final ByteArrayOutputStream hdrBaos = new ByteArrayOutputStream();
       MALElementOutputStream hdrEnc = hdrStreamFactory.createOutputStream(hdrBaos);
-      final ByteArrayOutputStream bodyBaos = new ByteArrayOutputStream();
       final MALElementOutputStream bodyEnc = streamFactory.createOutputStream(bodyBaos);
 
       super.encodeMessage(streamFactory, bodyEnc, bodyBaos, false);
@@ -122,11 +145,14 @@ public class ZMTPMessage extends GENMessage
       MALEncodingContext ctx = new MALEncodingContext(header, operation, 0, qosProperties,
           qosProperties);
       hdrEnc.writeElement(header, ctx);
-      lowLevelOutputStream.write(hdrBaos.toByteArray());
-      lowLevelOutputStream.write(bodyBaos.toByteArray());
+      hdrBaos.writeTo(lowLevelOutputStream);
+      bodyBaos.writeTo(lowLevelOutputStream);
 
     } catch (IOException ex) {
       throw new MALException("Internal error encoding message", ex);
+    } finally {
+      hdrBaos.release();
+      bodyBaos.release();
     }
   }
 }
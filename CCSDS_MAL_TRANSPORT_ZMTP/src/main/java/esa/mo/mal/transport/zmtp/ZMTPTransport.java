@@ -48,7 +48,6 @@ import org.zeromq.ZContext;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Random;
-import org.ccsds.moims.mo.mal.MALHelper;
 import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
 
 /**
@@ -375,23 +374,12 @@ public class ZMTPTransport extends GENTransport<byte[], byte[]>
     // Default configuration (loaded from transport properties) is used for decoding
     ZMTPMessageHeader header = new ZMTPMessageHeader(new ZMTPConfiguration(defaultConfiguration,
         qosProperties), null);
-    ZMTPMessage dummyMessage = new ZMTPMessage(hdrStreamFactory, wrapBodyParts, true, header,
-        qosProperties, packet, hdrStreamFactory);
+    // only the header is decoded here, the body is decoded from the packet when accessed
+    Blob body = GENMessage.decodeHeader(header, qosProperties, packet, hdrStreamFactory);
 
-    // now full message including body
-    try {
-      return new ZMTPMessage(hdrStreamFactory, wrapBodyParts, false,
-          (GENMessageHeader) dummyMessage.getHeader(), qosProperties,
-          dummyMessage.getBody().getEncodedBody().getEncodedBody().getValue(),
-          getBodyEncodingSelector().getDecoderStreamFactory(header));
-    } catch (MALException ex) {
-      returnErrorMessage(null,
-          dummyMessage,
-          MALHelper.INTERNAL_ERROR_NUMBER,
-          "The message body could not be decoded. The message will be discarded!");
-
-      return null;
-    }
+    return new ZMTPMessage(hdrStreamFactory, wrapBodyParts, header, qosProperties,
+        body.getValue(), body.getOffset(),
+        getBodyEncodingSelector().getDecoderStreamFactory(header));
   }
 
   @Override